@@ -36,24 +36,26 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.net.ConnectivityManager;
 import android.util.Log;
 
 import com.google.inject.Inject;
 
 import net.danlew.android.joda.JodaTimeAndroid;
 
-import org.clintonhealthaccess.lmis.app.backgroundServices.AlertsGenerationIntentService;
+import org.clintonhealthaccess.lmis.app.backgroundServices.ConnectivityBroadcastReceiver;
 import org.clintonhealthaccess.lmis.app.backgroundServices.DownloadBroadcastReceiver;
-import org.clintonhealthaccess.lmis.app.backgroundServices.SmsSyncIntentService;
+import org.clintonhealthaccess.lmis.app.backgroundServices.SchedulerIntentService;
 import org.clintonhealthaccess.lmis.app.config.GuiceConfigurationModule;
+import org.clintonhealthaccess.lmis.app.persistence.BackgroundMigrator;
 import org.clintonhealthaccess.lmis.app.services.AllocationService;
 import org.clintonhealthaccess.lmis.app.services.CategoryService;
 
 import java.util.Calendar;
 
-import static android.app.AlarmManager.INTERVAL_DAY;
+import roboguice.inject.InjectResource;
+
 import static android.app.AlarmManager.RTC_WAKEUP;
-import static android.app.PendingIntent.FLAG_CANCEL_CURRENT;
 import static android.app.PendingIntent.FLAG_UPDATE_CURRENT;
 import static android.content.Intent.FLAG_ACTIVITY_NEW_TASK;
 import static roboguice.RoboGuice.DEFAULT_STAGE;
@@ -75,6 +77,12 @@ public class LmisApplication extends Application {
     @Inject
     AlarmManager alarmManager;
 
+    @Inject
+    BackgroundMigrator backgroundMigrator;
+
+    @InjectResource(R.integer.scheduler_tick)
+    Integer schedulerTick;
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -83,9 +91,10 @@ public class LmisApplication extends Application {
         getInjector(this).injectMembersWithoutViews(this);
         loadAllCommoditiesToCache();
         loadAllAllocationstoCache();
-        setupAlertsService();
-        setupSmsSyncingService();
+        backgroundMigrator.start();
+        setupScheduler();
         registerDownloadCompleteReceiver();
+        registerConnectivityReceiver();
     }
 
     private void registerDownloadCompleteReceiver() {
@@ -94,35 +103,19 @@ public class LmisApplication extends Application {
         registerReceiver(receiver, intentFilter);
     }
 
-    private void setupSmsSyncingService() {
-        setupSmsSyncingAt(1);
-        setupSmsSyncingAt(13);
-    }
-
-    private void setupSmsSyncingAt(int hourOfDay) {
-        Intent smsSyncingServiceIntent = new Intent(context, SmsSyncIntentService.class);
-        smsSyncingServiceIntent.addFlags(FLAG_ACTIVITY_NEW_TASK);
-        PendingIntent pendingIntent = PendingIntent.getService(context, 0, smsSyncingServiceIntent, FLAG_UPDATE_CURRENT);
-
-        Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.HOUR_OF_DAY, hourOfDay);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-
-        alarmManager.setRepeating(RTC_WAKEUP, calendar.getTimeInMillis(), INTERVAL_DAY, pendingIntent);
+    private void registerConnectivityReceiver() {
+        registerReceiver(new ConnectivityBroadcastReceiver(), new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
     }
 
-    private void setupAlertsService() {
-        Log.i("Alert", "Started");
-        Intent syncDataServiceIntent = new Intent(context, AlertsGenerationIntentService.class);
-        syncDataServiceIntent.addFlags(FLAG_ACTIVITY_NEW_TASK);
-        PendingIntent pendingIntent = PendingIntent.getService(context, 0, syncDataServiceIntent,
-                FLAG_CANCEL_CURRENT);
+    // sms sync, alerts and archival used to have an alarm each; SyncScheduler now decides what is due on every tick
+    private void setupScheduler() {
+        Intent schedulerIntent = new Intent(context, SchedulerIntentService.class);
+        schedulerIntent.addFlags(FLAG_ACTIVITY_NEW_TASK);
+        PendingIntent pendingIntent = PendingIntent.getService(context, 0, schedulerIntent, FLAG_UPDATE_CURRENT);
         Calendar calendar = Calendar.getInstance();
         calendar.add(Calendar.SECOND, 10);
-        alarmManager.setRepeating(RTC_WAKEUP,
-                calendar.getTimeInMillis(), 2 * 60 * 1000, pendingIntent);
-        Log.i("Alert", "Finished");
+        alarmManager.setRepeating(RTC_WAKEUP, calendar.getTimeInMillis(), schedulerTick * 1000L, pendingIntent);
+        Log.i("Scheduler", "Ticking every " + schedulerTick + " seconds");
     }
 
     private void loadAllCommoditiesToCache() {
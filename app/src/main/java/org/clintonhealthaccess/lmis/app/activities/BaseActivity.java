@@ -48,6 +48,7 @@ import org.clintonhealthaccess.lmis.app.R;
 import org.clintonhealthaccess.lmis.app.events.SyncedEvent;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.services.AlertsService;
+import org.clintonhealthaccess.lmis.app.services.InitialSyncService;
 import org.clintonhealthaccess.lmis.app.services.UserService;
 import org.clintonhealthaccess.lmis.app.sync.SyncManager;
 
@@ -65,6 +66,9 @@ public class BaseActivity extends OrmLiteActivity {
     @Inject
     AlertsService alertsService;
 
+    @Inject
+    InitialSyncService initialSyncService;
+
     @Inject
     SharedPreferences sharedPreferences;
 
@@ -88,7 +92,7 @@ public class BaseActivity extends OrmLiteActivity {
         getSupportActionBar().setCustomView(R.layout.action_bar);
         getSupportActionBar().setDisplayHomeAsUpEnabled(false);
         textFacilityName = (TextView) getSupportActionBar().getCustomView().findViewById(R.id.textFacilityName);
-        if (!userService.userRegistered()) {
+        if (!userService.userRegistered() || initialSyncService.isInterrupted()) {
             startActivity(new Intent(getApplicationContext(), RegisterActivity.class));
             finish();
         } else {
@@ -183,6 +187,9 @@ public class BaseActivity extends OrmLiteActivity {
             syncManager.requestSync();
             manualSyncFinishing = true;
             item.setTitle(getString(R.string.syncing));
+        } else if (item.getItemId() == R.id.action_sync_diagnostics) {
+            startActivity(new Intent(getApplicationContext(), SyncDiagnosticsActivity.class));
+            return true;
         }
         return false;
     }
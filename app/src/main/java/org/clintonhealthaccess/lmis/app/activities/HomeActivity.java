@@ -57,6 +57,7 @@ import org.clintonhealthaccess.lmis.app.listeners.NotificationClickListener;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
 import org.clintonhealthaccess.lmis.app.models.alerts.LowStockAlert;
 import org.clintonhealthaccess.lmis.app.models.alerts.NotificationMessage;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.services.AlertsService;
 import org.clintonhealthaccess.lmis.app.services.CommodityService;
 import org.clintonhealthaccess.lmis.app.sync.SyncManager;
@@ -199,9 +200,9 @@ public class HomeActivity extends BaseActivity implements Serializable {
 
     private void setupAlerts() {
         AsyncTask<Void, Void, List<LowStockAlert>> getAlerts = createAlertsTask();
-        getAlerts.execute();
+        getAlerts.executeOnExecutor(DbUtil.READER_POOL);
         AsyncTask<Void, Void, List<? extends NotificationMessage>> getNotificationsMessageTask = createNotificationsMessageTask();
-        getNotificationsMessageTask.execute();
+        getNotificationsMessageTask.executeOnExecutor(DbUtil.READER_POOL);
     }
 
 
@@ -289,7 +290,7 @@ public class HomeActivity extends BaseActivity implements Serializable {
     }
 
     private void updateGraph() {
-        getUpdateGraphTask().execute();
+        getUpdateGraphTask().executeOnExecutor(DbUtil.READER_POOL);
     }
 
     private void setupGraph() {
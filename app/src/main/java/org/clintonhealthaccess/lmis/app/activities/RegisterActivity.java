@@ -43,13 +43,10 @@ import com.google.inject.Inject;
 
 import org.clintonhealthaccess.lmis.app.R;
 import org.clintonhealthaccess.lmis.app.models.User;
-import org.clintonhealthaccess.lmis.app.services.AlertsService;
 import org.clintonhealthaccess.lmis.app.services.CommodityActionService;
-import org.clintonhealthaccess.lmis.app.services.CommodityService;
-import org.clintonhealthaccess.lmis.app.services.OrderService;
+import org.clintonhealthaccess.lmis.app.services.InitialSyncService;
 import org.clintonhealthaccess.lmis.app.services.StockService;
 import org.clintonhealthaccess.lmis.app.services.UserService;
-import org.clintonhealthaccess.lmis.app.sms.SmsSyncService;
 
 import java.io.Serializable;
 
@@ -66,18 +63,12 @@ public class RegisterActivity extends OrmLiteActivity implements Serializable {
     @Inject
     private UserService userService;
     @Inject
-    private CommodityService commodityService;
-    @Inject
     private StockService stockService;
     @Inject
-    private OrderService orderService;
-    @Inject
-    private SmsSyncService smsSyncService;
-    @Inject
     private CommodityActionService commodityActionService;
 
     @Inject
-    private AlertsService alertsService;
+    private InitialSyncService initialSyncService;
 
     @InjectView(id.textUsername)
     private TextView textUsername;
@@ -102,6 +93,11 @@ public class RegisterActivity extends OrmLiteActivity implements Serializable {
                 validateAndRegister();
             }
         });
+
+        if (userService.userRegistered() && initialSyncService.isInterrupted()) {
+            // the first sync was cut short, carry on from the phase it stopped in
+            new RegisterTask(null, null).execute();
+        }
     }
 
     private void validateAndRegister() {
@@ -120,11 +116,11 @@ public class RegisterActivity extends OrmLiteActivity implements Serializable {
     }
 
     protected void doRegister(final String username, final String password) {
-        AsyncTask<Void, Void, Boolean> registerTask = new RegisterTask(username, password);
+        AsyncTask<Void, Integer, Boolean> registerTask = new RegisterTask(username, password);
         registerTask.execute();
     }
 
-    private class RegisterTask extends AsyncTask<Void, Void, Boolean> {
+    private class RegisterTask extends AsyncTask<Void, Integer, Boolean> {
         private final String username;
         private final String password;
         private Exception failureCause;
@@ -140,7 +136,9 @@ public class RegisterActivity extends OrmLiteActivity implements Serializable {
         protected void onPreExecute() {
             super.onPreExecute();
             this.dialog = new ProgressDialog(RegisterActivity.this);
-            this.dialog.setMessage("Registering...");
+            this.dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+            this.dialog.setMax(InitialSyncService.Phase.values().length);
+            this.dialog.setMessage(getString(R.string.initial_sync_registering));
             dialog.setCancelable(false);
             dialog.setCanceledOnTouchOutside(false);
             this.dialog.show();
@@ -150,17 +148,14 @@ public class RegisterActivity extends OrmLiteActivity implements Serializable {
         protected Boolean doInBackground(Void... params) {
             User user;
             try {
-                user = userService.register(username, password);
+                user = userService.userRegistered() ? userService.getRegisteredUser() : userService.register(username, password);
                 Log.i("Inital sync:", "initializing");
-                commodityService.initialise(user);
-
-                Log.i("Inital sync:", "<========== syncing Order Reasons");
-                orderService.syncOrderReasons();
-                Log.i("Inital sync:", "<========== syncing Order Types");
-                orderService.syncOrderTypes();
-                smsSyncService.syncGatewayNumber();
-
-                alertsService.updateLowStockAlerts();
+                initialSyncService.run(user, new InitialSyncService.ProgressListener() {
+                    @Override
+                    public void phaseStarted(InitialSyncService.Phase phase, int completedPhases, int totalPhases) {
+                        publishProgress(phase.ordinal(), completedPhases, totalPhases);
+                    }
+                });
             } catch (Exception e) {
                 this.failureCause = e;
                 //Log.e("Registration Error", e.getLocalizedMessage());
@@ -171,6 +166,15 @@ public class RegisterActivity extends OrmLiteActivity implements Serializable {
             return true;
         }
 
+        @Override
+        protected void onProgressUpdate(Integer... progress) {
+            InitialSyncService.Phase phase = InitialSyncService.Phase.values()[progress[0]];
+            int completedPhases = progress[1];
+            int totalPhases = progress[2];
+            dialog.setProgress(completedPhases);
+            dialog.setMessage(getString(R.string.initial_sync_step, completedPhases + 1, totalPhases, getString(labelOf(phase))));
+        }
+
         @Override
         protected void onPostExecute(Boolean succeeded) {
             if (dialog.isShowing()) {
@@ -186,4 +190,27 @@ public class RegisterActivity extends OrmLiteActivity implements Serializable {
             Log.e("Registration", toastMessage+" ");
         }
     }
+
+    private int labelOf(InitialSyncService.Phase phase) {
+        switch (phase) {
+            case CATALOG:
+                return R.string.initial_sync_catalog;
+            case CONSTANTS:
+                return R.string.initial_sync_constants;
+            case ACTION_VALUES:
+                return R.string.initial_sync_action_values;
+            case STOCK:
+                return R.string.initial_sync_stock;
+            case ALLOCATIONS:
+                return R.string.initial_sync_allocations;
+            case INDICATOR_VALUES:
+                return R.string.initial_sync_indicator_values;
+            case ORDER_SETTINGS:
+                return R.string.initial_sync_order_settings;
+            case SMS_GATEWAY:
+                return R.string.initial_sync_sms_gateway;
+            default:
+                return R.string.initial_sync_alerts;
+        }
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.activities;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.ActionBar;
+import android.widget.ListView;
+
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.adapters.SyncRunAdapter;
+import org.clintonhealthaccess.lmis.app.models.SyncRun;
+import org.clintonhealthaccess.lmis.app.services.SyncRunService;
+import org.clintonhealthaccess.lmis.app.views.graphs.SyncRunChart;
+
+import java.util.List;
+
+import roboguice.inject.InjectResource;
+import roboguice.inject.InjectView;
+
+public class SyncDiagnosticsActivity extends BaseActivity {
+
+    @InjectView(R.id.syncRunChart)
+    SyncRunChart syncRunChart;
+
+    @InjectView(R.id.listViewSyncRuns)
+    ListView listViewSyncRuns;
+
+    @Inject
+    SyncRunService syncRunService;
+
+    @InjectResource(R.integer.sync_runs_charted)
+    Integer syncRunsCharted;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        getSupportActionBar().setDisplayOptions(ActionBar.DISPLAY_SHOW_CUSTOM | ActionBar.DISPLAY_SHOW_HOME | ActionBar.DISPLAY_HOME_AS_UP);
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        getSupportActionBar().setDisplayUseLogoEnabled(true);
+        getSupportActionBar().setHomeAsUpIndicator(R.drawable.transparent);
+        setContentView(R.layout.activity_sync_diagnostics);
+
+        new AsyncTask<Void, Void, List<SyncRun>>() {
+            @Override
+            protected List<SyncRun> doInBackground(Void... params) {
+                return syncRunService.latest(syncRunsCharted);
+            }
+
+            @Override
+            protected void onPostExecute(List<SyncRun> runs) {
+                syncRunChart.setRuns(runs);
+                listViewSyncRuns.setAdapter(new SyncRunAdapter(getApplicationContext(), R.layout.sync_run_list_item, runs));
+            }
+        }.execute();
+    }
+}
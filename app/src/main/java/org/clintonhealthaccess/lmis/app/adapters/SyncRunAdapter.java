@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.adapters;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.TextView;
+
+import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.models.SyncRun;
+
+import java.text.SimpleDateFormat;
+import java.util.List;
+
+import static android.content.Context.LAYOUT_INFLATER_SERVICE;
+
+public class SyncRunAdapter extends ArrayAdapter<SyncRun> {
+    private final SimpleDateFormat startedFormat = new SimpleDateFormat("MMM-dd HH:mm:ss");
+
+    public SyncRunAdapter(Context context, int resource, List<SyncRun> runs) {
+        super(context, resource, runs);
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+
+        LayoutInflater inflater = (LayoutInflater) getContext().getSystemService(LAYOUT_INFLATER_SERVICE);
+
+        View view = inflater.inflate(R.layout.sync_run_list_item, parent, false);
+
+        SyncRun run = getItem(position);
+        ((TextView) view.findViewById(R.id.textViewSyncRunStarted)).setText(startedFormat.format(run.getStarted()));
+        ((TextView) view.findViewById(R.id.textViewSyncRunDuration)).setText(run.getDurationMillis() + " ms");
+        ((TextView) view.findViewById(R.id.textViewSyncRunBytes)).setText(
+                getContext().getString(R.string.sync_run_bytes, run.getBytesIn() / 1024, run.getBytesOut() / 1024));
+        ((TextView) view.findViewById(R.id.textViewSyncRunRecords)).setText(
+                getContext().getString(R.string.sync_run_records, run.getPulled(), run.getPushed()));
+        ((TextView) view.findViewById(R.id.textViewSyncRunRetries)).setText(String.valueOf(run.getRetries()));
+        ((TextView) view.findViewById(R.id.textViewSyncRunFailure)).setText(
+                run.isFailed() ? run.getFailureCause() : getContext().getString(R.string.sync_run_ok));
+
+        return view;
+    }
+}
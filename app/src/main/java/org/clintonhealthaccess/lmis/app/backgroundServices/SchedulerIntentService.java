@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.backgroundServices;
+
+import android.content.Intent;
+
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.app.sync.SyncManager;
+import org.clintonhealthaccess.lmis.app.sync.SyncScheduler;
+
+import roboguice.service.RoboIntentService;
+
+import static android.util.Log.i;
+
+public class SchedulerIntentService extends RoboIntentService {
+
+    @Inject
+    SyncScheduler syncScheduler;
+
+    @Inject
+    SyncManager syncManager;
+
+    public SchedulerIntentService() {
+        super("SchedulerIntentService");
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        for (SyncScheduler.Job job : syncScheduler.dueJobs()) {
+            i("Scheduler", "Running " + job);
+            switch (job) {
+                case HTTP_SYNC:
+                    syncManager.requestSync();
+                    break;
+                case SMS_SYNC:
+                    startService(new Intent(this, SmsSyncIntentService.class));
+                    break;
+                case ALERTS:
+                    startService(new Intent(this, AlertsGenerationIntentService.class));
+                    break;
+                case ARCHIVAL:
+                    startService(new Intent(this, ArchivalIntentService.class));
+                    break;
+            }
+            syncScheduler.ran(job);
+        }
+    }
+}
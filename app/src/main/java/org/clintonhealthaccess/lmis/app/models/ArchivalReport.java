@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.models;
+
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
+public class ArchivalReport {
+    private final long bytesBefore;
+    private final long rowsBefore;
+    private long bytesAfter;
+    private long rowsAfter;
+    private int commoditySnapshotsDeleted;
+    private int stockItemSnapshotsRolledUp;
+    private int monthSummariesCreated;
+
+    public ArchivalReport(long bytesBefore, long rowsBefore) {
+        this.bytesBefore = bytesBefore;
+        this.rowsBefore = rowsBefore;
+    }
+
+    public void commoditySnapshotsDeleted(int count) {
+        commoditySnapshotsDeleted = count;
+    }
+
+    public void stockItemSnapshotsRolledUp(int count, int monthSummaries) {
+        stockItemSnapshotsRolledUp = count;
+        monthSummariesCreated = monthSummaries;
+    }
+
+    public void finished(long bytesAfter, long rowsAfter) {
+        this.bytesAfter = bytesAfter;
+        this.rowsAfter = rowsAfter;
+    }
+}
@@ -70,6 +70,18 @@ public class Category implements Serializable, Comparable<Category> {
         this.name = name;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getLmisId() {
+        return lmisId;
+    }
+
     public String getName() {
         return name;
     }
@@ -78,7 +90,13 @@ public class Category implements Serializable, Comparable<Category> {
         if (commoditiesCollection == null) {
             return newArrayList();
         }
-        return ImmutableList.copyOf(commoditiesCollection);
+        List<Commodity> commodities = new ArrayList<>();
+        for (Commodity commodity : commoditiesCollection) {
+            if (!commodity.isRetired()) {
+                commodities.add(commodity);
+            }
+        }
+        return ImmutableList.copyOf(commodities);
     }
 
     public void setCommodities(List<Commodity> commodities) {
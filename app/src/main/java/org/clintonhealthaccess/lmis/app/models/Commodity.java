@@ -51,6 +51,8 @@ import static com.google.common.collect.Lists.newArrayList;
 
 @DatabaseTable(tableName = "commodities")
 public class Commodity implements Serializable {
+    public static final String RETIRED = "retired";
+
     @DatabaseField(id = true, uniqueIndex = true)
     private String id;
 
@@ -72,6 +74,10 @@ public class Commodity implements Serializable {
     @DatabaseField(canBeNull = false)
     private boolean isVaccine = false;
 
+    // the server no longer lists it; the stock history stays, only the catalog stops showing it
+    @DatabaseField(canBeNull = false, columnName = RETIRED)
+    private boolean retired = false;
+
     @ForeignCollectionField
     private ForeignCollection<StockItem> stockItems;
 
@@ -291,6 +297,10 @@ public class Commodity implements Serializable {
         return nonLGA;
     }
 
+    public boolean isRetired() {
+        return retired;
+    }
+
     public String getId() {
         return id;
     }
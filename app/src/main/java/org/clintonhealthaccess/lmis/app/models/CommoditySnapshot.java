@@ -33,7 +33,6 @@ import com.j256.ormlite.field.DataType;
 import com.j256.ormlite.field.DatabaseField;
 import com.j256.ormlite.table.DatabaseTable;
 import com.thoughtworks.dhis.models.DataValue;
-import com.thoughtworks.dhis.models.DataValueSet;
 
 import java.util.ArrayList;
 import java.util.Date;
@@ -57,6 +56,7 @@ public class CommoditySnapshot {
     @DatabaseField(canBeNull = false)
     private String value;
 
+    // delivery state moved to the outbox; these are only read when the outbox is first created
     @DatabaseField(defaultValue = "false")
     private boolean synced;
 
@@ -108,14 +108,6 @@ public class CommoditySnapshot {
         }
     }
 
-    public static DataValueSet toDataValueSet(List<CommoditySnapshot> snapshotsToSync, String orgUnit) {
-        DataValueSet dataValueSet = new DataValueSet();
-        for (CommoditySnapshot snapshot : snapshotsToSync) {
-            dataValueSet.getDataValues().addAll(snapshot.toDataValues(orgUnit));
-        }
-        return dataValueSet;
-    }
-
     public List<DataValue> toDataValues(String orgUnit) {
         List<DataValue> dataValues = new ArrayList<>();
         for (CommodityActionDataSet commodityActionDataSet : commodityAction.getCommodityActionDataSets()) {
@@ -136,16 +128,8 @@ public class CommoditySnapshot {
         return smsSent;
     }
 
-    public void setSmsSent(boolean smsSent) {
-        this.smsSent = smsSent;
-    }
-
-    public void setSynced(boolean synced) {
-        this.synced = synced;
-    }
-
-    public boolean isSynced() {
-        return synced;
+    public Long getId() {
+        return id;
     }
 
     public Date getPeriodDate(){
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.models;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+
+import java.util.Date;
+
+@DatabaseTable(tableName = "daily_ledger")
+public class DailyLedger {
+    public static final String EPOCH_DAY = "epochDay";
+    public static final String RECEIVED = "received";
+    public static final String DISPENSED = "dispensed";
+    public static final String LOST = "lost";
+    public static final String RETURNED_TO_LGA = "returnedToLga";
+    public static final String RECEIVED_FROM_FACILITY = "receivedFromFacility";
+    public static final String SENT_TO_FACILITY = "sentToFacility";
+    public static final String NET_ADJUSTMENT = "netAdjustment";
+
+    @DatabaseField(generatedId = true)
+    private long id;
+
+    @DatabaseField(foreign = true, canBeNull = false, uniqueCombo = true)
+    private Commodity commodity;
+
+    @DatabaseField(columnName = EPOCH_DAY, canBeNull = false, uniqueCombo = true)
+    private long epochDay;
+
+    @DatabaseField(canBeNull = false)
+    private int opening;
+
+    @DatabaseField(canBeNull = false)
+    private int received;
+
+    @DatabaseField(canBeNull = false)
+    private int receivedFromLga;
+
+    @DatabaseField(canBeNull = false)
+    private int receivedFromZonalStore;
+
+    @DatabaseField(canBeNull = false)
+    private int receivedFromOthers;
+
+    @DatabaseField(canBeNull = false)
+    private int dispensed;
+
+    @DatabaseField(canBeNull = false)
+    private int lost;
+
+    @DatabaseField(canBeNull = false)
+    private int physicalCount;
+
+    @DatabaseField(canBeNull = false)
+    private int returnedToLga;
+
+    @DatabaseField(canBeNull = false)
+    private int receivedFromFacility;
+
+    @DatabaseField(canBeNull = false)
+    private int sentToFacility;
+
+    @DatabaseField(canBeNull = false)
+    private int netAdjustment;
+
+    @DatabaseField(canBeNull = false)
+    private int closing;
+
+    public DailyLedger() {
+        // ormLite likes
+    }
+
+    public DailyLedger(Commodity commodity, long epochDay, int opening) {
+        this.commodity = commodity;
+        this.epochDay = epochDay;
+        this.opening = opening;
+        this.closing = opening;
+    }
+
+    public Commodity getCommodity() {
+        return commodity;
+    }
+
+    public long getEpochDay() {
+        return epochDay;
+    }
+
+    public Date getDate() {
+        return DateUtil.fromEpochDay(epochDay);
+    }
+
+    public int getOpening() {
+        return opening;
+    }
+
+    public int getReceived() {
+        return received;
+    }
+
+    public int getReceivedFromLga() {
+        return receivedFromLga;
+    }
+
+    public int getReceivedFromZonalStore() {
+        return receivedFromZonalStore;
+    }
+
+    public int getReceivedFromOthers() {
+        return receivedFromOthers;
+    }
+
+    public int getDispensed() {
+        return dispensed;
+    }
+
+    public int getLost() {
+        return lost;
+    }
+
+    public int getPhysicalCount() {
+        return physicalCount;
+    }
+
+    public int getReturnedToLga() {
+        return returnedToLga;
+    }
+
+    public int getReceivedFromFacility() {
+        return receivedFromFacility;
+    }
+
+    public int getSentToFacility() {
+        return sentToFacility;
+    }
+
+    public int getNetAdjustment() {
+        return netAdjustment;
+    }
+
+    public int getClosing() {
+        return closing;
+    }
+
+    public void moveStock(int difference) {
+        closing += difference;
+    }
+
+    public void addReceived(int quantity) {
+        received += quantity;
+    }
+
+    public void addReceivedFromLga(int quantity) {
+        receivedFromLga += quantity;
+    }
+
+    public void addReceivedFromZonalStore(int quantity) {
+        receivedFromZonalStore += quantity;
+    }
+
+    public void addReceivedFromOthers(int quantity) {
+        receivedFromOthers += quantity;
+    }
+
+    public void addDispensed(int quantity) {
+        dispensed += quantity;
+    }
+
+    public void addLost(int quantity) {
+        lost += quantity;
+    }
+
+    public void addAdjustment(Adjustment adjustment) {
+        int quantity = adjustment.getQuantity();
+        String reason = adjustment.getReason();
+        if (AdjustmentReason.PHYSICAL_COUNT_TEXT.equals(reason)) {
+            physicalCount += quantity;
+        } else if (AdjustmentReason.RETURNED_TO_LGA_TEXT.equals(reason)) {
+            returnedToLga += quantity;
+        } else if (AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY_TEXT.equals(reason)) {
+            receivedFromFacility += quantity;
+        } else if (AdjustmentReason.SENT_TO_ANOTHER_FACILITY_TEXT.equals(reason)) {
+            sentToFacility += quantity;
+        }
+        netAdjustment += adjustment.isPositive() ? quantity : -quantity;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.models;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import java.util.Date;
+
+@DatabaseTable(tableName = "initial_sync_checkpoints")
+public class InitialSyncCheckpoint {
+
+    @DatabaseField(id = true)
+    private String phase;
+
+    @DatabaseField(canBeNull = false)
+    private boolean completed;
+
+    @DatabaseField(canBeNull = false)
+    private int attempts;
+
+    @DatabaseField(canBeNull = false)
+    private int rows;
+
+    @DatabaseField
+    private Date updated;
+
+    public InitialSyncCheckpoint() {
+        //ormLite likes
+    }
+
+    public InitialSyncCheckpoint(String phase) {
+        this.phase = phase;
+        this.updated = new Date();
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public Date getUpdated() {
+        return updated;
+    }
+
+    public void started() {
+        attempts++;
+        updated = new Date();
+    }
+
+    public void completed(int rows) {
+        this.completed = true;
+        this.rows = rows;
+        this.updated = new Date();
+    }
+}
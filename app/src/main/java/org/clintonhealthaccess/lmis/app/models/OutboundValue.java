@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.models;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+import com.thoughtworks.dhis.models.DataValue;
+
+import java.util.Date;
+
+// the latest value of one data element for one period, waiting to be delivered by http or sms
+@DatabaseTable(tableName = "outbox")
+public class OutboundValue {
+    public static final String IDEMPOTENCY_KEY = "idempotency_key";
+    public static final String VALUE = "value";
+    public static final String STATE = "state";
+    public static final String UPDATED = "updated";
+
+    // FAILED values were rejected by the server and wait for an edit, which queues them as PENDING again
+    public enum State {
+        PENDING, SMS_SENT, SYNCED, FAILED
+    }
+
+    @DatabaseField(id = true, columnName = IDEMPOTENCY_KEY)
+    private String idempotencyKey;
+
+    @DatabaseField(canBeNull = false)
+    private String dataSet;
+
+    @DatabaseField(canBeNull = false)
+    private String dataElement;
+
+    @DatabaseField(canBeNull = false)
+    private String period;
+
+    @DatabaseField(canBeNull = true)
+    private String attributeOptionCombo;
+
+    @DatabaseField(canBeNull = false, columnName = VALUE)
+    private String value;
+
+    @DatabaseField(canBeNull = false, index = true, columnName = STATE)
+    private State state;
+
+    @DatabaseField(canBeNull = false, columnName = UPDATED)
+    private Date updated;
+
+    public OutboundValue() {
+        //ormLite likes
+    }
+
+    public OutboundValue(DataValue dataValue, State state, Date updated) {
+        this.idempotencyKey = keyOf(dataValue);
+        this.dataSet = dataValue.getDataSet();
+        this.dataElement = dataValue.getDataElement();
+        this.period = dataValue.getPeriod();
+        this.attributeOptionCombo = dataValue.getAttributeOptionCombo();
+        this.value = dataValue.getValue();
+        this.state = state;
+        this.updated = updated;
+    }
+
+    // the device reports for a single facility, so the org unit is left out of the key and filled in when sending
+    public static String keyOf(DataValue dataValue) {
+        return dataValue.getDataSet() + "|" + dataValue.getDataElement() + "|" + dataValue.getPeriod();
+    }
+
+    public DataValue toDataValue(String orgUnit) {
+        return DataValue.builder().value(value).dataSet(dataSet).dataElement(dataElement)
+                .period(period).orgUnit(orgUnit).attributeOptionCombo(attributeOptionCombo).build();
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public State getState() {
+        return state;
+    }
+}
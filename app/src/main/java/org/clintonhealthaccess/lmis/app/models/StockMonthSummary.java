@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.models;
+
+import com.j256.ormlite.field.DataType;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import java.util.Date;
+
+@DatabaseTable(tableName = "stock_month_summaries")
+public class StockMonthSummary {
+    public static final String MONTH = "month";
+
+    @DatabaseField(generatedId = true)
+    private long id;
+
+    @DatabaseField(foreign = true, canBeNull = false, uniqueCombo = true)
+    private Commodity commodity;
+
+    @DatabaseField(columnName = MONTH, canBeNull = false, uniqueCombo = true, dataType = DataType.DATE_STRING, format = "yyyy-MM-dd")
+    private Date month;
+
+    @DatabaseField(canBeNull = false)
+    private int closingQuantity;
+
+    @DatabaseField(canBeNull = false)
+    private int stockOutDays;
+
+    @DatabaseField(canBeNull = false)
+    private int snapshotCount;
+
+    public StockMonthSummary() {
+        //ormLite likes
+    }
+
+    public StockMonthSummary(Commodity commodity, Date month, int closingQuantity, int stockOutDays, int snapshotCount) {
+        this.commodity = commodity;
+        this.month = month;
+        this.closingQuantity = closingQuantity;
+        this.stockOutDays = stockOutDays;
+        this.snapshotCount = snapshotCount;
+    }
+
+    public Commodity getCommodity() {
+        return commodity;
+    }
+
+    public Date getMonth() {
+        return month;
+    }
+
+    public int getClosingQuantity() {
+        return closingQuantity;
+    }
+
+    public int getStockOutDays() {
+        return stockOutDays;
+    }
+
+    public int getSnapshotCount() {
+        return snapshotCount;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.models;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// what one background sync did and how long it took, kept for the diagnostics screen
+@DatabaseTable(tableName = "sync_runs")
+public class SyncRun {
+    public static final String STARTED = "started";
+
+    private static final Joiner.MapJoiner STAGES_JOINER = Joiner.on(',').withKeyValueSeparator("=");
+    private static final Splitter.MapSplitter STAGES_SPLITTER = Splitter.on(',').withKeyValueSeparator("=");
+
+    @DatabaseField(generatedId = true)
+    private long id;
+
+    @DatabaseField(canBeNull = false, index = true, columnName = STARTED)
+    private Date started;
+
+    @DatabaseField
+    private long durationMillis;
+
+    @DatabaseField
+    private String stageDurations;
+
+    @DatabaseField
+    private long bytesIn;
+
+    @DatabaseField
+    private long bytesOut;
+
+    @DatabaseField
+    private int pushed;
+
+    @DatabaseField
+    private int pulled;
+
+    @DatabaseField
+    private int retries;
+
+    @DatabaseField(canBeNull = true)
+    private String failureCause;
+
+    // stages finish on different threads, so they are collected here until the run is saved
+    private final Map<String, Long> stages = new LinkedHashMap<>();
+
+    private long bytesInAtStart;
+    private long bytesOutAtStart;
+
+    public SyncRun() {
+        //ormLite likes
+    }
+
+    public SyncRun(Date started, int retries, long bytesInAtStart, long bytesOutAtStart) {
+        this.started = started;
+        this.retries = retries;
+        this.bytesInAtStart = bytesInAtStart;
+        this.bytesOutAtStart = bytesOutAtStart;
+    }
+
+    public synchronized void stageTook(String stage, long millis) {
+        stages.put(stage, millis);
+        stageDurations = STAGES_JOINER.join(stages);
+    }
+
+    public synchronized void pushed(int records) {
+        pushed += records;
+    }
+
+    public synchronized void pulled(int records) {
+        pulled += records;
+    }
+
+    public synchronized void finish(Date finished, long bytesInNow, long bytesOutNow, String failureCause) {
+        this.durationMillis = finished.getTime() - started.getTime();
+        this.bytesIn = bytesInNow - bytesInAtStart;
+        this.bytesOut = bytesOutNow - bytesOutAtStart;
+        this.failureCause = failureCause;
+    }
+
+    public synchronized Map<String, Long> getStageDurations() {
+        Map<String, Long> durations = new LinkedHashMap<>();
+        if (stageDurations != null && !stageDurations.isEmpty()) {
+            for (Map.Entry<String, String> stage : STAGES_SPLITTER.split(stageDurations).entrySet()) {
+                durations.put(stage.getKey(), Long.valueOf(stage.getValue()));
+            }
+        }
+        return durations;
+    }
+
+    public boolean isFailed() {
+        return failureCause != null;
+    }
+
+    public Date getStarted() {
+        return started;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public int getPushed() {
+        return pushed;
+    }
+
+    public int getPulled() {
+        return pulled;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public String getFailureCause() {
+        return failureCause;
+    }
+}
@@ -29,6 +29,11 @@
 
 package org.clintonhealthaccess.lmis.app.models.api;
 
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
 public class DataValueCount {
     private double imported, updated, ignored, deleted;
 }
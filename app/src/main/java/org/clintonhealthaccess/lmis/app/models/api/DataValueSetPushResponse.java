@@ -29,6 +29,9 @@
 
 package org.clintonhealthaccess.lmis.app.models.api;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -38,8 +41,22 @@ public class DataValueSetPushResponse {
     private String status,description;
     private boolean dataSetComplete;
     private DataValueCount dataValueCount;
+    private List<ImportConflict> conflicts = new ArrayList<>();
 
     public boolean isSuccess() {
         return getStatus().equalsIgnoreCase("SUCCESS");
     }
+
+    // the server still reports success when it ignored some of the values it was sent
+    public boolean isPartial() {
+        return dataValueCount != null && dataValueCount.getIgnored() > 0;
+    }
+
+    public boolean isComplete() {
+        return isSuccess() && !isPartial();
+    }
+
+    public int getIgnoredCount() {
+        return dataValueCount == null ? 0 : (int) dataValueCount.getIgnored();
+    }
 }
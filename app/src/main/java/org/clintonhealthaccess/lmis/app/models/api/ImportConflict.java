@@ -1,6 +1,5 @@
 /*
- * Copyright (c) 2014, ThoughtWorks
- *
+ * Copyright (c) 2014, Thoughtworks Inc
  * All rights reserved.
  *
  * Redistribution and use in source and binary forms, with or without
@@ -28,15 +27,14 @@
  * either expressed or implied, of the FreeBSD Project.
  */
 
-package org.clintonhealthaccess.lmis.app.remote.responses;
-
-import java.util.List;
+package org.clintonhealthaccess.lmis.app.models.api;
 
 import lombok.Getter;
 import lombok.Setter;
 
+// object is whatever the server could not accept: a data element, period, option combo or the value itself
 @Getter
 @Setter
-public class IndicatorValueResponse {
-    private List<List<String>> rows;
+public class ImportConflict {
+    private String object, value;
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence;
+
+import android.util.Log;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.DeleteBuilder;
+
+import org.clintonhealthaccess.lmis.app.models.MigratedKey;
+import org.clintonhealthaccess.lmis.app.models.MigrationProgress;
+import org.clintonhealthaccess.lmis.app.services.DailyLedgerService;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Singleton
+public class BackgroundMigrator {
+    public static final int CHUNK_SIZE = 20;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Inject
+    DbUtil dbUtil;
+
+    @Inject
+    Provider<DailyLedgerService> dailyLedgerService;
+
+    // data backfills that are too slow for onUpgrade, run in order after the schema migrations
+    private List<Backfill> backfills() {
+        return Arrays.<Backfill>asList(dailyLedgerService.get());
+    }
+
+    public void start() {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (Backfill backfill : backfills()) {
+                    try {
+                        runToCompletion(backfill);
+                    } catch (Exception e) {
+                        Log.e("BackgroundMigrator", "Backfill " + backfill.getName() + " stopped", e);
+                    }
+                }
+            }
+        });
+    }
+
+    public void runToCompletion(Backfill backfill) {
+        while (!runChunk(backfill, CHUNK_SIZE)) {
+            Log.i("BackgroundMigrator", "Backfill " + backfill.getName() + " at " + getProgress(backfill).getPosition());
+        }
+    }
+
+    // each chunk commits together with its progress, so an interrupted backfill resumes after the last chunk
+    public synchronized boolean runChunk(final Backfill backfill, final int chunkSize) {
+        return dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Boolean>() {
+            @Override
+            public Boolean perform() throws SQLException {
+                MigrationProgress progress = getProgress(backfill);
+                if (!progress.isFinished()) {
+                    String last = backfill.migrateChunk(progress.getPosition() == null ? "" : progress.getPosition(), chunkSize);
+                    if (last == null) {
+                        progress.finish();
+                        forgetMigratedKeys(backfill);
+                    } else {
+                        progress.advanceTo(last);
+                    }
+                    save(progress);
+                }
+                return progress.isFinished();
+            }
+        });
+    }
+
+    public boolean isMigrated(final Backfill backfill, final String key) {
+        if (getProgress(backfill).covers(key)) {
+            return true;
+        }
+        return dbUtil.withDao(MigratedKey.class, new DbUtil.Operation<MigratedKey, Boolean>() {
+            @Override
+            public Boolean operate(Dao<MigratedKey, String> dao) throws SQLException {
+                return dao.idExists(MigratedKey.idOf(backfill.getName(), key));
+            }
+        });
+    }
+
+    // recorded with the key's data, so the next reader does not redo it before the chunks get there
+    public synchronized void migrateKey(final Backfill backfill, final String key) {
+        dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+            @Override
+            public Void perform() throws SQLException {
+                if (!isMigrated(backfill, key)) {
+                    backfill.migrateKey(key);
+                    dbUtil.withDao(MigratedKey.class, new DbUtil.Operation<MigratedKey, Void>() {
+                        @Override
+                        public Void operate(Dao<MigratedKey, String> dao) throws SQLException {
+                            dao.createOrUpdate(new MigratedKey(backfill.getName(), key));
+                            return null;
+                        }
+                    });
+                }
+                return null;
+            }
+        });
+    }
+
+    public MigrationProgress getProgress(final Backfill backfill) {
+        return dbUtil.withDao(MigrationProgress.class, new DbUtil.Operation<MigrationProgress, MigrationProgress>() {
+            @Override
+            public MigrationProgress operate(Dao<MigrationProgress, String> dao) throws SQLException {
+                MigrationProgress progress = dao.queryForId(backfill.getName());
+                return progress == null ? new MigrationProgress(backfill.getName()) : progress;
+            }
+        });
+    }
+
+    private void forgetMigratedKeys(final Backfill backfill) {
+        dbUtil.withDao(MigratedKey.class, new DbUtil.Operation<MigratedKey, Void>() {
+            @Override
+            public Void operate(Dao<MigratedKey, String> dao) throws SQLException {
+                DeleteBuilder<MigratedKey, String> deleteBuilder = dao.deleteBuilder();
+                deleteBuilder.where().eq(MigratedKey.BACKFILL, backfill.getName());
+                deleteBuilder.delete();
+                return null;
+            }
+        });
+    }
+
+    private void save(final MigrationProgress progress) {
+        dbUtil.withDao(MigrationProgress.class, new DbUtil.Operation<MigrationProgress, Void>() {
+            @Override
+            public Void operate(Dao<MigrationProgress, String> dao) throws SQLException {
+                dao.createOrUpdate(progress);
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.j256.ormlite.field.FieldType;
+import com.j256.ormlite.table.TableInfo;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+class BulkUpsert<DomainType> {
+    private final SQLiteDatabase database;
+    private final TableInfo<DomainType, String> tableInfo;
+    private final List<FieldType> columns = new ArrayList<>();
+    private final FieldType generatedIdField;
+
+    private SQLiteStatement withId;
+    private SQLiteStatement withoutId;
+
+    BulkUpsert(SQLiteDatabase database, TableInfo<DomainType, String> tableInfo) {
+        this.database = database;
+        this.tableInfo = tableInfo;
+        FieldType idField = tableInfo.getIdField();
+        this.generatedIdField = idField != null && idField.isGeneratedId() ? idField : null;
+        for (FieldType fieldType : tableInfo.getFieldTypes()) {
+            if (!fieldType.isForeignCollection()) {
+                columns.add(fieldType);
+            }
+        }
+    }
+
+    int upsert(Collection<DomainType> rows) throws SQLException {
+        try {
+            for (DomainType row : rows) {
+                // rows without a generated id yet are inserted without it, like dao.create would
+                boolean hasId = generatedIdField == null || !isDefaultId(generatedIdField.extractJavaFieldValue(row));
+                SQLiteStatement statement = hasId ? statementWithId() : statementWithoutId();
+                statement.clearBindings();
+                int index = 1;
+                for (FieldType column : columns) {
+                    if (column == generatedIdField && !hasId) {
+                        continue;
+                    }
+                    bind(statement, index++, column.extractJavaFieldToSqlArgValue(row));
+                }
+                long rowId = statement.executeInsert();
+                if (!hasId) {
+                    generatedIdField.assignIdValue(row, rowId, null);
+                }
+            }
+            return rows.size();
+        } finally {
+            close(withId);
+            close(withoutId);
+        }
+    }
+
+    private SQLiteStatement statementWithId() {
+        if (withId == null) {
+            withId = database.compileStatement(insertOrReplace(true));
+        }
+        return withId;
+    }
+
+    private SQLiteStatement statementWithoutId() {
+        if (withoutId == null) {
+            withoutId = database.compileStatement(insertOrReplace(false));
+        }
+        return withoutId;
+    }
+
+    private String insertOrReplace(boolean includeGeneratedId) {
+        StringBuilder names = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        for (FieldType column : columns) {
+            if (column == generatedIdField && !includeGeneratedId) {
+                continue;
+            }
+            if (names.length() > 0) {
+                names.append(", ");
+                placeholders.append(", ");
+            }
+            names.append('`').append(column.getColumnName()).append('`');
+            placeholders.append('?');
+        }
+        return String.format("INSERT OR REPLACE INTO `%s` (%s) VALUES (%s)", tableInfo.getTableName(), names, placeholders);
+    }
+
+    private static boolean isDefaultId(Object id) {
+        return id == null || (id instanceof Number && ((Number) id).longValue() == 0);
+    }
+
+    private static void bind(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof Float || value instanceof Double) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    private static void close(SQLiteStatement statement) {
+        if (statement != null) {
+            statement.close();
+        }
+    }
+}
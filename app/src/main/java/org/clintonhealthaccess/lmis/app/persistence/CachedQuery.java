@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.PreparedQuery;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+
+import java.sql.SQLException;
+import java.util.List;
+
+public abstract class CachedQuery<DomainType> {
+    private final Class<DomainType> domainClass;
+    private final int numberOfArguments;
+
+    private Dao<DomainType, String> preparedFor;
+    private PreparedQuery<DomainType> preparedQuery;
+    private SelectArg[] arguments;
+
+    protected CachedQuery(Class<DomainType> domainClass, int numberOfArguments) {
+        this.domainClass = domainClass;
+        this.numberOfArguments = numberOfArguments;
+    }
+
+    protected abstract void define(QueryBuilder<DomainType, String> queryBuilder, SelectArg... arguments) throws SQLException;
+
+    public Class<DomainType> getDomainClass() {
+        return domainClass;
+    }
+
+    synchronized List<DomainType> query(Dao<DomainType, String> dao, Object... values) throws SQLException {
+        return dao.query(bind(dao, values));
+    }
+
+    synchronized DomainType queryForFirst(Dao<DomainType, String> dao, Object... values) throws SQLException {
+        return dao.queryForFirst(bind(dao, values));
+    }
+
+    private PreparedQuery<DomainType> bind(Dao<DomainType, String> dao, Object[] values) throws SQLException {
+        if (values.length != numberOfArguments) {
+            throw new IllegalArgumentException("Expected " + numberOfArguments + " arguments for "
+                    + domainClass.getSimpleName() + " query but got " + values.length);
+        }
+        if (preparedQuery == null || preparedFor != dao) {
+            prepare(dao);
+        }
+        for (int i = 0; i < values.length; i++) {
+            arguments[i].setValue(values[i]);
+        }
+        return preparedQuery;
+    }
+
+    private void prepare(Dao<DomainType, String> dao) throws SQLException {
+        // select args remember the field they were first bound to, so a new dao needs new ones
+        arguments = new SelectArg[numberOfArguments];
+        for (int i = 0; i < numberOfArguments; i++) {
+            arguments[i] = new SelectArg();
+        }
+        QueryBuilder<DomainType, String> queryBuilder = dao.queryBuilder();
+        define(queryBuilder, arguments);
+        preparedQuery = queryBuilder.prepare();
+        preparedFor = dao;
+    }
+}
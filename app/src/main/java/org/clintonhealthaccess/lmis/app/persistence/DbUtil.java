@@ -34,13 +34,27 @@ import android.database.sqlite.SQLiteOpenHelper;
 
 import com.google.inject.Inject;
 import com.j256.ormlite.android.AndroidConnectionSource;
+import com.j256.ormlite.dao.BaseDaoImpl;
 import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.misc.TransactionManager;
 import com.j256.ormlite.support.ConnectionSource;
 
 import org.clintonhealthaccess.lmis.app.LmisException;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.greenrobot.event.EventBus;
 
 import static com.j256.ormlite.android.apptools.OpenHelperManager.getHelper;
 import static com.j256.ormlite.dao.DaoManager.createDao;
@@ -50,6 +64,34 @@ public class DbUtil {
         ReturnType operate(Dao<DomainType, String> dao) throws SQLException;
     }
 
+    public interface UnitOfWork<ReturnType> {
+        ReturnType perform() throws SQLException;
+    }
+
+    // callbacks registered while a unit of work is open on this thread, run only once it commits
+    private static final ThreadLocal<List<Runnable>> afterCommitActions = new ThreadLocal<>();
+
+    // callbacks that still write inside the unit of work, run once its work is done and before it commits
+    private static final ThreadLocal<List<Runnable>> beforeCommitActions = new ThreadLocal<>();
+
+    // objects shared by everything in the open unit of work on this thread, dropped with it whether it commits or not
+    private static final ThreadLocal<Map<Object, Object>> unitOfWorkScope = new ThreadLocal<>();
+
+    // with write-ahead logging sqlite serves reads from its own connections, so these never queue behind a sync write
+    public static final ExecutorService READER_POOL = Executors.newFixedThreadPool(3, new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "lmis-reader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final Map<Class<?>, Dao<?, String>> daoRegistry = new HashMap<>();
+    private static ConnectionSource registeredConnectionSource;
+
     @Inject
     private Context context;
 
@@ -114,14 +156,158 @@ public class DbUtil {
         }
     }
 
+    public <DomainType, ReturnType> Future<ReturnType> read(
+            final Class<DomainType> domainClass, final Operation<DomainType, ReturnType> operation) {
+        return READER_POOL.submit(new Callable<ReturnType>() {
+            @Override
+            public ReturnType call() throws Exception {
+                return withDao(domainClass, operation);
+            }
+        });
+    }
+
+    public <DomainType> List<DomainType> query(
+            final CachedQuery<DomainType> cachedQuery, final Object... arguments) {
+        return withDao(cachedQuery.getDomainClass(), new Operation<DomainType, List<DomainType>>() {
+            @Override
+            public List<DomainType> operate(Dao<DomainType, String> dao) throws SQLException {
+                return cachedQuery.query(dao, arguments);
+            }
+        });
+    }
+
+    public <DomainType> DomainType queryForFirst(
+            final CachedQuery<DomainType> cachedQuery, final Object... arguments) {
+        return withDao(cachedQuery.getDomainClass(), new Operation<DomainType, DomainType>() {
+            @Override
+            public DomainType operate(Dao<DomainType, String> dao) throws SQLException {
+                return cachedQuery.queryForFirst(dao, arguments);
+            }
+        });
+    }
+
+    public <ReturnType> ReturnType inUnitOfWork(final UnitOfWork<ReturnType> unitOfWork) {
+        if (afterCommitActions.get() != null) {
+            try {
+                return unitOfWork.perform();
+            } catch (SQLException e) {
+                throw new LmisException(e);
+            }
+        }
+
+        List<Runnable> actions = new ArrayList<>();
+        final List<Runnable> finishingActions = new ArrayList<>();
+        afterCommitActions.set(actions);
+        beforeCommitActions.set(finishingActions);
+        unitOfWorkScope.set(new HashMap<Object, Object>());
+        ReturnType result;
+        try {
+            ConnectionSource connectionSource = LmisSqliteOpenHelper.getInstance(context).getConnectionSource();
+            result = TransactionManager.callInTransaction(connectionSource, new Callable<ReturnType>() {
+                @Override
+                public ReturnType call() throws Exception {
+                    ReturnType performed = unitOfWork.perform();
+                    // a finishing action may register another, so walk the list by index
+                    for (int i = 0; i < finishingActions.size(); i++) {
+                        finishingActions.get(i).run();
+                    }
+                    return performed;
+                }
+            });
+        } catch (SQLException e) {
+            if (e.getCause() instanceof LmisException) {
+                throw (LmisException) e.getCause();
+            }
+            throw new LmisException(e);
+        } finally {
+            afterCommitActions.remove();
+            beforeCommitActions.remove();
+            unitOfWorkScope.remove();
+        }
+
+        for (Runnable action : actions) {
+            action.run();
+        }
+        return result;
+    }
+
+    public <DomainType> int bulkUpsert(final Class<DomainType> domainClass, final Collection<DomainType> rows) {
+        if (rows == null || rows.isEmpty()) {
+            return 0;
+        }
+        return inUnitOfWork(new UnitOfWork<Integer>() {
+            @Override
+            public Integer perform() throws SQLException {
+                LmisSqliteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(context);
+                BaseDaoImpl<DomainType, String> dao = (BaseDaoImpl<DomainType, String>) initialiseDao(openHelper, domainClass);
+                return new BulkUpsert<>(openHelper.getWritableDatabase(), dao.getTableInfo()).upsert(rows);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public <ScopedType> ScopedType scopedToUnitOfWork(Object key, UnitOfWork<ScopedType> create) {
+        Map<Object, Object> scope = unitOfWorkScope.get();
+        if (scope == null) {
+            throw new IllegalStateException("No unit of work is open on this thread");
+        }
+        if (!scope.containsKey(key)) {
+            try {
+                scope.put(key, create.perform());
+            } catch (SQLException e) {
+                throw new LmisException(e);
+            }
+        }
+        return (ScopedType) scope.get(key);
+    }
+
+    public void beforeCommit(Runnable action) {
+        List<Runnable> actions = beforeCommitActions.get();
+        if (actions == null) {
+            action.run();
+        } else {
+            actions.add(action);
+        }
+    }
+
+    public void afterCommit(Runnable action) {
+        List<Runnable> actions = afterCommitActions.get();
+        if (actions == null) {
+            action.run();
+        } else {
+            actions.add(action);
+        }
+    }
+
+    public void postAfterCommit(final Object event) {
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                EventBus.getDefault().post(event);
+            }
+        });
+    }
+
     public static <T> Dao<T, String> initialiseDao(SQLiteOpenHelper openHelper, Class<T> domainClass) throws SQLException {
-        ConnectionSource connectionSource;
         if(openHelper instanceof  LmisSqliteOpenHelper){
             LmisSqliteOpenHelper helper = (LmisSqliteOpenHelper) openHelper;
-            connectionSource = helper.getConnectionSource();
-        }else{
-            connectionSource = new AndroidConnectionSource(openHelper);
+            return registeredDao(helper.getConnectionSource(), domainClass);
+        }
+        return createDao(new AndroidConnectionSource(openHelper), domainClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static synchronized <T> Dao<T, String> registeredDao(
+            ConnectionSource connectionSource, Class<T> domainClass) throws SQLException {
+        if (connectionSource != registeredConnectionSource) {
+            daoRegistry.clear();
+            registeredConnectionSource = connectionSource;
+        }
+        Dao<T, String> dao = (Dao<T, String>) daoRegistry.get(domainClass);
+        if (dao == null) {
+            dao = createDao(connectionSource, domainClass);
+            daoRegistry.put(domainClass, dao);
         }
-        return createDao(connectionSource, domainClass);
+        return dao;
     }
 }
@@ -36,7 +36,18 @@ import android.util.Log;
 import com.j256.ormlite.android.apptools.OrmLiteSqliteOpenHelper;
 import com.j256.ormlite.support.ConnectionSource;
 
+import org.clintonhealthaccess.lmis.app.persistence.migrations.AddRetiredToCommodities;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateCatalogFingerprints;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateDailyLedger;
 import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateInitTables;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateInitialSyncCheckpoints;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateMigratedKeys;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateMigrationProgress;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateOutbox;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateStockMonthSummaries;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateSyncRuns;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateSyncWatermarks;
+import org.clintonhealthaccess.lmis.app.persistence.migrations.CreateTimeSeriesIndexes;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -48,6 +59,17 @@ public class LmisSqliteOpenHelper extends OrmLiteSqliteOpenHelper {
     private static final List<Migration> MIGRATIONS = new ArrayList<Migration>() {
         {
             add(new CreateInitTables());
+            add(new CreateTimeSeriesIndexes());
+            add(new CreateDailyLedger());
+            add(new CreateStockMonthSummaries());
+            add(new CreateMigrationProgress());
+            add(new CreateSyncWatermarks());
+            add(new CreateCatalogFingerprints());
+            add(new CreateOutbox());
+            add(new CreateSyncRuns());
+            add(new CreateInitialSyncCheckpoints());
+            add(new CreateMigratedKeys());
+            add(new AddRetiredToCommodities());
         }
     };
 
@@ -57,6 +79,15 @@ public class LmisSqliteOpenHelper extends OrmLiteSqliteOpenHelper {
         Log.d("LmisSqliteOpenHelper", "Instance Created : total count : " + instanceCount);
     }
 
+    @Override
+    public void onOpen(SQLiteDatabase database) {
+        super.onOpen(database);
+        // one writer and a pool of readers, so screens can read while sync is writing
+        if (!database.isReadOnly()) {
+            database.enableWriteAheadLogging();
+        }
+    }
+
     @Override
     public void onCreate(SQLiteDatabase database, ConnectionSource connectionSource) {
         for (Migration migration : MIGRATIONS) {
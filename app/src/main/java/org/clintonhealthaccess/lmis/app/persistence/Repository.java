@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+import com.j256.ormlite.dao.Dao;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+// typed replacement for GenericDao: @Inject Repository<Loss> gets one singleton per model, nothing is resolved per call;
+// subclasses only exist for models that need their own finders
+@Singleton
+public class Repository<Model> {
+    @Inject
+    protected DbUtil dbUtil;
+
+    private final Class<Model> type;
+
+    @Inject
+    @SuppressWarnings("unchecked")
+    public Repository(TypeLiteral<Model> type) {
+        this((Class<Model>) type.getRawType());
+    }
+
+    protected Repository(Class<Model> type) {
+        this.type = type;
+    }
+
+    public Class<Model> getType() {
+        return type;
+    }
+
+    public Model create(final Model object) {
+        return withDao(new DbUtil.Operation<Model, Model>() {
+            @Override
+            public Model operate(Dao<Model, String> dao) throws SQLException {
+                dao.create(object);
+                return object;
+            }
+        });
+    }
+
+    public void createAll(final Collection<Model> objects) {
+        if (objects.isEmpty()) {
+            return;
+        }
+        dbUtil.withDaoAsBatch(type, new DbUtil.Operation<Model, Void>() {
+            @Override
+            public Void operate(Dao<Model, String> dao) throws SQLException {
+                for (Model object : objects) {
+                    dao.create(object);
+                }
+                return null;
+            }
+        });
+    }
+
+    public Model createOrUpdate(final Model object) {
+        return withDao(new DbUtil.Operation<Model, Model>() {
+            @Override
+            public Model operate(Dao<Model, String> dao) throws SQLException {
+                dao.createOrUpdate(object);
+                return object;
+            }
+        });
+    }
+
+    public Integer update(final Model object) {
+        return withDao(new DbUtil.Operation<Model, Integer>() {
+            @Override
+            public Integer operate(Dao<Model, String> dao) throws SQLException {
+                return dao.update(object);
+            }
+        });
+    }
+
+    public void updateAll(final Collection<Model> objects) {
+        if (objects.isEmpty()) {
+            return;
+        }
+        dbUtil.withDaoAsBatch(type, new DbUtil.Operation<Model, Void>() {
+            @Override
+            public Void operate(Dao<Model, String> dao) throws SQLException {
+                for (Model object : objects) {
+                    dao.update(object);
+                }
+                return null;
+            }
+        });
+    }
+
+    public Model getById(final String id) {
+        return withDao(new DbUtil.Operation<Model, Model>() {
+            @Override
+            public Model operate(Dao<Model, String> dao) throws SQLException {
+                return dao.queryForId(id);
+            }
+        });
+    }
+
+    public List<Model> queryForAll() {
+        return withDao(new DbUtil.Operation<Model, List<Model>>() {
+            @Override
+            public List<Model> operate(Dao<Model, String> dao) throws SQLException {
+                return dao.queryForAll();
+            }
+        });
+    }
+
+    public long countOf() {
+        return withDao(new DbUtil.Operation<Model, Long>() {
+            @Override
+            public Long operate(Dao<Model, String> dao) throws SQLException {
+                return dao.countOf();
+            }
+        });
+    }
+
+    public int bulkUpsert(Collection<Model> objects) {
+        return dbUtil.bulkUpsert(type, objects);
+    }
+
+    protected List<Model> query(CachedQuery<Model> query, Object... arguments) {
+        return dbUtil.query(query, arguments);
+    }
+
+    protected Model queryForFirst(CachedQuery<Model> query, Object... arguments) {
+        return dbUtil.queryForFirst(query, arguments);
+    }
+
+    protected <ReturnType> ReturnType withDao(DbUtil.Operation<Model, ReturnType> operation) {
+        return dbUtil.withDao(type, operation);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.migrations;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.DaoManager;
+import com.j256.ormlite.support.ConnectionSource;
+import com.thoughtworks.dhis.models.DataValue;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.models.CommoditySnapshot;
+import org.clintonhealthaccess.lmis.app.models.OutboundValue;
+import org.clintonhealthaccess.lmis.app.persistence.Migration;
+
+import java.sql.SQLException;
+import java.util.Date;
+
+import static com.j256.ormlite.table.TableUtils.createTableIfNotExists;
+import static com.j256.ormlite.table.TableUtils.dropTable;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.State.PENDING;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.State.SMS_SENT;
+
+public class CreateOutbox implements Migration {
+    @Override
+    public void up(SQLiteDatabase db, ConnectionSource connectionSource) {
+        try {
+            createTableIfNotExists(connectionSource, OutboundValue.class);
+            queueUnsyncedSnapshots(connectionSource);
+        } catch (SQLException e) {
+            throw new LmisException(e);
+        }
+    }
+
+    // snapshots the old flags still mark as undelivered have to survive the upgrade
+    private void queueUnsyncedSnapshots(ConnectionSource connectionSource) throws SQLException {
+        Dao<CommoditySnapshot, Long> snapshotDao = DaoManager.createDao(connectionSource, CommoditySnapshot.class);
+        Dao<OutboundValue, String> outboxDao = DaoManager.createDao(connectionSource, OutboundValue.class);
+        Date now = new Date();
+        for (CommoditySnapshot snapshot : snapshotDao.queryForEq("synced", false)) {
+            for (DataValue dataValue : snapshot.toDataValues(null)) {
+                outboxDao.createOrUpdate(new OutboundValue(dataValue, snapshot.isSmsSent() ? SMS_SENT : PENDING, now));
+            }
+        }
+    }
+
+    @Override
+    public void down(SQLiteDatabase db, ConnectionSource connectionSource) {
+        try {
+            dropTable(connectionSource, OutboundValue.class, true);
+        } catch (SQLException e) {
+            throw new LmisException(e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.migrations;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import com.j256.ormlite.support.ConnectionSource;
+
+import org.clintonhealthaccess.lmis.app.persistence.Migration;
+
+public class CreateTimeSeriesIndexes implements Migration {
+
+    // item tables carry no date of their own, so the date range is served by the parent table's index
+    private static final String[][] INDEXES = {
+            {"stockitemsnapshot_commodity_created_idx", "stockitemsnapshot", "commodity_id, created"},
+            {"adjustment_commodity_created_idx", "adjustment", "commodity_id, created"},
+            {"commoditysnapshot_commodity_activity_period_idx", "commoditysnapshot", "commodity_id, commodityActivity_id, period_date"},
+            {"dispensings_created_idx", "dispensings", "created"},
+            {"dispensingItems_commodity_dispensing_idx", "dispensingItems", "commodity_id, dispensing_id"},
+            {"losses_created_idx", "losses", "created"},
+            {"loss_items_commodity_loss_idx", "loss_items", "commodity_id, loss_id"},
+            {"receives_created_idx", "receives", "created"},
+            {"receive_items_commodity_receive_idx", "receive_items", "commodity_id, receive_id"}
+    };
+
+    @Override
+    public void up(SQLiteDatabase db, ConnectionSource connectionSource) {
+        for (String[] index : INDEXES) {
+            db.execSQL(String.format("CREATE INDEX IF NOT EXISTS %s ON %s (%s)", index[0], index[1], index[2]));
+        }
+    }
+
+    @Override
+    public void down(SQLiteDatabase db, ConnectionSource connectionSource) {
+        for (String[] index : INDEXES) {
+            db.execSQL(String.format("DROP INDEX IF EXISTS %s", index[0]));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.repositories;
+
+import com.google.inject.Singleton;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
+import org.clintonhealthaccess.lmis.app.models.CommoditySnapshot;
+import org.clintonhealthaccess.lmis.app.persistence.CachedQuery;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.Repository;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import static org.clintonhealthaccess.lmis.app.models.CommoditySnapshot.PERIOD_DATE;
+
+@Singleton
+public class CommoditySnapshotRepository extends Repository<CommoditySnapshot> {
+    public static final String COMMODITY_ID = "commodity_id";
+    public static final String COMMODITY_ACTIVITY_ID = "commodityActivity_id";
+
+    private static final CachedQuery<CommoditySnapshot> FOR_ACTION_AND_PERIOD = new CachedQuery<CommoditySnapshot>(CommoditySnapshot.class, 3) {
+        @Override
+        protected void define(QueryBuilder<CommoditySnapshot, String> queryBuilder, SelectArg... arguments) throws SQLException {
+            queryBuilder.where().eq(COMMODITY_ID, arguments[0])
+                    .and().eq(COMMODITY_ACTIVITY_ID, arguments[1])
+                    .and().eq(PERIOD_DATE, arguments[2]);
+        }
+    };
+
+    public CommoditySnapshotRepository() {
+        super(CommoditySnapshot.class);
+    }
+
+    public List<CommoditySnapshot> findForActionAndPeriod(CommodityAction commodityAction, Date periodDate) {
+        return query(FOR_ACTION_AND_PERIOD, commodityAction.getCommodity().getId(), commodityAction.getId(), periodDate);
+    }
+
+    // every snapshot for any of the actions on any of the days, for callers that match pairs up themselves
+    public List<CommoditySnapshot> findForActionsAndPeriods(final Collection<String> actionIds, final Collection<Date> periodDates) {
+        return withDao(new DbUtil.Operation<CommoditySnapshot, List<CommoditySnapshot>>() {
+            @Override
+            public List<CommoditySnapshot> operate(Dao<CommoditySnapshot, String> dao) throws SQLException {
+                return dao.queryBuilder().where().in(COMMODITY_ACTIVITY_ID, actionIds)
+                        .and().in(PERIOD_DATE, periodDates).query();
+            }
+        });
+    }
+}
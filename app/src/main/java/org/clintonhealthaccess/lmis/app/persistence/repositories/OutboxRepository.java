@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.repositories;
+
+import com.google.inject.Singleton;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import com.j256.ormlite.stmt.Where;
+import com.thoughtworks.dhis.models.DataValue;
+
+import org.clintonhealthaccess.lmis.app.models.OutboundValue;
+import org.clintonhealthaccess.lmis.app.persistence.CachedQuery;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.Repository;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.collect.Lists.partition;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.IDEMPOTENCY_KEY;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.STATE;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.State.FAILED;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.State.PENDING;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.State.SMS_SENT;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.State.SYNCED;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.UPDATED;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.VALUE;
+
+@Singleton
+public class OutboxRepository extends Repository<OutboundValue> {
+    // two bound arguments per value keeps a chunk well inside sqlite's 999
+    static final int VALUES_PER_UPDATE = 100;
+
+    private static final CachedQuery<OutboundValue> IN_STATE = new CachedQuery<OutboundValue>(OutboundValue.class, 1) {
+        @Override
+        protected void define(QueryBuilder<OutboundValue, String> queryBuilder, SelectArg... arguments) throws SQLException {
+            queryBuilder.where().eq(STATE, arguments[0]);
+        }
+    };
+
+    private static final CachedQuery<OutboundValue> IN_EITHER_STATE = new CachedQuery<OutboundValue>(OutboundValue.class, 2) {
+        @Override
+        protected void define(QueryBuilder<OutboundValue, String> queryBuilder, SelectArg... arguments) throws SQLException {
+            queryBuilder.where().eq(STATE, arguments[0]).or().eq(STATE, arguments[1]);
+        }
+    };
+
+    public OutboxRepository() {
+        super(OutboundValue.class);
+    }
+
+    // last write wins: a newer value for the same element and period replaces the queued one and is sent again
+    public int enqueue(Collection<DataValue> dataValues) {
+        Date now = new Date();
+        Map<String, OutboundValue> latest = new LinkedHashMap<>();
+        for (DataValue dataValue : dataValues) {
+            latest.put(OutboundValue.keyOf(dataValue), new OutboundValue(dataValue, PENDING, now));
+        }
+        return bulkUpsert(latest.values());
+    }
+
+    public List<OutboundValue> findUndelivered() {
+        return query(IN_EITHER_STATE, PENDING, SMS_SENT);
+    }
+
+    public List<OutboundValue> findSmsReady() {
+        return query(IN_STATE, PENDING);
+    }
+
+    public List<OutboundValue> findFailed() {
+        return query(IN_STATE, FAILED);
+    }
+
+    public long countUndelivered() {
+        return withDao(new DbUtil.Operation<OutboundValue, Long>() {
+            @Override
+            public Long operate(Dao<OutboundValue, String> dao) throws SQLException {
+                QueryBuilder<OutboundValue, String> queryBuilder = dao.queryBuilder();
+                queryBuilder.where().eq(STATE, PENDING).or().eq(STATE, SMS_SENT);
+                return queryBuilder.countOf();
+            }
+        });
+    }
+
+    public int markSynced(List<OutboundValue> values) {
+        return transition(values, SYNCED, PENDING, SMS_SENT);
+    }
+
+    public int markFailed(List<OutboundValue> values) {
+        return transition(values, FAILED, PENDING, SMS_SENT);
+    }
+
+    public int markSmsSent(List<OutboundValue> values) {
+        return transition(values, SMS_SENT, PENDING);
+    }
+
+    // the last value queued for each key, which for a delivered row is what the server now holds
+    public Map<String, String> valuesFor(final Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return new HashMap<>();
+        }
+        return withDao(new DbUtil.Operation<OutboundValue, Map<String, String>>() {
+            @Override
+            public Map<String, String> operate(Dao<OutboundValue, String> dao) throws SQLException {
+                Map<String, String> values = new HashMap<>();
+                for (OutboundValue outboundValue : dao.queryBuilder().where().in(IDEMPOTENCY_KEY, keys).query()) {
+                    values.put(outboundValue.getIdempotencyKey(), outboundValue.getValue());
+                }
+                return values;
+            }
+        });
+    }
+
+    // only rows still holding the value that was sent move on, so an edit made while sending stays queued.
+    // one UPDATE per chunk of values, each value guarded on its own key
+    private int transition(final List<OutboundValue> values, final OutboundValue.State to, final OutboundValue.State... from) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        return dbUtil.withDaoAsBatch(OutboundValue.class, new DbUtil.Operation<OutboundValue, Integer>() {
+            @Override
+            public Integer operate(Dao<OutboundValue, String> dao) throws SQLException {
+                int updated = 0;
+                for (List<OutboundValue> chunk : partition(values, VALUES_PER_UPDATE)) {
+                    UpdateBuilder<OutboundValue, String> updateBuilder = dao.updateBuilder();
+                    updateBuilder.updateColumnValue(STATE, to).updateColumnValue(UPDATED, new Date());
+                    Where<OutboundValue, String> where = updateBuilder.where();
+                    for (OutboundValue outboundValue : chunk) {
+                        where.and(where.eq(IDEMPOTENCY_KEY, new SelectArg(outboundValue.getIdempotencyKey())),
+                                where.eq(VALUE, new SelectArg(outboundValue.getValue())));
+                    }
+                    if (chunk.size() > 1) {
+                        where.or(chunk.size());
+                    }
+                    where.and().in(STATE, (Object[]) from);
+                    updated += updateBuilder.update();
+                }
+                return updated;
+            }
+        });
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.repositories;
+
+import com.google.inject.Singleton;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.DeleteBuilder;
+
+import org.clintonhealthaccess.lmis.app.models.SyncRun;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.Repository;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.clintonhealthaccess.lmis.app.models.SyncRun.STARTED;
+
+@Singleton
+public class SyncRunRepository extends Repository<SyncRun> {
+
+    public SyncRunRepository() {
+        super(SyncRun.class);
+    }
+
+    // newest first
+    public List<SyncRun> findLatest(final int count) {
+        return withDao(new DbUtil.Operation<SyncRun, List<SyncRun>>() {
+            @Override
+            public List<SyncRun> operate(Dao<SyncRun, String> dao) throws SQLException {
+                return dao.queryBuilder().orderBy(STARTED, false).limit((long) count).query();
+            }
+        });
+    }
+
+    public int deleteAllButLatest(int count) {
+        List<SyncRun> kept = findLatest(count);
+        if (kept.size() < count) {
+            return 0;
+        }
+        final SyncRun oldestKept = kept.get(kept.size() - 1);
+        return withDao(new DbUtil.Operation<SyncRun, Integer>() {
+            @Override
+            public Integer operate(Dao<SyncRun, String> dao) throws SQLException {
+                DeleteBuilder<SyncRun, String> deleteBuilder = dao.deleteBuilder();
+                deleteBuilder.where().lt(STARTED, oldestKept.getStarted());
+                return deleteBuilder.delete();
+            }
+        });
+    }
+}
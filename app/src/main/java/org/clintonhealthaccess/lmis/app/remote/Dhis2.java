@@ -35,7 +35,6 @@ import android.util.TimingLogger;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
-import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import com.thoughtworks.dhis.models.Attribute;
 import com.thoughtworks.dhis.models.AttributeValue;
@@ -71,12 +70,16 @@ import org.clintonhealthaccess.lmis.app.remote.endpoints.FDroidEndPointFactory;
 import org.clintonhealthaccess.lmis.app.remote.responses.DataElementGroupSetSearchResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.DataSetSearchResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.IndicatorGroupResponse;
-import org.clintonhealthaccess.lmis.app.remote.responses.IndicatorValueResponse;
+import org.clintonhealthaccess.lmis.app.remote.responses.JsonStreamReader;
 import org.clintonhealthaccess.lmis.app.services.CommodityActionService;
 import org.clintonhealthaccess.lmis.app.services.DataSetService;
+import org.clintonhealthaccess.lmis.app.services.SyncWatermarkService;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+import org.clintonhealthaccess.lmis.app.utils.KeywordMatcher;
 import org.json.JSONException;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -85,7 +88,9 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
+import retrofit.client.Response;
 import roboguice.inject.InjectResource;
 
 import static android.util.Log.e;
@@ -120,6 +125,15 @@ public class Dhis2 implements LmisServer {
     @Inject
     CommodityActionService commodityActionService;
 
+    @Inject
+    SyncWatermarkService syncWatermarkService;
+
+    @Inject
+    JsonStreamReader jsonStreamReader;
+
+    @Inject
+    RequestPool requestPool;
+
     @Override
     public UserProfile validateLogin(User user) {
         Dhis2Endpoint service = dhis2EndPointFactory.createNewEndPoint(user);
@@ -133,7 +147,7 @@ public class Dhis2 implements LmisServer {
         DataSetSearchResponse response = service.searchDataSets("LMIS", "id,name,periodType,description,dataElements[name,id,attributeValues[value,attribute[id,name]],dataElementGroups[id,name,dataElementGroupSet[id,name],attributeValues[value,attribute[id,name]]");
         timingLogger.addSplit("fetch data");
         timingLogger.dumpToLog();
-        List<DataElementGroupSet> dataElementGroupSets = getGroupSets(response.getDataSets());
+        List<DataElementGroupSet> dataElementGroupSets = MetadataIndex.of(response.getDataSets()).groupSets();
 
         writeDataElementGroupSets(dataElementGroupSets);
     }
@@ -149,87 +163,62 @@ public class Dhis2 implements LmisServer {
         System.out.println("{ \"dataElementGroupSets\": [ " + s + " ] }");
     }
 
-    private List<DataElementGroupSet> getGroupSets(List<DataSet> dataSets) {
-        List<DataElementGroupSet> groupSets = new ArrayList<>();
-        for (DataSet ds : dataSets) {
-            for (DataElement de : ds.getDataElements()) {
-                for (DataElementGroup group : de.getDataElementGroups()) {
-                    if (!groupSets.contains(group.getDataElementGroupSet())) {
-                        DataElementGroupSet set = group.getDataElementGroupSet();
-                        set.setDataElementGroups(getGroups(dataSets, set));
-                        groupSets.add(set);
-                    }
-                }
+    @Override
+    public List<Category> fetchCategories(final User user) {
+        TimingLogger timingLogger = new TimingLogger("TIMER", "fetchCommodities");
+        final Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
+        RequestFanOut fanOut = requestPool.fanOut();
+        RequestFanOut.Request<DataElementGroupSetSearchResponse> groupSets = fanOut.submit("data element group sets", new Callable<DataElementGroupSetSearchResponse>() {
+            @Override
+            public DataElementGroupSetSearchResponse call() {
+                return service.getDataElementGroupSets("id,name, dataElementGroups[id,name, attributeValues[value,attribute[id,name]], dataElements[name,id,attributeValues[value,attribute[id,name]]]");
             }
-        }
-        return groupSets;
-    }
-
-    private List<DataElementGroup> getGroups(List<DataSet> dataSets, DataElementGroupSet groupSet) {
-        List<DataElementGroup> groups = new ArrayList<>();
-        for (DataSet ds : dataSets) {
-            for (DataElement de : ds.getDataElements()) {
-                for (DataElementGroup group : de.getDataElementGroups()) {
-                    if (!groups.contains(group) && group.getDataElementGroupSet().equals(groupSet)) {
-                        group.setDataElements(getElements(dataSets, group));
-                        groups.add(group);
-                    }
-                }
+        });
+        RequestFanOut.Request<List<DataSet>> dataSets = fanOut.submit("data sets", new Callable<List<DataSet>>() {
+            @Override
+            public List<DataSet> call() {
+                return fetchDataSets(user);
             }
-        }
-        return groups;
-    }
-
-    private List<DataElement> getElements(List<DataSet> dataSets, DataElementGroup group) {
-        List<DataElement> dataElements = new ArrayList<>();
-        for (DataSet ds : dataSets) {
-            for (DataElement de : ds.getDataElements()) {
-                if (de.getDataElementGroups() != null && de.getDataElementGroups().size() > 0) {
-                    if (!dataElements.contains(de)
-                            && de.getDataElementGroups().get(0).equals(group)) {
-                        dataElements.add(de);
-                    }
-                }
+        });
+        RequestFanOut.Request<List<Indicator>> indicators = fanOut.submit("indicator groups", new Callable<List<Indicator>>() {
+            @Override
+            public List<Indicator> call() {
+                return fetchClientIndicators(user);
             }
-        }
-        return dataElements;
-    }
-
-    @Override
-    public List<Category> fetchCategories(User user) {
-        TimingLogger timingLogger = new TimingLogger("TIMER", "fetchCommodities");
-        Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
-        DataElementGroupSetSearchResponse response = service.getDataElementGroupSets("id,name, dataElementGroups[id,name, attributeValues[value,attribute[id,name]], dataElements[name,id,attributeValues[value,attribute[id,name]]]");
+        });
+        fanOut.join();
         timingLogger.addSplit("fetch data");
         timingLogger.dumpToLog();
-        List<DataSet> dataSets = fetchDataSets(user);
-        List<DataElementGroupSet> androidDataElementGroupSets = getAndroidDataElementGroupSets(response.getDataElementGroupSets());
-        List<Category> categories = getCategoriesFromDataElementGroupSets(androidDataElementGroupSets, dataSets);
-        categories = addIndicatorCommodityActions(categories, user);
+        List<DataElementGroupSet> androidDataElementGroupSets = getAndroidDataElementGroupSets(groupSets.get().getDataElementGroupSets());
+        List<Category> categories = getCategoriesFromDataElementGroupSets(androidDataElementGroupSets, dataSets.get());
+        categories = addIndicatorCommodityActions(categories, indicators.get());
         return categories;
     }
 
-    private List<Category> addIndicatorCommodityActions(List<Category> categories, User user) {
-        List<Indicator> indicators = fetchClientIndicators(user);
+    @Override
+    public List<Category> fetchCategories(User user, MetadataBundle bundle) {
+        List<DataElementGroupSet> androidDataElementGroupSets = getAndroidDataElementGroupSets(bundle.getDataElementGroupSets());
+        List<Category> categories = getCategoriesFromDataElementGroupSets(androidDataElementGroupSets, bundle.getDataSets());
+        // indicator groups are set up on the server by hand, so a bundle may not carry them
+        List<IndicatorGroup> indicatorGroups = bundle.getIndicatorGroups().isEmpty() ?
+                fetchIndicatorGroups(user) : bundle.getIndicatorGroups();
+        return addIndicatorCommodityActions(categories, clientIndicatorsOf(indicatorGroups));
+    }
 
-        for (Category category : categories) {
-            for (final Commodity commodity : category.getTransientCommodities()) {
-                List<Indicator> commodityIndicators = from(indicators).filter(new Predicate<Indicator>() {
-                    @Override
-                    public boolean apply(Indicator input) {
-                        return input.getName().contains(commodity.getName());
-                    }
-                }).toList();
+    // one pass over each indicator name finds every commodity whose name it contains
+    private List<Category> addIndicatorCommodityActions(List<Category> categories, List<Indicator> indicators) {
 
-                List<CommodityAction> commodityActions = from(commodityIndicators).transform(new Function<Indicator, CommodityAction>() {
-                    @Override
-                    public CommodityAction apply(Indicator input) {
-                        return new CommodityAction(commodity, input.getId(), input.getName(),
-                                input.getIndicatorGroup().getName().trim().replace(" ", "_"));
-                    }
-                }).toList();
+        KeywordMatcher<Commodity> commodityNames = new KeywordMatcher<>();
+        for (Category category : categories) {
+            for (Commodity commodity : category.getTransientCommodities()) {
+                commodityNames.add(commodity.getName(), commodity);
+            }
+        }
 
-                commodity.getCommodityActions().addAll(commodityActions);
+        for (Indicator indicator : indicators) {
+            for (Commodity commodity : commodityNames.find(indicator.getName())) {
+                commodity.getCommodityActions().add(new CommodityAction(commodity, indicator.getId(), indicator.getName(),
+                        indicator.getIndicatorGroup().getName().trim().replace(" ", "_")));
             }
         }
 
@@ -265,6 +254,7 @@ public class Dhis2 implements LmisServer {
     private List<Category> getCategoriesFromDataElementGroupSets(List<DataElementGroupSet> dataElementGroupSets, List<DataSet> dataSets) {
 
         List<Category> categories = newArrayList();
+        MetadataIndex index = MetadataIndex.of(dataSets);
 
         for (DataElementGroupSet groupSet : dataElementGroupSets) {
             Category category = new Category(groupSet.getId(), groupSet.getName());
@@ -299,7 +289,7 @@ public class Dhis2 implements LmisServer {
                         CommodityAction commodityAction = new CommodityAction(commodity,
                                 element.getId(), element.getName(), attributeValue.getValue());
 
-                        List<DataSet> elementDataSets = getElementDataSets(dataSets, element.getId());
+                        List<DataSet> elementDataSets = index.dataSetsOf(element.getId());
                         if (elementDataSets != null) {
                             commodityAction.addTransientCommodityActionDataSets(
                                     generateCommodityActionDataSets(commodityAction, elementDataSets));
@@ -319,18 +309,6 @@ public class Dhis2 implements LmisServer {
         return categories;
     }
 
-    private List<DataSet> getElementDataSets(List<DataSet> dataSets, String elementId) {
-        List<DataSet> elementDataSets = new ArrayList<>();
-        for (DataSet dataSet : dataSets) {
-            for (DataElement dataElement : dataSet.getDataElements()) {
-                if (dataElement.getId().equalsIgnoreCase(elementId)) {
-                    elementDataSets.add(dataSet);
-                }
-            }
-        }
-        return elementDataSets;
-    }
-
     @Override
     public List<String> fetchOrderReasons(User user) {
         Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
@@ -357,25 +335,44 @@ public class Dhis2 implements LmisServer {
         return types;
     }
 
-    @Override
     public List<CommodityActionValue> fetchCommodityActionValues(User user) {
+        List<CommodityActionValue> values = new ArrayList<>();
+        fetchCommodityActionValues(user, collectInto(values));
+        return values;
+    }
+
+    @Override
+    public int fetchCommodityActionValues(User user, ValueSink sink) {
         Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
-        DataValueSet valueSet = new DataValueSet();
+        DataValueMapper mapper = new DataValueMapper(actionsById(commodityActionService.all()), sink);
         try {
             String dataSet2 = getDataSetId(DataSet.CALCULATED);
             String dataSetId = getDataSetId(DataSet.DEFAULT);
             String threeMonthsAgo = threeMonthsAgo();
             String today = today();
 
-            valueSet = service.fetchDataValuesEx(dataSetId, user.getFacilityCode(), threeMonthsAgo, today, dataSet2);
+            List<String> dataSetIds = Arrays.asList(dataSetId, dataSet2);
+            String lastUpdated = syncWatermarkService.lastUpdatedFor(dataSetIds);
+            Response response = service.fetchDataValuesEx(dataSetId, user.getFacilityCode(), threeMonthsAgo, today, dataSet2, lastUpdated);
+            jsonStreamReader.readDataValues(bodyOf(response), mapper);
+            // only reached once the whole set has been read, so a dropped download is fetched again next time
+            syncWatermarkService.stage(dataSetIds, mapper.newestLastUpdated);
         } catch (LmisException exception) {
+            // rethrown so the sync records the failure, backs off and leaves the watermark where it was
             e(SYNC, "error syncing stock levels");
+            throw exception;
         }
-        return convertDataValuesToCommodityActions(valueSet.getDataValues());
+        return mapper.count;
     }
 
-    @Override
     public List<CommodityActionValue> fetchIndicatorValues(User user, List<Commodity> commodities) {
+        List<CommodityActionValue> values = new ArrayList<>();
+        fetchIndicatorValues(user, commodities, collectInto(values));
+        return values;
+    }
+
+    @Override
+    public int fetchIndicatorValues(User user, List<Commodity> commodities, ValueSink sink) {
         List<CommodityAction> indicatorActions = newArrayList();
         String indicatorIds = "";
         for (Commodity commodity : commodities) {
@@ -389,34 +386,60 @@ public class Dhis2 implements LmisServer {
         SimpleDateFormat formater = new SimpleDateFormat("yyyyMM");
         String period = formater.format(new Date());
 
-        List<List<String>> rows = getIndicatorValies(indicatorIds, user, period, true);
-        if (rows == null || rows.size() == 0) {
-            rows = getIndicatorValies(indicatorIds, user, formater.format(DateUtil.addMonth(new Date(), -1)), true);
+        Map<String, CommodityAction> actionMap = actionsById(indicatorActions);
+        int rows = fetchIndicatorValues(indicatorIds, user, period, actionMap, sink);
+        if (rows == 0) {
+            rows = fetchIndicatorValues(indicatorIds, user, formater.format(DateUtil.addMonth(new Date(), -1)), actionMap, sink);
         }
-
-        return convertIndicatorValuesToCommodityActions(rows, indicatorActions);
+        return rows;
     }
 
-    private List<List<String>> getIndicatorValies(String indicatorIds, User user, String period, Boolean skipMeta) {
+    private int fetchIndicatorValues(String indicatorIds, User user, String period,
+                                     final Map<String, CommodityAction> actionMap, final ValueSink sink) {
         Dhis2Endpoint service = dhis2EndPointFactory.getEndPoint(user);
-        IndicatorValueResponse indicatorValueResponse = new IndicatorValueResponse();
-
         try {
-            indicatorValueResponse = service.fetchIndicatorValues("dx:" + indicatorIds, "ou:" + user.getFacilityCode(), "pe:" + period, skipMeta.toString());
+            Response response = service.fetchIndicatorValues("dx:" + indicatorIds, "ou:" + user.getFacilityCode(), "pe:" + period, "true");
+            return jsonStreamReader.readRows(bodyOf(response), new JsonStreamReader.Handler<List<String>>() {
+                @Override
+                public void handle(List<String> row) {
+                    CommodityActionValue value = toCommodityActionValue(row, actionMap);
+                    if (value != null) {
+                        sink.accept(value);
+                    }
+                }
+            });
         } catch (LmisException exception) {
-            e(SYNC, "error syncing stock levels");
+            e(SYNC, "error syncing indicator values");
+            throw exception;
         }
-        return indicatorValueResponse.getRows();
+    }
+
+    private InputStream bodyOf(Response response) {
+        try {
+            return response.getBody().in();
+        } catch (IOException e) {
+            throw new LmisException(e);
+        }
+    }
+
+    private ValueSink collectInto(final List<CommodityActionValue> values) {
+        return new ValueSink() {
+            @Override
+            public void accept(CommodityActionValue value) {
+                values.add(value);
+            }
+        };
     }
 
     @Override
     public List<CommodityActionValue> fetchAllocations(User user) {
-        DataValueSet valueSet = new DataValueSet();
+        DataValueSet valueSet;
         try {
             String dataSetId = getDataSetId(DataSet.ALLOCATED);
             valueSet = dhis2EndPointFactory.getEndPoint(user).fetchDataValues(dataSetId, user.getFacilityCode(), threeMonthsAgo(), today());
         } catch (LmisException exception) {
             e(SYNC, "error syncing allocations");
+            throw exception;
         }
 
         List<CommodityActionValue> commodityActionValues = convertDataValuesToCommodityActions(valueSet.getDataValues());
@@ -496,62 +519,67 @@ public class Dhis2 implements LmisServer {
                 return input.getDataElement();
             }
         }).toList();
-        List<CommodityAction> actions = commodityActionService.getAllById(ids);
+        final Map<String, CommodityAction> actionMap = actionsById(commodityActionService.getAllById(ids));
 
-        final Map<String, CommodityAction> actionMap = new HashMap<>();
-        for (CommodityAction action : actions) {
-            actionMap.put(action.getId(), action);
-        }
-        ImmutableList<CommodityActionValue> commodityActionValues = from(values).transform(new Function<DataValue, CommodityActionValue>() {
+        return from(values).transform(new Function<DataValue, CommodityActionValue>() {
             @Override
             public CommodityActionValue apply(DataValue input) {
-
-                CommodityAction commodityAction = actionMap.get(input.getDataElement());
-
-                if (commodityAction == null) {
-                    commodityAction = new CommodityAction(null, input.getDataElement(),
-                            ALLOCATION_ID.getActivity(), ALLOCATED.getActivity());
-                }
-                if(STOCK_ON_HAND.getActivity().equals(commodityAction.getActivityType())
-                        && input.getValue().startsWith("-")){
-                    input.setValue("0");
-                    Log.e("ConvertDataValues", "CommodityAction(" +input.getDataElement()+ ") STOCK_ON_HAND can not be negative, change to 0");
-                }
-
-                return new CommodityActionValue(commodityAction, input.getValue(), input.getPeriod());
+                return toCommodityActionValue(input, actionMap);
             }
         }).toList();
-
-        return commodityActionValues;
-
     }
 
-    public List<CommodityActionValue> convertIndicatorValuesToCommodityActions(
-            List<List<String>> values, List<CommodityAction> indicatorActions) {
-        System.out.println("Indicator Actions " + indicatorActions.size());
-        final Map<String, CommodityAction> actionMap = new HashMap<>();
-        for (CommodityAction action : indicatorActions) {
+    private Map<String, CommodityAction> actionsById(List<CommodityAction> actions) {
+        Map<String, CommodityAction> actionMap = new HashMap<>();
+        for (CommodityAction action : actions) {
             actionMap.put(action.getId(), action);
         }
-        if (values == null || values.size() == 0) {
-            return new ArrayList<>();
+        return actionMap;
+    }
+
+    private CommodityActionValue toCommodityActionValue(DataValue input, Map<String, CommodityAction> actionMap) {
+        CommodityAction commodityAction = actionMap.get(input.getDataElement());
+
+        if (commodityAction == null) {
+            commodityAction = new CommodityAction(null, input.getDataElement(),
+                    ALLOCATION_ID.getActivity(), ALLOCATED.getActivity());
+        }
+        if(STOCK_ON_HAND.getActivity().equals(commodityAction.getActivityType())
+                && input.getValue().startsWith("-")){
+            input.setValue("0");
+            Log.e("ConvertDataValues", "CommodityAction(" +input.getDataElement()+ ") STOCK_ON_HAND can not be negative, change to 0");
         }
-        ImmutableList<CommodityActionValue> commodityActionValues = from(values).transform(new Function<List<String>, CommodityActionValue>() {
-            @Override
-            public CommodityActionValue apply(List<String> input) {
 
-                CommodityAction commodityAction = actionMap.get(input.get(0));
+        return new CommodityActionValue(commodityAction, input.getValue(), input.getPeriod());
+    }
 
-                if (commodityAction == null) {
-                    System.out.println("UnKnown Indicator Id: " + input.get(0));
-                    Log.e("UnKnown Indicator Id", input.get(0));
-                    return null;
-                }
-                return new CommodityActionValue(commodityAction, input.get(3), input.get(2));
-            }
-        }).toList();
+    private CommodityActionValue toCommodityActionValue(List<String> row, Map<String, CommodityAction> actionMap) {
+        CommodityAction commodityAction = actionMap.get(row.get(0));
+
+        if (commodityAction == null) {
+            Log.e("UnKnown Indicator Id", row.get(0));
+            return null;
+        }
+        return new CommodityActionValue(commodityAction, row.get(3), row.get(2));
+    }
+
+    private class DataValueMapper implements JsonStreamReader.Handler<DataValue> {
+        private final Map<String, CommodityAction> actionMap;
+        private final ValueSink sink;
+        private String newestLastUpdated;
+        private int count;
+
+        DataValueMapper(Map<String, CommodityAction> actionMap, ValueSink sink) {
+            this.actionMap = actionMap;
+            this.sink = sink;
+        }
 
-        return commodityActionValues;
+        @Override
+        public void handle(DataValue dataValue) {
+            newestLastUpdated = SyncWatermarkService.newer(newestLastUpdated, dataValue.getLastUpdated());
+            sink.accept(toCommodityActionValue(dataValue, actionMap));
+            count++;
+        }
     }
 
     @Override
@@ -563,8 +591,15 @@ public class Dhis2 implements LmisServer {
     }
 
     public List<Indicator> fetchClientIndicators(User user) {
-        List<IndicatorGroup> indicatorGroups = fetchIndicatorGroups(user);
+        return clientIndicatorsOf(fetchIndicatorGroups(user));
+    }
+
+    private List<Indicator> clientIndicatorsOf(List<IndicatorGroup> indicatorGroups) {
         final List<String> indicatorStrings = DataElementType.getDataElementStrings(true);
+        final KeywordMatcher<String> indicatorTypes = new KeywordMatcher<>();
+        for (String indicatorString : indicatorStrings) {
+            indicatorTypes.add(indicatorString, indicatorString);
+        }
         List<IndicatorGroup> clientIndicatorGroups = from(indicatorGroups).filter(new Predicate<IndicatorGroup>() {
             @Override
             public boolean apply(IndicatorGroup input) {
@@ -578,12 +613,7 @@ public class Dhis2 implements LmisServer {
                 return from(input.getIndicators()).filter(new Predicate<Indicator>() {
                     @Override
                     public boolean apply(Indicator input) {
-                        for (String s : indicatorStrings) {
-                            if (input.getName().contains(s)) {
-                                return true;
-                            }
-                        }
-                        return false;
+                        return indicatorTypes.matchesAny(input.getName());
                     }
                 }).toList();
             }
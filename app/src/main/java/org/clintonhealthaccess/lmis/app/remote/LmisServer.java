@@ -49,13 +49,15 @@ public interface LmisServer {
 
     List<Category> fetchCategories(User user);
 
+    List<Category> fetchCategories(User user, MetadataBundle bundle);
+
     List<String> fetchOrderReasons(User user);
 
     List<OrderType> fetchOrderTypes(User user);
 
-    List<CommodityActionValue> fetchCommodityActionValues(User user);
+    int fetchCommodityActionValues(User user, ValueSink sink);
 
-    List<CommodityActionValue> fetchIndicatorValues(User user, List<Commodity> commodities);
+    int fetchIndicatorValues(User user, List<Commodity> commodities, ValueSink sink);
 
     DataValueSetPushResponse pushDataValueSet(DataValueSet valueSet, User user);
 
@@ -68,4 +70,8 @@ public interface LmisServer {
     List<IndicatorGroup> fetchIndicatorGroups(User user);
 
     String fetchLatestVersion();
+
+    interface ValueSink {
+        void accept(CommodityActionValue value);
+    }
 }
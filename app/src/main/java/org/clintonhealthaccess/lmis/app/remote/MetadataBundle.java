@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote;
+
+import com.thoughtworks.dhis.models.BootstrapBundle;
+import com.thoughtworks.dhis.models.Constant;
+import com.thoughtworks.dhis.models.DataElementGroupSet;
+import com.thoughtworks.dhis.models.IndicatorGroup;
+
+import org.clintonhealthaccess.lmis.app.models.DataSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// the metadata a live first sync would download, read from a bundle copied onto the tablet instead
+public class MetadataBundle {
+    private final BootstrapBundle header;
+    private final List<DataSet> dataSets = new ArrayList<>();
+    private final List<DataElementGroupSet> dataElementGroupSets = new ArrayList<>();
+    private final List<IndicatorGroup> indicatorGroups = new ArrayList<>();
+    private final List<Constant> constants = new ArrayList<>();
+
+    public MetadataBundle(BootstrapBundle header) {
+        this.header = header;
+    }
+
+    public BootstrapBundle getHeader() {
+        return header;
+    }
+
+    public List<DataSet> getDataSets() {
+        return dataSets;
+    }
+
+    public List<DataElementGroupSet> getDataElementGroupSets() {
+        return dataElementGroupSets;
+    }
+
+    public List<IndicatorGroup> getIndicatorGroups() {
+        return indicatorGroups;
+    }
+
+    public List<Constant> getConstants() {
+        return constants;
+    }
+
+    // matches the way the server's constant search does, by a case-insensitive part of the name
+    public Constant constant(String query) {
+        String lowerCaseQuery = query.toLowerCase(Locale.ENGLISH);
+        for (Constant constant : constants) {
+            if (constant.getName() != null && constant.getValue() != null
+                    && constant.getName().toLowerCase(Locale.ENGLISH).contains(lowerCaseQuery)) {
+                return constant;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote;
+
+import com.thoughtworks.dhis.models.DataElement;
+import com.thoughtworks.dhis.models.DataElementGroup;
+import com.thoughtworks.dhis.models.DataElementGroupSet;
+
+import org.clintonhealthaccess.lmis.app.models.DataSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// one walk over the data sets replaces scanning every data set's elements for each element, group and group set
+public class MetadataIndex {
+    private final Map<String, List<DataSet>> dataSetsByElement = new HashMap<>();
+    private final Map<DataElementGroupSet, Map<DataElementGroup, DataElementGroup>> groupsBySet = new LinkedHashMap<>();
+    private final Map<DataElementGroup, List<DataElement>> elementsByGroup = new HashMap<>();
+    private final Set<String> groupedElementIds = new HashSet<>();
+
+    public static MetadataIndex of(List<DataSet> dataSets) {
+        MetadataIndex index = new MetadataIndex();
+        for (DataSet dataSet : dataSets) {
+            if (dataSet.getDataElements() == null) {
+                continue;
+            }
+            for (DataElement element : dataSet.getDataElements()) {
+                index.add(dataSet, element);
+            }
+        }
+        return index;
+    }
+
+    public List<DataSet> dataSetsOf(String elementId) {
+        List<DataSet> dataSets = dataSetsByElement.get(keyOf(elementId));
+        return dataSets == null ? Collections.<DataSet>emptyList() : dataSets;
+    }
+
+    // the first instance seen of each group set and group is the one filled in, as the old nested scans did
+    public List<DataElementGroupSet> groupSets() {
+        List<DataElementGroupSet> groupSets = new ArrayList<>();
+        for (Map.Entry<DataElementGroupSet, Map<DataElementGroup, DataElementGroup>> entry : groupsBySet.entrySet()) {
+            List<DataElementGroup> groups = new ArrayList<>(entry.getValue().values());
+            for (DataElementGroup group : groups) {
+                List<DataElement> elements = elementsByGroup.get(group);
+                group.setDataElements(elements == null ? new ArrayList<DataElement>() : new ArrayList<>(elements));
+            }
+            entry.getKey().setDataElementGroups(groups);
+            groupSets.add(entry.getKey());
+        }
+        return groupSets;
+    }
+
+    private void add(DataSet dataSet, DataElement element) {
+        if (element.getId() != null) {
+            List<DataSet> elementDataSets = dataSetsByElement.get(keyOf(element.getId()));
+            if (elementDataSets == null) {
+                elementDataSets = new ArrayList<>();
+                dataSetsByElement.put(keyOf(element.getId()), elementDataSets);
+            }
+            elementDataSets.add(dataSet);
+        }
+
+        List<DataElementGroup> groups = element.getDataElementGroups();
+        if (groups == null || groups.isEmpty()) {
+            return;
+        }
+        for (DataElementGroup group : groups) {
+            Map<DataElementGroup, DataElementGroup> groupsOfSet = groupsBySet.get(group.getDataElementGroupSet());
+            if (groupsOfSet == null) {
+                groupsOfSet = new LinkedHashMap<>();
+                groupsBySet.put(group.getDataElementGroupSet(), groupsOfSet);
+            }
+            if (!groupsOfSet.containsKey(group)) {
+                groupsOfSet.put(group, group);
+            }
+        }
+
+        // an element belongs to its first group only, and is listed once however many data sets carry it
+        DataElementGroup firstGroup = groups.get(0);
+        if (groupedElementIds.add(firstGroup.getName() + "\u0000" + element.getId())) {
+            List<DataElement> elements = elementsByGroup.get(firstGroup);
+            if (elements == null) {
+                elements = new ArrayList<>();
+                elementsByGroup.put(firstGroup, elements);
+            }
+            elements.add(element);
+        }
+    }
+
+    private static String keyOf(String elementId) {
+        return elementId.toLowerCase(Locale.ENGLISH);
+    }
+}
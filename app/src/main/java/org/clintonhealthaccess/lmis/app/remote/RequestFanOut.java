@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// sends independent requests at once and waits for all of them, each against its own deadline
+public class RequestFanOut {
+    private final ExecutorService executor;
+    private final long timeoutMillis;
+    private final List<Request<?>> requests = new ArrayList<>();
+
+    public RequestFanOut(ExecutorService executor, long timeoutMillis) {
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public <T> Request<T> submit(String name, Callable<T> call) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        Request<T> request = new Request<>(name, executor.submit(call), deadline);
+        requests.add(request);
+        return request;
+    }
+
+    public void join() {
+        try {
+            for (Request<?> request : requests) {
+                request.await();
+            }
+        } finally {
+            // once one request has failed the others are of no use; this only drops the ones still queued,
+            // one already on the wire ignores the interrupt and keeps its connection until it answers or hits the read timeout
+            for (Request<?> request : requests) {
+                request.future.cancel(true);
+            }
+        }
+    }
+
+    public class Request<T> {
+        private final String name;
+        private final Future<T> future;
+        private final long deadline;
+
+        private Request(String name, Future<T> future, long deadline) {
+            this.name = name;
+            this.future = future;
+            this.deadline = deadline;
+        }
+
+        public T get() {
+            if (!future.isDone()) {
+                throw new IllegalStateException(name + " read before the fan-out was joined");
+            }
+            return await();
+        }
+
+        private T await() {
+            try {
+                return future.get(Math.max(0, deadline - System.currentTimeMillis()), MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new LmisException(name + " timed out after " + timeoutMillis + "ms");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof LmisException) {
+                    throw (LmisException) e.getCause();
+                }
+                throw new LmisException(name + " failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LmisException(name + " was interrupted", e);
+            }
+        }
+    }
+}
@@ -37,11 +37,11 @@ import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.R;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.remote.interceptors.AuthInterceptor;
+import org.clintonhealthaccess.lmis.app.remote.transport.HttpTransport;
 
 import retrofit.ErrorHandler;
 import retrofit.RestAdapter;
 import retrofit.RetrofitError;
-import retrofit.client.ApacheClient;
 import retrofit.client.Header;
 import roboguice.inject.InjectResource;
 
@@ -70,15 +70,19 @@ public class Dhis2EndPointFactory {
     @Inject
     private Context context;
 
+    @Inject
+    private HttpTransport httpTransport;
+
     private Dhis2Endpoint dhis2Endpoint;
 
-    public Dhis2Endpoint createNewEndPoint(User user) {
+    public synchronized Dhis2Endpoint createNewEndPoint(User user) {
         RestAdapter restAdapter = makeRestAdapter(user);
         dhis2Endpoint = restAdapter.create(Dhis2Endpoint.class);
         return dhis2Endpoint;
     }
 
-    public Dhis2Endpoint getEndPoint(User user) {
+    // fanned out requests may ask for the endpoint from several threads at once
+    public synchronized Dhis2Endpoint getEndPoint(User user) {
         return dhis2Endpoint == null ? createNewEndPoint(user) : dhis2Endpoint;
     }
 
@@ -88,8 +92,8 @@ public class Dhis2EndPointFactory {
                 .setRequestInterceptor(requestInterceptor)
                 .setErrorHandler(new Dhis2ErrorHandler())
                 .setEndpoint(dhis2BaseUrl)
-                .setClient(new ApacheClient())
-                .setLogLevel(RestAdapter.LogLevel.FULL)
+                .setClient(httpTransport.client())
+                .setLogLevel(httpTransport.logLevel())
                 .build();
     }
 
@@ -44,13 +44,14 @@ import org.clintonhealthaccess.lmis.app.models.api.OptionSetResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.DataElementGroupSetSearchResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.DataSetSearchResponse;
 import org.clintonhealthaccess.lmis.app.remote.responses.IndicatorGroupResponse;
-import org.clintonhealthaccess.lmis.app.remote.responses.IndicatorValueResponse;
 
+import retrofit.client.Response;
 import retrofit.http.Body;
 import retrofit.http.GET;
 import retrofit.http.POST;
 import retrofit.http.Path;
 import retrofit.http.Query;
+import retrofit.http.Streaming;
 
 public interface Dhis2Endpoint {
     @GET("/api/systemSettings/data_element_group_set_id")
@@ -80,11 +81,13 @@ public interface Dhis2Endpoint {
     @GET("/api/dataValueSets")
     DataValueSet fetchDataValues(@Query("dataSet") String dataSet, @Query("orgUnit") String orgUnit, @Query("startDate") String startDate, @Query("endDate") String endDate);
 
+    @Streaming
     @GET("/api/dataValueSets")
-    DataValueSet fetchDataValuesEx(@Query("dataSet") String dataSet, @Query("orgUnit") String orgUnit, @Query("startDate") String startDate, @Query("endDate") String endDate, @Query("dataSet") String dataSet2);
+    Response fetchDataValuesEx(@Query("dataSet") String dataSet, @Query("orgUnit") String orgUnit, @Query("startDate") String startDate, @Query("endDate") String endDate, @Query("dataSet") String dataSet2, @Query("lastUpdated") String lastUpdated);
 
+    @Streaming
     @GET("/api/analytics.json")
-    IndicatorValueResponse fetchIndicatorValues(@Query("dimension") String indicators, @Query("dimension") String orgUnit, @Query("dimension") String period, @Query("skipMeta") String skipMeta);
+    Response fetchIndicatorValues(@Query("dimension") String indicators, @Query("dimension") String orgUnit, @Query("dimension") String period, @Query("skipMeta") String skipMeta);
 
     @GET("/api/optionSets")
     OptionSetResponse searchOptionSets(@Query("query") String query, @Query("fields") String fields);
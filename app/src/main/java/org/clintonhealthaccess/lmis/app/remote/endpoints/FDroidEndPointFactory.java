@@ -1,12 +1,14 @@
 package org.clintonhealthaccess.lmis.app.remote.endpoints;
 
+import com.google.inject.Inject;
+
 import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.remote.transport.HttpTransport;
 
 import retrofit.ErrorHandler;
 import retrofit.RestAdapter;
 import retrofit.RetrofitError;
-import retrofit.client.ApacheClient;
 import retrofit.converter.SimpleXMLConverter;
 import roboguice.inject.InjectResource;
 
@@ -18,13 +20,16 @@ public class FDroidEndPointFactory {
     @InjectResource(R.string.message_network_error)
     private String messageNetworkError;
 
+    @Inject
+    private HttpTransport httpTransport;
+
     public FDroidEndPoint getEndPoint() {
         return new RestAdapter.Builder()
                 .setConverter(new SimpleXMLConverter())
                 .setErrorHandler(new FDroidErrorHandler())
                 .setEndpoint(appMarketHost)
-                .setClient(new ApacheClient())
-                .setLogLevel(RestAdapter.LogLevel.FULL)
+                .setClient(httpTransport.client())
+                .setLogLevel(httpTransport.logLevel())
                 .build().create(FDroidEndPoint.class);
     }
 
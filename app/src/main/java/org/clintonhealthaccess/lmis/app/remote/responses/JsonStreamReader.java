@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.responses;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.thoughtworks.dhis.models.DataValue;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.util.List;
+
+// walks a response one array element at a time so no more than a single value is ever held in memory
+public class JsonStreamReader {
+    public static final String DATA_VALUES = "dataValues";
+    public static final String ROWS = "rows";
+
+    private static final Type ROW_TYPE = new TypeToken<List<String>>() {
+    }.getType();
+
+    private final Gson gson = new Gson();
+
+    public interface Handler<T> {
+        void handle(T item);
+    }
+
+    public int readDataValues(InputStream in, Handler<DataValue> handler) {
+        return readArray(in, DATA_VALUES, DataValue.class, handler);
+    }
+
+    public int readRows(InputStream in, Handler<List<String>> handler) {
+        return readArray(in, ROWS, ROW_TYPE, handler);
+    }
+
+    private <T> int readArray(InputStream in, String arrayName, Type elementType, Handler<T> handler) {
+        int count = 0;
+        JsonReader reader = null;
+        try {
+            reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!arrayName.equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    T item = gson.fromJson(reader, elementType);
+                    handler.handle(item);
+                    count++;
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } catch (IOException | JsonParseException e) {
+            // a dropped connection mid-array surfaces from gson as a parse error
+            throw new LmisException(e);
+        } finally {
+            close(reader, in);
+        }
+        return count;
+    }
+
+    private void close(JsonReader reader, InputStream in) {
+        try {
+            if (reader != null) {
+                reader.close();
+            } else {
+                in.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
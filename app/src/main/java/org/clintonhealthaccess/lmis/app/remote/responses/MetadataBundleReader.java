@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.responses;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.thoughtworks.dhis.models.BootstrapBundle;
+import com.thoughtworks.dhis.models.Constant;
+import com.thoughtworks.dhis.models.DataElementGroupSet;
+import com.thoughtworks.dhis.models.Indicator;
+import com.thoughtworks.dhis.models.IndicatorGroup;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.models.DataSet;
+import org.clintonhealthaccess.lmis.app.remote.MetadataBundle;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+
+import static java.lang.String.format;
+
+// reads a bundle line by line, so a large catalog is never held as one json document
+public class MetadataBundleReader {
+    private final Gson gson = new Gson();
+    private final JsonParser parser = new JsonParser();
+
+    public MetadataBundle read(InputStream in) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(in), "UTF-8"));
+            MetadataBundle bundle = new MetadataBundle(readHeader(reader.readLine()));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    add(bundle, parser.parse(line).getAsJsonObject());
+                }
+            }
+            if (bundle.getDataSets().size() != bundle.getHeader().getDataSets()
+                    || bundle.getDataElementGroupSets().size() != bundle.getHeader().getDataElementGroupSets()
+                    || bundle.getIndicatorGroups().size() != bundle.getHeader().getIndicatorGroups()
+                    || bundle.getConstants().size() != bundle.getHeader().getConstants()) {
+                throw new LmisException("Bootstrap bundle is incomplete");
+            }
+            return bundle;
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            throw new LmisException(e);
+        } finally {
+            close(reader, in);
+        }
+    }
+
+    private BootstrapBundle readHeader(String line) {
+        if (line == null) {
+            throw new LmisException("Bootstrap bundle is empty");
+        }
+        JsonObject header = parser.parse(line).getAsJsonObject();
+        if (!BootstrapBundle.HEADER.equals(typeOf(header))) {
+            throw new LmisException("Bootstrap bundle has no header");
+        }
+        BootstrapBundle bundle = gson.fromJson(header.get(BootstrapBundle.VALUE), BootstrapBundle.class);
+        if (!BootstrapBundle.FORMAT.equals(bundle.getFormat()) || bundle.getVersion() > BootstrapBundle.VERSION) {
+            throw new LmisException(format("Unsupported bootstrap bundle %s version %d", bundle.getFormat(), bundle.getVersion()));
+        }
+        return bundle;
+    }
+
+    private void add(MetadataBundle bundle, JsonObject line) {
+        String type = typeOf(line);
+        JsonElement value = line.get(BootstrapBundle.VALUE);
+        if (BootstrapBundle.DATA_SET.equals(type)) {
+            bundle.getDataSets().add(gson.fromJson(value, DataSet.class));
+        } else if (BootstrapBundle.DATA_ELEMENT_GROUP_SET.equals(type)) {
+            bundle.getDataElementGroupSets().add(gson.fromJson(value, DataElementGroupSet.class));
+        } else if (BootstrapBundle.INDICATOR_GROUP.equals(type)) {
+            IndicatorGroup group = gson.fromJson(value, IndicatorGroup.class);
+            if (group.getIndicators() == null) {
+                group.setIndicators(new ArrayList<Indicator>());
+            }
+            // the server response gets the same back references from IndicatorGroupResponse
+            for (Indicator indicator : group.getIndicators()) {
+                indicator.setIndicatorGroup(group);
+            }
+            bundle.getIndicatorGroups().add(group);
+        } else if (BootstrapBundle.CONSTANT.equals(type)) {
+            bundle.getConstants().add(gson.fromJson(value, Constant.class));
+        }
+        // anything else was added by a newer config client in a compatible way, and is not needed here
+    }
+
+    private String typeOf(JsonObject line) {
+        JsonElement type = line.get(BootstrapBundle.TYPE);
+        return type == null ? null : type.getAsString();
+    }
+
+    private void close(BufferedReader reader, InputStream in) {
+        try {
+            if (reader != null) {
+                reader.close();
+            } else {
+                in.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.transport;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+import retrofit.mime.TypedInput;
+
+import static android.util.Log.e;
+
+// keeps the last body of each metadata request on disk so an unchanged catalog costs a 304 instead of a download
+public class ConditionalGetClient implements Client {
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final String MIME_TYPE = "Content-Type";
+    private static final int NOT_MODIFIED = 304;
+    private static final int OK = 200;
+
+    private final Client delegate;
+    private final File directory;
+    private final List<String> cacheablePaths;
+
+    public ConditionalGetClient(Client delegate, File directory, List<String> cacheablePaths) {
+        this.delegate = delegate;
+        this.directory = directory;
+        this.cacheablePaths = cacheablePaths;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        if (!"GET".equals(request.getMethod()) || !isCacheable(request.getUrl())) {
+            return delegate.execute(request);
+        }
+
+        String key = Hashing.md5().hashString(request.getUrl(), Charsets.UTF_8).toString();
+        Properties validators = readValidators(key);
+        Response response = delegate.execute(validators == null ? request : conditional(request, validators));
+
+        if (response.getStatus() == NOT_MODIFIED && validators != null) {
+            byte[] body = Files.toByteArray(bodyFile(key));
+            return new Response(request.getUrl(), OK, "Not Modified", response.getHeaders(),
+                    new TypedByteArray(validators.getProperty(MIME_TYPE), body));
+        }
+        String etag = header(response, ETAG);
+        String lastModified = header(response, LAST_MODIFIED);
+        if (response.getStatus() != OK || response.getBody() == null || (etag == null && lastModified == null)) {
+            return response;
+        }
+
+        TypedInput body = response.getBody();
+        byte[] bytes = readFully(body);
+        store(key, etag, lastModified, body.mimeType(), bytes);
+        return new Response(response.getUrl(), response.getStatus(), response.getReason(), response.getHeaders(),
+                new TypedByteArray(body.mimeType(), bytes));
+    }
+
+    private boolean isCacheable(String url) throws IOException {
+        String path = new URL(url).getPath();
+        for (String cacheablePath : cacheablePaths) {
+            if (path.startsWith(cacheablePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Request conditional(Request request, Properties validators) {
+        List<Header> headers = new ArrayList<>(request.getHeaders());
+        if (validators.getProperty(ETAG) != null) {
+            headers.add(new Header("If-None-Match", validators.getProperty(ETAG)));
+        }
+        if (validators.getProperty(LAST_MODIFIED) != null) {
+            headers.add(new Header("If-Modified-Since", validators.getProperty(LAST_MODIFIED)));
+        }
+        return new Request(request.getMethod(), request.getUrl(), headers, request.getBody());
+    }
+
+    private String header(Response response, String name) {
+        for (Header header : response.getHeaders()) {
+            if (name.equalsIgnoreCase(header.getName())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private Properties readValidators(String key) {
+        File validatorsFile = validatorsFile(key);
+        if (!validatorsFile.exists() || !bodyFile(key).exists()) {
+            return null;
+        }
+        try {
+            InputStream in = new FileInputStream(validatorsFile);
+            try {
+                Properties validators = new Properties();
+                validators.load(in);
+                return validators;
+            } finally {
+                in.close();
+            }
+        } catch (IOException exception) {
+            e("ConditionalGetClient", "Could not read cached validators", exception);
+            return null;
+        }
+    }
+
+    private void store(String key, String etag, String lastModified, String mimeType, byte[] body) {
+        Properties validators = new Properties();
+        if (etag != null) {
+            validators.setProperty(ETAG, etag);
+        }
+        if (lastModified != null) {
+            validators.setProperty(LAST_MODIFIED, lastModified);
+        }
+        if (mimeType != null) {
+            validators.setProperty(MIME_TYPE, mimeType);
+        }
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                return;
+            }
+            // the body goes first so validators never point at a missing or stale body
+            validatorsFile(key).delete();
+            Files.write(body, bodyFile(key));
+            OutputStream out = new FileOutputStream(validatorsFile(key));
+            try {
+                validators.store(out, null);
+            } finally {
+                out.close();
+            }
+        } catch (IOException exception) {
+            e("ConditionalGetClient", "Could not cache response", exception);
+        }
+    }
+
+    private byte[] readFully(TypedInput body) throws IOException {
+        InputStream in = body.in();
+        try {
+            return ByteStreams.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private File bodyFile(String key) {
+        return new File(directory, key + ".body");
+    }
+
+    private File validatorsFile(String key) {
+        return new File(directory, key + ".headers");
+    }
+}
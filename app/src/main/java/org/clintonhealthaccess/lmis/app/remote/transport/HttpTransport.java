@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.transport;
+
+import android.content.Context;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.clintonhealthaccess.lmis.app.R;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import retrofit.RestAdapter;
+import retrofit.client.Client;
+import retrofit.client.UrlConnectionClient;
+import roboguice.inject.InjectResource;
+
+@Singleton
+public class HttpTransport {
+    public static final String APACHE = "apache";
+    public static final String URL_CONNECTION = "urlconnection";
+
+    // metadata endpoints that change rarely and are worth revalidating instead of downloading
+    static final List<String> CACHEABLE_PATHS = Arrays.asList(
+            "/api/dataElementGroupSets",
+            "/api/dataSets",
+            "/api/indicatorGroups",
+            "/api/constants");
+
+    @InjectResource(R.string.http_transport)
+    private String transport;
+
+    @InjectResource(R.string.http_log_level)
+    private String logLevel;
+
+    @Inject
+    private Context context;
+
+    @Inject
+    private TrafficMeter trafficMeter;
+
+    private Client client;
+
+    public synchronized Client client() {
+        if (client == null) {
+            // metered beneath the cache, so only bytes that actually crossed the network are counted
+            client = new ConditionalGetClient(baseClient(), new File(context.getCacheDir(), "http"), CACHEABLE_PATHS);
+        }
+        return client;
+    }
+
+    public RestAdapter.LogLevel logLevel() {
+        return RestAdapter.LogLevel.valueOf(logLevel);
+    }
+
+    private Client baseClient() {
+        // HttpURLConnection pools and gunzips on its own, so its bytes can only be counted once unzipped
+        if (URL_CONNECTION.equals(transport)) {
+            return new MeteredClient(new UrlConnectionClient(), trafficMeter);
+        }
+        return new StreamingApacheClient(PooledHttpClient.create(trafficMeter));
+    }
+}
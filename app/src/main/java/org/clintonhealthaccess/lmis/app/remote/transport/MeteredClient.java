@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import retrofit.client.Client;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedInput;
+
+// counts body bytes as retrofit reads them, for transports that gunzip before the raw bytes can be reached;
+// the apache transport is metered inside PooledHttpClient instead
+public class MeteredClient implements Client {
+    private final Client delegate;
+    private final TrafficMeter meter;
+
+    public MeteredClient(Client delegate, TrafficMeter meter) {
+        this.delegate = delegate;
+        this.meter = meter;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        if (request.getBody() != null && request.getBody().length() > 0) {
+            meter.sent(request.getBody().length());
+        }
+        Response response = delegate.execute(request);
+        if (response.getBody() == null) {
+            return response;
+        }
+        return new Response(response.getUrl(), response.getStatus(), response.getReason(), response.getHeaders(),
+                new MeteredInput(response.getBody()));
+    }
+
+    private class MeteredInput implements TypedInput {
+        private final TypedInput body;
+
+        MeteredInput(TypedInput body) {
+            this.body = body;
+        }
+
+        @Override
+        public String mimeType() {
+            return body.mimeType();
+        }
+
+        @Override
+        public long length() {
+            return body.length();
+        }
+
+        @Override
+        public InputStream in() throws IOException {
+            return new MeteredInputStream(body.in(), meter);
+        }
+    }
+}
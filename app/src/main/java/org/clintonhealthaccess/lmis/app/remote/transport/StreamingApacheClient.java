@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.transport;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedInput;
+import retrofit.mime.TypedOutput;
+
+// retrofit's ApacheClient reads every entity into a byte array, which defeats @Streaming endpoints
+public class StreamingApacheClient implements Client {
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
+    private final HttpClient client;
+
+    public StreamingApacheClient(HttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        HttpResponse apacheResponse = client.execute(toApacheRequest(request));
+
+        String mimeType = DEFAULT_MIME_TYPE;
+        List<Header> headers = new ArrayList<>();
+        for (org.apache.http.Header header : apacheResponse.getAllHeaders()) {
+            if ("Content-Type".equalsIgnoreCase(header.getName())) {
+                mimeType = header.getValue();
+            }
+            headers.add(new Header(header.getName(), header.getValue()));
+        }
+
+        HttpEntity entity = apacheResponse.getEntity();
+        return new Response(request.getUrl(), apacheResponse.getStatusLine().getStatusCode(),
+                apacheResponse.getStatusLine().getReasonPhrase(), headers,
+                entity == null ? null : new EntityInput(mimeType, entity));
+    }
+
+    private HttpUriRequest toApacheRequest(final Request request) {
+        HttpRequestBase apacheRequest;
+        if (request.getBody() == null) {
+            apacheRequest = new HttpRequestBase() {
+                @Override
+                public String getMethod() {
+                    return request.getMethod();
+                }
+            };
+        } else {
+            HttpEntityEnclosingRequestBase withBody = new HttpEntityEnclosingRequestBase() {
+                @Override
+                public String getMethod() {
+                    return request.getMethod();
+                }
+            };
+            withBody.setEntity(new TypedOutputEntity(request.getBody()));
+            apacheRequest = withBody;
+        }
+        apacheRequest.setURI(URI.create(request.getUrl()));
+        for (Header header : request.getHeaders()) {
+            apacheRequest.addHeader(header.getName(), header.getValue());
+        }
+        return apacheRequest;
+    }
+
+    private static class EntityInput implements TypedInput {
+        private final String mimeType;
+        private final HttpEntity entity;
+
+        EntityInput(String mimeType, HttpEntity entity) {
+            this.mimeType = mimeType;
+            this.entity = entity;
+        }
+
+        @Override
+        public String mimeType() {
+            return mimeType;
+        }
+
+        @Override
+        public long length() {
+            return entity.getContentLength();
+        }
+
+        @Override
+        public InputStream in() throws IOException {
+            // the pooled connection is released once the caller reads this to the end or closes it
+            return entity.getContent();
+        }
+    }
+
+    private static class TypedOutputEntity extends AbstractHttpEntity {
+        private final TypedOutput body;
+
+        TypedOutputEntity(TypedOutput body) {
+            this.body = body;
+            setContentType(body.mimeType());
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return body.length();
+        }
+
+        // only asked for by interceptors and retries; the request itself is written straight to the socket
+        @Override
+        public InputStream getContent() throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            body.writeTo(buffer);
+            return new ByteArrayInputStream(buffer.toByteArray());
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            body.writeTo(outputStream);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+}
@@ -65,6 +65,9 @@ public class AdjustmentService {
     @Inject
     CategoryService categoryService;
 
+    @Inject
+    DailyLedgerService dailyLedgerService;
+
     @Inject
     Context context;
 
@@ -78,23 +81,30 @@ public class AdjustmentService {
     }
 
     public void save(final List<Adjustment> adjustments) {
-        dbutil.withDao(Adjustment.class, new DbUtil.Operation<Adjustment, String>() {
+        dbutil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
             @Override
-            public String operate(Dao dao) throws SQLException {
-                for (Adjustment adjustment : adjustments) {
-                    dao.create(adjustment);
-                    commoditySnapshotService.add(adjustment);
-                    if (adjustment.isPositive()) {
-                        stockService.increaseStockLevelFor(adjustment.getCommodity(), adjustment.getQuantity(), adjustment.getCreated());
-                    } else {
-                        stockService.reduceStockLevelFor(adjustment.getCommodity(), adjustment.getQuantity(), adjustment.getCreated());
+            public Void perform() throws SQLException {
+                dbutil.withDao(Adjustment.class, new DbUtil.Operation<Adjustment, String>() {
+                    @Override
+                    public String operate(Dao dao) throws SQLException {
+                        for (Adjustment adjustment : adjustments) {
+                            dao.create(adjustment);
+                            commoditySnapshotService.add(adjustment);
+                            if (adjustment.isPositive()) {
+                                stockService.increaseStockLevelFor(adjustment.getCommodity(), adjustment.getQuantity(), adjustment.getCreated());
+                            } else {
+                                stockService.reduceStockLevelFor(adjustment.getCommodity(), adjustment.getQuantity(), adjustment.getCreated());
+                            }
+                            dailyLedgerService.recordAdjustment(adjustment);
+                        }
+                        return null;
                     }
-                }
+                });
+                alertsService.disableAllMonthlyStockCountAlerts();
                 return null;
             }
         });
         categoryService.clearCache();
-        alertsService.disableAllMonthlyStockCountAlerts();
         alertsService.updateLowStockAlerts();
     }
 
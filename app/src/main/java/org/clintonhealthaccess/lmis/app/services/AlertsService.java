@@ -39,6 +39,7 @@ import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.stmt.DeleteBuilder;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
 import com.j256.ormlite.stmt.UpdateBuilder;
 
 import org.clintonhealthaccess.lmis.app.activities.viewmodels.OrderCommodityViewModel;
@@ -51,6 +52,7 @@ import org.clintonhealthaccess.lmis.app.models.alerts.LowStockAlert;
 import org.clintonhealthaccess.lmis.app.models.alerts.MonthlyStockCountAlert;
 import org.clintonhealthaccess.lmis.app.models.alerts.NotificationMessage;
 import org.clintonhealthaccess.lmis.app.models.alerts.RoutineOrderAlert;
+import org.clintonhealthaccess.lmis.app.persistence.CachedQuery;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.utils.Helpers;
 
@@ -63,8 +65,6 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
-import de.greenrobot.event.EventBus;
-
 import static com.google.common.collect.FluentIterable.from;
 import static com.google.common.collect.Lists.newArrayList;
 import static org.clintonhealthaccess.lmis.app.activities.OrderActivity.setupOrderCommodityViewModel;
@@ -74,6 +74,13 @@ public class AlertsService {
     public static final String DISABLED = "disabled";
     public static SimpleDateFormat ALERT_DATE_FORMAT = new SimpleDateFormat("dd-MMM-yy");
     private static List<LowStockAlert> lowStockAlerts;
+    private static final CachedQuery<LowStockAlert> LOW_STOCK_ALERT_FOR_COMMODITY =
+            new CachedQuery<LowStockAlert>(LowStockAlert.class, 1) {
+                @Override
+                protected void define(QueryBuilder<LowStockAlert, String> queryBuilder, SelectArg... arguments) throws SQLException {
+                    queryBuilder.where().eq("commodity_id", arguments[0]);
+                }
+            };
     @Inject
     CommodityService commodityService;
     @Inject
@@ -134,7 +141,7 @@ public class AlertsService {
         checkIfExistingLowStockAlertsAreStillValid();
         checkForNewLowStockAlerts();
         updateCache();
-        EventBus.getDefault().post(new AlertChangeEvent());
+        dbUtil.postAfterCommit(new AlertChangeEvent());
     }
 
     public void updateCommodityLowStockAlert(Commodity commodity) {
@@ -149,14 +156,7 @@ public class AlertsService {
     }
 
     private LowStockAlert queryLowStockAlert(final Commodity commodity) {
-        return dbUtil.withDao(LowStockAlert.class, new DbUtil.Operation<LowStockAlert, LowStockAlert>() {
-            @Override
-            public LowStockAlert operate(Dao<LowStockAlert, String> dao) throws SQLException {
-                QueryBuilder queryBuilder = dao.queryBuilder();
-                queryBuilder.where().eq("commodity_id", commodity.getId());
-                return (LowStockAlert) queryBuilder.queryForFirst();
-            }
-        });
+        return dbUtil.queryForFirst(LOW_STOCK_ALERT_FOR_COMMODITY, commodity.getId());
     }
 
     public void updateCache() {
@@ -29,7 +29,6 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
-import android.content.Context;
 import android.util.Log;
 
 import com.google.common.base.Function;
@@ -37,8 +36,8 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
 import com.thoughtworks.dhis.models.DataElementType;
 
 import org.clintonhealthaccess.lmis.app.LmisException;
@@ -47,7 +46,9 @@ import org.clintonhealthaccess.lmis.app.models.AllocationItem;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
 import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
 import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.CachedQuery;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.Repository;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
 
 import java.sql.SQLException;
@@ -65,11 +66,21 @@ import static com.google.common.collect.Multimaps.index;
 import static java.lang.Integer.parseInt;
 
 public class AllocationService {
+    private static final CachedQuery<Allocation> ALLOCATION_BY_LMIS_ID = new CachedQuery<Allocation>(Allocation.class, 1) {
+        @Override
+        protected void define(QueryBuilder<Allocation, String> queryBuilder, SelectArg... arguments) throws SQLException {
+            queryBuilder.where().eq("allocationId", arguments[0]);
+        }
+    };
+
     @Inject
     private DbUtil dbUtil;
 
     @Inject
-    private Context context;
+    private Repository<Allocation> allocationRepository;
+
+    @Inject
+    private Repository<AllocationItem> allocationItemRepository;
 
     @Inject
     private LmisServer lmisServer;
@@ -122,24 +133,18 @@ public class AllocationService {
     }
 
     public Allocation getAllocationByLmisId(final String allocationID) {
-        return dbUtil.withDao(Allocation.class, new DbUtil.Operation<Allocation, Allocation>() {
-            @Override
-            public Allocation operate(Dao<Allocation, String> dao) throws SQLException {
-                QueryBuilder<Allocation, String> allocationStringQueryBuilder = dao.queryBuilder();
-                allocationStringQueryBuilder.where().eq("allocationId", allocationID);
-                PreparedQuery<Allocation> query = allocationStringQueryBuilder.prepare();
-                return dao.queryForFirst(query);
-            }
-        });
+        return dbUtil.queryForFirst(ALLOCATION_BY_LMIS_ID, allocationID);
     }
 
     public void update(Allocation allocation) {
-        GenericDao<Allocation> allocationGenericDao = new GenericDao<>(Allocation.class, context);
-        allocationGenericDao.update(allocation);
+        allocationRepository.update(allocation);
+    }
+
+    public int syncAllocations(User user) {
+        return saveAllocations(user, lmisServer.fetchAllocations(user));
     }
 
-    public void syncAllocations(User user) {
-        List<CommodityActionValue> commodityActionValues = lmisServer.fetchAllocations(user);
+    public int saveAllocations(User user, List<CommodityActionValue> commodityActionValues) {
         List<Allocation> allocations = toAllocations(commodityActionValues);
 
         String facilityName = user.getFacilityName() == null ? "" : user.getFacilityName();
@@ -165,6 +170,7 @@ public class AllocationService {
         if (changed) {
             resetCache();
         }
+        return commodityActionValues == null ? 0 : commodityActionValues.size();
     }
 
     private boolean validateAllocationId(String facility2LetterCode, String allocationId){
@@ -193,14 +199,12 @@ public class AllocationService {
             existingAllocation = allocation;
         }
 
-        GenericDao<Allocation> allocationGenericDao = new GenericDao<>(Allocation.class, context);
-        allocationGenericDao.createOrUpdate(existingAllocation);
+        allocationRepository.createOrUpdate(existingAllocation);
 
-        GenericDao<AllocationItem> allocationItemGenericDao = new GenericDao<>(AllocationItem.class, context);
         for (AllocationItem allocationItem : existingAllocation.getTransientAllocationItems()) {
             allocationItem.setAllocation(allocation);
-            allocationItemGenericDao.create(allocationItem);
         }
+        allocationItemRepository.createAll(existingAllocation.getTransientAllocationItems());
 
         Log.i("Saved Allocation: ", allocation.getAllocationId() +
                 " with " + allocation.getTransientAllocationItems().size() + " items");
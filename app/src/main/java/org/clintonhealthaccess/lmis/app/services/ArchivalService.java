@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.dao.GenericRawResults;
+import com.j256.ormlite.stmt.DeleteBuilder;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.models.ArchivalReport;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommoditySnapshot;
+import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
+import org.clintonhealthaccess.lmis.app.models.StockMonthSummary;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
+import org.clintonhealthaccess.lmis.app.persistence.Repository;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import roboguice.inject.InjectResource;
+
+import static org.clintonhealthaccess.lmis.app.models.CommoditySnapshot.PERIOD_DATE;
+
+public class ArchivalService {
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    @Inject
+    DbUtil dbUtil;
+
+    @Inject
+    Context context;
+
+    @Inject
+    StockItemSnapshotService stockItemSnapshotService;
+
+    @Inject
+    Repository<Commodity> commodityRepository;
+
+    @InjectResource(R.integer.synced_snapshot_retention_months)
+    Integer syncedSnapshotRetentionMonths;
+
+    @InjectResource(R.integer.stock_snapshot_rollup_months)
+    Integer stockSnapshotRollupMonths;
+
+    public ArchivalReport archive(Date today) {
+        ArchivalReport report = new ArchivalReport(databaseSize(), snapshotRows());
+
+        final Date retentionHorizon = archivedBefore(today);
+        report.commoditySnapshotsDeleted(deleteOldCommoditySnapshots(retentionHorizon));
+
+        final Date rollupHorizon = DateUtil.getMonthStartDate(DateUtil.addMonth(today, -stockSnapshotRollupMonths));
+        final List<StockMonthSummary> summaries = new ArrayList<>();
+        int rolledUp = dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Integer>() {
+            @Override
+            public Integer perform() throws SQLException {
+                summaries.addAll(summariseMonthsBefore(rollupHorizon));
+                dbUtil.bulkUpsert(StockMonthSummary.class, summaries);
+                return deleteRolledUpStockItemSnapshots(rollupHorizon);
+            }
+        });
+        report.stockItemSnapshotsRolledUp(rolledUp, summaries.size());
+
+        vacuum();
+        report.finished(databaseSize(), snapshotRows());
+        Log.i("Archival", report.toString());
+        return report;
+    }
+
+    // snapshots before this are deleted; a later edit to one of those days starts from the value kept in the outbox
+    public Date archivedBefore(Date today) {
+        return DateUtil.getMonthStartDate(DateUtil.addMonth(today, -syncedSnapshotRetentionMonths));
+    }
+
+    // the outbox keeps the last value of every key, so old snapshots can go whether or not they were synced
+    private int deleteOldCommoditySnapshots(final Date horizon) {
+        return dbUtil.withDao(CommoditySnapshot.class, new DbUtil.Operation<CommoditySnapshot, Integer>() {
+            @Override
+            public Integer operate(Dao<CommoditySnapshot, String> dao) throws SQLException {
+                DeleteBuilder<CommoditySnapshot, String> deleteBuilder = dao.deleteBuilder();
+                deleteBuilder.where().lt(PERIOD_DATE, horizon);
+                return deleteBuilder.delete();
+            }
+        });
+    }
+
+    private List<StockMonthSummary> summariseMonthsBefore(final Date horizon) {
+        final List<String[]> months = dbUtil.withDao(StockItemSnapshot.class,
+                new DbUtil.Operation<StockItemSnapshot, List<String[]>>() {
+                    @Override
+                    public List<String[]> operate(Dao<StockItemSnapshot, String> dao) throws SQLException {
+                        GenericRawResults<String[]> results = dao.queryRaw(
+                                "SELECT s.commodity_id, strftime('%Y-%m-01', s.created) AS month, COUNT(*) FROM stockitemsnapshot s " +
+                                        "WHERE s.created < ? AND NOT EXISTS (SELECT 1 FROM stock_month_summaries m " +
+                                        "WHERE m.commodity_id = s.commodity_id AND m.month = strftime('%Y-%m-01', s.created)) " +
+                                        "GROUP BY s.commodity_id, month ORDER BY month",
+                                DateUtil.formatDate(horizon, "yyyy-MM-dd"));
+                        return results.getResults();
+                    }
+                });
+
+        List<StockMonthSummary> summaries = new ArrayList<>();
+        for (String[] month : months) {
+            try {
+                Commodity commodity = commodityRepository.getById(month[0]);
+                Date monthStart = DateUtil.parseString(month[1], "yyyy-MM-dd");
+                Date monthEnd = DateUtil.getMonthEndDate(monthStart);
+                summaries.add(new StockMonthSummary(commodity, monthStart,
+                        stockItemSnapshotService.getLatestStock(commodity, monthEnd, false),
+                        stockItemSnapshotService.getStockOutDays(commodity, monthStart, monthEnd),
+                        Integer.parseInt(month[2])));
+            } catch (Exception e) {
+                throw new LmisException(e);
+            }
+        }
+        return summaries;
+    }
+
+    // every reader carries the previous snapshot's quantity over a day without one, so a snapshot that repeats it
+    // adds nothing: it is only dropped when its stock out flag is also what that carried-over quantity implies
+    private int deleteRolledUpStockItemSnapshots(final Date horizon) {
+        return dbUtil.withDao(StockItemSnapshot.class, new DbUtil.Operation<StockItemSnapshot, Integer>() {
+            @Override
+            public Integer operate(Dao<StockItemSnapshot, String> dao) throws SQLException {
+                return dao.updateRaw("DELETE FROM stockitemsnapshot WHERE created < ? " +
+                        "AND stockOut = (quantity = 0) AND quantity = (" +
+                        "SELECT earlier.quantity FROM stockitemsnapshot earlier " +
+                        "WHERE earlier.commodity_id = stockitemsnapshot.commodity_id AND earlier.created < stockitemsnapshot.created " +
+                        "ORDER BY earlier.created DESC LIMIT 1)", DateUtil.formatDate(horizon, "yyyy-MM-dd"));
+            }
+        });
+    }
+
+    private void vacuum() {
+        SQLiteDatabase database = database();
+        if (DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+            // an existing database only switches vacuum mode after one full vacuum
+            database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            database.execSQL("VACUUM");
+        } else {
+            database.execSQL("PRAGMA incremental_vacuum");
+        }
+    }
+
+    private long databaseSize() {
+        SQLiteDatabase database = database();
+        return DatabaseUtils.longForQuery(database, "PRAGMA page_count", null)
+                * DatabaseUtils.longForQuery(database, "PRAGMA page_size", null);
+    }
+
+    private long snapshotRows() {
+        SQLiteDatabase database = database();
+        return DatabaseUtils.queryNumEntries(database, "commoditysnapshot")
+                + DatabaseUtils.queryNumEntries(database, "stockitemsnapshot");
+    }
+
+    private SQLiteDatabase database() {
+        return LmisSqliteOpenHelper.getInstance(context).getWritableDatabase();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import android.os.Environment;
+import android.util.Log;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.thoughtworks.dhis.models.BootstrapBundle;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.remote.MetadataBundle;
+import org.clintonhealthaccess.lmis.app.remote.responses.MetadataBundleReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+// finds a metadata bundle copied onto the tablet, so provisioning does not need a live catalog download
+@Singleton
+public class BootstrapService {
+    public static final String BUNDLE_DIRECTORY = "lmis";
+
+    @Inject
+    private MetadataBundleReader metadataBundleReader;
+
+    private MetadataBundle bundle;
+    private boolean looked;
+
+    public synchronized MetadataBundle bundle() {
+        if (!looked) {
+            bundle = load(bundleFile());
+            looked = true;
+        }
+        return bundle;
+    }
+
+    // the catalog it carries is in the database once the first sync is done
+    public synchronized void release() {
+        bundle = null;
+    }
+
+    public File bundleFile() {
+        return new File(new File(Environment.getExternalStorageDirectory(), BUNDLE_DIRECTORY), BootstrapBundle.FILE_NAME);
+    }
+
+    private MetadataBundle load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            MetadataBundle loaded = metadataBundleReader.read(new FileInputStream(file));
+            Log.i("Bootstrap", "using bundle generated " + loaded.getHeader().getGenerated());
+            return loaded;
+        } catch (IOException | LmisException e) {
+            // a damaged or newer bundle is not worth failing registration over, the server has the same data
+            Log.e("Bootstrap", "ignoring bundle " + file, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.j256.ormlite.dao.Dao;
+
+import org.clintonhealthaccess.lmis.app.models.CatalogFingerprint;
+import org.clintonhealthaccess.lmis.app.models.Category;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionDataSet;
+import org.clintonhealthaccess.lmis.app.models.DataSet;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// remembers what each commodity looked like when it was last imported, so an unchanged catalog is not rewritten
+@Singleton
+public class CatalogFingerprintService {
+    private static final Joiner FIELDS = Joiner.on('\u0000').useForNull("");
+
+    @Inject
+    private DbUtil dbUtil;
+
+    public List<Commodity> changed(List<Commodity> commodities) {
+        Map<String, String> saved = savedFingerprints();
+        List<Commodity> changed = new ArrayList<>();
+        for (Commodity commodity : commodities) {
+            if (!fingerprintOf(commodity).equals(saved.get(commodity.getId()))) {
+                changed.add(commodity);
+            }
+        }
+        return changed;
+    }
+
+    // commodities imported before that the server no longer lists
+    public List<String> removed(List<Commodity> commodities) {
+        Set<String> removed = new HashSet<>(savedFingerprints().keySet());
+        for (Commodity commodity : commodities) {
+            removed.remove(commodity.getId());
+        }
+        return new ArrayList<>(removed);
+    }
+
+    public int record(List<Commodity> commodities) {
+        List<CatalogFingerprint> fingerprints = new ArrayList<>();
+        for (Commodity commodity : commodities) {
+            fingerprints.add(new CatalogFingerprint(commodity.getId(), fingerprintOf(commodity)));
+        }
+        return dbUtil.bulkUpsert(CatalogFingerprint.class, fingerprints);
+    }
+
+    // a forgotten commodity is written again in full if the server ever lists it again
+    public int forget(final Collection<String> commodityIds) {
+        if (commodityIds.isEmpty()) {
+            return 0;
+        }
+        return dbUtil.withDao(CatalogFingerprint.class, new DbUtil.Operation<CatalogFingerprint, Integer>() {
+            @Override
+            public Integer operate(Dao<CatalogFingerprint, String> dao) throws SQLException {
+                return dao.deleteIds(commodityIds);
+            }
+        });
+    }
+
+    String fingerprintOf(Commodity commodity) {
+        List<Object> fields = new ArrayList<>();
+        Category category = commodity.getCategory();
+        fields.add(commodity.getId());
+        fields.add(commodity.getName());
+        fields.add(commodity.getOrderFrequency());
+        fields.add(category == null ? null : category.getLmisId());
+        fields.add(category == null ? null : category.getName());
+        fields.add(commodity.isNonLGA());
+        fields.add(commodity.isDevice());
+        fields.add(commodity.isVaccine());
+
+        // the server does not promise any order, so sort before hashing
+        for (CommodityAction action : sortedById(commodity.getCommodityActions())) {
+            fields.add(action.getId());
+            fields.add(action.getName());
+            fields.add(action.getActivityType());
+            for (DataSet dataSet : dataSetsOf(action)) {
+                fields.add(dataSet.getId());
+                fields.add(dataSet.getName());
+                fields.add(dataSet.getPeriodType());
+            }
+        }
+        return Hashing.md5().hashString(FIELDS.join(fields), Charsets.UTF_8).toString();
+    }
+
+    private Map<String, String> savedFingerprints() {
+        return dbUtil.withDao(CatalogFingerprint.class, new DbUtil.Operation<CatalogFingerprint, Map<String, String>>() {
+            @Override
+            public Map<String, String> operate(Dao<CatalogFingerprint, String> dao) throws SQLException {
+                Map<String, String> saved = new HashMap<>();
+                for (CatalogFingerprint fingerprint : dao.queryForAll()) {
+                    saved.put(fingerprint.getCommodityId(), fingerprint.getFingerprint());
+                }
+                return saved;
+            }
+        });
+    }
+
+    private List<CommodityAction> sortedById(List<CommodityAction> actions) {
+        List<CommodityAction> sorted = new ArrayList<>(actions);
+        Collections.sort(sorted, new Comparator<CommodityAction>() {
+            @Override
+            public int compare(CommodityAction lhs, CommodityAction rhs) {
+                return lhs.getId().compareTo(rhs.getId());
+            }
+        });
+        return sorted;
+    }
+
+    private List<DataSet> dataSetsOf(CommodityAction action) {
+        List<DataSet> dataSets = new ArrayList<>();
+        if (action.getTransientCommodityActionDataSets() == null) {
+            return dataSets;
+        }
+        for (CommodityActionDataSet commodityActionDataSet : action.getTransientCommodityActionDataSets()) {
+            if (commodityActionDataSet.getDataSet() != null) {
+                dataSets.add(commodityActionDataSet.getDataSet());
+            }
+        }
+        Collections.sort(dataSets, new Comparator<DataSet>() {
+            @Override
+            public int compare(DataSet lhs, DataSet rhs) {
+                return lhs.getId().compareTo(rhs.getId());
+            }
+        });
+        return dataSets;
+    }
+}
@@ -38,12 +38,14 @@ import com.j256.ormlite.stmt.QueryBuilder;
 import com.thoughtworks.dhis.models.DataElementType;
 
 import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.R;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
 import org.clintonhealthaccess.lmis.app.models.CommodityAction;
 import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
+import org.clintonhealthaccess.lmis.app.persistence.Repository;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
 
 import java.sql.SQLException;
@@ -54,20 +56,35 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 
+import roboguice.inject.InjectResource;
+
 public class CommodityActionService {
 
     @Inject
     Context context;
 
+    @Inject
+    Repository<CommodityAction> commodityActionRepository;
+
+    @Inject
+    SyncWatermarkService syncWatermarkService;
+
     @Inject
     DbUtil dbUtil;
 
     @Inject
     private LmisServer lmisServer;
 
+    @InjectResource(R.integer.action_value_batch_size)
+    Integer actionValueBatchSize;
+
     public CommodityActionService() {
     }
 
+    public List<CommodityAction> all() {
+        return commodityActionRepository.queryForAll();
+    }
+
     public List<CommodityAction> getAllById(final List<String> ids) {
         return dbUtil.withDao(CommodityAction.class, new DbUtil.Operation<CommodityAction, List<CommodityAction>>() {
             @Override
@@ -87,36 +104,50 @@ public class CommodityActionService {
     }
 
     public CommodityAction save(CommodityAction commodityAction) {
-        GenericDao<CommodityAction> commodityActivityDao = new GenericDao<>(CommodityAction.class, context);
-        return commodityActivityDao.create(commodityAction);
+        return commodityActionRepository.create(commodityAction);
     }
 
-    protected void saveActionValues(final List<CommodityActionValue> commodityActionValues) {
-        if (commodityActionValues != null) {
-            dbUtil.withDaoAsBatch(CommodityActionValue.class, new DbUtil.Operation<CommodityActionValue, Void>() {
-                        @Override
-                        public Void operate(Dao<CommodityActionValue, String> dao) throws SQLException {
-                            for (CommodityActionValue actionValue : commodityActionValues) {
-                                if(actionValue.getCommodityAction().getName().equals(DataElementType.ALLOCATION_ID)){
-                                    save(actionValue.getCommodityAction());
-                                }
-                                dao.createOrUpdate(actionValue);
-                            }
-                            return null;
-                        }
-                    }
-            );
+    protected int saveActionValues(final List<CommodityActionValue> commodityActionValues) {
+        if (commodityActionValues == null) {
+            return 0;
+        }
+        for (CommodityActionValue actionValue : commodityActionValues) {
+            if (actionValue.getCommodityAction().getName().equals(DataElementType.ALLOCATION_ID)) {
+                save(actionValue.getCommodityAction());
+            }
         }
+        return dbUtil.bulkUpsert(CommodityActionValue.class, commodityActionValues);
     }
 
-    public void syncCommodityActionValues(User user) {
-        List<CommodityActionValue> commodityActionValues = lmisServer.fetchCommodityActionValues(user);
-        saveActionValues(commodityActionValues);
+    public int syncCommodityActionValues(User user) {
+        return saveCommodityActionValues(fetchCommodityActionValues(user));
     }
 
-    public void syncIndicatorValues(User user, List<Commodity> commodities) {
-        List<CommodityActionValue> commodityActionValues = lmisServer.fetchIndicatorValues(user, commodities);
-        saveActionValues(commodityActionValues);
+    public BatchedUpsert fetchCommodityActionValues(User user) {
+        BatchedUpsert batch = new BatchedUpsert();
+        lmisServer.fetchCommodityActionValues(user, batch);
+        return batch;
+    }
+
+    public int saveCommodityActionValues(final BatchedUpsert batch) {
+        return dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Integer>() {
+            @Override
+            public Integer perform() throws SQLException {
+                int rows = batch.flush();
+                syncWatermarkService.commitStaged();
+                return rows;
+            }
+        });
+    }
+
+    public int syncIndicatorValues(User user, List<Commodity> commodities) {
+        return fetchIndicatorValues(user, commodities).flush();
+    }
+
+    public BatchedUpsert fetchIndicatorValues(User user, List<Commodity> commodities) {
+        BatchedUpsert batch = new BatchedUpsert();
+        lmisServer.fetchIndicatorValues(user, commodities, batch);
+        return batch;
     }
 
     public int getMonthlyValue(Commodity commodity, Date startingDate, Date endDate, DataElementType dataElementType) {
@@ -173,4 +204,25 @@ public class CommodityActionService {
         }
         return (int)value / maxNumberOfValues;
     }
+
+    // full batches are written as they stream in, so a large download never has to be held in memory;
+    // whatever is left waits for flush, which callers run inside their own transaction
+    public class BatchedUpsert implements LmisServer.ValueSink {
+        private final List<CommodityActionValue> pending = new ArrayList<>();
+        private int saved;
+
+        @Override
+        public void accept(CommodityActionValue value) {
+            pending.add(value);
+            if (pending.size() >= actionValueBatchSize) {
+                flush();
+            }
+        }
+
+        int flush() {
+            saved += saveActionValues(pending);
+            pending.clear();
+            return saved;
+        }
+    }
 }
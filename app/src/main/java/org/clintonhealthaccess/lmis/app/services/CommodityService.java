@@ -32,21 +32,23 @@ package org.clintonhealthaccess.lmis.app.services;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
-import android.util.TimingLogger;
 
 import com.google.common.base.Function;
 import com.google.common.collect.FluentIterable;
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.DeleteBuilder;
+import com.j256.ormlite.stmt.UpdateBuilder;
+import com.thoughtworks.dhis.models.Constant;
 import com.thoughtworks.dhis.models.DataElementType;
 
 import org.clintonhealthaccess.lmis.app.R;
-import org.clintonhealthaccess.lmis.app.models.Adjustment;
-import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
 import org.clintonhealthaccess.lmis.app.models.Category;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
 import org.clintonhealthaccess.lmis.app.models.CommodityAction;
 import org.clintonhealthaccess.lmis.app.models.CommodityActionDataSet;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.models.DataSet;
 import org.clintonhealthaccess.lmis.app.models.StockItem;
 import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
@@ -56,15 +58,22 @@ import org.clintonhealthaccess.lmis.app.models.reports.UtilizationItemName;
 import org.clintonhealthaccess.lmis.app.models.reports.UtilizationValue;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
+import org.clintonhealthaccess.lmis.app.remote.MetadataBundle;
+import org.clintonhealthaccess.lmis.app.remote.RequestFanOut;
+import org.clintonhealthaccess.lmis.app.remote.RequestPool;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import roboguice.inject.InjectResource;
 
@@ -87,7 +96,7 @@ public class CommodityService {
     private AllocationService allocationService;
 
     @Inject
-    private AdjustmentService adjustmentService;
+    private DailyLedgerService dailyLedgerService;
 
     @Inject
     CommodityActionService commodityActionService;
@@ -104,6 +113,15 @@ public class CommodityService {
     @Inject
     DataSetService dataSetService;
 
+    @Inject
+    CatalogFingerprintService catalogFingerprintService;
+
+    @Inject
+    BootstrapService bootstrapService;
+
+    @Inject
+    RequestPool requestPool;
+
     @Inject
     private DbUtil dbUtil;
 
@@ -122,46 +140,96 @@ public class CommodityService {
     private DispensingService dispensingService;
 
     public void initialise(User user) {
-        TimingLogger timingLogger = new TimingLogger("TIMER", "initialise");
-        List<Category> categories = lmisServer.fetchCategories(user);
-        timingLogger.addSplit("fetch all cats");
+        importCatalog(user);
+        syncConstants(user);
+        syncActionValues(user);
+        initialiseStock();
+        syncAllocations(user);
+        syncIndicatorValues(user);
+    }
 
-        saveToDatabase(categories);
-        timingLogger.addSplit("save all Cats");
+    public int importCatalog(User user) {
+        return saveCatalog(fetchCatalog(user));
+    }
 
-        categoryService.clearCache();
+    public List<Category> fetchCatalog(User user) {
+        MetadataBundle bundle = bootstrapService.bundle();
+        return bundle == null ? lmisServer.fetchCategories(user) : lmisServer.fetchCategories(user, bundle);
+    }
 
-        syncConstants(user);
-        timingLogger.addSplit("sync constants");
+    public int saveCatalog(List<Category> categories) {
+        int rows = saveToDatabase(categories);
+        categoryService.clearCache();
+        return rows;
+    }
 
-        timingLogger.addSplit("all");
+    public void syncConstants(User user) {
+        // both constants are fetched together, the preferences are only written once both have arrived
+        RequestFanOut fanOut = requestPool.fanOut();
+        RequestFanOut.Request<Integer> stockCountDay = fanOut.submit(MONTHLY_STOCK_COUNT_DAY, integerConstant(user, monthlyStockCountSearchKey));
+        RequestFanOut.Request<Integer> orderAlertDay = fanOut.submit(ROUTINE_ORDER_ALERT_DAY, integerConstant(user, routineOrderAlertDay));
+        fanOut.join();
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        editor.putInt(MONTHLY_STOCK_COUNT_DAY, stockCountDay.get());
+        editor.putInt(ROUTINE_ORDER_ALERT_DAY, orderAlertDay.get());
+        editor.commit();
+    }
 
+    public int syncActionValues(User user) {
         Log.i("Inital sync:", "<========== syncing Commodity Action Values");
-        commodityActionService.syncCommodityActionValues(user);
+        int rows = commodityActionService.syncCommodityActionValues(user);
+        categoryService.clearCache();
+        return rows;
+    }
 
-        timingLogger.addSplit("actionValues");
+    public CommodityActionService.BatchedUpsert fetchActionValues(User user) {
+        Log.i("Inital sync:", "<========== fetching Commodity Action Values");
+        return commodityActionService.fetchCommodityActionValues(user);
+    }
+
+    public int saveActionValues(CommodityActionService.BatchedUpsert values) {
+        int rows = commodityActionService.saveCommodityActionValues(values);
         categoryService.clearCache();
-        updateStockValues(all());
+        return rows;
+    }
+
+    public int initialiseStock() {
+        List<Commodity> commodities = all();
+        updateStockValues(commodities);
         categoryService.clearCache();
         createInitialStockItemSnapShots(all());
-        timingLogger.addSplit("updateStockValues");
+        categoryService.clearCache();
+        return commodities.size();
+    }
 
+    public int syncAllocations(User user) {
+        return saveAllocations(user, fetchAllocations(user));
+    }
+
+    public List<CommodityActionValue> fetchAllocations(User user) {
         List<CommodityAction> allocationId = commodityActionService.getAllocationIds();
         if (allocationId != null && allocationId.size() > 0) {
             Log.e("AllocationId Found", allocationId.get(0).toString());
-            timingLogger.addSplit("sync allocations");
-            allocationService.syncAllocations(user);
-        } else {
-            Log.e("AllocationId", "Not found");
+            return lmisServer.fetchAllocations(user);
         }
+        Log.e("AllocationId", "Not found");
+        return null;
+    }
 
-        categoryService.clearCache();
-        timingLogger.addSplit("clearCache");
+    public int saveAllocations(User user, List<CommodityActionValue> values) {
+        return values == null ? 0 : allocationService.saveAllocations(user, values);
+    }
+
+    public int syncIndicatorValues(User user) {
+        return commodityActionService.syncIndicatorValues(user, all());
+    }
 
-        timingLogger.addSplit("sync indicator values");
-        commodityActionService.syncIndicatorValues(user, all());
+    public CommodityActionService.BatchedUpsert fetchIndicatorValues(User user) {
+        return commodityActionService.fetchIndicatorValues(user, all());
+    }
 
-        timingLogger.dumpToLog();
+    public int saveIndicatorValues(CommodityActionService.BatchedUpsert values) {
+        return values.flush();
     }
 
     private void createInitialStockItemSnapShots(final List<Commodity> commodities) {
@@ -180,11 +248,6 @@ public class CommodityService {
         });
     }
 
-    private void syncConstants(User user) {
-        fetchAndSaveIntegerConstant(user, monthlyStockCountSearchKey, MONTHLY_STOCK_COUNT_DAY);
-        fetchAndSaveIntegerConstant(user, routineOrderAlertDay, ROUTINE_ORDER_ALERT_DAY);
-    }
-
     private void updateStockValues(List<Commodity> commodities) {
         List<StockItem> stockItems = FluentIterable.from(commodities).transform(new Function<Commodity, StockItem>() {
             @Override
@@ -203,11 +266,15 @@ public class CommodityService {
         }
     }
 
-    private void fetchAndSaveIntegerConstant(User user, String stockCountSearchKey, String key) {
-        Integer day = lmisServer.fetchIntegerConstant(user, stockCountSearchKey);
-        SharedPreferences.Editor editor = sharedPreferences.edit();
-        editor.putInt(key, day);
-        editor.commit();
+    private Callable<Integer> integerConstant(final User user, final String searchKey) {
+        MetadataBundle bundle = bootstrapService.bundle();
+        final Constant bundled = bundle == null ? null : bundle.constant(searchKey);
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return bundled == null ? lmisServer.fetchIntegerConstant(user, searchKey) : bundled.getValue().intValue();
+            }
+        };
     }
 
     private void createStock(final StockItem item) {
@@ -241,88 +308,121 @@ public class CommodityService {
     }
 
 
-    public void saveToDatabase(final List<Category> categories) {
-        dbUtil.withDaoAsBatch(context, Category.class, new Operation<Category, Void>() {
+    public int saveToDatabase(final List<Category> categories) {
+        List<Commodity> commodities = new ArrayList<>();
+        for (Category category : categories) {
+            for (Commodity commodity : category.getTransientCommodities()) {
+                commodity.setCategory(category);
+                commodities.add(commodity);
+            }
+        }
+        final List<Commodity> changed = catalogFingerprintService.changed(commodities);
+        // an empty catalog is far more likely a broken response than a server with nothing left on it
+        final List<String> removed = commodities.isEmpty() ? new ArrayList<String>() : catalogFingerprintService.removed(commodities);
+        if (changed.isEmpty() && removed.isEmpty()) {
+            Log.i("Inital sync:", "catalog unchanged since last import");
+            return 0;
+        }
+        return dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Integer>() {
+            @Override
+            public Integer perform() throws SQLException {
+                Collection<Category> changedCategories = categoriesOf(changed);
+                reuseSavedCategoryIds(changedCategories);
+                // categories first, so their generated ids are set before the commodities reference them
+                int rows = dbUtil.bulkUpsert(Category.class, changedCategories);
+                rows += dbUtil.bulkUpsert(Commodity.class, changed);
+                rows += createCommodityActions(changed);
+                rows += retire(removed);
+                catalogFingerprintService.record(changed);
+                catalogFingerprintService.forget(removed);
+                return rows;
+            }
+        });
+    }
+
+    // commodities the server dropped keep their stock history, so they are hidden rather than deleted
+    private int retire(final List<String> commodityIds) {
+        if (commodityIds.isEmpty()) {
+            return 0;
+        }
+        return dbUtil.withDao(Commodity.class, new Operation<Commodity, Integer>() {
             @Override
-            public Void operate(Dao<Category, String> dao) throws SQLException {
-                for (Category category : categories) {
-                    dao.createOrUpdate(category);
-                    saveAllCommodities(category);
-                }
-                return null;
+            public Integer operate(Dao<Commodity, String> dao) throws SQLException {
+                UpdateBuilder<Commodity, String> updateBuilder = dao.updateBuilder();
+                updateBuilder.updateColumnValue(Commodity.RETIRED, true).where().in("id", commodityIds);
+                return updateBuilder.update();
             }
         });
     }
 
-    private void saveAllCommodities(final Category category) {
-        dbUtil.withDaoAsBatch(Commodity.class, new Operation<Commodity, Void>() {
+    private Collection<Category> categoriesOf(List<Commodity> commodities) {
+        Map<String, Category> categories = new LinkedHashMap<>();
+        for (Commodity commodity : commodities) {
+            categories.put(commodity.getCategory().getLmisId(), commodity.getCategory());
+        }
+        return categories.values();
+    }
+
+    private void reuseSavedCategoryIds(final Collection<Category> categories) {
+        // categories have generated ids, so without this a re-import would insert them a second time
+        dbUtil.withDao(Category.class, new Operation<Category, Void>() {
             @Override
-            public Void operate(Dao<Commodity, String> dao) throws SQLException {
-                boolean dataSetsSaved = false;
-                for (Commodity commodity : category.getTransientCommodities()) {
-                    commodity.setCategory(category);
-                    dao.createOrUpdate(commodity);
-                    createCommodityAction(commodity, dataSetsSaved);
-                    dataSetsSaved = true;
+            public Void operate(Dao<Category, String> dao) throws SQLException {
+                for (Category category : categories) {
+                    Category saved = dao.queryBuilder().where().eq("lmisId", category.getLmisId()).queryForFirst();
+                    if (saved != null) {
+                        category.setId(saved.getId());
+                    }
                 }
                 return null;
             }
         });
     }
 
-    private void createCommodityAction(Commodity commodity, boolean dataSetsSaved) {
-        GenericDao<DataSet> dataSetDao = new GenericDao<>(DataSet.class, context);
-        GenericDao<CommodityAction> commodityActivityDao = new GenericDao<>(CommodityAction.class, context);
-        GenericDao<CommodityActionDataSet> commodityActionDataSetDao = new GenericDao<>(CommodityActionDataSet.class, context);
-        final List<DataSet> dataSets = new ArrayList<>();
-        final List<CommodityActionDataSet> commodityActionDataSets = new ArrayList<>();
-        final List<CommodityAction> actions = new ArrayList<>();
-        for (CommodityAction commodityAction : commodity.getCommodityActions()) {
-            if (commodityAction.getTransientCommodityActionDataSets() != null) {
-                commodityActionDataSets.addAll(commodityAction.getTransientCommodityActionDataSets());
-            } else {
-                Log.e("Error", "No dataSets for " + commodityAction.getName());
-            }
-            if (commodityAction.getCommodity() == null) {
-                commodityAction.setCommodity(commodity);
-            }
-            actions.add(commodityAction);
-        }
-        if (!dataSetsSaved) {
-            for (CommodityActionDataSet caDataSet : commodityActionDataSets) {
-                if (!dataSets.contains(caDataSet.getDataSet())) {
-                    dataSets.add(caDataSet.getDataSet());
+    private int createCommodityActions(List<Commodity> commodities) {
+        Map<String, DataSet> dataSets = new LinkedHashMap<>();
+        List<CommodityActionDataSet> commodityActionDataSets = new ArrayList<>();
+        List<CommodityAction> actions = new ArrayList<>();
+        for (Commodity commodity : commodities) {
+            for (CommodityAction commodityAction : commodity.getCommodityActions()) {
+                if (commodityAction.getTransientCommodityActionDataSets() != null) {
+                    commodityActionDataSets.addAll(commodityAction.getTransientCommodityActionDataSets());
+                } else {
+                    Log.e("Error", "No dataSets for " + commodityAction.getName());
                 }
-            }
-            dataSetDao.bulkOperation(new Operation<DataSet, Object>() {
-                @Override
-                public Object operate(Dao<DataSet, String> dao) throws SQLException {
-                    for (DataSet dataSet : dataSets) {
-                        dao.createOrUpdate(dataSet);
-                    }
-                    return null;
+                if (commodityAction.getCommodity() == null) {
+                    commodityAction.setCommodity(commodity);
                 }
-            });
+                actions.add(commodityAction);
+            }
         }
-        commodityActivityDao.bulkOperation(new Operation<CommodityAction, Object>() {
-            @Override
-            public Object operate(Dao<CommodityAction, String> dao) throws SQLException {
-                for (CommodityAction action : actions) {
-                    dao.createOrUpdate(action);
-                }
-                return null;
+        for (CommodityActionDataSet caDataSet : commodityActionDataSets) {
+            DataSet dataSet = caDataSet.getDataSet();
+            if (dataSet != null && !dataSets.containsKey(dataSet.getId())) {
+                dataSets.put(dataSet.getId(), dataSet);
             }
-        });
-        commodityActionDataSetDao.bulkOperation(new Operation<CommodityActionDataSet, Object>() {
+        }
+        int rows = dbUtil.bulkUpsert(DataSet.class, dataSets.values());
+        rows += dbUtil.bulkUpsert(CommodityAction.class, actions);
+        deleteCommodityActionDataSets(actions);
+        rows += dbUtil.bulkUpsert(CommodityActionDataSet.class, commodityActionDataSets);
+        return rows;
+    }
+
+    private void deleteCommodityActionDataSets(final List<CommodityAction> actions) {
+        final List<String> actionIds = new ArrayList<>();
+        for (CommodityAction action : actions) {
+            actionIds.add(action.getId());
+        }
+        dbUtil.withDao(CommodityActionDataSet.class, new Operation<CommodityActionDataSet, Void>() {
             @Override
-            public Object operate(Dao<CommodityActionDataSet, String> dao) throws SQLException {
-                for (CommodityActionDataSet caDataSet : commodityActionDataSets) {
-                    dao.createOrUpdate(caDataSet);
-                }
+            public Void operate(Dao<CommodityActionDataSet, String> dao) throws SQLException {
+                DeleteBuilder<CommodityActionDataSet, String> deleteBuilder = dao.deleteBuilder();
+                deleteBuilder.where().in("commodityAction_id", actionIds);
+                deleteBuilder.delete();
                 return null;
             }
         });
-
     }
 
     public List<Commodity> getMost5HighlyDispensedCommodities() {
@@ -452,18 +552,12 @@ public class CommodityService {
     }
 
     private List<UtilizationValue> getReturnedToLGA(Commodity commodity, Date startDate, Date endDate) {
-        List<Adjustment> adjustments = adjustmentService.getAdjustments(commodity,
-                startDate, endDate, AdjustmentReason.RETURNED_TO_LGA);
+        int[] dailyTotals = dailyLedgerService.getDailyTotals(commodity, startDate, endDate, DailyLedger.RETURNED_TO_LGA);
 
         List<UtilizationValue> utilizationValues = new ArrayList<>();
 
         Calendar calendar = DateUtil.calendarDate(startDate);
-
-        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
-
-        while (calendar.getTime().before(upperLimitDate)) {
-
-            int totalAdjustments = getTotalAdjustments(calendar.getTime(), adjustments);
+        for (int totalAdjustments : dailyTotals) {
             UtilizationValue utilizationValue = new UtilizationValue(DateUtil.dayNumber(calendar.getTime()), totalAdjustments);
             utilizationValues.add(utilizationValue);
             calendar.add(Calendar.DAY_OF_MONTH, 1);
@@ -471,16 +565,6 @@ public class CommodityService {
         return utilizationValues;
     }
 
-    private int getTotalAdjustments(Date date, List<Adjustment> adjustments) {
-        int totalAdjustments = 0;
-        for (Adjustment adjustment : adjustments) {
-            if (DateUtil.equal(adjustment.getCreated(), date)) {
-                totalAdjustments += adjustment.getQuantity();
-            }
-        }
-        return totalAdjustments;
-    }
-
     private List<UtilizationValue> getEndingBalance(Commodity commodity, Date startDate, Date endDate) throws Exception {
         List<StockItemSnapshot> stockItemSnapshots = stockItemSnapshotService.get(commodity,
                 DateUtil.addDayOfMonth(startDate, -1), endDate);
@@ -29,52 +29,68 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
-import android.content.Context;
-import android.util.Log;
-
-import com.google.common.base.Predicate;
 import com.google.inject.Inject;
-import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.QueryBuilder;
+import com.thoughtworks.dhis.models.DataValue;
 import com.thoughtworks.dhis.models.DataValueSet;
 
 import org.clintonhealthaccess.lmis.app.LmisException;
-import org.clintonhealthaccess.lmis.app.models.Adjustment;
+import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
 import org.clintonhealthaccess.lmis.app.models.CommoditySnapshot;
 import org.clintonhealthaccess.lmis.app.models.CommoditySnapshotValue;
+import org.clintonhealthaccess.lmis.app.models.OutboundValue;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.models.api.DataValueSetPushResponse;
+import org.clintonhealthaccess.lmis.app.models.api.ImportConflict;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.repositories.CommoditySnapshotRepository;
+import org.clintonhealthaccess.lmis.app.persistence.repositories.OutboxRepository;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
 import org.clintonhealthaccess.lmis.app.sms.SmsSyncService;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import roboguice.inject.InjectResource;
 
 import static android.util.Log.e;
 import static android.util.Log.i;
-import static com.google.common.collect.FluentIterable.from;
+import static com.google.common.collect.Lists.partition;
 import static java.lang.String.format;
-import static org.clintonhealthaccess.lmis.app.models.CommoditySnapshot.PERIOD_DATE;
-import static org.clintonhealthaccess.lmis.app.models.CommoditySnapshot.toDataValueSet;
 import static org.clintonhealthaccess.lmis.app.utils.Helpers.isEmpty;
 
 public class CommoditySnapshotService {
 
-    public static final String COMMODITY_ID = "commodity_id";
-    public static final String COMMODITY_ACTIVITY_ID = "commodityActivity_id";
     @Inject
-    DbUtil dbUtil;
+    private LmisServer lmisServer;
 
     @Inject
-    Context context;
+    private SmsSyncService smsSyncService;
 
     @Inject
-    private LmisServer lmisServer;
+    private CommoditySnapshotRepository commoditySnapshotRepository;
 
     @Inject
-    private SmsSyncService smsSyncService;
+    private OutboxRepository outboxRepository;
+
+    @Inject
+    private DbUtil dbUtil;
 
+    @Inject
+    private ArchivalService archivalService;
+
+    @InjectResource(R.integer.snapshot_push_chunk_size)
+    Integer snapshotPushChunkSize;
+
+    // increments are only collected here; they are written once, just before the caller's unit of work commits
     public void add(final Snapshotable snapshotable) {
 
         List<CommoditySnapshotValue> commoditySnapshotValues = null;
@@ -84,107 +100,240 @@ public class CommoditySnapshotService {
             e.printStackTrace();
         }
 
-        GenericDao<CommoditySnapshot> snapshotDao = new GenericDao<>(CommoditySnapshot.class, context);
+        final List<CommoditySnapshotValue> values = commoditySnapshotValues;
+        dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+            @Override
+            public Void perform() throws SQLException {
+                pendingSnapshots().add(values);
+                return null;
+            }
+        });
+    }
 
-        for (CommoditySnapshotValue value : commoditySnapshotValues) {
-            List<CommoditySnapshot> commoditySnapshots = getSnapshotsForCommodityPeriod(value);
-            if (commoditySnapshots.isEmpty()) {
-                createNewSnapshot(value, snapshotDao);
-            } else {
-                updateSnapshot(value, snapshotDao, commoditySnapshots);
+    private PendingSnapshots pendingSnapshots() {
+        return dbUtil.scopedToUnitOfWork(PendingSnapshots.class, new DbUtil.UnitOfWork<PendingSnapshots>() {
+            @Override
+            public PendingSnapshots perform() throws SQLException {
+                PendingSnapshots pendingSnapshots = new PendingSnapshots();
+                dbUtil.beforeCommit(pendingSnapshots);
+                return pendingSnapshots;
             }
-        }
+        });
     }
 
-    private void updateSnapshot(CommoditySnapshotValue commoditySnapshotValue, GenericDao<CommoditySnapshot> snapshotDao, List<CommoditySnapshot> commoditySnapshots) {
-        CommoditySnapshot commoditySnapshot = commoditySnapshots.get(0);
-        commoditySnapshot.incrementValue(commoditySnapshotValue.getValue());
-        commoditySnapshot.setSynced(false);
-        snapshotDao.update(commoditySnapshot);
+    public List<OutboundValue> getUnSyncedValues() {
+        return outboxRepository.findUndelivered();
     }
 
-    private void createNewSnapshot(CommoditySnapshotValue commoditySnapshotValue, GenericDao<CommoditySnapshot> snapshotDao) {
-        CommoditySnapshot commoditySnapshot = new CommoditySnapshot(commoditySnapshotValue);
-        snapshotDao.create(commoditySnapshot);
+    public List<OutboundValue> getSmsReadyValues() {
+        return outboxRepository.findSmsReady();
     }
 
-    private List<CommoditySnapshot> getSnapshotsForCommodityPeriod(final CommoditySnapshotValue commoditySnapshotValue) {
-        return dbUtil.withDao(CommoditySnapshot.class, new DbUtil.Operation<CommoditySnapshot, List<CommoditySnapshot>>() {
-            @Override
-            public List<CommoditySnapshot> operate(Dao<CommoditySnapshot, String> dao) throws SQLException {
-                QueryBuilder<CommoditySnapshot, String> queryBuilder = dao.queryBuilder();
-                queryBuilder.where().eq(COMMODITY_ID, commoditySnapshotValue.getCommodityAction().getCommodity())
-                        .and()
-                        .eq(COMMODITY_ACTIVITY_ID, commoditySnapshotValue.getCommodityAction())
-                        .and()
-                        .eq(PERIOD_DATE, commoditySnapshotValue.getPeriodDate());
-                return queryBuilder.query();
+    public int syncWithServer(User user) {
+        List<OutboundValue> valuesToSync = getUnSyncedValues();
+        if (isEmpty(valuesToSync)) {
+            return 0;
+        }
+        i("==> Syncing...........", valuesToSync.size() + " values");
+
+        // each chunk is acknowledged on its own, so one failed push never holds back the rest
+        int synced = 0;
+        LmisException failure = null;
+        for (List<OutboundValue> chunk : partition(valuesToSync, snapshotPushChunkSize)) {
+            try {
+                synced += push(chunk, user);
+            } catch (LmisException ex) {
+                e("==> Syncing...........", chunk.size() + " values failed");
+                failure = ex;
             }
-        });
+        }
+
+        i("==> Syncing...........", format("%d of %d values synced", synced, valuesToSync.size()));
+        // the chunks that did go through are already marked, the sync still has to know the server failed
+        if (failure != null) {
+            throw failure;
+        }
+        return synced;
     }
 
-    public List<CommoditySnapshot> getUnSyncedSnapshots() {
-        return dbUtil.withDao(CommoditySnapshot.class, new DbUtil.Operation<CommoditySnapshot, List<CommoditySnapshot>>() {
-            @Override
-            public List<CommoditySnapshot> operate(Dao<CommoditySnapshot, String> dao) throws SQLException {
-                QueryBuilder<CommoditySnapshot, String> queryBuilder = dao.queryBuilder();
-                queryBuilder.where().eq("synced", false);
-                return dao.query(queryBuilder.prepare());
-            }
-        });
+    private int push(List<OutboundValue> chunk, User user) {
+        DataValueSetPushResponse response = lmisServer.pushDataValueSet(toDataValueSet(chunk, user.getFacilityCode()), user);
+        if (response.isComplete()) {
+            outboxRepository.markSynced(chunk);
+            return chunk.size();
+        }
+        if (!response.isSuccess()) {
+            e("==> Syncing...........", format("%d values not imported: %s", chunk.size(), response.getDescription()));
+            return 0;
+        }
+
+        List<OutboundValue> rejected = rejectedBy(response, chunk);
+        if (!rejected.isEmpty() && rejected.size() == response.getIgnoredCount()) {
+            return settle(chunk, rejected);
+        }
+        if (chunk.size() == 1) {
+            return settle(chunk, chunk);
+        }
+        // the conflicts do not say which values were ignored, so halve the chunk until each rejected value is alone
+        int half = chunk.size() / 2;
+        return push(chunk.subList(0, half), user) + push(chunk.subList(half, chunk.size()), user);
     }
 
-    public List<CommoditySnapshot> getSmsReadySnapshots() {
-        List<CommoditySnapshot> unSyncedSnapshots = getUnSyncedSnapshots();
-        return from(unSyncedSnapshots).filter(new Predicate<CommoditySnapshot>() {
-            @Override
-            public boolean apply(CommoditySnapshot input) {
-                return !input.isSmsSent();
-            }
-        }).toList();
+    private int settle(List<OutboundValue> chunk, List<OutboundValue> rejected) {
+        List<OutboundValue> accepted = new ArrayList<>(chunk);
+        accepted.removeAll(rejected);
+        outboxRepository.markSynced(accepted);
+        outboxRepository.markFailed(rejected);
+        e("==> Syncing...........", format("%d values rejected by the server", rejected.size()));
+        return accepted.size();
     }
 
-    public void syncWithServer(User user) {
-        List<CommoditySnapshot> snapshotsToSync = getUnSyncedSnapshots();
-        if (!isEmpty(snapshotsToSync)) {
-            i("==> Syncing...........", snapshotsToSync.size() + " snapshots");
-            DataValueSet valueSet = toDataValueSet(snapshotsToSync, user.getFacilityCode());
-            try {
-                DataValueSetPushResponse response = lmisServer.pushDataValueSet(valueSet, user);
-                if (response.isSuccess()) {
-                    markSnapShotsAsSynced(snapshotsToSync);
+    // a conflict names a value by its data element, narrowed to a period only when its message carries one;
+    // a conflict that fits no value or several leaves nothing named, so the chunk is halved instead
+    private static List<OutboundValue> rejectedBy(DataValueSetPushResponse response, List<OutboundValue> chunk) {
+        Set<OutboundValue> rejected = new LinkedHashSet<>();
+        for (ImportConflict conflict : response.getConflicts()) {
+            List<OutboundValue> named = new ArrayList<>();
+            List<OutboundValue> namedWithPeriod = new ArrayList<>();
+            for (OutboundValue value : chunk) {
+                DataValue dataValue = value.toDataValue(null);
+                if (conflict.getObject() != null && conflict.getObject().equals(dataValue.getDataElement())) {
+                    named.add(value);
+                    if (conflict.getValue() != null && dataValue.getPeriod() != null && conflict.getValue().contains(dataValue.getPeriod())) {
+                        namedWithPeriod.add(value);
+                    }
                 }
-            } catch (LmisException ex) {
-                e("==> Syncing...........", snapshotsToSync.size() + " snapshots failed");
             }
+            if (!namedWithPeriod.isEmpty()) {
+                named = namedWithPeriod;
+            }
+            if (named.size() != 1) {
+                return new ArrayList<>();
+            }
+            rejected.add(named.get(0));
         }
+        return new ArrayList<>(rejected);
     }
 
     public void syncWithServerThroughSms(User user) {
-        i("SMS Sync", "Checking snapshots...");
-        final List<CommoditySnapshot> snapshots = getSmsReadySnapshots();
-        i("SMS Sync", format("%d snapshots need to be synced through SMS", snapshots.size()));
-        if (!isEmpty(snapshots)) {
-            DataValueSet valueSet = toDataValueSet(snapshots, user.getFacilityCode());
+        i("SMS Sync", "Checking outbox...");
+        final List<OutboundValue> values = getSmsReadyValues();
+        i("SMS Sync", format("%d values need to be synced through SMS", values.size()));
+        if (!isEmpty(values)) {
+            DataValueSet valueSet = toDataValueSet(values, user.getFacilityCode());
             if (smsSyncService.send(valueSet)) {
-                markSnapShotsAsSmsSent(snapshots);
+                outboxRepository.markSmsSent(values);
             }
         }
     }
 
-    private void markSnapShotsAsSmsSent(List<CommoditySnapshot> snapshots) {
-        GenericDao<CommoditySnapshot> dao = new GenericDao<>(CommoditySnapshot.class, context);
-        for (CommoditySnapshot snapshot : snapshots) {
-            snapshot.setSmsSent(true);
-            dao.update(snapshot);
+    private static DataValueSet toDataValueSet(List<OutboundValue> values, String orgUnit) {
+        DataValueSet dataValueSet = new DataValueSet();
+        for (OutboundValue value : values) {
+            dataValueSet.getDataValues().add(value.toDataValue(orgUnit));
         }
+        return dataValueSet;
     }
 
-    private void markSnapShotsAsSynced(final List<CommoditySnapshot> snapshotsToSync) {
-        GenericDao<CommoditySnapshot> dailyCommoditySnapshotDao = new GenericDao<>(CommoditySnapshot.class, context);
-        for (CommoditySnapshot snapshot : snapshotsToSync) {
-            snapshot.setSynced(true);
-            dailyCommoditySnapshotDao.update(snapshot);
+    private class PendingSnapshots implements Runnable {
+        private final Map<String, PendingSnapshot> byKey = new LinkedHashMap<>();
+
+        void add(List<CommoditySnapshotValue> values) {
+            for (CommoditySnapshotValue value : values) {
+                String key = keyOf(value.getCommodityAction(), value.getPeriodDate());
+                if (byKey.containsKey(key)) {
+                    byKey.get(key).increments.add(value.getValue());
+                } else {
+                    byKey.put(key, new PendingSnapshot(value));
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            if (byKey.isEmpty()) {
+                return;
+            }
+            Set<String> actionIds = new HashSet<>();
+            Set<Date> periodDates = new HashSet<>();
+            for (PendingSnapshot pending : byKey.values()) {
+                actionIds.add(pending.first.getCommodityAction().getId());
+                periodDates.add(pending.first.getPeriodDate());
+            }
+            Map<String, CommoditySnapshot> saved = new HashMap<>();
+            for (CommoditySnapshot snapshot : commoditySnapshotRepository.findForActionsAndPeriods(actionIds, periodDates)) {
+                saved.put(keyOf(snapshot.getCommodityAction(), snapshot.getPeriodDate()), snapshot);
+            }
+
+            Map<String, String> archived = archivedValues(saved.keySet());
+
+            List<CommoditySnapshot> created = new ArrayList<>();
+            List<CommoditySnapshot> updated = new ArrayList<>();
+            List<DataValue> outbound = new ArrayList<>();
+            for (Map.Entry<String, PendingSnapshot> entry : byKey.entrySet()) {
+                PendingSnapshot pending = entry.getValue();
+                CommoditySnapshot snapshot = saved.get(entry.getKey());
+                if (snapshot == null) {
+                    snapshot = new CommoditySnapshot(pending.first);
+                    String archivedValue = archived.get(outboxKeyOf(snapshot));
+                    if (archivedValue != null) {
+                        snapshot = new CommoditySnapshot(new CommoditySnapshotValue(pending.first.getCommodityAction(),
+                                archivedValue, pending.first.getPeriodDate()));
+                        snapshot.incrementValue(pending.first.getValue());
+                    }
+                    created.add(snapshot);
+                } else {
+                    snapshot.incrementValue(pending.first.getValue());
+                    updated.add(snapshot);
+                }
+                // applied one at a time, since a non-numeric value replaces rather than adds
+                for (String increment : pending.increments) {
+                    snapshot.incrementValue(increment);
+                }
+                outbound.addAll(snapshot.toDataValues(null));
+            }
+            byKey.clear();
+
+            commoditySnapshotRepository.createAll(created);
+            commoditySnapshotRepository.updateAll(updated);
+            outboxRepository.enqueue(outbound);
+        }
+
+        // a missing snapshot for an archived day was deleted by archival, not never written, so the edit has to
+        // build on the total the server already holds rather than be sent as the whole day on its own
+        private Map<String, String> archivedValues(Set<String> savedKeys) {
+            Date archivedBefore = archivalService.archivedBefore(new Date());
+            List<String> outboxKeys = new ArrayList<>();
+            for (Map.Entry<String, PendingSnapshot> entry : byKey.entrySet()) {
+                CommoditySnapshotValue first = entry.getValue().first;
+                if (!savedKeys.contains(entry.getKey()) && first.getPeriodDate().before(archivedBefore)) {
+                    String outboxKey = outboxKeyOf(new CommoditySnapshot(first));
+                    if (outboxKey != null) {
+                        outboxKeys.add(outboxKey);
+                    }
+                }
+            }
+            return outboxRepository.valuesFor(outboxKeys);
+        }
+
+        // every data set of an action gets the same value, so the first one stands for all of them
+        private String outboxKeyOf(CommoditySnapshot snapshot) {
+            List<DataValue> dataValues = snapshot.toDataValues(null);
+            return dataValues.isEmpty() ? null : OutboundValue.keyOf(dataValues.get(0));
+        }
+
+        private String keyOf(CommodityAction commodityAction, Date periodDate) {
+            // period_date is stored as a day, so values later on the same day land on the same snapshot
+            return format("%s|%s|%tF", commodityAction.getCommodity().getId(), commodityAction.getId(), periodDate);
+        }
+    }
+
+    private static class PendingSnapshot {
+        private final CommoditySnapshotValue first;
+        private final List<String> increments = new ArrayList<>();
+
+        PendingSnapshot(CommoditySnapshotValue first) {
+            this.first = first;
         }
     }
 }
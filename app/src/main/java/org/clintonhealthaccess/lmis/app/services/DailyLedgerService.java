@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+
+import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.models.Adjustment;
+import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
+import org.clintonhealthaccess.lmis.app.models.DispensingItem;
+import org.clintonhealthaccess.lmis.app.models.LossItem;
+import org.clintonhealthaccess.lmis.app.models.ReceiveItem;
+import org.clintonhealthaccess.lmis.app.persistence.Backfill;
+import org.clintonhealthaccess.lmis.app.persistence.BackgroundMigrator;
+import org.clintonhealthaccess.lmis.app.persistence.CachedQuery;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.clintonhealthaccess.lmis.app.models.DailyLedger.EPOCH_DAY;
+
+public class DailyLedgerService implements Backfill {
+
+    private static final CachedQuery<DailyLedger> LEDGER_FOR_DAY = new CachedQuery<DailyLedger>(DailyLedger.class, 2) {
+        @Override
+        protected void define(QueryBuilder<DailyLedger, String> queryBuilder, SelectArg... arguments) throws SQLException {
+            queryBuilder.where().eq("commodity_id", arguments[0]).and().eq(EPOCH_DAY, arguments[1]);
+        }
+    };
+
+    private static final CachedQuery<DailyLedger> LATEST_LEDGER_BEFORE = new CachedQuery<DailyLedger>(DailyLedger.class, 2) {
+        @Override
+        protected void define(QueryBuilder<DailyLedger, String> queryBuilder, SelectArg... arguments) throws SQLException {
+            queryBuilder.where().eq("commodity_id", arguments[0]).and().lt(EPOCH_DAY, arguments[1]);
+            queryBuilder.orderBy(EPOCH_DAY, false).limit(1L);
+        }
+    };
+
+    private static final CachedQuery<DailyLedger> EARLIEST_LEDGER_AFTER = new CachedQuery<DailyLedger>(DailyLedger.class, 2) {
+        @Override
+        protected void define(QueryBuilder<DailyLedger, String> queryBuilder, SelectArg... arguments) throws SQLException {
+            queryBuilder.where().eq("commodity_id", arguments[0]).and().gt(EPOCH_DAY, arguments[1]);
+            queryBuilder.orderBy(EPOCH_DAY, true).limit(1L);
+        }
+    };
+
+    private static final CachedQuery<DailyLedger> LEDGERS_BETWEEN = new CachedQuery<DailyLedger>(DailyLedger.class, 3) {
+        @Override
+        protected void define(QueryBuilder<DailyLedger, String> queryBuilder, SelectArg... arguments) throws SQLException {
+            queryBuilder.where().eq("commodity_id", arguments[0]).and().between(EPOCH_DAY, arguments[1], arguments[2]);
+            queryBuilder.orderBy(EPOCH_DAY, true);
+        }
+    };
+
+    private static final String DAY = "date(daily_ledger.epochDay * 86400, 'unixepoch')";
+
+    @Inject
+    DbUtil dbUtil;
+
+    @Inject
+    Context context;
+
+    @Inject
+    BackgroundMigrator backgroundMigrator;
+
+    public void recordReceived(ReceiveItem receiveItem) {
+        int quantity = receiveItem.getQuantityReceived();
+        DailyLedger ledger = openLedger(receiveItem.getCommodity(), receiveItem.created(), quantity);
+        ledger.addReceived(quantity);
+        String source = receiveItem.getReceive().getSource();
+        if (context.getString(R.string.lga).equalsIgnoreCase(source)) {
+            ledger.addReceivedFromLga(quantity);
+        } else if (context.getString(R.string.zonal_store).equalsIgnoreCase(source)) {
+            ledger.addReceivedFromZonalStore(quantity);
+        } else if (context.getString(R.string.others).equalsIgnoreCase(source)) {
+            ledger.addReceivedFromOthers(quantity);
+        }
+        save(ledger);
+    }
+
+    public void recordDispensed(DispensingItem dispensingItem) {
+        int quantity = dispensingItem.getQuantity();
+        DailyLedger ledger = openLedger(dispensingItem.getCommodity(), dispensingItem.created(), -quantity);
+        ledger.addDispensed(quantity);
+        save(ledger);
+    }
+
+    public void recordLost(LossItem lossItem) {
+        int quantity = lossItem.getTotalLosses();
+        DailyLedger ledger = openLedger(lossItem.getCommodity(), lossItem.created(), -quantity);
+        ledger.addLost(quantity);
+        save(ledger);
+    }
+
+    public void recordAdjustment(Adjustment adjustment) {
+        int quantity = adjustment.getQuantity();
+        DailyLedger ledger = openLedger(adjustment.getCommodity(), adjustment.getCreated(),
+                adjustment.isPositive() ? quantity : -quantity);
+        ledger.addAdjustment(adjustment);
+        save(ledger);
+    }
+
+    public List<DailyLedger> getLedgers(Commodity commodity, Date startDate, Date endDate) {
+        ensureBuilt(commodity);
+        return dbUtil.query(LEDGERS_BETWEEN, commodity.getId(), DateUtil.epochDay(startDate), DateUtil.epochDay(endDate));
+    }
+
+    // one value per day from startDate to endDate inclusive, days without movements are zero
+    public int[] getDailyTotals(Commodity commodity, Date startDate, Date endDate, String column) {
+        ensureBuilt(commodity);
+        long firstDay = DateUtil.epochDay(startDate);
+        long lastDay = DateUtil.epochDay(endDate);
+        int[] totals = new int[(int) Math.max(lastDay - firstDay + 1, 0)];
+
+        String sql = String.format("SELECT epochDay, %s FROM daily_ledger WHERE commodity_id = ? AND epochDay BETWEEN ? AND ?", column);
+        Cursor cursor = database().rawQuery(sql,
+                new String[]{commodity.getId(), String.valueOf(firstDay), String.valueOf(lastDay)});
+        try {
+            while (cursor.moveToNext()) {
+                totals[(int) (cursor.getLong(0) - firstDay)] = cursor.getInt(1);
+            }
+        } finally {
+            cursor.close();
+        }
+        return totals;
+    }
+
+    // only the commodities asked about are built on read, so a report never waits on the whole backfill
+    public Map<String, Integer> getTotalsByCommodity(List<Commodity> commodities, Date startDate, Date endDate, String column) {
+        Map<String, Integer> totals = new HashMap<>();
+        if (commodities.isEmpty()) {
+            return totals;
+        }
+        List<String> arguments = new ArrayList<>();
+        arguments.add(String.valueOf(DateUtil.epochDay(startDate)));
+        arguments.add(String.valueOf(DateUtil.epochDay(endDate)));
+        StringBuilder placeholders = new StringBuilder();
+        for (Commodity commodity : commodities) {
+            ensureBuilt(commodity);
+            arguments.add(commodity.getId());
+            placeholders.append(placeholders.length() == 0 ? "?" : ", ?");
+        }
+        String sql = String.format("SELECT commodity_id, SUM(%s) FROM daily_ledger WHERE epochDay BETWEEN ? AND ? " +
+                "AND commodity_id IN (%s) GROUP BY commodity_id", column, placeholders);
+
+        Cursor cursor = database().rawQuery(sql, arguments.toArray(new String[arguments.size()]));
+        try {
+            while (cursor.moveToNext()) {
+                totals.put(cursor.getString(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return totals;
+    }
+
+    @Override
+    public String getName() {
+        return "daily_ledger";
+    }
+
+    @Override
+    public String migrateChunk(String after, int chunkSize) {
+        List<String> commodityIds = commodityIdsAfter(after, chunkSize);
+        for (String commodityId : commodityIds) {
+            rebuild(commodityId);
+        }
+        return commodityIds.isEmpty() ? null : commodityIds.get(commodityIds.size() - 1);
+    }
+
+    @Override
+    public void migrateKey(String commodityId) {
+        rebuild(commodityId);
+    }
+
+    public void rebuild() {
+        dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+            @Override
+            public Void perform() throws SQLException {
+                for (String commodityId : commodityIdsAfter("", Integer.MAX_VALUE)) {
+                    rebuild(commodityId);
+                }
+                return null;
+            }
+        });
+    }
+
+    // recomputes the commodity's ledger rows from the item, adjustment and snapshot tables
+    private void rebuild(final String commodityId) {
+        dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+            @Override
+            public Void perform() throws SQLException {
+                SQLiteDatabase database = database();
+                database.execSQL("DELETE FROM daily_ledger WHERE commodity_id = ?", new Object[]{commodityId});
+                database.execSQL("INSERT INTO daily_ledger (commodity_id, epochDay, opening, received, receivedFromLga, " +
+                        "receivedFromZonalStore, receivedFromOthers, dispensed, lost, physicalCount, returnedToLga, " +
+                        "receivedFromFacility, sentToFacility, netAdjustment, closing) " +
+                        "SELECT DISTINCT commodity_id, CAST(julianday(created) - 2440587.5 AS INTEGER), " +
+                        "0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 FROM (" +
+                        "SELECT i.commodity_id, a.created FROM dispensingItems i JOIN dispensings a ON i.dispensing_id = a.id " +
+                        "UNION SELECT i.commodity_id, a.created FROM receive_items i JOIN receives a ON i.receive_id = a.id " +
+                        "UNION SELECT i.commodity_id, a.created FROM loss_items i JOIN losses a ON i.loss_id = a.id " +
+                        "UNION SELECT commodity_id, created FROM adjustment) WHERE commodity_id = ?", new Object[]{commodityId});
+                database.execSQL("UPDATE daily_ledger SET " +
+                        "received = " + received("") + ", " +
+                        "receivedFromLga = " + received("AND lower(a.source) = lower(?)") + ", " +
+                        "receivedFromZonalStore = " + received("AND lower(a.source) = lower(?)") + ", " +
+                        "receivedFromOthers = " + received("AND lower(a.source) = lower(?)") + ", " +
+                        "dispensed = (SELECT COALESCE(SUM(i.quantity), 0) FROM dispensingItems i JOIN dispensings a ON i.dispensing_id = a.id " +
+                        "WHERE i.commodity_id = daily_ledger.commodity_id AND a.created = " + DAY + "), " +
+                        "lost = (SELECT COALESCE(SUM(d.value), 0) FROM loss_item_details d JOIN loss_items i ON d.lossItem_id = i.id " +
+                        "JOIN losses a ON i.loss_id = a.id WHERE i.commodity_id = daily_ledger.commodity_id AND a.created = " + DAY + "), " +
+                        "physicalCount = " + adjusted("j.quantity", "AND j.reason = ?") + ", " +
+                        "returnedToLga = " + adjusted("j.quantity", "AND j.reason = ?") + ", " +
+                        "receivedFromFacility = " + adjusted("j.quantity", "AND j.reason = ?") + ", " +
+                        "sentToFacility = " + adjusted("j.quantity", "AND j.reason = ?") + ", " +
+                        "netAdjustment = " + adjusted("CASE WHEN j.positive THEN j.quantity ELSE -j.quantity END", "") + ", " +
+                        "closing = COALESCE((SELECT s.quantity FROM stockitemsnapshot s WHERE s.commodity_id = daily_ledger.commodity_id " +
+                        "AND s.created <= " + DAY + " ORDER BY s.created DESC LIMIT 1), 0) " +
+                        "WHERE commodity_id = ?",
+                        new Object[]{
+                                context.getString(R.string.lga),
+                                context.getString(R.string.zonal_store),
+                                context.getString(R.string.others),
+                                AdjustmentReason.PHYSICAL_COUNT_TEXT,
+                                AdjustmentReason.RETURNED_TO_LGA_TEXT,
+                                AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY_TEXT,
+                                AdjustmentReason.SENT_TO_ANOTHER_FACILITY_TEXT,
+                                commodityId});
+                database.execSQL("UPDATE daily_ledger SET opening = closing - received + dispensed + lost - netAdjustment " +
+                        "WHERE commodity_id = ?", new Object[]{commodityId});
+                return null;
+            }
+        });
+    }
+
+    private List<String> commodityIdsAfter(String after, int limit) {
+        List<String> commodityIds = new ArrayList<>();
+        Cursor cursor = database().rawQuery("SELECT id FROM commodities WHERE id > ? ORDER BY id LIMIT ?",
+                new String[]{after, String.valueOf(limit)});
+        try {
+            while (cursor.moveToNext()) {
+                commodityIds.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return commodityIds;
+    }
+
+    // until the background backfill reaches a commodity its ledger is built on the first read, so reads stay correct
+    private void ensureBuilt(Commodity commodity) {
+        if (!backgroundMigrator.isMigrated(this, commodity.getId())) {
+            backgroundMigrator.migrateKey(this, commodity.getId());
+        }
+    }
+
+    private static String received(String condition) {
+        return "(SELECT COALESCE(SUM(i.quantityReceived), 0) FROM receive_items i JOIN receives a ON i.receive_id = a.id " +
+                "WHERE i.commodity_id = daily_ledger.commodity_id AND a.created = " + DAY + " " + condition + ")";
+    }
+
+    private static String adjusted(String quantity, String condition) {
+        return "(SELECT COALESCE(SUM(" + quantity + "), 0) FROM adjustment j " +
+                "WHERE j.commodity_id = daily_ledger.commodity_id AND j.created = " + DAY + " " + condition + ")";
+    }
+
+    private DailyLedger openLedger(Commodity commodity, Date date, int stockDifference) {
+        long epochDay = DateUtil.epochDay(date);
+        DailyLedger ledger = dbUtil.queryForFirst(LEDGER_FOR_DAY, commodity.getId(), epochDay);
+        if (ledger == null) {
+            ledger = new DailyLedger(commodity, epochDay, openingStock(commodity, epochDay, stockDifference));
+        }
+        ledger.moveStock(stockDifference);
+        shiftLaterDays(commodity, epochDay, stockDifference);
+        return ledger;
+    }
+
+    // called after the stock level has been changed, so the current stock already includes the movement
+    private int openingStock(Commodity commodity, long epochDay, int stockDifference) {
+        DailyLedger previous = dbUtil.queryForFirst(LATEST_LEDGER_BEFORE, commodity.getId(), epochDay);
+        if (previous != null) {
+            return previous.getClosing();
+        }
+        DailyLedger next = dbUtil.queryForFirst(EARLIEST_LEDGER_AFTER, commodity.getId(), epochDay);
+        if (next != null) {
+            return next.getOpening();
+        }
+        return commodity.getStockOnHand() - stockDifference;
+    }
+
+    private void shiftLaterDays(final Commodity commodity, final long epochDay, final int stockDifference) {
+        if (stockDifference == 0) {
+            return;
+        }
+        dbUtil.withDao(DailyLedger.class, new DbUtil.Operation<DailyLedger, Integer>() {
+            @Override
+            public Integer operate(Dao<DailyLedger, String> dao) throws SQLException {
+                String difference = String.valueOf(stockDifference);
+                return dao.updateRaw("UPDATE daily_ledger SET opening = opening + ?, closing = closing + ? " +
+                        "WHERE commodity_id = ? AND epochDay > ?", difference, difference, commodity.getId(), String.valueOf(epochDay));
+            }
+        });
+    }
+
+    private void save(final DailyLedger ledger) {
+        dbUtil.withDao(DailyLedger.class, new DbUtil.Operation<DailyLedger, Void>() {
+            @Override
+            public Void operate(Dao<DailyLedger, String> dao) throws SQLException {
+                dao.createOrUpdate(ledger);
+                return null;
+            }
+        });
+    }
+
+    private SQLiteDatabase database() {
+        return LmisSqliteOpenHelper.getInstance(context).getWritableDatabase();
+    }
+}
@@ -31,18 +31,18 @@ package org.clintonhealthaccess.lmis.app.services;
 
 import android.content.Context;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.FluentIterable;
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
 import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
 
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.models.Dispensing;
 import org.clintonhealthaccess.lmis.app.models.DispensingItem;
 import org.clintonhealthaccess.lmis.app.models.reports.UtilizationValue;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.Repository;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 import org.clintonhealthaccess.lmis.app.utils.Helpers;
 
@@ -62,6 +62,8 @@ public class DispensingService {
     StockService stockService;
     @Inject
     CommoditySnapshotService commoditySnapshotService;
+    @Inject
+    DailyLedgerService dailyLedgerService;
 
     @Inject
     CommodityService commodityService;
@@ -70,29 +72,35 @@ public class DispensingService {
     Context context;
     @Inject
     private DbUtil dbUtil;
+    @Inject
+    private Repository<Dispensing> dispensingRepository;
+    @Inject
+    private Repository<DispensingItem> dispensingItemRepository;
 
-    public void addDispensing(Dispensing dispensing) {
-        GenericDao<Dispensing> dispensingDao = new GenericDao<>(Dispensing.class, context);
-        dispensingDao.create(dispensing);
-        saveDispensingItems(dispensing.getDispensingItems());
-    }
-
-    private void saveDispensingItems(final List<DispensingItem> dispensingItems) {
-        GenericDao<DispensingItem> dao = new GenericDao<>(DispensingItem.class, context);
-        dao.bulkOperation(new DbUtil.Operation<DispensingItem, Object>() {
+    public void addDispensing(final Dispensing dispensing) {
+        dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
             @Override
-            public Object operate(Dao<DispensingItem, String> dao) throws SQLException {
-                for(DispensingItem dispensingItem : dispensingItems){
-                    dao.create(dispensingItem);
-                }
+            public Void perform() throws SQLException {
+                dispensingRepository.create(dispensing);
+                saveDispensingItems(dispensing.getDispensingItems());
                 return null;
             }
         });
+    }
+
+    private void saveDispensingItems(final List<DispensingItem> dispensingItems) {
+        dispensingItemRepository.createAll(dispensingItems);
         for (DispensingItem dispensingItem : dispensingItems) {
             adjustStockLevel(dispensingItem);
+            dailyLedgerService.recordDispensed(dispensingItem);
             commoditySnapshotService.add(dispensingItem);
         }
-        commodityService.addMostDispensedCommoditiesCache(dispensingItems.get(0).getCommodity());
+        dbUtil.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                commodityService.addMostDispensedCommoditiesCache(dispensingItems.get(0).getCommodity());
+            }
+        });
     }
 
     private void adjustStockLevel(DispensingItem dispensing) {
@@ -140,19 +148,15 @@ public class DispensingService {
     }
 
     public List<UtilizationValue> getDispensedValues(Commodity commodity, Date startDate, Date endDate, boolean forVial) {
-        List<DispensingItem> items = GenericService.getItems(commodity, startDate, endDate, Dispensing.class, DispensingItem.class, context);
+        int[] dailyTotals = dailyLedgerService.getDailyTotals(commodity, startDate, endDate, DailyLedger.DISPENSED);
 
         List<UtilizationValue> utilizationValues = new ArrayList<>();
 
         Calendar calendar = DateUtil.calendarDate(startDate);
 
-        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
-
         int dosesPerVial = commodity.dosesPerVial();
 
-        while (calendar.getTime().before(upperLimitDate)) {
-            int dayDispensingItems = getTotal(calendar.getTime(), items);
-
+        for (int dayDispensingItems : dailyTotals) {
             if (forVial) {
                 dayDispensingItems = dayDispensingItems * dosesPerVial;
             }
@@ -164,20 +168,4 @@ public class DispensingService {
         }
         return utilizationValues;
     }
-
-    private int getTotal(final Date date, List<DispensingItem> dispensingItems) {
-        List<DispensingItem> daysDispensingItems = FluentIterable.from(dispensingItems).filter(new Predicate<DispensingItem>() {
-            @Override
-            public boolean apply(DispensingItem input) {
-                return DateUtil.equal(input.created(), date);
-            }
-        }).toList();
-
-        int total = 0;
-        for (DispensingItem dispensingItem : daysDispensingItems) {
-            total += dispensingItem.getQuantity();
-        }
-
-        return total;
-    }
 }
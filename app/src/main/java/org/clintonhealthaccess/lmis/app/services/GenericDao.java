@@ -37,6 +37,7 @@ import com.j256.ormlite.dao.Dao;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 
 import roboguice.RoboGuice;
@@ -114,4 +115,8 @@ public class GenericDao<Model> {
     public void bulkOperation(DbUtil.Operation<Model, Object> operation) {
         dbUtil.withDaoAsBatch(context, type, operation);
     }
+
+    public int bulkUpsert(Collection<Model> objects) {
+        return dbUtil.bulkUpsert(type, objects);
+    }
 }
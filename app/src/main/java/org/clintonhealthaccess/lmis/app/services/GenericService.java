@@ -30,6 +30,8 @@
 package org.clintonhealthaccess.lmis.app.services;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 import com.google.common.base.Predicate;
@@ -40,31 +42,121 @@ import com.j256.ormlite.stmt.QueryBuilder;
 import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.models.BaseItem;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DispensingItem;
+import org.clintonhealthaccess.lmis.app.models.LossItem;
+import org.clintonhealthaccess.lmis.app.models.OrderItem;
+import org.clintonhealthaccess.lmis.app.models.ReceiveItem;
 import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 
 import java.sql.SQLException;
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.clintonhealthaccess.lmis.app.persistence.DbUtil.initialiseDao;
 
 public class GenericService {
 
+    // item class -> {item table, action table, item column referencing the action, quantity expression}
+    private static final Map<Class<? extends BaseItem>, String[]> ITEM_TABLES = new HashMap<>();
+
+    static {
+        ITEM_TABLES.put(DispensingItem.class, new String[]{"dispensingItems", "dispensings", "dispensing_id", "i.quantity"});
+        ITEM_TABLES.put(ReceiveItem.class, new String[]{"receive_items", "receives", "receive_id", "i.quantityReceived"});
+        ITEM_TABLES.put(OrderItem.class, new String[]{"orderitem", "order", "order_id", "i.quantity"});
+        ITEM_TABLES.put(LossItem.class, new String[]{"loss_items", "losses", "loss_id",
+                "(SELECT SUM(d.value) FROM loss_item_details d WHERE d.lossItem_id = i.id)"});
+    }
+
     public static <ActionClass, ItemClass extends BaseItem> int getTotal(Commodity commodity, Date startDate,
                                                                          Date endDate, Class<ActionClass> actionClass,
                                                                          Class<ItemClass> itemClass, Context context) {
-        int totalQuantity = 0;
+        String[] table = itemTable(itemClass);
+        String sql = String.format("SELECT SUM(%s) FROM `%s` i JOIN `%s` a ON i.%s = a.id " +
+                "WHERE i.commodity_id = ? AND a.created BETWEEN ? AND ?", table[3], table[0], table[1], table[2]);
+
+        Cursor cursor = database(context).rawQuery(sql,
+                new String[]{commodity.getId(), formatCreated(startDate), formatCreated(endDate)});
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public static <ActionClass, ItemClass extends BaseItem> Map<String, Integer> getTotalsByCommodity(
+            Date startDate, Date endDate, Class<ActionClass> actionClass, Class<ItemClass> itemClass, Context context) {
+        String[] table = itemTable(itemClass);
+        String sql = String.format("SELECT i.commodity_id, SUM(%s) FROM `%s` i JOIN `%s` a ON i.%s = a.id " +
+                "WHERE a.created BETWEEN ? AND ? GROUP BY i.commodity_id", table[3], table[0], table[1], table[2]);
+
+        Map<String, Integer> totals = new HashMap<>();
+        Cursor cursor = database(context).rawQuery(sql, new String[]{formatCreated(startDate), formatCreated(endDate)});
+        try {
+            while (cursor.moveToNext()) {
+                totals.put(cursor.getString(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return totals;
+    }
 
-        List<ItemClass> items = getItems(commodity, startDate, endDate, actionClass, itemClass, context);
+    public static int getTotal(Map<String, Integer> totalsByCommodity, Commodity commodity) {
+        Integer total = totalsByCommodity.get(commodity.getId());
+        return total == null ? 0 : total;
+    }
 
-        for (ItemClass item : items) {
-            totalQuantity += item.getQuantity();
+    // one total per day from startDate to endDate inclusive, days without items are zero
+    public static <ActionClass, ItemClass extends BaseItem> int[] getDailyTotals(Commodity commodity, Date startDate,
+                                                                               Date endDate, Class<ActionClass> actionClass,
+                                                                               Class<ItemClass> itemClass, Context context) {
+        Map<String, Integer> dayIndexes = new HashMap<>();
+        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
+        for (Date day = startDate; day.before(upperLimitDate); day = DateUtil.addDayOfMonth(day, 1)) {
+            dayIndexes.put(formatCreated(day), dayIndexes.size());
         }
 
-        return totalQuantity;
+        String[] table = itemTable(itemClass);
+        String sql = String.format("SELECT date(a.created), SUM(%s) FROM `%s` i JOIN `%s` a ON i.%s = a.id " +
+                "WHERE i.commodity_id = ? AND a.created BETWEEN ? AND ? GROUP BY date(a.created)",
+                table[3], table[0], table[1], table[2]);
+
+        int[] totals = new int[dayIndexes.size()];
+        Cursor cursor = database(context).rawQuery(sql,
+                new String[]{commodity.getId(), formatCreated(startDate), formatCreated(endDate)});
+        try {
+            while (cursor.moveToNext()) {
+                Integer index = dayIndexes.get(cursor.getString(0));
+                if (index != null) {
+                    totals[index] = cursor.getInt(1);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return totals;
     }
 
+    private static String[] itemTable(Class<? extends BaseItem> itemClass) {
+        String[] table = ITEM_TABLES.get(itemClass);
+        if (table == null) {
+            throw new LmisException("No aggregation defined for " + itemClass.getSimpleName());
+        }
+        return table;
+    }
+
+    private static SQLiteDatabase database(Context context) {
+        return LmisSqliteOpenHelper.getInstance(context).getReadableDatabase();
+    }
+
+    // matches the DATE_STRING format of the created column on every action table
+    private static String formatCreated(Date date) {
+        return new SimpleDateFormat("yyyy-MM-dd").format(date);
+    }
 
     public static <ActionClass, ItemClass extends BaseItem> List<ItemClass> getItems(Commodity commodity, Date startDate,
                                                                          Date endDate, Class<ActionClass> actionClass,
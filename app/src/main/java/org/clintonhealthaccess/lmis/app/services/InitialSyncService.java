@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.j256.ormlite.dao.Dao;
+
+import org.clintonhealthaccess.lmis.app.models.Category;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
+import org.clintonhealthaccess.lmis.app.models.InitialSyncCheckpoint;
+import org.clintonhealthaccess.lmis.app.models.OrderType;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.sms.SmsSyncService;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// runs the first sync as a list of phases and records each one that finishes, so a dropped link only costs the phase it cut short
+@Singleton
+public class InitialSyncService {
+    public enum Phase {
+        CATALOG, CONSTANTS, ACTION_VALUES, STOCK, ALLOCATIONS, INDICATOR_VALUES, ORDER_SETTINGS, SMS_GATEWAY, ALERTS
+    }
+
+    public interface ProgressListener {
+        void phaseStarted(Phase phase, int completedPhases, int totalPhases);
+    }
+
+    private static final Download NOTHING = new Download() {
+        @Override
+        public int save() {
+            return 0;
+        }
+    };
+
+    @Inject
+    private CommodityService commodityService;
+
+    @Inject
+    private OrderService orderService;
+
+    @Inject
+    private SmsSyncService smsSyncService;
+
+    @Inject
+    private AlertsService alertsService;
+
+    @Inject
+    private BootstrapService bootstrapService;
+
+    @Inject
+    private DbUtil dbUtil;
+
+    public boolean isInterrupted() {
+        // installs that synced before checkpoints existed have no rows and count as done
+        return dbUtil.withDao(InitialSyncCheckpoint.class, new DbUtil.Operation<InitialSyncCheckpoint, Boolean>() {
+            @Override
+            public Boolean operate(Dao<InitialSyncCheckpoint, String> dao) throws SQLException {
+                return dao.queryBuilder().where().eq("completed", false).countOf() > 0;
+            }
+        });
+    }
+
+    public void run(final User user, ProgressListener listener) {
+        Map<String, InitialSyncCheckpoint> checkpoints = checkpoints();
+        Phase[] phases = Phase.values();
+        int completed = 0;
+        for (final Phase phase : phases) {
+            final InitialSyncCheckpoint checkpoint = checkpoints.get(phase.name());
+            if (checkpoint.isCompleted()) {
+                Log.i("Inital sync:", phase + " already done, skipping");
+                completed++;
+                continue;
+            }
+            listener.phaseStarted(phase, completed, phases.length);
+
+            checkpoint.started();
+            save(checkpoint);
+            long start = SystemClock.elapsedRealtime();
+            // the download runs before the transaction opens, so a slow link never keeps the database locked;
+            // a failed fetch throws from here and leaves the checkpoint pending
+            final Download download = fetch(phase, user);
+            // the rows and the checkpoint commit together, so a retry never finds half a phase on disk
+            int rows = dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Integer>() {
+                @Override
+                public Integer perform() throws SQLException {
+                    int rows = download.save();
+                    checkpoint.completed(rows);
+                    save(checkpoint);
+                    return rows;
+                }
+            });
+            Log.i("Inital sync:", withRate(phase.name(), rows, start));
+            completed++;
+        }
+        bootstrapService.release();
+    }
+
+    // what a phase brought back from the server, written by save inside the phase's transaction
+    private interface Download {
+        int save();
+    }
+
+    private Download fetch(Phase phase, final User user) {
+        switch (phase) {
+            case CATALOG:
+                final List<Category> categories = commodityService.fetchCatalog(user);
+                return new Download() {
+                    @Override
+                    public int save() {
+                        return commodityService.saveCatalog(categories);
+                    }
+                };
+            case CONSTANTS:
+                // constants go to preferences, which are only written once both have arrived
+                commodityService.syncConstants(user);
+                return NOTHING;
+            case ACTION_VALUES:
+                // full batches are upserted while the values stream in, so a retry rewrites rather than duplicates them;
+                // the rest and the watermark commit with the checkpoint, so a retry fetches only what changed after it
+                final CommodityActionService.BatchedUpsert actionValues = commodityService.fetchActionValues(user);
+                return new Download() {
+                    @Override
+                    public int save() {
+                        return commodityService.saveActionValues(actionValues);
+                    }
+                };
+            case STOCK:
+                return new Download() {
+                    @Override
+                    public int save() {
+                        return commodityService.initialiseStock();
+                    }
+                };
+            case ALLOCATIONS:
+                final List<CommodityActionValue> allocations = commodityService.fetchAllocations(user);
+                return new Download() {
+                    @Override
+                    public int save() {
+                        return commodityService.saveAllocations(user, allocations);
+                    }
+                };
+            case INDICATOR_VALUES:
+                final CommodityActionService.BatchedUpsert indicatorValues = commodityService.fetchIndicatorValues(user);
+                return new Download() {
+                    @Override
+                    public int save() {
+                        return commodityService.saveIndicatorValues(indicatorValues);
+                    }
+                };
+            case ORDER_SETTINGS:
+                final List<String> reasons = orderService.fetchOrderReasons();
+                final List<OrderType> types = orderService.fetchOrderTypes();
+                return new Download() {
+                    @Override
+                    public int save() {
+                        int rows = orderService.saveOrderReasons(reasons).size();
+                        orderService.saveOrderTypes(types);
+                        return rows;
+                    }
+                };
+            case SMS_GATEWAY:
+                smsSyncService.syncGatewayNumber();
+                return NOTHING;
+            case ALERTS:
+                return new Download() {
+                    @Override
+                    public int save() {
+                        alertsService.updateLowStockAlerts();
+                        return 0;
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("Unknown initial sync phase " + phase);
+        }
+    }
+
+    private Map<String, InitialSyncCheckpoint> checkpoints() {
+        return dbUtil.withDao(InitialSyncCheckpoint.class, new DbUtil.Operation<InitialSyncCheckpoint, Map<String, InitialSyncCheckpoint>>() {
+            @Override
+            public Map<String, InitialSyncCheckpoint> operate(Dao<InitialSyncCheckpoint, String> dao) throws SQLException {
+                Map<String, InitialSyncCheckpoint> checkpoints = new HashMap<>();
+                for (InitialSyncCheckpoint checkpoint : dao.queryForAll()) {
+                    checkpoints.put(checkpoint.getPhase(), checkpoint);
+                }
+                // every phase is written as pending up front, which is what marks a sync as started but not finished
+                for (Phase phase : Phase.values()) {
+                    if (!checkpoints.containsKey(phase.name())) {
+                        InitialSyncCheckpoint checkpoint = new InitialSyncCheckpoint(phase.name());
+                        dao.create(checkpoint);
+                        checkpoints.put(phase.name(), checkpoint);
+                    }
+                }
+                return checkpoints;
+            }
+        });
+    }
+
+    private void save(final InitialSyncCheckpoint checkpoint) {
+        dbUtil.withDao(InitialSyncCheckpoint.class, new DbUtil.Operation<InitialSyncCheckpoint, Void>() {
+            @Override
+            public Void operate(Dao<InitialSyncCheckpoint, String> dao) throws SQLException {
+                dao.update(checkpoint);
+                return null;
+            }
+        });
+    }
+
+    private String withRate(String label, int rows, long startedAt) {
+        long elapsed = Math.max(SystemClock.elapsedRealtime() - startedAt, 1);
+        return String.format("%s (%d rows, %d rows/s)", label, rows, rows * 1000L / elapsed);
+    }
+}
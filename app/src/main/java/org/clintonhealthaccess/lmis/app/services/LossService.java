@@ -29,19 +29,20 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
-import android.content.Context;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.FluentIterable;
 import com.google.inject.Inject;
 
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.models.Loss;
 import org.clintonhealthaccess.lmis.app.models.LossItem;
 import org.clintonhealthaccess.lmis.app.models.LossItemDetail;
 import org.clintonhealthaccess.lmis.app.models.reports.UtilizationValue;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.Repository;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -49,76 +50,67 @@ import java.util.List;
 
 public class LossService {
 
-    @Inject
-    Context context;
-
     @Inject
     private StockService stockService;
 
     @Inject
     private CommoditySnapshotService snapshotService;
 
+    @Inject
+    private DailyLedgerService dailyLedgerService;
+
     @Inject
     CommodityService commodityService;
 
-    public void saveLoss(Loss loss) {
-        GenericDao<Loss> lossDao = new GenericDao<>(Loss.class, context);
-        lossDao.create(loss);
-        saveLossItems(loss.getLossItems());
+    @Inject
+    private DbUtil dbUtil;
+
+    @Inject
+    private Repository<Loss> lossRepository;
+
+    @Inject
+    private Repository<LossItem> lossItemRepository;
+
+    @Inject
+    private Repository<LossItemDetail> lossItemDetailRepository;
+
+    public void saveLoss(final Loss loss) {
+        dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+            @Override
+            public Void perform() throws SQLException {
+                lossRepository.create(loss);
+                saveLossItems(loss.getLossItems());
+                return null;
+            }
+        });
     }
 
     private void saveLossItems(List<LossItem> lossItems) {
-        GenericDao<LossItem> lossItemDao = new GenericDao<>(LossItem.class, context);
         for (LossItem lossItem : lossItems) {
-            lossItemDao.create(lossItem);
-            saveLossItemDetails(lossItem.getLossItemDetails());
+            lossItemRepository.create(lossItem);
+            lossItemDetailRepository.createAll(lossItem.getLossItemDetails());
             adjustStockLevel(lossItem);
+            dailyLedgerService.recordLost(lossItem);
             snapshotService.add(lossItem);
         }
     }
 
-    private void saveLossItemDetails(List<LossItemDetail> lossItemDetails) {
-        GenericDao<LossItemDetail> lossItemDetailDao = new GenericDao<>(LossItemDetail.class, context);
-        for (LossItemDetail lossItemDetail : lossItemDetails) {
-            lossItemDetailDao.create(lossItemDetail);
-        }
-    }
-
     private void adjustStockLevel(LossItem lossItem) {
         stockService.reduceStockLevelFor(lossItem.getCommodity(), lossItem.getTotalLosses(), lossItem.created());
     }
 
     public List<UtilizationValue> getLossesValues(Commodity commodity, Date startDate, Date endDate) {
-        List<LossItem> lossItems = GenericService.getItems(commodity, startDate, endDate, Loss.class, LossItem.class, context);
+        int[] dailyTotals = dailyLedgerService.getDailyTotals(commodity, startDate, endDate, DailyLedger.LOST);
 
         List<UtilizationValue> utilizationValues = new ArrayList<>();
 
         Calendar calendar = DateUtil.calendarDate(startDate);
-        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
-        while (calendar.getTime().before(upperLimitDate)) {
-            int dayReceiveItems = getTotal(calendar.getTime(), lossItems);
+        for (int dayLossItems : dailyTotals) {
             UtilizationValue utilizationValue =
-                    new UtilizationValue(DateUtil.dayNumber(calendar.getTime()), dayReceiveItems);
+                    new UtilizationValue(DateUtil.dayNumber(calendar.getTime()), dayLossItems);
             utilizationValues.add(utilizationValue);
             calendar.add(Calendar.DAY_OF_MONTH, 1);
         }
         return utilizationValues;
     }
-
-
-    private int getTotal(final Date date, List<LossItem> lossItems) {
-        List<LossItem> daysLossItems = FluentIterable.from(lossItems).filter(new Predicate<LossItem>() {
-            @Override
-            public boolean apply(LossItem input) {
-                return DateUtil.equal(input.getLoss().getCreated(), date);
-            }
-        }).toList();
-
-        int totalLoss = 0;
-        for (LossItem lossItem : daysLossItems) {
-            totalLoss += lossItem.getQuantity();
-        }
-
-        return totalLoss;
-    }
 }
@@ -64,8 +64,15 @@ public class OrderService implements OrderItemSaver {
     private AlertsService alertsService;
 
     public List<OrderReason> syncOrderReasons() {
+        return saveOrderReasons(fetchOrderReasons());
+    }
+
+    public List<String> fetchOrderReasons() {
+        return lmisServer.fetchOrderReasons(userService.getRegisteredUser());
+    }
+
+    public List<OrderReason> saveOrderReasons(final List<String> reasons) {
         final ArrayList<OrderReason> savedReasons = new ArrayList<>();
-        final List<String> reasons = lmisServer.fetchOrderReasons(userService.getRegisteredUser());
         dbUtil.withDao(OrderReason.class, new DbUtil.Operation<OrderReason, Void>() {
             @Override
             public Void operate(Dao<OrderReason, String> dao) throws SQLException {
@@ -139,16 +146,23 @@ public class OrderService implements OrderItemSaver {
     }
 
     public void saveOrder(final Order order) {
-        dbUtil.withDao(Order.class, new DbUtil.Operation<Order, Void>() {
+        // the items' snapshots are written together with the order, or not at all
+        dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
             @Override
-            public Void operate(Dao<Order, String> dao) throws SQLException {
-                dao.create(order);
+            public Void perform() throws SQLException {
+                dbUtil.withDao(Order.class, new DbUtil.Operation<Order, Void>() {
+                    @Override
+                    public Void operate(Dao<Order, String> dao) throws SQLException {
+                        dao.create(order);
+                        return null;
+                    }
+                });
+
+                order.saveOrderItems(OrderService.this);
                 return null;
             }
         });
 
-        order.saveOrderItems(this);
-
         if (!order.getOrderType().isRoutine()) {
             alertsService.disableAlertsForCommodities(getCommoditiesInOrder(order));
         } else if (order.getOrderType().isRoutine()) {
@@ -178,7 +192,14 @@ public class OrderService implements OrderItemSaver {
     }
 
     public void syncOrderTypes() {
-        final List<OrderType> orderTypes = lmisServer.fetchOrderTypes(userService.getRegisteredUser());
+        saveOrderTypes(fetchOrderTypes());
+    }
+
+    public List<OrderType> fetchOrderTypes() {
+        return lmisServer.fetchOrderTypes(userService.getRegisteredUser());
+    }
+
+    public void saveOrderTypes(final List<OrderType> orderTypes) {
         dbUtil.withDao(OrderType.class, new DbUtil.Operation<OrderType, Void>() {
             @Override
             public Void operate(Dao<OrderType, String> dao) throws SQLException {
@@ -29,24 +29,20 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
-import android.content.Context;
 import android.util.Log;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.FluentIterable;
 import com.google.inject.Inject;
-import com.j256.ormlite.misc.TransactionManager;
 
 import org.clintonhealthaccess.lmis.app.events.AllocationCreateEvent;
 import org.clintonhealthaccess.lmis.app.models.Allocation;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.models.Receive;
 import org.clintonhealthaccess.lmis.app.models.ReceiveItem;
 import org.clintonhealthaccess.lmis.app.models.reports.UtilizationValue;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
-import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
+import org.clintonhealthaccess.lmis.app.persistence.Repository;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
-import de.greenrobot.event.EventBus;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -54,13 +50,9 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.Callable;
 
 public class ReceiveService {
 
-    @Inject
-    Context context;
-
     @Inject
     StockService stockService;
     @Inject
@@ -71,12 +63,21 @@ public class ReceiveService {
     @Inject
     CommoditySnapshotService commoditySnapshotService;
 
+    @Inject
+    DailyLedgerService dailyLedgerService;
+
     @Inject
     CommodityService commodityService;
 
     @Inject
     DbUtil dbUtil;
 
+    @Inject
+    Repository<Receive> receiveRepository;
+
+    @Inject
+    Repository<ReceiveItem> receiveItemRepository;
+
     public List<String> getReadyAllocationIds() {
         return new ArrayList<>(Arrays.asList("UG-2004", "UG-2005"));
     }
@@ -85,50 +86,52 @@ public class ReceiveService {
         return new ArrayList<>();
     }
 
-    public void saveReceive(final Receive receive) throws Exception{
-            TransactionManager.callInTransaction(LmisSqliteOpenHelper.getInstance(context).getConnectionSource(), new
-                    Callable<Object>() {
-                        @Override
-                        public Object call() throws Exception {
-                            GenericDao<Receive> receiveDao = new GenericDao<>(Receive.class, context);
-                            receiveDao.create(receive);
-                            saveReceiveItems(receive.getReceiveItems());
-
-                            if (receive.getAllocation() != null) {
-                                Allocation allocation = receive.getAllocation();
-                                allocation.setReceived(true);
-                                if (!allocation.isDummy()) {
-                                    allocationService.update(allocation);
-                                    alertsService.deleteAllocationAlert(allocation);
-                                } else {
-                                    allocationService.createAllocation(allocation);
-                                    EventBus.getDefault().post(new AllocationCreateEvent(receive.getAllocation()));
-                                }
-                            }
-                            return null;
-                        }
-                    });
+    public void saveReceive(final Receive receive) throws Exception {
+        dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+            @Override
+            public Void perform() throws SQLException {
+                receiveRepository.create(receive);
+                saveReceiveItems(receive.getReceiveItems());
+
+                if (receive.getAllocation() != null) {
+                    Allocation allocation = receive.getAllocation();
+                    allocation.setReceived(true);
+                    if (!allocation.isDummy()) {
+                        allocationService.update(allocation);
+                        alertsService.deleteAllocationAlert(allocation);
+                    } else {
+                        allocationService.createAllocation(allocation);
+                        dbUtil.postAfterCommit(new AllocationCreateEvent(receive.getAllocation()));
+                    }
+                }
+                return null;
+            }
+        });
     }
 
     private void saveReceiveItems(List<ReceiveItem> receiveItems) {
-        GenericDao<ReceiveItem> receiveItemDao = new GenericDao<>(ReceiveItem.class, context);
         for (ReceiveItem receiveItem : receiveItems) {
-            receiveItemDao.create(receiveItem);
+            receiveItemRepository.create(receiveItem);
             stockService.increaseStockLevelFor(receiveItem.getCommodity(), receiveItem.getQuantityReceived(), receiveItem.created());
+            dailyLedgerService.recordReceived(receiveItem);
             commoditySnapshotService.add(receiveItem);
         }
-        alertsService.updateLowStockAlerts();
+        // low stock alerts read the category cache, which is only refreshed once the receive commits
+        dbUtil.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                alertsService.updateLowStockAlerts();
+            }
+        });
     }
 
     public List<UtilizationValue> getReceivedValues(Commodity commodity, Date startDate, Date endDate) {
-        List<ReceiveItem> receiveItems = GenericService.getItems(commodity, startDate, endDate, Receive.class, ReceiveItem.class, context);
+        int[] dailyTotals = dailyLedgerService.getDailyTotals(commodity, startDate, endDate, DailyLedger.RECEIVED);
 
         List<UtilizationValue> utilizationValues = new ArrayList<>();
 
         Calendar calendar = DateUtil.calendarDate(startDate);
-        Date upperLimitDate = DateUtil.addDayOfMonth(endDate, 1);
-        while (calendar.getTime().before(upperLimitDate)) {
-            int dayReceiveItems = getTotal(calendar.getTime(), receiveItems);
+        for (int dayReceiveItems : dailyTotals) {
             UtilizationValue utilizationValue =
                     new UtilizationValue(DateUtil.dayNumber(calendar.getTime()), dayReceiveItems);
             utilizationValues.add(utilizationValue);
@@ -136,21 +139,4 @@ public class ReceiveService {
         }
         return utilizationValues;
     }
-
-    public int getTotal(final Date date, List<ReceiveItem> receiveItems) {
-        List<ReceiveItem> daysReceiveItems = FluentIterable.from(receiveItems).filter(new Predicate<ReceiveItem>() {
-            @Override
-            public boolean apply(ReceiveItem input) {
-                return DateUtil.equal(input.getReceive().getCreated(), date);
-            }
-        }).toList();
-
-        int totalReceived = 0;
-        for (ReceiveItem receiveItem : daysReceiveItems) {
-            totalReceived += receiveItem.getQuantityReceived();
-        }
-
-        return totalReceived;
-    }
-
 }
@@ -33,25 +33,16 @@ import android.content.Context;
 import android.util.Log;
 
 import com.google.common.base.Function;
-import com.google.common.base.Predicate;
-import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimaps;
 import com.google.inject.Inject;
 import com.thoughtworks.dhis.models.DataElementType;
 
 import org.clintonhealthaccess.lmis.app.R;
-import org.clintonhealthaccess.lmis.app.models.Adjustment;
-import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
 import org.clintonhealthaccess.lmis.app.models.Category;
 import org.clintonhealthaccess.lmis.app.models.Commodity;
-import org.clintonhealthaccess.lmis.app.models.Dispensing;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
 import org.clintonhealthaccess.lmis.app.models.DispensingItem;
-import org.clintonhealthaccess.lmis.app.models.Loss;
-import org.clintonhealthaccess.lmis.app.models.LossItem;
-import org.clintonhealthaccess.lmis.app.models.Receive;
-import org.clintonhealthaccess.lmis.app.models.ReceiveItem;
-import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
 import org.clintonhealthaccess.lmis.app.models.reports.BinCard;
 import org.clintonhealthaccess.lmis.app.models.reports.BinCardItem;
 import org.clintonhealthaccess.lmis.app.models.reports.ConsumptionValue;
@@ -67,12 +58,10 @@ import org.joda.time.DateTime;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
-
-import static org.clintonhealthaccess.lmis.app.services.GenericService.getItemsByDate;
+import java.util.Map;
 
 public class ReportsService {
 
@@ -93,6 +82,8 @@ public class ReportsService {
 
     @Inject
     private CategoryService categoryService;
+    @Inject
+    private DailyLedgerService dailyLedgerService;
 
     public List<FacilityStockReportItem> getFacilityReportItemsForCategory(
             Category category, String startingYear, String startingMonth, String endingYear, String endingMonth) {
@@ -104,21 +95,24 @@ public class ReportsService {
             Date endDate = convertToDate(endingYear, endingMonth, false);
 
             category = categoryService.get(category);
+            List<Commodity> commodities = category.getCommodities();
 
-            for (Commodity commodity : category.getCommodities()) {
+            Map<String, Integer> received = dailyLedgerService.getTotalsByCommodity(commodities, startingDate, endDate, DailyLedger.RECEIVED);
+            Map<String, Integer> dispensed = dailyLedgerService.getTotalsByCommodity(commodities, startingDate, endDate, DailyLedger.DISPENSED);
+            Map<String, Integer> lost = dailyLedgerService.getTotalsByCommodity(commodities, startingDate, endDate, DailyLedger.LOST);
+            Map<String, Integer> adjusted = dailyLedgerService.getTotalsByCommodity(commodities, startingDate, endDate, DailyLedger.NET_ADJUSTMENT);
+
+            for (Commodity commodity : commodities) {
 
                 int openingStock = stockItemSnapshotService.getLatestStock(commodity, startingDate, true);
 
-                int quantityReceived = GenericService.getTotal(commodity, startingDate, endDate,
-                        Receive.class, ReceiveItem.class, context);
-                int quantityDispensed = GenericService.getTotal(commodity, startingDate, endDate,
-                        Dispensing.class, DispensingItem.class, context);
-                int quantityLost = GenericService.getTotal(commodity, startingDate, endDate,
-                        Loss.class, LossItem.class, context);
+                int quantityReceived = GenericService.getTotal(received, commodity);
+                int quantityDispensed = GenericService.getTotal(dispensed, commodity);
+                int quantityLost = GenericService.getTotal(lost, commodity);
 
                 int minThreshold = commodityActionService.getMonthlyValue(commodity, startingDate, endDate, DataElementType.MIN_STOCK_QUANTITY);
 
-                int quantityAdjusted = adjustmentService.totalAdjustment(commodity, startingDate, endDate);
+                int quantityAdjusted = GenericService.getTotal(adjusted, commodity);
 
                 int stockOnHand = stockItemSnapshotService.getLatestStock(commodity, endDate, false);
 
@@ -165,12 +159,10 @@ public class ReportsService {
 
     protected ArrayList<ConsumptionValue> getConsumptionValuesForCommodityBetweenDates(final Commodity commodity, final Date startingDate, final Date endDate) {
         ArrayList<ConsumptionValue> consumptionValues = new ArrayList<>();
-        List<DispensingItem> dispensingItems = GenericService.getItems(commodity, startingDate, endDate, Dispensing.class, DispensingItem.class, context);
+        int[] dailyTotals = dailyLedgerService.getDailyTotals(commodity, startingDate, endDate, DailyLedger.DISPENSED);
 
-        Date stopDate = DateUtil.addDayOfMonth(endDate, 1);
         Date currentDate = startingDate;
-        while (currentDate.before(stopDate)) {
-            int total = GenericService.getTotal(currentDate, dispensingItems);
+        for (int total : dailyTotals) {
             ConsumptionValue consumptionValue = new ConsumptionValue(currentDate, total);
             consumptionValues.add(consumptionValue);
             currentDate = DateUtil.addDayOfMonth(currentDate, 1);
@@ -222,22 +214,26 @@ public class ReportsService {
             Date endDate = convertToDate(endingYear, endingMonth, false);
 
             category = categoryService.get(category);
-            for (Commodity commodity : category.getCommodities()) {
+            List<Commodity> commodities = category.getCommodities();
+
+            Map<String, Integer> received = dailyLedgerService.getTotalsByCommodity(commodities, startingDate, endDate, DailyLedger.RECEIVED);
+            Map<String, Integer> dispensed = dailyLedgerService.getTotalsByCommodity(commodities, startingDate, endDate, DailyLedger.DISPENSED);
+            Map<String, Integer> lost = dailyLedgerService.getTotalsByCommodity(commodities, startingDate, endDate, DailyLedger.LOST);
+            Map<String, Integer> receivedFromFacility = dailyLedgerService.getTotalsByCommodity(commodities, startingDate, endDate, DailyLedger.RECEIVED_FROM_FACILITY);
+            Map<String, Integer> sentToFacility = dailyLedgerService.getTotalsByCommodity(commodities, startingDate, endDate, DailyLedger.SENT_TO_FACILITY);
+            for (Commodity commodity : commodities) {
 
                 int openingStock = stockItemSnapshotService.getLatestStock(commodity, startingDate, true);
 
-                int quantityReceived = GenericService.getTotal(commodity, startingDate, endDate,
-                        Receive.class, ReceiveItem.class, context);
+                int quantityReceived = GenericService.getTotal(received, commodity);
                 // quantity Received should add up adjustment with reason "Received from other facilities"
-                quantityReceived += adjustmentService.totalAdjustment(commodity, startingDate, endDate, AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY);
+                quantityReceived += GenericService.getTotal(receivedFromFacility, commodity);
 
-                int quantityDispensedToClients = GenericService.getTotal(commodity, startingDate, endDate,
-                        Dispensing.class, DispensingItem.class, context);
+                int quantityDispensedToClients = GenericService.getTotal(dispensed, commodity);
 
-                int quantityLost = GenericService.getTotal(commodity, startingDate, endDate,
-                        Loss.class, LossItem.class, context);
+                int quantityLost = GenericService.getTotal(lost, commodity);
 
-                int commoditiesDispensedToFacilities = adjustmentService.totalAdjustment(commodity, startingDate, endDate, AdjustmentReason.SENT_TO_ANOTHER_FACILITY);
+                int commoditiesDispensedToFacilities = GenericService.getTotal(sentToFacility, commodity);
 
                 // quantityAdjusted only refers to quantity sent to other facilities, equal to dispensed to facilities
                 int quantityAdjusted = commoditiesDispensedToFacilities;
@@ -301,122 +297,56 @@ public class ReportsService {
 
     public BinCard generateBinCard(Commodity commodity) throws Exception {
 
-        List<String> receiveSources = Arrays.asList(context.getString(R.string.lga),
-                context.getString(R.string.zonal_store), context.getString(R.string.others));
-
         Date today = new Date();
-        Date tomorrow = DateUtil.addDayOfMonth(today, 1);
         Date startDate = DateUtil.addDayOfMonth(today, -31);
 
-        List<ReceiveItem> receiveItems = GenericService.getItems(commodity, startDate, today, Receive.class, ReceiveItem.class, context);
-        List<DispensingItem> dispensingItems = GenericService.getItems(commodity, startDate, today, Dispensing.class, DispensingItem.class, context);
-        List<LossItem> lossItems = GenericService.getItems(commodity, startDate, today, Loss.class, LossItem.class, context);
-        List<StockItemSnapshot> stockItemSnapshots = stockItemSnapshotService.get(commodity, startDate, today);
-        List<Adjustment> adjustments = adjustmentService.getAdjustments(commodity, startDate, today);
-
-        int previousDaysClosingStock = stockItemSnapshotService.getLatestStock(commodity, startDate, false);
-
         List<BinCardItem> binCardItems = new ArrayList<>();
-        Date date = startDate;
-        while (date.before(tomorrow)) {
-
+        for (DailyLedger ledger : dailyLedgerService.getLedgers(commodity, startDate, today)) {
+            Date date = ledger.getDate();
             List<BinCardItem> binCardItemsForDate = new ArrayList<>();
 
-            int quantityDispensed = GenericService.getTotal(date, dispensingItems);
-            int quantityLost = GenericService.getTotal(date, lossItems);
-            int closingBalance = previousDaysClosingStock;
-
-            List<ReceivedBySource> receivedBySources = new ArrayList<>();
-            for (final String source : receiveSources) {
-                List<ReceiveItem> receiveItemsForDate = getItemsByDate(date, receiveItems);
-                List<ReceiveItem> sourceReceiveItems = FluentIterable.from(receiveItemsForDate).filter(new Predicate<ReceiveItem>() {
-                    @Override
-                    public boolean apply(ReceiveItem input) {
-                        return input.getReceive().getSource().equalsIgnoreCase(source);
-                    }
-                }).toList();
-
-                int quantityReceived = 0;
-                if (sourceReceiveItems != null) {
-                    for (ReceiveItem item : sourceReceiveItems) {
-                        quantityReceived += item.getQuantity();
-                    }
-                }
+            int quantityAdjusted = ledger.getPhysicalCount() + ledger.getReturnedToLga();
 
-                if (quantityReceived > 0) {
-                    receivedBySources.add(new ReceivedBySource(quantityReceived, source));
-                }
+            // date, source, received, dispensed, lost, adjusted, stockBalance
+            if (ledger.getDispensed() > 0) {
+                binCardItemsForDate.add(new BinCardItem(date, "", 0, ledger.getDispensed(), 0, 0, -1));
             }
 
-            int quantitySentToAnotherFacility =
-                    adjustmentService.totalAdjustment(
-                            commodity, adjustments, date, AdjustmentReason.SENT_TO_ANOTHER_FACILITY);
-
-            int quantityReceivedFromAnotherFacility =
-                    adjustmentService.totalAdjustment(commodity, adjustments, date,
-                            AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY);
-
-            int quantityAdjusted = adjustmentService.totalAdjustment(
-                    commodity, adjustments, date,
-                    Arrays.asList(AdjustmentReason.PHYSICAL_COUNT, AdjustmentReason.RETURNED_TO_LGA));
-
-            StockItemSnapshot dayStockItemSnapshot = stockItemSnapshotService.getSnapshot(date, stockItemSnapshots);
-            if (dayStockItemSnapshot != null) {
-                closingBalance = dayStockItemSnapshot.getQuantity();
+            if (ledger.getLost() > 0) {
+                binCardItemsForDate.add(new BinCardItem(date, "", 0, 0, ledger.getLost(), 0, -1));
             }
 
-            // date, source, received, dispensed, lost, adjusted, stockBalance
-            if (quantityDispensed > 0) {
-                binCardItemsForDate.add(new BinCardItem(date, "", 0, quantityDispensed, 0, 0, -1));
+            if (quantityAdjusted > 0) {
+                binCardItemsForDate.add(new BinCardItem(date, "", 0, 0, 0, quantityAdjusted, -1));
             }
 
-            if (quantityLost > 0) {
-                binCardItemsForDate.add(new BinCardItem(date, "", 0, 0, quantityLost, 0, -1));
+            if (ledger.getReceivedFromFacility() > 0) {
+                binCardItemsForDate.add(new BinCardItem(date, "Received from Facility", 0, 0, 0, ledger.getReceivedFromFacility(), -1));
             }
 
-            if (quantityAdjusted > 0) {
-                binCardItemsForDate.add(new BinCardItem(date, "", 0, 0, 0, quantityAdjusted, -1));
+            if (ledger.getSentToFacility() > 0) {
+                binCardItemsForDate.add(new BinCardItem(date, "Sent to Facility", 0, 0, 0, ledger.getSentToFacility(), -1));
             }
 
-            if (quantityReceivedFromAnotherFacility > 0) {
-                binCardItemsForDate.add(new BinCardItem(date, "Received from Facility", 0, 0, 0, quantityReceivedFromAnotherFacility, -1));
+            if (ledger.getReceivedFromLga() > 0) {
+                binCardItemsForDate.add(new BinCardItem(date, context.getString(R.string.lga), ledger.getReceivedFromLga(), 0, 0, 0, -1));
             }
 
-            if (quantitySentToAnotherFacility > 0) {
-                binCardItemsForDate.add(new BinCardItem(date, "Sent to Facility", 0, 0, 0, quantitySentToAnotherFacility, -1));
+            if (ledger.getReceivedFromZonalStore() > 0) {
+                binCardItemsForDate.add(new BinCardItem(date, context.getString(R.string.zonal_store), ledger.getReceivedFromZonalStore(), 0, 0, 0, -1));
             }
 
-            for (ReceivedBySource source : receivedBySources) {
-                binCardItemsForDate.add(new BinCardItem(date, source.getSource(), source.getQuantityReceived(), 0, 0, 0, -1));
+            if (ledger.getReceivedFromOthers() > 0) {
+                binCardItemsForDate.add(new BinCardItem(date, context.getString(R.string.others), ledger.getReceivedFromOthers(), 0, 0, 0, -1));
             }
 
-            if(binCardItemsForDate.size()>0){
-                binCardItemsForDate.get(binCardItemsForDate.size()-1).setStockBalance(closingBalance);
+            if (binCardItemsForDate.size() > 0) {
+                binCardItemsForDate.get(binCardItemsForDate.size() - 1).setStockBalance(ledger.getClosing());
             }
 
             binCardItems.addAll(binCardItemsForDate);
-            previousDaysClosingStock = closingBalance;
-            date = DateUtil.addDayOfMonth(date, 1);
         }
 
         return new BinCard(commodity.getMinimumThreshold(), commodity.getMaximumThreshold(), binCardItems, commodity);
     }
-
-    private class ReceivedBySource {
-        private int quantityReceived;
-        private String source;
-
-        public ReceivedBySource(int quantityReceived, String source) {
-            this.quantityReceived = quantityReceived;
-            this.source = source;
-        }
-
-        public String getSource() {
-            return source;
-        }
-
-        public int getQuantityReceived() {
-            return quantityReceived;
-        }
-    }
 }
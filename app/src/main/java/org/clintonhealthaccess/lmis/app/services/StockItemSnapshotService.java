@@ -29,17 +29,19 @@
 
 package org.clintonhealthaccess.lmis.app.services;
 
-import android.content.Context;
 import android.util.Log;
 
 import com.google.inject.Inject;
 import com.j256.ormlite.dao.Dao;
-import com.j256.ormlite.stmt.PreparedQuery;
 import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
 
 import org.clintonhealthaccess.lmis.app.models.Commodity;
 import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
+import org.clintonhealthaccess.lmis.app.models.StockMonthSummary;
+import org.clintonhealthaccess.lmis.app.persistence.CachedQuery;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.Repository;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 
 import java.sql.SQLException;
@@ -50,24 +52,38 @@ import java.util.List;
 
 public class StockItemSnapshotService {
 
+    private static final CachedQuery<StockItemSnapshot> SNAPSHOT_FOR_DATE =
+            new CachedQuery<StockItemSnapshot>(StockItemSnapshot.class, 2) {
+                @Override
+                protected void define(QueryBuilder<StockItemSnapshot, String> queryBuilder, SelectArg... arguments) throws SQLException {
+                    queryBuilder.where().eq("commodity_id", arguments[0]).and().eq("created", arguments[1]);
+                }
+            };
+
+    private static final CachedQuery<StockItemSnapshot> LATEST_SNAPSHOT =
+            new CachedQuery<StockItemSnapshot>(StockItemSnapshot.class, 2) {
+                @Override
+                protected void define(QueryBuilder<StockItemSnapshot, String> queryBuilder, SelectArg... arguments) throws SQLException {
+                    queryBuilder.where().eq("commodity_id", arguments[0]).and().le("created", arguments[1]);
+                    queryBuilder.orderBy("created", false).limit(1L);
+                }
+            };
+
+    private static final CachedQuery<StockMonthSummary> MONTH_SUMMARIES_BETWEEN =
+            new CachedQuery<StockMonthSummary>(StockMonthSummary.class, 3) {
+                @Override
+                protected void define(QueryBuilder<StockMonthSummary, String> queryBuilder, SelectArg... arguments) throws SQLException {
+                    queryBuilder.where().eq("commodity_id", arguments[0]).and().between(StockMonthSummary.MONTH, arguments[1], arguments[2]);
+                }
+            };
+
     @Inject
     DbUtil dbUtil;
     @Inject
-    private Context context;
+    private Repository<StockItemSnapshot> stockItemSnapshotRepository;
 
     public StockItemSnapshot get(final Commodity commodity, final Date date) throws Exception {
-        List<StockItemSnapshot> stockItemSnapshots = dbUtil.withDao(StockItemSnapshot.class,
-                new DbUtil.Operation<StockItemSnapshot, List<StockItemSnapshot>>() {
-                    @Override
-                    public List<StockItemSnapshot> operate(Dao<StockItemSnapshot, String> dao) throws SQLException {
-                        QueryBuilder<StockItemSnapshot, String> queryBuilder = dao.queryBuilder();
-                        queryBuilder.where().eq("commodity_id", commodity.getId()).and().eq("created", date);
-                        PreparedQuery<StockItemSnapshot> query = queryBuilder.prepare();
-
-                        return dao.query(query);
-                    }
-                }
-        );
+        List<StockItemSnapshot> stockItemSnapshots = dbUtil.query(SNAPSHOT_FOR_DATE, commodity.getId(), date);
 
         if (stockItemSnapshots.size() > 1) {
             throw new Exception("Multiple stock item snapshots found for " + commodity.getName() +
@@ -105,7 +121,7 @@ public class StockItemSnapshotService {
             } else {
                 stockItemSnapshot.setQuantity(quantity);
             }
-           return new GenericDao<>(StockItemSnapshot.class, context).createOrUpdate(stockItemSnapshot);
+           return stockItemSnapshotRepository.createOrUpdate(stockItemSnapshot);
 
         } catch (Exception e) {
             Log.e("StockItemSnapshot", e.getMessage());
@@ -146,20 +162,7 @@ public class StockItemSnapshotService {
     }
 
     public StockItemSnapshot getLatest(final Commodity commodity, final Date currentDate) {
-        return dbUtil.withDao(StockItemSnapshot.class,
-                new DbUtil.Operation<StockItemSnapshot, StockItemSnapshot>() {
-                    @Override
-                    public StockItemSnapshot operate(Dao<StockItemSnapshot, String> dao) throws SQLException {
-                        QueryBuilder<StockItemSnapshot, String> queryBuilder = dao.queryBuilder();
-                        queryBuilder.where().eq("commodity_id", commodity.getId()).and().le("created", currentDate);
-                        queryBuilder.orderBy("created", false);
-                        PreparedQuery<StockItemSnapshot> query = queryBuilder.prepare();
-
-                        return dao.queryForFirst(query);
-                    }
-                }
-        );
-
+        return dbUtil.queryForFirst(LATEST_SNAPSHOT, commodity.getId(), currentDate);
     }
 
     public StockItemSnapshot getSnapshot(final Date date, List<StockItemSnapshot> stockItemSnapshots) {
@@ -178,6 +181,7 @@ public class StockItemSnapshotService {
         int numOfStockOutDays = 0;
 
         List<StockItemSnapshot> snapshots = get(commodity, startingDate, endDate);
+        List<StockMonthSummary> summaries = dbUtil.query(MONTH_SUMMARIES_BETWEEN, commodity.getId(), startingDate, endDate);
 
         Date closingDate = DateUtil.addDayOfMonth(endDate);
 
@@ -186,6 +190,15 @@ public class StockItemSnapshotService {
 
         while (calendar.getTime().before(closingDate)) {
 
+            // a whole archived month is answered from its summary instead of walking its days
+            StockMonthSummary summary = getSummary(calendar.getTime(), closingDate, summaries);
+            if (summary != null) {
+                numOfStockOutDays += summary.getStockOutDays();
+                openingStock = summary.getClosingQuantity();
+                calendar.add(Calendar.MONTH, 1);
+                continue;
+            }
+
             StockItemSnapshot stockItemSnapshot = getSnapshot(calendar.getTime(), snapshots);
 
             if (stockItemSnapshot != null && stockItemSnapshot.isStockOut() || stockItemSnapshot == null && openingStock == 0) {
@@ -200,6 +213,16 @@ public class StockItemSnapshotService {
         return numOfStockOutDays;
     }
 
+    private StockMonthSummary getSummary(Date date, Date closingDate, List<StockMonthSummary> summaries) {
+        for (StockMonthSummary summary : summaries) {
+            if (DateUtil.equal(summary.getMonth(), date)
+                    && !DateUtil.addMonth(summary.getMonth(), 1).after(closingDate)) {
+                return summary;
+            }
+        }
+        return null;
+    }
+
     public boolean isStockOutDay(Date date, Commodity commodity) {
         StockItemSnapshot latestSnapshot = getLatest(commodity, date);
         if (latestSnapshot != null) {
@@ -68,13 +68,22 @@ public class StockService {
     public void reduceStockLevelFor(final Commodity commodity, int quantity, Date date) {
         StockItem stockItem = commodity.reduceStockOnHandBy(quantity);
         saveStockLevel(commodity, stockItem, date);
-        categoryService.clearCache();
+        clearCategoryCacheAfterCommit();
     }
 
     public void increaseStockLevelFor(Commodity commodity, int quantity, Date date) {
         StockItem stockItem = commodity.increaseStockOnHandBy(quantity);
         saveStockLevel(commodity, stockItem, date);
-        categoryService.clearCache();
+        clearCategoryCacheAfterCommit();
+    }
+
+    private void clearCategoryCacheAfterCommit() {
+        dbUtil.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                categoryService.clearCache();
+            }
+        });
     }
 
     private void saveStockLevel(final Commodity commodity, final StockItem stockItem, final Date date) {
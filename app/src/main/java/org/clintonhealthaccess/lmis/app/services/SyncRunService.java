@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.common.base.Joiner;
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.models.SyncRun;
+import org.clintonhealthaccess.lmis.app.persistence.repositories.SyncRunRepository;
+import org.clintonhealthaccess.lmis.app.remote.transport.TrafficMeter;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import roboguice.inject.InjectResource;
+
+import static android.util.Log.i;
+
+public class SyncRunService {
+    @Inject
+    private SyncRunRepository syncRunRepository;
+
+    @Inject
+    private TrafficMeter trafficMeter;
+
+    @InjectResource(R.integer.sync_runs_kept)
+    Integer syncRunsKept;
+
+    // a run right after a failed one is the sync manager retrying, so the count carries over until a run succeeds
+    public SyncRun start() {
+        List<SyncRun> latest = syncRunRepository.findLatest(1);
+        int retries = latest.isEmpty() || !latest.get(0).isFailed() ? 0 : latest.get(0).getRetries() + 1;
+        return new SyncRun(new Date(), retries, trafficMeter.getBytesIn(), trafficMeter.getBytesOut());
+    }
+
+    public SyncRun finish(SyncRun run, Map<String, Exception> failures) {
+        run.finish(new Date(), trafficMeter.getBytesIn(), trafficMeter.getBytesOut(), causeOf(failures));
+        syncRunRepository.create(run);
+        syncRunRepository.deleteAllButLatest(syncRunsKept);
+        i("SyncRun", run.getDurationMillis() + "ms, " + run.getBytesIn() + " bytes in, " + run.getBytesOut()
+                + " bytes out, " + run.getStageDurations());
+        return run;
+    }
+
+    public List<SyncRun> latest(int count) {
+        return syncRunRepository.findLatest(count);
+    }
+
+    private String causeOf(Map<String, Exception> failures) {
+        if (failures.isEmpty()) {
+            return null;
+        }
+        List<String> causes = new ArrayList<>();
+        for (Map.Entry<String, Exception> failure : failures.entrySet()) {
+            Exception exception = failure.getValue();
+            String message = exception.getMessage() == null ? exception.getClass().getSimpleName() : exception.getMessage();
+            causes.add(failure.getKey() + ": " + message);
+        }
+        return Joiner.on("; ").join(causes);
+    }
+}
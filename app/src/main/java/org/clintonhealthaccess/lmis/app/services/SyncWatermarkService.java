@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.j256.ormlite.dao.Dao;
+
+import org.clintonhealthaccess.lmis.app.models.SyncWatermark;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Singleton
+public class SyncWatermarkService {
+    @Inject
+    private DbUtil dbUtil;
+
+    // watermarks seen in a download, only persisted once the values they cover are saved
+    private final Map<String, String> staged = new HashMap<>();
+
+    public String lastUpdatedFor(final List<String> dataSetIds) {
+        return dbUtil.withDao(SyncWatermark.class, new DbUtil.Operation<SyncWatermark, String>() {
+            @Override
+            public String operate(Dao<SyncWatermark, String> dao) throws SQLException {
+                String oldest = null;
+                for (String dataSetId : dataSetIds) {
+                    SyncWatermark watermark = dao.queryForId(dataSetId);
+                    if (watermark == null) {
+                        // never synced, so the full window has to be fetched
+                        return null;
+                    }
+                    if (oldest == null || watermark.getLastUpdated().compareTo(oldest) < 0) {
+                        oldest = watermark.getLastUpdated();
+                    }
+                }
+                return oldest;
+            }
+        });
+    }
+
+    public static String newer(String current, String candidate) {
+        if (candidate != null && (current == null || candidate.compareTo(current) > 0)) {
+            return candidate;
+        }
+        return current;
+    }
+
+    public synchronized void stage(List<String> dataSetIds, String newest) {
+        // use the server's own timestamps so a skewed tablet clock can never skip a change
+        if (newest == null) {
+            return;
+        }
+        for (String dataSetId : dataSetIds) {
+            staged.put(dataSetId, newest);
+        }
+    }
+
+    public synchronized void commitStaged() {
+        if (staged.isEmpty()) {
+            return;
+        }
+        dbUtil.withDaoAsBatch(SyncWatermark.class, new DbUtil.Operation<SyncWatermark, Void>() {
+            @Override
+            public Void operate(Dao<SyncWatermark, String> dao) throws SQLException {
+                for (Map.Entry<String, String> entry : staged.entrySet()) {
+                    dao.createOrUpdate(new SyncWatermark(entry.getKey(), entry.getValue()));
+                }
+                return null;
+            }
+        });
+        staged.clear();
+    }
+}
@@ -33,11 +33,14 @@ import android.content.SharedPreferences;
 import android.telephony.SmsManager;
 
 import com.google.inject.Inject;
+import com.thoughtworks.dhis.models.Constant;
 import com.thoughtworks.dhis.models.DataValueSet;
 
 import org.clintonhealthaccess.lmis.app.R;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
+import org.clintonhealthaccess.lmis.app.remote.MetadataBundle;
+import org.clintonhealthaccess.lmis.app.services.BootstrapService;
 import org.clintonhealthaccess.lmis.app.services.UserService;
 
 import java.util.List;
@@ -63,6 +66,9 @@ public class SmsSyncService {
     @Inject
     private LmisServer lmisServer;
 
+    @Inject
+    private BootstrapService bootstrapService;
+
     @Inject
     SharedPreferences sharedPreferences;
 
@@ -86,7 +92,11 @@ public class SmsSyncService {
 
     public void syncGatewayNumber() {
         User user = userService.getRegisteredUser();
-        String smsGatewayNumber = lmisServer.fetchPhoneNumberConstant(user, SMS_GATEWAY_NUMBER, defaultDhis2SmsNumber);
+        MetadataBundle bundle = bootstrapService.bundle();
+        Constant bundled = bundle == null ? null : bundle.constant(SMS_GATEWAY_NUMBER);
+        String smsGatewayNumber = bundled == null ?
+                lmisServer.fetchPhoneNumberConstant(user, SMS_GATEWAY_NUMBER, defaultDhis2SmsNumber) :
+                "+" + String.valueOf(bundled.getValue().longValue());
         SharedPreferences.Editor editor = sharedPreferences.edit();
         editor.putString(SMS_GATEWAY_NUMBER, smsGatewayNumber);
         editor.commit();
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.sync;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.models.User;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+
+import static android.util.Log.e;
+import static android.util.Log.i;
+
+public class StagedSync {
+    public interface StageListener {
+        void stageFinished(SyncStage stage, long millis);
+    }
+
+    private static final StageListener IGNORE = new StageListener() {
+        @Override
+        public void stageFinished(SyncStage stage, long millis) {
+        }
+    };
+
+    private final ExecutorService executor;
+    private final StageListener listener;
+
+    public StagedSync(ExecutorService executor) {
+        this(executor, IGNORE);
+    }
+
+    public StagedSync(ExecutorService executor, StageListener listener) {
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    // a stage starts as soon as all of its dependencies have succeeded; the failures are returned by stage name
+    public Map<String, Exception> run(List<SyncStage> stages, final User user, Runnable onUiStagesFinished)
+            throws InterruptedException {
+        CompletionService<Outcome> completionService = new ExecutorCompletionService<>(executor);
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        Set<String> succeeded = new HashSet<>();
+        List<SyncStage> waiting = new ArrayList<>(stages);
+        int uiStagesLeft = countUiStages(stages);
+        int running = 0;
+
+        if (uiStagesLeft == 0) {
+            onUiStagesFinished.run();
+        }
+        while (!waiting.isEmpty() || running > 0) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Iterator<SyncStage> iterator = waiting.iterator(); iterator.hasNext(); ) {
+                    SyncStage stage = iterator.next();
+                    String failedDependency = failedDependency(stage, failures);
+                    if (failedDependency != null) {
+                        iterator.remove();
+                        changed = true;
+                        failures.put(stage.getName(), new LmisException("Skipped because " + failedDependency + " failed"));
+                        uiStagesLeft = finished(stage, uiStagesLeft, onUiStagesFinished);
+                    } else if (succeeded.containsAll(stage.getDependencies())) {
+                        iterator.remove();
+                        changed = true;
+                        completionService.submit(perform(stage, user));
+                        running++;
+                    }
+                }
+            }
+
+            if (running == 0) {
+                for (SyncStage stage : waiting) {
+                    failures.put(stage.getName(), new LmisException("Unknown dependency in " + stage.getDependencies()));
+                    uiStagesLeft = finished(stage, uiStagesLeft, onUiStagesFinished);
+                }
+                break;
+            }
+
+            Outcome outcome = takeOutcome(completionService);
+            running--;
+            if (outcome.failure == null) {
+                succeeded.add(outcome.stage.getName());
+            } else {
+                e("StagedSync", "Stage " + outcome.stage.getName() + " failed", outcome.failure);
+                failures.put(outcome.stage.getName(), outcome.failure);
+            }
+            uiStagesLeft = finished(outcome.stage, uiStagesLeft, onUiStagesFinished);
+        }
+        return failures;
+    }
+
+    private int finished(SyncStage stage, int uiStagesLeft, Runnable onUiStagesFinished) {
+        if (!stage.affectsUi()) {
+            return uiStagesLeft;
+        }
+        if (uiStagesLeft == 1) {
+            onUiStagesFinished.run();
+        }
+        return uiStagesLeft - 1;
+    }
+
+    private Callable<Outcome> perform(final SyncStage stage, final User user) {
+        return new Callable<Outcome>() {
+            @Override
+            public Outcome call() throws Exception {
+                long start = System.currentTimeMillis();
+                try {
+                    stage.perform(user);
+                    return new Outcome(stage, null);
+                } catch (Exception exception) {
+                    return new Outcome(stage, exception);
+                } finally {
+                    long millis = System.currentTimeMillis() - start;
+                    i("StagedSync", stage.getName() + " took " + millis + "ms");
+                    listener.stageFinished(stage, millis);
+                }
+            }
+        };
+    }
+
+    private Outcome takeOutcome(CompletionService<Outcome> completionService) throws InterruptedException {
+        try {
+            return completionService.take().get();
+        } catch (ExecutionException e) {
+            // perform() turns exceptions into outcomes, so only an Error ends up here
+            throw new LmisException(e.getCause());
+        }
+    }
+
+    private String failedDependency(SyncStage stage, Map<String, Exception> failures) {
+        for (String dependency : stage.getDependencies()) {
+            if (failures.containsKey(dependency)) {
+                return dependency;
+            }
+        }
+        return null;
+    }
+
+    private int countUiStages(List<SyncStage> stages) {
+        int count = 0;
+        for (SyncStage stage : stages) {
+            if (stage.affectsUi()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static class Outcome {
+        private final SyncStage stage;
+        private final Exception failure;
+
+        private Outcome(SyncStage stage, Exception failure) {
+            this.stage = stage;
+            this.failure = failure;
+        }
+    }
+}
@@ -41,24 +41,35 @@ import android.os.Bundle;
 import com.google.inject.Inject;
 
 import org.clintonhealthaccess.lmis.app.events.SyncedEvent;
+import org.clintonhealthaccess.lmis.app.models.SyncRun;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.services.AllocationService;
 import org.clintonhealthaccess.lmis.app.services.CommodityActionService;
 import org.clintonhealthaccess.lmis.app.services.CommodityService;
 import org.clintonhealthaccess.lmis.app.services.CommoditySnapshotService;
+import org.clintonhealthaccess.lmis.app.services.SyncRunService;
 import org.clintonhealthaccess.lmis.app.services.UserService;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import de.greenrobot.event.EventBus;
 import roboguice.RoboGuice;
 
+import static android.util.Log.e;
 import static android.util.Log.i;
 
 public class SyncAdapter extends AbstractThreadedSyncAdapter {
+    private static final ExecutorService STAGE_POOL = Executors.newFixedThreadPool(4);
+
     private final ContentResolver contentResolver;
 
     @Inject
@@ -75,6 +86,12 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
     @Inject
     UserService userService;
 
+    @Inject
+    SyncRunService syncRunService;
+
+    @Inject
+    SyncScheduler syncScheduler;
+
     @Inject
     SharedPreferences sharedPreferences;
 
@@ -93,21 +110,68 @@ public class SyncAdapter extends AbstractThreadedSyncAdapter {
             return;
         }
 
-        i("==> Syncing...........SNAPSHOTS", account.name);
-        commoditySnapshotService.syncWithServer(user);
-
-        i("<== Syncing............ALLOCATIONS", account.name);
-        allocationService.syncAllocations(user);
-
-        i("<== Syncing............ACTIONVALUES", account.name);
-        commodityActionService.syncCommodityActionValues(user);
+        i("==> Syncing...........", account.name);
+        final SyncRun run = syncRunService.start();
+        Map<String, Exception> failures;
+        try {
+            failures = new StagedSync(STAGE_POOL, new StagedSync.StageListener() {
+                @Override
+                public void stageFinished(SyncStage stage, long millis) {
+                    run.stageTook(stage.getName(), millis);
+                }
+            }).run(stages(run), user, new Runnable() {
+                @Override
+                public void run() {
+                    EventBus.getDefault().post(new SyncedEvent());
+                }
+            });
+        } catch (InterruptedException e) {
+            syncRunService.finish(run, Collections.<String, Exception>singletonMap("SYNC", e));
+            Thread.currentThread().interrupt();
+            return;
+        }
+        syncRunService.finish(run, failures);
+        syncScheduler.httpSyncFinished(failures);
 
-        i("<== Syncing............INDICATORVALUES", account.name);
-        commodityActionService.syncIndicatorValues(user, commodityService.all());
+        // counted as io errors for the sync stats; SyncScheduler owns the retries and their backoff
+        for (Map.Entry<String, Exception> failure : failures.entrySet()) {
+            e("<== Syncing............FAILED " + failure.getKey(), failure.getValue().getMessage());
+            syncResult.stats.numIoExceptions++;
+        }
 
         SharedPreferences.Editor edit = sharedPreferences.edit();
         edit.putString("Last_sync_time", dateTimeFormater.format(new Date()));
         edit.commit();
-        EventBus.getDefault().post(new SyncedEvent());
+    }
+
+    // the stages are independent round trips, so they run side by side; SyncedEvent only waits for the ones the screens show.
+    // they share one endpoint and one pooled client, which is why both are safe to use from several threads
+    List<SyncStage> stages(final SyncRun run) {
+        return Arrays.asList(
+                new SyncStage("SNAPSHOTS", false, new SyncStage.Work() {
+                    @Override
+                    public void perform(User user) {
+                        run.pushed(commoditySnapshotService.syncWithServer(user));
+                    }
+                }),
+                new SyncStage("ALLOCATIONS", true, new SyncStage.Work() {
+                    @Override
+                    public void perform(User user) {
+                        run.pulled(allocationService.syncAllocations(user));
+                    }
+                }),
+                new SyncStage("ACTIONVALUES", true, new SyncStage.Work() {
+                    @Override
+                    public void perform(User user) {
+                        run.pulled(commodityActionService.syncCommodityActionValues(user));
+                    }
+                }),
+                new SyncStage("INDICATORVALUES", true, new SyncStage.Work() {
+                    @Override
+                    public void perform(User user) {
+                        run.pulled(commodityActionService.syncIndicatorValues(user, commodityService.all()));
+                    }
+                })
+        );
     }
 }
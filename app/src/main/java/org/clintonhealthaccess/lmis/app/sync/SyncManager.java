@@ -47,7 +47,7 @@ import roboguice.inject.InjectResource;
 import static android.content.ContentResolver.SYNC_EXTRAS_DO_NOT_RETRY;
 import static android.content.ContentResolver.SYNC_EXTRAS_EXPEDITED;
 import static android.content.ContentResolver.SYNC_EXTRAS_MANUAL;
-import static android.content.ContentResolver.addPeriodicSync;
+import static android.content.ContentResolver.removePeriodicSync;
 import static android.content.ContentResolver.setIsSyncable;
 import static android.content.ContentResolver.setSyncAutomatically;
 import static android.util.Log.i;
@@ -65,9 +65,6 @@ public class SyncManager {
     @InjectResource(R.string.sync_account_type)
     private String syncAccountType;
 
-    @InjectResource(R.integer.sync_interval)
-    private Integer syncInterval;
-
     public void kickOff() {
         List<Account> lmisAccounts = getAccounts();
 
@@ -91,10 +88,12 @@ public class SyncManager {
     private void kickOffFor(Account account) {
         setIsSyncable(account, syncContentAuthority, 1);
         setSyncAutomatically(account, syncContentAuthority, true);
-        addPeriodicSync(account, syncContentAuthority, periodicSyncParams(), syncInterval);
-        i("==> auto sync enabled to: ", account.name + " every " + syncInterval + "seconds");
+        // SyncScheduler decides when to sync now; drop the fixed interval older installs registered
+        removePeriodicSync(account, syncContentAuthority, periodicSyncParams());
+        i("==> auto sync enabled to: ", account.name);
     }
 
+    // the extras have to match the ones the periodic sync was added with for it to be removed
     private Bundle periodicSyncParams() {
         Bundle extras = new Bundle();
         extras.putBoolean(SYNC_EXTRAS_DO_NOT_RETRY, false);
@@ -116,6 +115,7 @@ public class SyncManager {
             Bundle settingsBundle = new Bundle();
             settingsBundle.putBoolean(SYNC_EXTRAS_MANUAL, true);
             settingsBundle.putBoolean(SYNC_EXTRAS_EXPEDITED, true);
+            settingsBundle.putBoolean(SYNC_EXTRAS_DO_NOT_RETRY, true);
             ContentResolver.requestSync(accounts.get(0), syncContentAuthority, settingsBundle);
 
         }
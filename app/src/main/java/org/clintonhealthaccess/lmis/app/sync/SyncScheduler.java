@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.sync;
+
+import android.content.SharedPreferences;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.persistence.repositories.OutboxRepository;
+import org.clintonhealthaccess.lmis.app.utils.Clock;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+
+import roboguice.inject.InjectResource;
+
+import static android.util.Log.i;
+
+// one place that decides when background work runs, so the jobs can share what is known about the device and the server
+@Singleton
+public class SyncScheduler {
+    public enum Job {
+        HTTP_SYNC, SMS_SYNC, ALERTS, ARCHIVAL
+    }
+
+    private static final String LAST_RUN = "scheduler_last_run_";
+    private static final String NETWORK_FAILURES = "scheduler_network_failures";
+    private static final int MAX_DOUBLINGS = 16;
+    private static final int[] SMS_SYNC_HOURS = {1, 13};
+    private static final int[] ARCHIVAL_HOURS = {3};
+
+    @Inject
+    private Clock clock;
+
+    @Inject
+    private DeviceConditions deviceConditions;
+
+    @Inject
+    private OutboxRepository outboxRepository;
+
+    @Inject
+    private SharedPreferences sharedPreferences;
+
+    @InjectResource(R.integer.sync_interval)
+    Integer syncInterval;
+
+    @InjectResource(R.integer.sync_backoff_max)
+    Integer syncBackoffMax;
+
+    @InjectResource(R.integer.outbox_sync_threshold)
+    Integer outboxSyncThreshold;
+
+    @InjectResource(R.integer.outbox_sync_min_interval)
+    Integer outboxSyncMinInterval;
+
+    @InjectResource(R.integer.alerts_interval)
+    Integer alertsInterval;
+
+    public synchronized List<Job> dueJobs() {
+        long now = clock.now();
+        List<Job> due = new ArrayList<>();
+        if (isHttpSyncDue(now)) {
+            due.add(Job.HTTP_SYNC);
+        }
+        if (isSlotDue(Job.SMS_SYNC, now, SMS_SYNC_HOURS)) {
+            due.add(Job.SMS_SYNC);
+        }
+        if (now - lastRun(Job.ALERTS) >= alertsInterval * 1000L) {
+            due.add(Job.ALERTS);
+        }
+        if (isSlotDue(Job.ARCHIVAL, now, ARCHIVAL_HOURS)) {
+            due.add(Job.ARCHIVAL);
+        }
+        return due;
+    }
+
+    public synchronized void ran(Job job) {
+        sharedPreferences.edit().putLong(LAST_RUN + job.name(), clock.now()).commit();
+    }
+
+    // only network errors back off; a run that fails for another reason neither extends nor resets the wait
+    public synchronized void httpSyncFinished(Map<String, Exception> failures) {
+        int networkFailures = networkFailures();
+        if (failures.isEmpty()) {
+            networkFailures = 0;
+        } else {
+            for (Exception failure : failures.values()) {
+                if (failure instanceof LmisException) {
+                    networkFailures++;
+                    break;
+                }
+            }
+        }
+        sharedPreferences.edit().putInt(NETWORK_FAILURES, networkFailures).commit();
+        i("SyncScheduler", "next sync in " + httpSyncInterval() / 1000 + "s after " + networkFailures + " network failures");
+    }
+
+    public synchronized long nextHttpSyncAt() {
+        return lastRun(Job.HTTP_SYNC) + httpSyncInterval();
+    }
+
+    private boolean isHttpSyncDue(long now) {
+        if (!deviceConditions.isOnline()) {
+            return false;
+        }
+        long sinceLastSync = now - lastRun(Job.HTTP_SYNC);
+        if (sinceLastSync >= httpSyncInterval()) {
+            return true;
+        }
+        // a full outbox goes out early, unless the server is failing or the battery is nearly flat
+        return networkFailures() == 0 && !deviceConditions.isBatteryLow()
+                && sinceLastSync >= outboxSyncMinInterval * 1000L
+                && outboxRepository.countUndelivered() >= outboxSyncThreshold;
+    }
+
+    private long httpSyncInterval() {
+        long interval = syncInterval * 1000L << Math.min(networkFailures(), MAX_DOUBLINGS);
+        return Math.max(syncInterval * 1000L, Math.min(interval, syncBackoffMax * 1000L));
+    }
+
+    private int networkFailures() {
+        return sharedPreferences.getInt(NETWORK_FAILURES, 0);
+    }
+
+    // a job with no history counts the current slot as run, so a fresh install or upgrade waits for the next one
+    // instead of vacuuming or sending paid SMS at whatever hour the app first starts
+    private boolean isSlotDue(Job job, long now, int... hoursOfDay) {
+        long slot = lastOccurrence(now, hoursOfDay);
+        if (!sharedPreferences.contains(LAST_RUN + job.name())) {
+            sharedPreferences.edit().putLong(LAST_RUN + job.name(), slot).commit();
+            return false;
+        }
+        return lastRun(job) < slot;
+    }
+
+    private long lastRun(Job job) {
+        return sharedPreferences.getLong(LAST_RUN + job.name(), 0);
+    }
+
+    private long lastOccurrence(long now, int... hoursOfDay) {
+        long latest = Long.MIN_VALUE;
+        for (int hourOfDay : hoursOfDay) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(now);
+            calendar.set(Calendar.HOUR_OF_DAY, hourOfDay);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            if (calendar.getTimeInMillis() > now) {
+                calendar.add(Calendar.DAY_OF_MONTH, -1);
+            }
+            latest = Math.max(latest, calendar.getTimeInMillis());
+        }
+        return latest;
+    }
+}
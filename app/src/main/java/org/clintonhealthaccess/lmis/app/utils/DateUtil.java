@@ -33,8 +33,10 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.TimeZone;
 
 public class DateUtil {
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
 
     public static SimpleDateFormat dateFormater = new SimpleDateFormat("yyyy-MMM-dd");
 
@@ -120,4 +122,22 @@ public class DateUtil {
     public static int monthNumber() {
         return monthNumber(new Date());
     }
+
+    // days since 1970-01-01 for the local calendar day of the given date
+    public static long epochDay(Date date) {
+        Calendar local = calendarDate(date);
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.clear();
+        utc.set(local.get(Calendar.YEAR), local.get(Calendar.MONTH), local.get(Calendar.DAY_OF_MONTH));
+        return utc.getTimeInMillis() / MILLIS_PER_DAY;
+    }
+
+    public static Date fromEpochDay(long epochDay) {
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.setTimeInMillis(epochDay * MILLIS_PER_DAY);
+        Calendar local = Calendar.getInstance();
+        local.clear();
+        local.set(utc.get(Calendar.YEAR), utc.get(Calendar.MONTH), utc.get(Calendar.DAY_OF_MONTH));
+        return local.getTime();
+    }
 }
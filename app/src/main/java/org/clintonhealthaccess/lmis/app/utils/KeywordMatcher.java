@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+// Aho-Corasick: finds which of many keywords occur in a text in one pass over the text, however many keywords there are
+public class KeywordMatcher<T> {
+    private final Node<T> root = new Node<>();
+    private volatile boolean built;
+
+    public KeywordMatcher<T> add(String keyword, T value) {
+        if (built) {
+            throw new IllegalStateException("Keywords cannot be added once the matcher has been used");
+        }
+        Node<T> node = root;
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            Node<T> next = node.children.get(c);
+            if (next == null) {
+                next = new Node<>();
+                node.children.put(c, next);
+            }
+            node = next;
+        }
+        node.values.add(value);
+        return this;
+    }
+
+    // values of every keyword occurring in the text, overlapping ones included, each once
+    public Set<T> find(String text) {
+        build();
+        Set<T> found = new LinkedHashSet<>(root.values);
+        Node<T> node = root;
+        for (int i = 0; i < text.length(); i++) {
+            node = next(node, text.charAt(i));
+            found.addAll(node.values);
+        }
+        return found;
+    }
+
+    public boolean matchesAny(String text) {
+        build();
+        if (!root.values.isEmpty()) {
+            return true;
+        }
+        Node<T> node = root;
+        for (int i = 0; i < text.length(); i++) {
+            node = next(node, text.charAt(i));
+            if (!node.values.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Node<T> next(Node<T> node, char c) {
+        while (node != root && !node.children.containsKey(c)) {
+            node = node.failure;
+        }
+        Node<T> next = node.children.get(c);
+        return next == null ? root : next;
+    }
+
+    // breadth first, so a node's failure link is complete before its children need it
+    private synchronized void build() {
+        if (built) {
+            return;
+        }
+        Queue<Node<T>> queue = new ArrayDeque<>();
+        for (Node<T> child : root.children.values()) {
+            child.failure = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node<T> node = queue.remove();
+            for (Map.Entry<Character, Node<T>> entry : node.children.entrySet()) {
+                Node<T> child = entry.getValue();
+                child.failure = next(node.failure, entry.getKey());
+                child.values.addAll(child.failure.values);
+                queue.add(child);
+            }
+        }
+        built = true;
+    }
+
+    private static class Node<T> {
+        private final Map<Character, Node<T>> children = new HashMap<>();
+        private final List<T> values = new ArrayList<>();
+        private Node<T> failure;
+    }
+}
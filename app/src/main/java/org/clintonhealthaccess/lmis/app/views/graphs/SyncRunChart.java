@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.views.graphs;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.models.SyncRun;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// one bar per sync run, oldest on the left; the bar is the run's wall time, split by each stage's share of the work
+public class SyncRunChart extends View {
+    private static final int[] STAGE_COLORS = {R.color.chart0, R.color.chart1, R.color.chart2, R.color.chart3,
+            R.color.chart4, R.color.chart5, R.color.chart6};
+    private static final int LEGEND_HEIGHT = 40;
+    private static final int BAR_GAP = 4;
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Map<String, Integer> stageColors = new LinkedHashMap<>();
+    private List<SyncRun> runs = new ArrayList<>();
+
+    public SyncRunChart(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        paint.setTextSize(18);
+    }
+
+    public void setRuns(List<SyncRun> newestFirst) {
+        runs = new ArrayList<>(newestFirst);
+        Collections.reverse(runs);
+        stageColors.clear();
+        for (SyncRun run : runs) {
+            for (String stage : run.getStageDurations().keySet()) {
+                if (!stageColors.containsKey(stage)) {
+                    int color = STAGE_COLORS[stageColors.size() % STAGE_COLORS.length];
+                    stageColors.put(stage, getResources().getColor(color));
+                }
+            }
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (runs.isEmpty()) {
+            return;
+        }
+        float chartHeight = getHeight() - LEGEND_HEIGHT;
+        float barWidth = (float) getWidth() / runs.size();
+        long longest = 1;
+        for (SyncRun run : runs) {
+            longest = Math.max(longest, run.getDurationMillis());
+        }
+
+        for (int i = 0; i < runs.size(); i++) {
+            drawBar(canvas, runs.get(i), i * barWidth, barWidth - BAR_GAP, chartHeight, longest);
+        }
+        drawLegend(canvas, chartHeight);
+    }
+
+    private void drawBar(Canvas canvas, SyncRun run, float left, float width, float chartHeight, long longest) {
+        float barHeight = chartHeight * run.getDurationMillis() / longest;
+        Map<String, Long> stages = run.getStageDurations();
+        long stageTotal = 0;
+        for (long millis : stages.values()) {
+            stageTotal += millis;
+        }
+
+        float bottom = chartHeight;
+        for (Map.Entry<String, Long> stage : stages.entrySet()) {
+            float segment = stageTotal == 0 ? 0 : barHeight * stage.getValue() / stageTotal;
+            paint.setColor(stageColors.get(stage.getKey()));
+            canvas.drawRect(left, bottom - segment, left + width, bottom, paint);
+            bottom -= segment;
+        }
+
+        if (run.isFailed()) {
+            paint.setColor(getResources().getColor(R.color.alerts_bright_red));
+            canvas.drawRect(left, chartHeight - barHeight - BAR_GAP * 2, left + width, chartHeight - barHeight, paint);
+        }
+    }
+
+    private void drawLegend(Canvas canvas, float chartHeight) {
+        float x = 0;
+        float baseline = chartHeight + LEGEND_HEIGHT - 10;
+        for (Map.Entry<String, Integer> stage : stageColors.entrySet()) {
+            paint.setColor(stage.getValue());
+            canvas.drawRect(x, baseline - 16, x + 16, baseline, paint);
+            paint.setColor(getResources().getColor(R.color.black));
+            canvas.drawText(stage.getKey(), x + 22, baseline, paint);
+            x += 22 + paint.measureText(stage.getKey()) + 20;
+        }
+    }
+}
@@ -34,10 +34,15 @@ import android.widget.Button;
 import android.widget.TextView;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
 
+import org.clintonhealthaccess.lmis.LmisTestClass;
 import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.R;
+import org.clintonhealthaccess.lmis.app.models.InitialSyncCheckpoint;
 import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.services.CommodityActionService;
 import org.clintonhealthaccess.lmis.app.services.CommodityService;
 import org.clintonhealthaccess.lmis.app.services.OrderService;
@@ -51,6 +56,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.shadows.ShadowHandler;
 
+import java.sql.SQLException;
+import java.util.List;
+
 import static org.clintonhealthaccess.lmis.app.R.id;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
 import static org.hamcrest.CoreMatchers.notNullValue;
@@ -70,7 +78,7 @@ import static org.robolectric.Robolectric.shadowOf;
 import static org.robolectric.shadows.ShadowToast.getTextOfLatestToast;
 
 @RunWith(RobolectricGradleTestRunner.class)
-public class RegisterActivityTest {
+public class RegisterActivityTest extends LmisTestClass {
     private RegisterActivity registerActivity;
     private UserService mockUserService;
     private CommodityService mockCommodityService;
@@ -79,6 +87,9 @@ public class RegisterActivityTest {
     private SmsSyncService mockSmsSyncService;
     private CommodityActionService mockCommodityActionService;
 
+    @Inject
+    private DbUtil dbUtil;
+
     @Before
     public void setUp() throws Exception {
         mockUserService = mock(UserService.class);
@@ -120,15 +131,36 @@ public class RegisterActivityTest {
     }
 
     @Test
-    public void shouldCallInitialiseForCommoditiesOnSuccessfulRegistration() {
+    public void shouldImportTheCatalogOnSuccessfulRegistration() {
         performSuccessfulRegistration();
-        verify(mockCommodityService, times(1)).initialise((User) anyObject());
+        verify(mockCommodityService, times(1)).fetchCatalog((User) anyObject());
     }
 
     @Test
     public void shouldInitialiseOrderReasonsOnSuccessfulRegistration() {
         performSuccessfulRegistration();
-        verify(mockOrderService, times(1)).syncOrderReasons();
+        verify(mockOrderService, times(1)).fetchOrderReasons();
+        verify(mockOrderService, times(1)).saveOrderReasons((List<String>) anyObject());
+    }
+
+    @Test
+    public void shouldResumeAnInterruptedInitialSyncWithoutRegisteringAgain() {
+        when(mockUserService.userRegistered()).thenReturn(true);
+        when(mockUserService.getRegisteredUser()).thenReturn(new User());
+        dbUtil.withDao(InitialSyncCheckpoint.class, new DbUtil.Operation<InitialSyncCheckpoint, Void>() {
+            @Override
+            public Void operate(Dao<InitialSyncCheckpoint, String> dao) throws SQLException {
+                dao.create(new InitialSyncCheckpoint("CATALOG"));
+                return null;
+            }
+        });
+
+        registerActivity = setupActivity(RegisterActivity.class);
+
+        verify(mockUserService, never()).register(anyString(), anyString());
+        verify(mockCommodityService, times(1)).fetchCatalog((User) anyObject());
+        Intent homeIntent = new Intent(registerActivity, HomeActivity.class);
+        assertThat(shadowOf(registerActivity).getNextStartedActivity(), equalTo(homeIntent));
     }
 
     private void performSuccessfulRegistration() {
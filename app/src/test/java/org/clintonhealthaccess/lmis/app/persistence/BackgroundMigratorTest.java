@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence;
+
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.services.CommodityService;
+import org.clintonhealthaccess.lmis.app.services.DailyLedgerService;
+import org.clintonhealthaccess.lmis.app.services.DispensingService;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.dispense;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjectionWithMockLmisServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class BackgroundMigratorTest extends LmisTestClass {
+
+    @Inject
+    BackgroundMigrator backgroundMigrator;
+    @Inject
+    DailyLedgerService dailyLedgerService;
+    @Inject
+    CommodityService commodityService;
+    @Inject
+    DispensingService dispensingService;
+
+    private List<Commodity> commodities;
+    private Date today;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpInjectionWithMockLmisServer(application, this);
+        commodityService.initialise(new User("test", "pass"));
+        today = new Date();
+
+        commodities = new ArrayList<>(commodityService.all());
+        Collections.sort(commodities, new Comparator<Commodity>() {
+            @Override
+            public int compare(Commodity first, Commodity second) {
+                return first.getId().compareTo(second.getId());
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            dispense(commodities.get(i), i + 1, dispensingService);
+        }
+
+        // history recorded before the ledger existed
+        LmisSqliteOpenHelper.getInstance(application).getWritableDatabase().execSQL("DELETE FROM daily_ledger");
+        LmisSqliteOpenHelper.getInstance(application).getWritableDatabase().execSQL("DELETE FROM migration_progress");
+        LmisSqliteOpenHelper.getInstance(application).getWritableDatabase().execSQL("DELETE FROM migrated_keys");
+    }
+
+    @Test
+    public void shouldPersistProgressAfterEachChunk() throws Exception {
+        boolean finished = backgroundMigrator.runChunk(dailyLedgerService, 1);
+
+        assertThat(finished, is(false));
+        assertThat(backgroundMigrator.getProgress(dailyLedgerService).getPosition(), is(commodities.get(0).getId()));
+        assertThat(backgroundMigrator.isMigrated(dailyLedgerService, commodities.get(0).getId()), is(true));
+        assertThat(backgroundMigrator.isMigrated(dailyLedgerService, commodities.get(1).getId()), is(false));
+    }
+
+    @Test
+    public void shouldResumeFromPersistedProgress() throws Exception {
+        backgroundMigrator.runChunk(dailyLedgerService, 2);
+
+        backgroundMigrator.runToCompletion(dailyLedgerService);
+
+        assertThat(backgroundMigrator.getProgress(dailyLedgerService).isFinished(), is(true));
+        for (int i = 0; i < 3; i++) {
+            int[] dispensed = dailyLedgerService.getDailyTotals(commodities.get(i), today, today, DailyLedger.DISPENSED);
+            assertThat(dispensed[0], is(i + 1));
+        }
+    }
+
+    @Test
+    public void shouldReadCommoditiesTheBackfillHasNotReachedYet() throws Exception {
+        backgroundMigrator.runChunk(dailyLedgerService, 1);
+
+        int[] dispensed = dailyLedgerService.getDailyTotals(commodities.get(2), today, today, DailyLedger.DISPENSED);
+
+        assertThat(dispensed[0], is(3));
+    }
+
+    @Test
+    public void shouldRecordACommodityBuiltOnReadSoItIsNotRebuiltOnTheNextRead() throws Exception {
+        backgroundMigrator.runChunk(dailyLedgerService, 1);
+        dailyLedgerService.getDailyTotals(commodities.get(2), today, today, DailyLedger.DISPENSED);
+        assertThat(backgroundMigrator.isMigrated(dailyLedgerService, commodities.get(2).getId()), is(true));
+        assertThat(backgroundMigrator.isMigrated(dailyLedgerService, commodities.get(1).getId()), is(false));
+
+        // a rebuild would bring the row back
+        LmisSqliteOpenHelper.getInstance(application).getWritableDatabase().execSQL("DELETE FROM daily_ledger");
+        int[] dispensed = dailyLedgerService.getDailyTotals(commodities.get(2), today, today, DailyLedger.DISPENSED);
+
+        assertThat(dispensed[0], is(0));
+    }
+
+    @Test
+    public void shouldBuildOnlyTheCommoditiesAReportAsksForWhileTheBackfillIsRunning() throws Exception {
+        backgroundMigrator.runChunk(dailyLedgerService, 1);
+
+        Map<String, Integer> dispensed = dailyLedgerService.getTotalsByCommodity(
+                Arrays.asList(commodities.get(2)), today, today, DailyLedger.DISPENSED);
+
+        assertThat(dispensed.get(commodities.get(2).getId()), is(3));
+        assertThat(dispensed.size(), is(1));
+        assertThat(backgroundMigrator.isMigrated(dailyLedgerService, commodities.get(1).getId()), is(false));
+        assertThat(backgroundMigrator.getProgress(dailyLedgerService).isFinished(), is(false));
+    }
+}
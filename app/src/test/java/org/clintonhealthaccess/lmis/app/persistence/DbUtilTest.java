@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.QueryBuilder;
+import com.j256.ormlite.stmt.SelectArg;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DataSet;
+import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.remote.LmisServer;
+import org.clintonhealthaccess.lmis.app.services.CommodityService;
+import org.clintonhealthaccess.lmis.app.services.GenericDao;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.createStockItemSnapshotValue;
+import static org.clintonhealthaccess.lmis.utils.TestFixture.defaultCategories;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.stubCommodityActionValues;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.testActionValues;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class DbUtilTest extends LmisTestClass {
+    private static final int LOOKUPS = 1000;
+
+    private static final CachedQuery<StockItemSnapshot> SNAPSHOT_BY_COMMODITY =
+            new CachedQuery<StockItemSnapshot>(StockItemSnapshot.class, 1) {
+                @Override
+                protected void define(QueryBuilder<StockItemSnapshot, String> queryBuilder, SelectArg... arguments) throws SQLException {
+                    queryBuilder.where().eq("commodity_id", arguments[0]);
+                }
+            };
+
+    @Inject
+    private DbUtil dbUtil;
+    @Inject
+    private CommodityService commodityService;
+
+    private Commodity firstCommodity;
+    private Commodity secondCommodity;
+
+    @Before
+    public void setUp() throws Exception {
+        final LmisServer mockLmisServer = mock(LmisServer.class);
+        when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(defaultCategories(application));
+        stubCommodityActionValues(mockLmisServer, testActionValues(application));
+        setUpInjection(this, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(LmisServer.class).toInstance(mockLmisServer);
+            }
+        });
+        commodityService.initialise(new User("test", "pass"));
+
+        List<Commodity> commodities = commodityService.all();
+        firstCommodity = commodities.get(0);
+        secondCommodity = commodities.get(1);
+        createStockItemSnapshotValue(firstCommodity, new Date(), 11);
+        createStockItemSnapshotValue(secondCommodity, new Date(), 22);
+    }
+
+    @Test
+    public void shouldReuseRegisteredDaoForTheSameHelper() throws Exception {
+        LmisSqliteOpenHelper openHelper = LmisSqliteOpenHelper.getInstance(application);
+
+        Dao<StockItemSnapshot, String> first = DbUtil.initialiseDao(openHelper, StockItemSnapshot.class);
+        Dao<StockItemSnapshot, String> second = DbUtil.initialiseDao(openHelper, StockItemSnapshot.class);
+
+        assertThat(second, is(sameInstance(first)));
+    }
+
+    @Test
+    public void shouldRebindArgumentsOfCachedQuery() throws Exception {
+        StockItemSnapshot first = dbUtil.queryForFirst(SNAPSHOT_BY_COMMODITY, firstCommodity.getId());
+        StockItemSnapshot second = dbUtil.queryForFirst(SNAPSHOT_BY_COMMODITY, secondCommodity.getId());
+
+        assertThat(first.getQuantity(), is(11));
+        assertThat(second.getQuantity(), is(22));
+        assertThat(dbUtil.query(SNAPSHOT_BY_COMMODITY, firstCommodity.getId()).size(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectWrongNumberOfArguments() throws Exception {
+        dbUtil.query(SNAPSHOT_BY_COMMODITY, firstCommodity.getId(), new Date());
+    }
+
+    @Test
+    public void shouldRunAfterCommitActionsOnlyOnceTheUnitOfWorkCommits() throws Exception {
+        final List<String> calls = new ArrayList<>();
+
+        dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+            @Override
+            public Void perform() throws SQLException {
+                dbUtil.afterCommit(new Runnable() {
+                    @Override
+                    public void run() {
+                        calls.add("after commit");
+                    }
+                });
+                calls.add("work");
+                return null;
+            }
+        });
+
+        assertThat(calls.size(), is(2));
+        assertThat(calls.get(0), is("work"));
+        assertThat(calls.get(1), is("after commit"));
+    }
+
+    @Test
+    public void shouldRollBackWritesAndDropAfterCommitActionsWhenUnitOfWorkFails() throws Exception {
+        final List<String> calls = new ArrayList<>();
+        final GenericDao<StockItemSnapshot> snapshotDao = new GenericDao<>(StockItemSnapshot.class, application);
+        long snapshotsBefore = snapshotDao.countOf();
+
+        try {
+            dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+                @Override
+                public Void perform() throws SQLException {
+                    snapshotDao.create(new StockItemSnapshot(firstCommodity, new Date(), 33));
+                    dbUtil.afterCommit(new Runnable() {
+                        @Override
+                        public void run() {
+                            calls.add("after commit");
+                        }
+                    });
+                    throw new LmisException("failed half way");
+                }
+            });
+            fail("expected the unit of work to fail");
+        } catch (LmisException e) {
+            assertThat(e.getMessage(), is("failed half way"));
+        }
+
+        assertThat(snapshotDao.countOf(), is(snapshotsBefore));
+        assertThat(calls.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldJoinAnEnclosingUnitOfWork() throws Exception {
+        final List<String> calls = new ArrayList<>();
+
+        String result = dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<String>() {
+            @Override
+            public String perform() throws SQLException {
+                return dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<String>() {
+                    @Override
+                    public String perform() throws SQLException {
+                        dbUtil.afterCommit(new Runnable() {
+                            @Override
+                            public void run() {
+                                calls.add("after commit");
+                            }
+                        });
+                        assertThat(calls.isEmpty(), is(true));
+                        return "inner";
+                    }
+                });
+            }
+        });
+
+        assertThat(result, is("inner"));
+        assertThat(calls.size(), is(1));
+    }
+
+    @Test
+    public void shouldRunBeforeCommitActionsAfterTheWorkAndBeforeTheCommit() throws Exception {
+        final List<String> calls = new ArrayList<>();
+
+        dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+            @Override
+            public Void perform() throws SQLException {
+                dbUtil.afterCommit(new Runnable() {
+                    @Override
+                    public void run() {
+                        calls.add("after commit");
+                    }
+                });
+                dbUtil.beforeCommit(new Runnable() {
+                    @Override
+                    public void run() {
+                        calls.add("before commit");
+                    }
+                });
+                calls.add("work");
+                return null;
+            }
+        });
+
+        assertThat(calls, contains("work", "before commit", "after commit"));
+    }
+
+    @Test
+    public void shouldRollBackTheWorkWhenABeforeCommitActionFails() throws Exception {
+        final GenericDao<StockItemSnapshot> snapshotDao = new GenericDao<>(StockItemSnapshot.class, application);
+        long snapshotsBefore = snapshotDao.countOf();
+
+        try {
+            dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+                @Override
+                public Void perform() throws SQLException {
+                    snapshotDao.create(new StockItemSnapshot(firstCommodity, new Date(), 33));
+                    dbUtil.beforeCommit(new Runnable() {
+                        @Override
+                        public void run() {
+                            throw new LmisException("flush failed");
+                        }
+                    });
+                    return null;
+                }
+            });
+            fail("expected the unit of work to fail");
+        } catch (LmisException e) {
+            assertThat(e.getMessage(), is("flush failed"));
+        }
+
+        assertThat(snapshotDao.countOf(), is(snapshotsBefore));
+    }
+
+    @Test
+    public void shouldShareScopedObjectsOnlyWithinOneUnitOfWork() throws Exception {
+        final DbUtil.UnitOfWork<List<String>> newList = new DbUtil.UnitOfWork<List<String>>() {
+            @Override
+            public List<String> perform() throws SQLException {
+                return new ArrayList<>();
+            }
+        };
+        DbUtil.UnitOfWork<List<String>> lookUpTwice = new DbUtil.UnitOfWork<List<String>>() {
+            @Override
+            public List<String> perform() throws SQLException {
+                List<String> scoped = dbUtil.scopedToUnitOfWork("key", newList);
+                assertThat(dbUtil.scopedToUnitOfWork("key", newList), is(sameInstance(scoped)));
+                return scoped;
+            }
+        };
+
+        List<String> first = dbUtil.inUnitOfWork(lookUpTwice);
+        List<String> second = dbUtil.inUnitOfWork(lookUpTwice);
+
+        assertThat(second, is(not(sameInstance(first))));
+    }
+
+    @Test
+    public void shouldRunAfterCommitActionImmediatelyOutsideUnitOfWork() throws Exception {
+        final List<String> calls = new ArrayList<>();
+
+        dbUtil.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                calls.add("now");
+            }
+        });
+
+        assertThat(calls.size(), is(1));
+    }
+
+    @Test
+    public void shouldReadWhileAnotherThreadHoldsAWriteTransaction() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch readFinished = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+                    @Override
+                    public Void perform() throws SQLException {
+                        new GenericDao<>(StockItemSnapshot.class, application)
+                                .create(new StockItemSnapshot(firstCommodity, new Date(), 33));
+                        writing.countDown();
+                        try {
+                            readFinished.await(5, SECONDS);
+                        } catch (InterruptedException e) {
+                            throw new LmisException(e);
+                        }
+                        return null;
+                    }
+                });
+            }
+        });
+        writer.start();
+        assertThat(writing.await(5, SECONDS), is(true));
+
+        Future<Long> snapshotCount = dbUtil.read(StockItemSnapshot.class, new DbUtil.Operation<StockItemSnapshot, Long>() {
+            @Override
+            public Long operate(Dao<StockItemSnapshot, String> dao) throws SQLException {
+                return dao.queryBuilder().where().eq("commodity_id", secondCommodity.getId()).countOf();
+            }
+        });
+
+        long count = snapshotCount.get(2, SECONDS);
+        boolean writeStillOpen = writer.isAlive();
+        readFinished.countDown();
+        writer.join();
+
+        assertThat(count, is(1L));
+        assertThat(writeStillOpen, is(true));
+    }
+
+    @Test
+    public void shouldInsertAndReplaceRowsInBulk() throws Exception {
+        GenericDao<DataSet> dataSetDao = new GenericDao<>(DataSet.class, application);
+        long dataSetsBefore = dataSetDao.countOf();
+
+        int rows = dataSetDao.bulkUpsert(Arrays.asList(new DataSet("bulk1", "Bulk One", "Monthly"), new DataSet("bulk2", "Bulk Two", "Monthly")));
+        dataSetDao.bulkUpsert(Arrays.asList(new DataSet("bulk1", "Bulk One", "Weekly")));
+
+        assertThat(rows, is(2));
+        assertThat(dataSetDao.countOf(), is(dataSetsBefore + 2));
+        assertThat(dataSetDao.getById("bulk1").getPeriodType(), is("Weekly"));
+        assertThat(dataSetDao.getById("bulk2").getPeriodType(), is("Monthly"));
+    }
+
+    @Test
+    public void shouldAssignGeneratedIdsAndForeignKeysInBulkUpsert() throws Exception {
+        StockItemSnapshot snapshot = new StockItemSnapshot(secondCommodity, new Date(), 44);
+
+        dbUtil.bulkUpsert(StockItemSnapshot.class, Arrays.asList(snapshot));
+
+        assertThat(snapshot.getId(), is(not(0)));
+        List<StockItemSnapshot> saved = dbUtil.query(SNAPSHOT_BY_COMMODITY, secondCommodity.getId());
+        assertThat(saved.size(), is(2));
+        assertThat(saved.get(1).getId(), is(snapshot.getId()));
+        assertThat(saved.get(1).getQuantity(), is(44));
+    }
+
+    @Test
+    public void shouldPrepareACachedQueryOnceInsteadOfOnEveryLookUp() throws Exception {
+        final String[] ids = {firstCommodity.getId(), secondCommodity.getId()};
+        final int[] perCallPrepares = {0};
+        final int[] cachedPrepares = {0};
+        CachedQuery<StockItemSnapshot> countedQuery = new CachedQuery<StockItemSnapshot>(StockItemSnapshot.class, 1) {
+            @Override
+            protected void define(QueryBuilder<StockItemSnapshot, String> queryBuilder, SelectArg... arguments) throws SQLException {
+                cachedPrepares[0]++;
+                queryBuilder.where().eq("commodity_id", arguments[0]);
+            }
+        };
+
+        int perCallTotal = dbUtil.withDao(StockItemSnapshot.class, new DbUtil.Operation<StockItemSnapshot, Integer>() {
+            @Override
+            public Integer operate(Dao<StockItemSnapshot, String> dao) throws SQLException {
+                int total = 0;
+                for (int i = 0; i < LOOKUPS; i++) {
+                    QueryBuilder<StockItemSnapshot, String> queryBuilder = dao.queryBuilder();
+                    queryBuilder.where().eq("commodity_id", ids[i % 2]);
+                    perCallPrepares[0]++;
+                    total += dao.queryForFirst(queryBuilder.prepare()).getQuantity();
+                }
+                return total;
+            }
+        });
+
+        int cachedTotal = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            cachedTotal += dbUtil.queryForFirst(countedQuery, ids[i % 2]).getQuantity();
+        }
+
+        assertThat(cachedTotal, is(perCallTotal));
+        assertThat(perCallPrepares[0], is(LOOKUPS));
+        assertThat(cachedPrepares[0], is(1));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.migrations;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.QueryBuilder;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.Adjustment;
+import org.clintonhealthaccess.lmis.app.models.CommoditySnapshot;
+import org.clintonhealthaccess.lmis.app.models.Dispensing;
+import org.clintonhealthaccess.lmis.app.models.DispensingItem;
+import org.clintonhealthaccess.lmis.app.models.Loss;
+import org.clintonhealthaccess.lmis.app.models.LossItem;
+import org.clintonhealthaccess.lmis.app.models.Receive;
+import org.clintonhealthaccess.lmis.app.models.ReceiveItem;
+import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
+import org.clintonhealthaccess.lmis.app.persistence.LmisSqliteOpenHelper;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.clintonhealthaccess.lmis.app.persistence.DbUtil.initialiseDao;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class CreateTimeSeriesIndexesTest extends LmisTestClass {
+
+    private LmisSqliteOpenHelper openHelper;
+    private SQLiteDatabase database;
+
+    @Before
+    public void setUp() throws Exception {
+        openHelper = LmisSqliteOpenHelper.getInstance(application);
+        database = openHelper.getWritableDatabase();
+    }
+
+    @Test
+    public void shouldUseIndexForLatestStockItemSnapshot() throws Exception {
+        Dao<StockItemSnapshot, String> dao = initialiseDao(openHelper, StockItemSnapshot.class);
+        QueryBuilder<StockItemSnapshot, String> queryBuilder = dao.queryBuilder();
+        queryBuilder.where().eq("commodity_id", "commodity").and().le("created", new Date());
+        queryBuilder.orderBy("created", false);
+
+        assertThat(fullScansIn(queryBuilder.prepareStatementString()), empty());
+    }
+
+    @Test
+    public void shouldUseIndexForStockItemSnapshotRange() throws Exception {
+        Dao<StockItemSnapshot, String> dao = initialiseDao(openHelper, StockItemSnapshot.class);
+        QueryBuilder<StockItemSnapshot, String> queryBuilder = dao.queryBuilder();
+        queryBuilder.where().eq("commodity_id", "commodity")
+                .and().ge("created", new Date()).and().le("created", new Date());
+
+        assertThat(fullScansIn(queryBuilder.prepareStatementString()), empty());
+    }
+
+    @Test
+    public void shouldUseIndexesForDispensingItemsInRange() throws Exception {
+        assertThat(fullScansIn(itemsInRangeQuery(Dispensing.class, DispensingItem.class)), empty());
+    }
+
+    @Test
+    public void shouldUseIndexesForLossItemsInRange() throws Exception {
+        assertThat(fullScansIn(itemsInRangeQuery(Loss.class, LossItem.class)), empty());
+    }
+
+    @Test
+    public void shouldUseIndexesForReceiveItemsInRange() throws Exception {
+        assertThat(fullScansIn(itemsInRangeQuery(Receive.class, ReceiveItem.class)), empty());
+    }
+
+    @Test
+    public void shouldUseIndexForAdjustmentsInRange() throws Exception {
+        Dao<Adjustment, String> dao = initialiseDao(openHelper, Adjustment.class);
+        QueryBuilder<Adjustment, String> queryBuilder = dao.queryBuilder();
+        queryBuilder.where().between("created", new Date(), new Date()).and().eq("commodity_id", "commodity");
+
+        assertThat(fullScansIn(queryBuilder.prepareStatementString()), empty());
+    }
+
+    @Test
+    public void shouldUseIndexForCommoditySnapshotsForPeriod() throws Exception {
+        Dao<CommoditySnapshot, String> dao = initialiseDao(openHelper, CommoditySnapshot.class);
+        QueryBuilder<CommoditySnapshot, String> queryBuilder = dao.queryBuilder();
+        queryBuilder.where().eq("commodity_id", "commodity")
+                .and().eq("commodityActivity_id", "action")
+                .and().eq(CommoditySnapshot.PERIOD_DATE, new Date());
+
+        assertThat(fullScansIn(queryBuilder.prepareStatementString()), empty());
+    }
+
+    private <ActionClass, ItemClass> String itemsInRangeQuery(Class<ActionClass> actionClass,
+                                                              Class<ItemClass> itemClass) throws Exception {
+        QueryBuilder<ActionClass, String> actionQueryBuilder = initialiseDao(openHelper, actionClass).queryBuilder();
+        actionQueryBuilder.where().between("created", new Date(), new Date());
+
+        QueryBuilder<ItemClass, String> itemQueryBuilder = initialiseDao(openHelper, itemClass).queryBuilder();
+        itemQueryBuilder.where().eq("commodity_id", "commodity");
+        itemQueryBuilder.join(actionQueryBuilder);
+        return itemQueryBuilder.prepareStatementString();
+    }
+
+    private List<String> fullScansIn(String sql) {
+        String[] arguments = new String[sql.length() - sql.replace("?", "").length()];
+        Arrays.fill(arguments, "2014-01-01");
+
+        List<String> fullScans = new ArrayList<>();
+        Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + sql, arguments);
+        try {
+            int detailColumn = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                String detail = cursor.getString(detailColumn);
+                if (detail.startsWith("SCAN")) {
+                    fullScans.add(detail);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return fullScans;
+    }
+}
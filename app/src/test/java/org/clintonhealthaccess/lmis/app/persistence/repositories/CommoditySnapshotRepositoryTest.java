@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.repositories;
+
+import com.google.inject.Inject;
+import com.google.inject.Key;
+import com.google.inject.TypeLiteral;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
+import org.clintonhealthaccess.lmis.app.models.CommoditySnapshot;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.Repository;
+import org.clintonhealthaccess.lmis.app.services.CommodityService;
+import org.clintonhealthaccess.lmis.app.services.DispensingService;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.dispense;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjectionWithMockLmisServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.robolectric.Robolectric.application;
+import static roboguice.RoboGuice.getInjector;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class CommoditySnapshotRepositoryTest extends LmisTestClass {
+
+    @Inject
+    CommoditySnapshotRepository commoditySnapshotRepository;
+    @Inject
+    CommodityService commodityService;
+    @Inject
+    DispensingService dispensingService;
+
+    private Commodity commodity;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpInjectionWithMockLmisServer(application, this);
+        commodityService.initialise(new User("test", "pass"));
+        commodity = commodityService.all().get(0);
+        dispense(commodity, 2, dispensingService);
+    }
+
+    @Test
+    public void shouldBeASingleton() throws Exception {
+        assertThat(getInjector(application).getInstance(CommoditySnapshotRepository.class),
+                is(sameInstance(commoditySnapshotRepository)));
+    }
+
+    @Test
+    public void shouldInjectOneGenericRepositoryPerModel() throws Exception {
+        Key<Repository<Commodity>> key = Key.get(new TypeLiteral<Repository<Commodity>>() {
+        });
+        Repository<Commodity> commodityRepository = getInjector(application).getInstance(key);
+
+        assertThat(getInjector(application).getInstance(key), is(sameInstance(commodityRepository)));
+        assertThat(commodityRepository.getType() == Commodity.class, is(true));
+        assertThat(commodityRepository.getById(commodity.getId()).getName(), is(commodity.getName()));
+    }
+
+    @Test
+    public void shouldFindSnapshotForActionAndPeriod() throws Exception {
+        CommoditySnapshot snapshot = commoditySnapshotRepository.queryForAll().get(0);
+        CommodityAction commodityAction = snapshot.getCommodityAction();
+
+        List<CommoditySnapshot> snapshots = commoditySnapshotRepository.findForActionAndPeriod(commodityAction, snapshot.getPeriodDate());
+
+        assertThat(snapshots.size(), is(1));
+        assertThat(snapshots.get(0).getCommodityAction().getId(), is(commodityAction.getId()));
+    }
+}
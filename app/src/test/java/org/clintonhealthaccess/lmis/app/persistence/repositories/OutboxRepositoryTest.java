@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.persistence.repositories;
+
+import com.google.inject.Inject;
+import com.thoughtworks.dhis.models.DataValue;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.OutboundValue;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.services.CommodityService;
+import org.clintonhealthaccess.lmis.app.services.DispensingService;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.State.SMS_SENT;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.State.SYNCED;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.dispense;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjectionWithMockLmisServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.robolectric.Robolectric.application;
+import static roboguice.RoboGuice.getInjector;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class OutboxRepositoryTest extends LmisTestClass {
+
+    @Inject
+    OutboxRepository outboxRepository;
+    @Inject
+    CommodityService commodityService;
+    @Inject
+    DispensingService dispensingService;
+
+    private Commodity commodity;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpInjectionWithMockLmisServer(application, this);
+        commodityService.initialise(new User("test", "pass"));
+        commodity = commodityService.all().get(0);
+        dispense(commodity, 2, dispensingService);
+    }
+
+    @Test
+    public void shouldBeASingleton() throws Exception {
+        assertThat(getInjector(application).getInstance(OutboxRepository.class),
+                is(sameInstance(outboxRepository)));
+    }
+
+    @Test
+    public void shouldMarkValuesAsSyncedInOneBatch() throws Exception {
+        List<OutboundValue> undelivered = outboxRepository.findUndelivered();
+        assertThat(undelivered, is(not(empty())));
+
+        outboxRepository.markSynced(undelivered);
+
+        assertThat(outboxRepository.findUndelivered(), is(empty()));
+        assertThat(outboxRepository.queryForAll().get(0).getState(), is(SYNCED));
+    }
+
+    @Test
+    public void shouldMarkChunksOfValuesButLeaveOnesEditedSinceTheyWereSent() throws Exception {
+        List<DataValue> dataValues = new ArrayList<>();
+        for (int i = 0; i < 2 * OutboxRepository.VALUES_PER_UPDATE + 1; i++) {
+            dataValues.add(DataValue.builder().dataSet("dataSet").dataElement("element" + i).period("20141001").value("1").build());
+        }
+        outboxRepository.enqueue(dataValues);
+        List<OutboundValue> sent = outboxRepository.findUndelivered();
+        outboxRepository.enqueue(Arrays.asList(
+                DataValue.builder().dataSet("dataSet").dataElement("element7").period("20141001").value("2").build()));
+
+        int updated = outboxRepository.markSynced(sent);
+
+        assertThat(updated, is(sent.size() - 1));
+        List<OutboundValue> undelivered = outboxRepository.findUndelivered();
+        assertThat(undelivered.size(), is(1));
+        assertThat(undelivered.get(0).getValue(), is("2"));
+    }
+
+    @Test
+    public void shouldStillPushValuesAlreadySentBySms() throws Exception {
+        List<OutboundValue> smsReady = outboxRepository.findSmsReady();
+
+        outboxRepository.markSmsSent(smsReady);
+
+        assertThat(outboxRepository.findSmsReady(), is(empty()));
+        assertThat(outboxRepository.findUndelivered().size(), is(smsReady.size()));
+        assertThat(outboxRepository.queryForAll().get(0).getState(), is(SMS_SENT));
+    }
+
+    @Test
+    public void shouldCountValuesNotYetPushedToTheServer() throws Exception {
+        int undelivered = outboxRepository.findUndelivered().size();
+        outboxRepository.markSmsSent(outboxRepository.findSmsReady());
+        assertThat(outboxRepository.countUndelivered(), is((long) undelivered));
+
+        outboxRepository.markSynced(outboxRepository.findUndelivered());
+
+        assertThat(outboxRepository.countUndelivered(), is(0L));
+    }
+}
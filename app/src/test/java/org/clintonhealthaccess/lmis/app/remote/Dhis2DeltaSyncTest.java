@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote;
+
+import com.github.dreamhead.moco.HttpServer;
+import com.github.dreamhead.moco.Runnable;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
+import org.clintonhealthaccess.lmis.app.models.DataSet;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.remote.endpoints.Dhis2EndPointFactory;
+import org.clintonhealthaccess.lmis.app.remote.endpoints.Dhis2Endpoint;
+import org.clintonhealthaccess.lmis.app.remote.transport.StreamingApacheClient;
+import org.clintonhealthaccess.lmis.app.services.DataSetService;
+import org.clintonhealthaccess.lmis.app.services.SyncWatermarkService;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import retrofit.RestAdapter;
+
+import static com.github.dreamhead.moco.Moco.and;
+import static com.github.dreamhead.moco.Moco.by;
+import static com.github.dreamhead.moco.Moco.eq;
+import static com.github.dreamhead.moco.Moco.httpserver;
+import static com.github.dreamhead.moco.Moco.query;
+import static com.github.dreamhead.moco.Moco.uri;
+import static com.github.dreamhead.moco.Runner.running;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class Dhis2DeltaSyncTest extends LmisTestClass {
+    private static final int PORT = 12306;
+    private static final String WATERMARK = "2014-09-03T08:00:00.000+0000";
+
+    @Inject
+    private Dhis2 dhis2;
+
+    @Inject
+    private SyncWatermarkService syncWatermarkService;
+
+    private HttpServer server;
+    private User user;
+
+    @Before
+    public void setUp() throws Exception {
+        final Dhis2EndPointFactory endPointFactory = mock(Dhis2EndPointFactory.class);
+        Dhis2Endpoint endpoint = new RestAdapter.Builder()
+                .setEndpoint("http://localhost:" + PORT)
+                .setClient(new StreamingApacheClient(new DefaultHttpClient()))
+                .build().create(Dhis2Endpoint.class);
+        when(endPointFactory.getEndPoint(any(User.class))).thenReturn(endpoint);
+
+        final DataSetService dataSetService = mock(DataSetService.class);
+        when(dataSetService.all()).thenReturn(Arrays.asList(
+                new DataSet("default", DataSet.DEFAULT, "Daily"),
+                new DataSet("calculated", DataSet.CALCULATED, "Daily")));
+
+        setUpInjection(this, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(Dhis2EndPointFactory.class).toInstance(endPointFactory);
+                bind(DataSetService.class).toInstance(dataSetService);
+            }
+        });
+        Robolectric.getFakeHttpLayer().interceptHttpRequests(false);
+
+        user = new User("test", "pass");
+        user.setFacilityCode("tVmtcBn5bnz");
+
+        server = httpserver(PORT);
+        server.request(and(by(uri("/api/dataValueSets")), eq(query("lastUpdated"), WATERMARK)))
+                .response(fixture("dataValuesDelta.json"));
+        server.get(by(uri("/api/dataValueSets"))).response(fixture("dataValuesWithLastUpdated.json"));
+    }
+
+    @After
+    public void interceptHttpRequestsAgain() throws Exception {
+        Robolectric.getFakeHttpLayer().interceptHttpRequests(true);
+    }
+
+    @Test
+    public void shouldFetchTheFullWindowOnFirstSync() throws Exception {
+        running(server, new Runnable() {
+            @Override
+            public void run() throws Exception {
+                assertThat(syncWatermarkService.lastUpdatedFor(Arrays.asList("default", "calculated")), is(nullValue()));
+
+                List<CommodityActionValue> values = dhis2.fetchCommodityActionValues(user);
+
+                assertThat(values.size(), is(3));
+            }
+        });
+    }
+
+    @Test
+    public void shouldOnlyTransferChangedValuesOnceTheWatermarkIsSaved() throws Exception {
+        running(server, new Runnable() {
+            @Override
+            public void run() throws Exception {
+                dhis2.fetchCommodityActionValues(user);
+                syncWatermarkService.commitStaged();
+
+                List<CommodityActionValue> values = dhis2.fetchCommodityActionValues(user);
+
+                assertThat(values.size(), is(1));
+                assertThat(values.get(0).getValue(), is("15"));
+                assertThat(syncWatermarkService.lastUpdatedFor(Arrays.asList("default", "calculated")), is(WATERMARK));
+            }
+        });
+    }
+
+    @Test
+    public void shouldRefetchTheFullWindowIfTheValuesWereNeverSaved() throws Exception {
+        running(server, new Runnable() {
+            @Override
+            public void run() throws Exception {
+                dhis2.fetchCommodityActionValues(user);
+
+                List<CommodityActionValue> values = dhis2.fetchCommodityActionValues(user);
+
+                assertThat(values.size(), is(3));
+            }
+        });
+    }
+
+    private String fixture(String fileName) throws IOException {
+        InputStream src = getClass().getClassLoader().getResource("fixtures/" + fileName).openStream();
+        try {
+            return IOUtils.toString(src);
+        } finally {
+            src.close();
+        }
+    }
+}
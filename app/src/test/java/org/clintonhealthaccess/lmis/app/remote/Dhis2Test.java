@@ -57,6 +57,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
@@ -292,4 +293,35 @@ public class Dhis2Test extends LMISTestCase {
 
         assertThat(commodityActionValues.size(), is(10));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldBindIndicatorsToEveryCommodityWhoseNameTheyContain() throws Exception {
+        setUpSuccessHttpGetRequest(200, "dataElementGroupSets.json");
+        setUpSuccessHttpGetRequest(200, "dataSets.json");
+        setUpSuccessHttpGetRequest(200, "indicatorGroups.json");
+        setUpSuccessHttpGetRequest(200, "indicatorGroups.json");
+        List<Category> categories = dhis2.fetchCategories(new User());
+        List<Indicator> indicators = dhis2.fetchClientIndicators(new User());
+
+        List<String> bound = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (Category category : categories) {
+            for (Commodity commodity : category.getTransientCommodities()) {
+                for (CommodityAction action : commodity.getCommodityActions()) {
+                    if (DataElementType.indicatorExists(action.getActivityType())) {
+                        bound.add(commodity.getName() + " " + action.getId() + " " + action.getActivityType());
+                    }
+                }
+                for (Indicator indicator : indicators) {
+                    if (indicator.getName().contains(commodity.getName())) {
+                        expected.add(commodity.getName() + " " + indicator.getId() + " "
+                                + indicator.getIndicatorGroup().getName().trim().replace(" ", "_"));
+                    }
+                }
+            }
+        }
+
+        assertThat(bound.isEmpty(), is(false));
+        assertThat(bound, is(expected));
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote;
+
+import android.util.Log;
+
+import com.github.dreamhead.moco.HttpServer;
+import com.github.dreamhead.moco.Runnable;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.remote.endpoints.Dhis2EndPointFactory;
+import org.clintonhealthaccess.lmis.app.remote.endpoints.Dhis2Endpoint;
+import org.clintonhealthaccess.lmis.app.remote.transport.PooledHttpClient;
+import org.clintonhealthaccess.lmis.app.remote.transport.StreamingApacheClient;
+import org.clintonhealthaccess.lmis.app.remote.transport.TrafficMeter;
+import org.clintonhealthaccess.lmis.app.services.InitialSyncService;
+import org.clintonhealthaccess.lmis.app.services.UserService;
+import org.clintonhealthaccess.lmis.app.sync.SyncManager;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.clintonhealthaccess.lmis.utils.SameThreadRequestPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import retrofit.ErrorHandler;
+import retrofit.RestAdapter;
+import retrofit.RetrofitError;
+import retrofit.client.Client;
+import retrofit.client.Request;
+import retrofit.client.Response;
+
+import static com.github.dreamhead.moco.Moco.by;
+import static com.github.dreamhead.moco.Moco.file;
+import static com.github.dreamhead.moco.Moco.httpserver;
+import static com.github.dreamhead.moco.Moco.latency;
+import static com.github.dreamhead.moco.Moco.uri;
+import static com.github.dreamhead.moco.Moco.with;
+import static com.github.dreamhead.moco.Runner.running;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class FirstLoginFanOutTest extends LmisTestClass {
+    private static final int PORT = 12309;
+    // added to every response, standing in for one round trip to the server
+    private static final long LATENCY = 300;
+
+    @Inject
+    private UserService userService;
+
+    @Inject
+    private InitialSyncService initialSyncService;
+
+    private HttpServer server;
+    private final List<long[]> roundTrips = Collections.synchronizedList(new ArrayList<long[]>());
+
+    @Before
+    public void setUp() throws Exception {
+        Robolectric.getFakeHttpLayer().interceptHttpRequests(false);
+        server = httpserver(PORT);
+        serve("/api/me", "userResponse.json");
+        serve("/api/dataElementGroupSets", "dataElementGroupSets.json");
+        serve("/api/dataSets", "dataSets.json");
+        serve("/api/indicatorGroups", "indicatorGroups.json");
+        serve("/api/constants", "constants.json");
+        serve("/api/dataValueSets", "dataValues.json");
+        serve("/api/analytics.json", "indicatorValues.json");
+        serve("/api/optionSets", "systemSettingForReasonsForOrder.json");
+    }
+
+    @After
+    public void interceptHttpRequestsAgain() throws Exception {
+        Robolectric.getFakeHttpLayer().interceptHttpRequests(true);
+    }
+
+    @Test
+    public void shouldOverlapTheFirstLoginRequestsWhenFannedOut() throws Exception {
+        setUpInjection(this, standIn(new RequestPool()));
+
+        running(server, new Runnable() {
+            @Override
+            public void run() throws Exception {
+                register();
+
+                // the catalog sends three requests at once and the constants two, which overlaps three round trips
+                assertThat(overlappedMillis(), is(greaterThan(2 * LATENCY)));
+            }
+        });
+    }
+
+    @Test
+    public void shouldSendTheFirstLoginRequestsOneAfterAnotherWithoutAPool() throws Exception {
+        setUpInjection(this, standIn(new SameThreadRequestPool()));
+
+        running(server, new Runnable() {
+            @Override
+            public void run() throws Exception {
+                register();
+
+                assertThat(overlappedMillis(), is(lessThan(LATENCY)));
+            }
+        });
+    }
+
+    private void register() {
+        long start = System.currentTimeMillis();
+        User user = userService.register("admin", "district");
+        initialSyncService.run(user, new InitialSyncService.ProgressListener() {
+            @Override
+            public void phaseStarted(InitialSyncService.Phase phase, int completedPhases, int totalPhases) {
+            }
+        });
+        Log.i("FirstLoginFanOutTest", String.format("registered in %dms over %d round trips of %dms",
+                System.currentTimeMillis() - start, roundTrips.size(), LATENCY));
+
+        assertThat(userService.userRegistered(), is(true));
+        assertThat(initialSyncService.isInterrupted(), is(false));
+    }
+
+    // time spent waiting on the server that the requests shared, independent of how long the writes took
+    private long overlappedMillis() {
+        List<long[]> trips = new ArrayList<>(roundTrips);
+        Collections.sort(trips, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] left, long[] right) {
+                return Long.valueOf(left[0]).compareTo(right[0]);
+            }
+        });
+        long waited = 0;
+        long waitedAtOnce = 0;
+        long coveredUntil = Long.MIN_VALUE;
+        for (long[] trip : trips) {
+            waited += trip[1] - trip[0];
+            if (trip[1] > coveredUntil) {
+                waitedAtOnce += trip[1] - Math.max(trip[0], coveredUntil);
+                coveredUntil = trip[1];
+            }
+        }
+        return waited - waitedAtOnce;
+    }
+
+    private void serve(String path, String fixture) {
+        server.get(by(uri(path))).response(latency(LATENCY), with(file(getClass().getClassLoader().getResource("fixtures/" + fixture).getPath())));
+    }
+
+    private AbstractModule standIn(final RequestPool requestPool) {
+        final Dhis2EndPointFactory endPointFactory = mock(Dhis2EndPointFactory.class);
+        Dhis2Endpoint endpoint = new RestAdapter.Builder()
+                .setEndpoint("http://localhost:" + PORT)
+                .setClient(timed(new StreamingApacheClient(PooledHttpClient.create(new TrafficMeter()))))
+                .setErrorHandler(new ErrorHandler() {
+                    @Override
+                    public Throwable handleError(RetrofitError cause) {
+                        return new LmisException(cause);
+                    }
+                })
+                .build().create(Dhis2Endpoint.class);
+        when(endPointFactory.getEndPoint(any(User.class))).thenReturn(endpoint);
+        when(endPointFactory.createNewEndPoint(any(User.class))).thenReturn(endpoint);
+        final SyncManager syncManager = mock(SyncManager.class);
+
+        return new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(Dhis2EndPointFactory.class).toInstance(endPointFactory);
+                bind(RequestPool.class).toInstance(requestPool);
+                bind(SyncManager.class).toInstance(syncManager);
+            }
+        };
+    }
+
+    private Client timed(final Client client) {
+        return new Client() {
+            @Override
+            public Response execute(Request request) throws IOException {
+                long start = System.currentTimeMillis();
+                Response response = client.execute(request);
+                roundTrips.add(new long[]{start, System.currentTimeMillis()});
+                return response;
+            }
+        };
+    }
+}
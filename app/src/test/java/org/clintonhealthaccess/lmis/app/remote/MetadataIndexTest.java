@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote;
+
+import com.thoughtworks.dhis.models.DataElement;
+import com.thoughtworks.dhis.models.DataElementGroup;
+import com.thoughtworks.dhis.models.DataElementGroupSet;
+
+import org.clintonhealthaccess.lmis.app.models.DataSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+
+public class MetadataIndexTest {
+    // commodities.csv lists 62 commodities; the test catalog is ten times that
+    private static final int CATALOG_SIZE = 620;
+    private static final int ELEMENTS_PER_COMMODITY = 8;
+    private static final int CATEGORIES = 7;
+    private static final int DATA_SETS = 4;
+
+    @Test
+    public void shouldFindEveryDataSetCarryingAnElementWhateverTheCaseOfItsId() throws Exception {
+        DataElementGroup group = group("Paracetamol", groupSet("Essential Medicines"));
+        DataSet monthly = dataSet("monthly", element("dispensed", group), element("received", group));
+        DataSet allocated = dataSet("allocated", element("DISPENSED", group));
+
+        MetadataIndex index = MetadataIndex.of(Arrays.asList(monthly, allocated));
+
+        assertThat(index.dataSetsOf("dispensed"), contains(monthly, allocated));
+        assertThat(index.dataSetsOf("received"), contains(monthly));
+        assertThat(index.dataSetsOf("unknown"), is(empty()));
+    }
+
+    @Test
+    public void shouldListElementsOnceUnderTheirFirstGroup() throws Exception {
+        DataElementGroupSet medicines = groupSet("Essential Medicines");
+        DataElementGroupSet malaria = groupSet("Malaria");
+        DataElementGroup paracetamol = group("Paracetamol", medicines);
+        DataElementGroup rdt = group("RDT", malaria);
+        DataSet monthly = dataSet("monthly", element("dispensed", paracetamol, rdt), element("tested", rdt));
+        DataSet allocated = dataSet("allocated", element("dispensed", paracetamol));
+
+        List<DataElementGroupSet> groupSets = MetadataIndex.of(Arrays.asList(monthly, allocated)).groupSets();
+
+        assertThat(groupSets, contains(medicines, malaria));
+        assertThat(medicines.getDataElementGroups(), contains(paracetamol));
+        assertThat(malaria.getDataElementGroups(), contains(rdt));
+        assertThat(idsOf(paracetamol.getDataElements()), contains("dispensed"));
+        assertThat(idsOf(rdt.getDataElements()), contains("tested"));
+    }
+
+    @Test
+    public void shouldLookAtEachElementOfEachDataSetOnlyOnceHoweverBigTheCatalog() throws Exception {
+        for (int commodities : new int[]{CATALOG_SIZE, 4 * CATALOG_SIZE}) {
+            List<DataSet> catalog = catalog(commodities);
+
+            assertThat(buildAndLookUp(catalog), is(commodities * ELEMENTS_PER_COMMODITY));
+
+            // the old nested scans walked every data set again for each element, group and group set
+            int elements = 0;
+            int visits = 0;
+            for (DataSet dataSet : catalog) {
+                elements += dataSet.getDataElements().size();
+                visits += ((CountingList) dataSet.getDataElements()).visits;
+            }
+            assertThat(visits, is(elements));
+        }
+    }
+
+    private int buildAndLookUp(List<DataSet> catalog) {
+        MetadataIndex index = MetadataIndex.of(catalog);
+        int found = 0;
+        for (DataElementGroupSet groupSet : index.groupSets()) {
+            for (DataElementGroup group : groupSet.getDataElementGroups()) {
+                for (DataElement element : group.getDataElements()) {
+                    found += index.dataSetsOf(element.getId()).isEmpty() ? 0 : 1;
+                }
+            }
+        }
+        return found;
+    }
+
+    private List<DataSet> catalog(int commodities) {
+        List<DataElementGroupSet> categories = new ArrayList<>();
+        for (int i = 0; i < CATEGORIES; i++) {
+            categories.add(groupSet("category" + i));
+        }
+        List<List<DataElement>> elementsOfDataSets = new ArrayList<>();
+        for (int i = 0; i < DATA_SETS; i++) {
+            elementsOfDataSets.add(new CountingList());
+        }
+        // every element is carried by one of the first data sets and by the last, as stock on hand and allocations are
+        for (int commodity = 0; commodity < commodities; commodity++) {
+            DataElementGroup group = group("commodity" + commodity, categories.get(commodity % CATEGORIES));
+            for (int action = 0; action < ELEMENTS_PER_COMMODITY; action++) {
+                String id = "element" + commodity + "_" + action;
+                elementsOfDataSets.get(action % (DATA_SETS - 1)).add(element(id, group));
+                elementsOfDataSets.get(DATA_SETS - 1).add(element(id, group));
+            }
+        }
+        List<DataSet> dataSets = new ArrayList<>();
+        for (int i = 0; i < DATA_SETS; i++) {
+            dataSets.add(new DataSet(com.thoughtworks.dhis.models.DataSet.builder()
+                    .id("dataSet" + i).name("dataSet" + i).dataElements(elementsOfDataSets.get(i)).build()));
+        }
+        return dataSets;
+    }
+
+    // counts every element handed out, however the list is walked
+    private static class CountingList extends ArrayList<DataElement> {
+        private int visits;
+
+        @Override
+        public DataElement get(int index) {
+            visits++;
+            return super.get(index);
+        }
+
+        @Override
+        public Iterator<DataElement> iterator() {
+            final Iterator<DataElement> iterator = super.iterator();
+            return new Iterator<DataElement>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public DataElement next() {
+                    visits++;
+                    return iterator.next();
+                }
+
+                @Override
+                public void remove() {
+                    iterator.remove();
+                }
+            };
+        }
+    }
+
+    private DataSet dataSet(String id, DataElement... elements) {
+        return new DataSet(com.thoughtworks.dhis.models.DataSet.builder()
+                .id(id).name(id).dataElements(Arrays.asList(elements)).build());
+    }
+
+    private DataElement element(String id, DataElementGroup... groups) {
+        return DataElement.builder().id(id).name(id).dataElementGroups(Arrays.asList(groups)).build();
+    }
+
+    private DataElementGroup group(String name, DataElementGroupSet groupSet) {
+        return DataElementGroup.builder().id(name).name(name).dataElementGroupSet(groupSet).build();
+    }
+
+    private DataElementGroupSet groupSet(String name) {
+        return DataElementGroupSet.builder().id(name).name(name).build();
+    }
+
+    private List<String> idsOf(List<DataElement> elements) {
+        List<String> ids = new ArrayList<>();
+        for (DataElement element : elements) {
+            ids.add(element.getId());
+        }
+        return ids;
+    }
+}
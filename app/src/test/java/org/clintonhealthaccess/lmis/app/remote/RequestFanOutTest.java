@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class RequestFanOutTest {
+    private static final long LATENCY_MILLIS = 300;
+
+    private ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldWaitForRequestsSentTogetherOnlyAsLongAsTheSlowest() throws Exception {
+        RequestFanOut fanOut = new RequestFanOut(executor, 5000);
+        long start = System.currentTimeMillis();
+
+        RequestFanOut.Request<String> first = fanOut.submit("first", slowly("one"));
+        RequestFanOut.Request<String> second = fanOut.submit("second", slowly("two"));
+        RequestFanOut.Request<String> third = fanOut.submit("third", slowly("three"));
+        fanOut.join();
+
+        assertThat(first.get(), is("one"));
+        assertThat(second.get(), is("two"));
+        assertThat(third.get(), is("three"));
+        assertThat(System.currentTimeMillis() - start, lessThan(3 * LATENCY_MILLIS));
+    }
+
+    @Test
+    public void shouldNameTheRequestThatTimedOutAndCancelTheRest() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        RequestFanOut fanOut = new RequestFanOut(executor, 100);
+        fanOut.submit("quick", new Callable<String>() {
+            @Override
+            public String call() {
+                return "done";
+            }
+        });
+        fanOut.submit("stuck", new Callable<String>() {
+            @Override
+            public String call() {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            }
+        });
+
+        try {
+            fanOut.join();
+            fail();
+        } catch (LmisException e) {
+            assertThat(e.getMessage(), containsString("stuck"));
+        }
+        assertThat(interrupted.await(5, SECONDS), is(true));
+    }
+
+    @Test
+    public void shouldRethrowTheFailureOfARequest() throws Exception {
+        final LmisException failure = new LmisException("server said no");
+        RequestFanOut fanOut = new RequestFanOut(executor, 5000);
+        fanOut.submit("failing", new Callable<String>() {
+            @Override
+            public String call() {
+                throw failure;
+            }
+        });
+
+        try {
+            fanOut.join();
+            fail();
+        } catch (LmisException e) {
+            assertThat(e, is(failure));
+        }
+    }
+
+    private Callable<String> slowly(final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                Thread.sleep(LATENCY_MILLIS);
+                return value;
+            }
+        };
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.responses;
+
+import com.thoughtworks.dhis.models.DataValue;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+
+public class JsonStreamReaderTest {
+    private static final int LARGE_RESPONSE = 200000;
+
+    // covers the InputStreamReader and JsonReader buffers, far below the size of the response
+    private static final int MAX_VALUES_READ_AHEAD = 500;
+
+    private JsonStreamReader reader = new JsonStreamReader();
+
+    @Test
+    public void shouldReadALargeDataValueSetWithoutBufferingIt() throws Exception {
+        final SyntheticDataValueSet response = new SyntheticDataValueSet(LARGE_RESPONSE);
+        final int[] handled = {0};
+
+        int count = reader.readDataValues(response, new JsonStreamReader.Handler<DataValue>() {
+            @Override
+            public void handle(DataValue dataValue) {
+                assertThat(dataValue.getValue(), is(String.valueOf(handled[0])));
+                assertThat(response.generated - handled[0], lessThan(MAX_VALUES_READ_AHEAD));
+                handled[0]++;
+            }
+        });
+
+        assertThat(count, is(LARGE_RESPONSE));
+        assertThat(handled[0], is(LARGE_RESPONSE));
+    }
+
+    @Test
+    public void shouldReadAnalyticsRowsAndSkipTheOtherFields() throws Exception {
+        String json = "{\"headers\":[{\"name\":\"dx\"},{\"name\":\"ou\"}],\"rows\":[[\"indicator\",\"facility\",\"201409\",\"12.5\"]],\"width\":4}";
+        final List<List<String>> rows = new ArrayList<>();
+
+        int count = reader.readRows(new ByteArrayInputStream(json.getBytes("UTF-8")), new JsonStreamReader.Handler<List<String>>() {
+            @Override
+            public void handle(List<String> row) {
+                rows.add(row);
+            }
+        });
+
+        assertThat(count, is(1));
+        assertThat(rows.get(0), contains("indicator", "facility", "201409", "12.5"));
+    }
+
+    @Test(expected = LmisException.class)
+    public void shouldFailWhenTheResponseIsCutShort() throws Exception {
+        String json = "{\"dataValues\":[{\"dataElement\":\"element\",\"value\":\"1\"},{\"dataElem";
+
+        reader.readDataValues(new ByteArrayInputStream(json.getBytes("UTF-8")), new JsonStreamReader.Handler<DataValue>() {
+            @Override
+            public void handle(DataValue dataValue) {
+            }
+        });
+    }
+
+    private static class SyntheticDataValueSet extends InputStream {
+        private final int size;
+        private int generated;
+        private byte[] chunk = "{\"dataSet\":\"default\",\"dataValues\":[".getBytes();
+        private int position;
+        private boolean finished;
+
+        SyntheticDataValueSet(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            if (position == chunk.length && !nextChunk()) {
+                return -1;
+            }
+            return chunk[position++];
+        }
+
+        private boolean nextChunk() {
+            if (finished) {
+                return false;
+            }
+            if (generated == size) {
+                chunk = "]}".getBytes();
+                finished = true;
+            } else {
+                chunk = String.format("%s{\"dataElement\":\"element%d\",\"period\":\"20140901\",\"orgUnit\":\"facility\","
+                                + "\"value\":\"%d\",\"lastUpdated\":\"2014-09-01T08:00:00.000+0000\"}",
+                        generated == 0 ? "" : ",", generated % 10, generated).getBytes();
+                generated++;
+            }
+            position = 0;
+            return true;
+        }
+    }
+}
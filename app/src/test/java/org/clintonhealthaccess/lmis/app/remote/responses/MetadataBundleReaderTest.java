@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.responses;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.remote.MetadataBundle;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+
+public class MetadataBundleReaderTest {
+    private static final String DATA_SET = "{\"type\":\"dataSet\",\"value\":{\"id\":\"set1\",\"name\":\"LMIS Commodities Default\",\"periodType\":\"Daily\",\"dataElements\":[{\"id\":\"element1\"}]}}";
+    private static final String GROUP_SET = "{\"type\":\"dataElementGroupSet\",\"value\":{\"id\":\"groupSet1\",\"name\":\"Malaria\",\"dataElementGroups\":[{\"id\":\"group1\",\"name\":\"Coartem\",\"attributeValues\":[{\"value\":\"1\",\"attribute\":{\"id\":\"a1\",\"name\":\"Is Device\"}}],\"dataElements\":[{\"id\":\"element1\",\"name\":\"Coartem DISPENSED\",\"attributeValues\":[{\"value\":\"DISPENSED\",\"attribute\":{\"id\":\"a2\",\"name\":\"LMIS Activity\"}}]}]}]}}";
+    private static final String INDICATOR_GROUP = "{\"type\":\"indicatorGroup\",\"value\":{\"id\":\"indicatorGroup1\",\"name\":\"BUFFER STOCK\",\"indicators\":[{\"id\":\"indicator1\",\"name\":\"Coartem BUFFER STOCK\"}]}}";
+    private static final String CONSTANT = "{\"type\":\"constant\",\"value\":{\"id\":\"constant1\",\"name\":\"Monthly Stock Count Day\",\"value\":24.0}}";
+
+    private MetadataBundleReader reader = new MetadataBundleReader();
+
+    @Test
+    public void shouldReadEveryRecordInTheBundle() throws Exception {
+        MetadataBundle bundle = reader.read(bundleOf(header(1, 1, 1, 1, 1), DATA_SET, GROUP_SET, INDICATOR_GROUP, CONSTANT));
+
+        assertThat(bundle.getDataSets().get(0).getId(), is("set1"));
+        assertThat(bundle.getDataSets().get(0).getDataElements().get(0).getId(), is("element1"));
+        assertThat(bundle.getDataElementGroupSets().get(0).getDataElementGroups().get(0).getDataElements().get(0).getName(), is("Coartem DISPENSED"));
+        assertThat(bundle.getIndicatorGroups().get(0).getIndicators().get(0).getIndicatorGroup().getName(), is("BUFFER STOCK"));
+        assertThat(bundle.constant("monthly stock").getValue(), is(24.0));
+        assertThat(bundle.constant("Routine Order Alert Day"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldSkipRecordTypesItDoesNotKnow() throws Exception {
+        MetadataBundle bundle = reader.read(bundleOf(header(1, 1, 0, 0, 0), DATA_SET, "{\"type\":\"optionSet\",\"value\":{\"id\":\"options\"}}"));
+
+        assertThat(bundle.getDataSets().size(), is(1));
+    }
+
+    @Test(expected = LmisException.class)
+    public void shouldRejectABundleFromANewerConfigClient() throws Exception {
+        reader.read(bundleOf(header(2, 1, 0, 0, 0), DATA_SET));
+    }
+
+    @Test(expected = LmisException.class)
+    public void shouldRejectABundleThatIsCutShort() throws Exception {
+        reader.read(bundleOf(header(1, 1, 1, 0, 0), DATA_SET));
+    }
+
+    @Test(expected = LmisException.class)
+    public void shouldRejectAFileThatIsNotGzipped() throws Exception {
+        reader.read(new ByteArrayInputStream(header(1, 0, 0, 0, 0).getBytes("UTF-8")));
+    }
+
+    private String header(int version, int dataSets, int groupSets, int indicatorGroups, int constants) {
+        return String.format("{\"type\":\"header\",\"value\":{\"format\":\"lmis-bootstrap\",\"version\":%d,\"generated\":\"2014-10-01T08:00:00+0000\","
+                + "\"dataSets\":%d,\"dataElementGroupSets\":%d,\"indicatorGroups\":%d,\"constants\":%d}}",
+                version, dataSets, groupSets, indicatorGroups, constants);
+    }
+
+    private InputStream bundleOf(String... lines) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(new GZIPOutputStream(out), "UTF-8");
+        for (String line : lines) {
+            writer.write(line);
+            writer.write('\n');
+        }
+        writer.close();
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.transport;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import retrofit.client.Client;
+import retrofit.client.Header;
+import retrofit.client.Request;
+import retrofit.client.Response;
+import retrofit.mime.TypedByteArray;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class ConditionalGetClientTest {
+    private static final String DATA_SETS_URL = "http://dhis2/api/dataSets?fields=id,name";
+    private static final String ETAG = "\"abc123\"";
+
+    private Client delegate;
+    private ConditionalGetClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        delegate = mock(Client.class);
+        client = new ConditionalGetClient(delegate, Files.createTempDir(), HttpTransport.CACHEABLE_PATHS);
+    }
+
+    @Test
+    public void shouldRevalidateWithTheStoredEtagAndServeTheCachedBodyOnNotModified() throws Exception {
+        when(delegate.execute(any(Request.class))).thenReturn(
+                response(200, "{\"dataSets\":[]}", new Header("ETag", ETAG)),
+                response(304, null));
+
+        client.execute(get(DATA_SETS_URL));
+        Response second = client.execute(get(DATA_SETS_URL));
+
+        ArgumentCaptor<Request> requests = ArgumentCaptor.forClass(Request.class);
+        verify(delegate, times(2)).execute(requests.capture());
+        assertThat(requests.getAllValues().get(1).getHeaders(), hasItem(new Header("If-None-Match", ETAG)));
+        assertThat(second.getStatus(), is(200));
+        assertThat(new String(ByteStreams.toByteArray(second.getBody().in())), is("{\"dataSets\":[]}"));
+    }
+
+    @Test
+    public void shouldNotCacheEndpointsOutsideTheMetadataList() throws Exception {
+        String url = "http://dhis2/api/dataValueSets?dataSet=x";
+        when(delegate.execute(any(Request.class))).thenReturn(
+                response(200, "{}", new Header("ETag", ETAG)),
+                response(200, "{}", new Header("ETag", ETAG)));
+
+        client.execute(get(url));
+        client.execute(get(url));
+
+        ArgumentCaptor<Request> requests = ArgumentCaptor.forClass(Request.class);
+        verify(delegate, times(2)).execute(requests.capture());
+        assertThat(requests.getAllValues().get(1).getHeaders(), not(hasItem(new Header("If-None-Match", ETAG))));
+    }
+
+    @Test
+    public void shouldSendIfModifiedSinceWhenOnlyLastModifiedIsKnown() throws Exception {
+        String lastModified = "Wed, 01 Oct 2014 10:00:00 GMT";
+        when(delegate.execute(any(Request.class))).thenReturn(
+                response(200, "{\"constants\":[]}", new Header("Last-Modified", lastModified)),
+                response(304, null));
+
+        client.execute(get("http://dhis2/api/constants?query=x"));
+        client.execute(get("http://dhis2/api/constants?query=x"));
+
+        ArgumentCaptor<Request> requests = ArgumentCaptor.forClass(Request.class);
+        verify(delegate, times(2)).execute(requests.capture());
+        assertThat(requests.getAllValues().get(1).getHeaders(), hasItem(new Header("If-Modified-Since", lastModified)));
+    }
+
+    private Request get(String url) {
+        return new Request("GET", url, Collections.<Header>emptyList(), null);
+    }
+
+    private Response response(int status, String body, Header... headers) {
+        List<Header> headerList = new ArrayList<>(Arrays.asList(headers));
+        TypedByteArray typedBody = body == null ? null : new TypedByteArray("application/json", body.getBytes());
+        return new Response("http://dhis2", status, "", headerList, typedBody);
+    }
+}
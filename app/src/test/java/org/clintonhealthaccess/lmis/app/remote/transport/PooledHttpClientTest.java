@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.remote.transport;
+
+import com.github.dreamhead.moco.HttpServer;
+import com.github.dreamhead.moco.Runnable;
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.zip.GZIPOutputStream;
+
+import static com.github.dreamhead.moco.Moco.by;
+import static com.github.dreamhead.moco.Moco.file;
+import static com.github.dreamhead.moco.Moco.header;
+import static com.github.dreamhead.moco.Moco.httpserver;
+import static com.github.dreamhead.moco.Moco.uri;
+import static com.github.dreamhead.moco.Moco.with;
+import static com.github.dreamhead.moco.Runner.running;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class PooledHttpClientTest {
+    private static final int PORT = 12308;
+    private static final String BODY = Strings.repeat("{\"dataElement\":\"abc\",\"value\":\"1\"},", 500);
+
+    private HttpServer server;
+    private byte[] gzipped;
+
+    @Before
+    public void setUp() throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(buffer);
+        gzip.write(BODY.getBytes("UTF-8"));
+        gzip.close();
+        gzipped = buffer.toByteArray();
+
+        File body = File.createTempFile("dataValueSets", ".json.gz");
+        body.deleteOnExit();
+        Files.write(gzipped, body);
+
+        Robolectric.getFakeHttpLayer().interceptHttpRequests(false);
+        server = httpserver(PORT);
+        server.get(by(uri("/api/dataValueSets"))).response(header("Content-Encoding", "gzip"), with(file(body.getPath())));
+    }
+
+    @After
+    public void interceptHttpRequestsAgain() throws Exception {
+        Robolectric.getFakeHttpLayer().interceptHttpRequests(true);
+    }
+
+    @Test
+    public void shouldCountTheCompressedBytesThatCameOverTheNetwork() throws Exception {
+        final TrafficMeter meter = new TrafficMeter();
+
+        running(server, new Runnable() {
+            @Override
+            public void run() throws Exception {
+                HttpResponse response = PooledHttpClient.create(meter).execute(new HttpGet("http://localhost:" + PORT + "/api/dataValueSets"));
+
+                assertThat(EntityUtils.toString(response.getEntity(), "UTF-8"), is(BODY));
+                assertThat(meter.getBytesIn(), is((long) gzipped.length));
+            }
+        });
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.inject.Inject;
+import com.thoughtworks.dhis.models.DataValue;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.ArchivalReport;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.CommodityAction;
+import org.clintonhealthaccess.lmis.app.models.CommoditySnapshot;
+import org.clintonhealthaccess.lmis.app.models.Dispensing;
+import org.clintonhealthaccess.lmis.app.models.DispensingItem;
+import org.clintonhealthaccess.lmis.app.models.OutboundValue;
+import org.clintonhealthaccess.lmis.app.models.StockItemSnapshot;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.repositories.OutboxRepository;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.State.PENDING;
+import static org.clintonhealthaccess.lmis.app.models.OutboundValue.State.SYNCED;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.createStockItemSnapshotValue;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjectionWithMockLmisServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class ArchivalServiceTest extends LmisTestClass {
+
+    @Inject
+    ArchivalService archivalService;
+    @Inject
+    StockItemSnapshotService stockItemSnapshotService;
+    @Inject
+    CommodityService commodityService;
+    @Inject
+    CommoditySnapshotService commoditySnapshotService;
+    @Inject
+    OutboxRepository outboxRepository;
+
+    private Commodity commodity;
+    private Date today;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpInjectionWithMockLmisServer(application, this);
+        commodityService.initialise(new User("test", "pass"));
+        commodity = commodityService.all().get(0);
+        today = new Date();
+    }
+
+    @Test
+    public void shouldDeleteOldCommoditySnapshotsButKeepTheValuesSentForThem() throws Exception {
+        Date longAgo = DateUtil.addMonth(today, -5);
+        createCommoditySnapshot(longAgo);
+        createCommoditySnapshot(longAgo);
+        createCommoditySnapshot(today);
+        createOutboundValue("delivered", SYNCED, longAgo);
+        createOutboundValue("undelivered", PENDING, longAgo);
+        createOutboundValue("recent", SYNCED, today);
+
+        ArchivalReport report = archivalService.archive(today);
+
+        List<CommoditySnapshot> remaining = new GenericDao<>(CommoditySnapshot.class, application).queryForAll();
+        assertThat(report.getCommoditySnapshotsDeleted(), is(2));
+        assertThat(remaining.size(), is(1));
+        assertThat(new GenericDao<>(OutboundValue.class, application).queryForAll().size(), is(3));
+    }
+
+    @Test
+    public void shouldAddABackdatedEditToTheValueAlreadySentForAnArchivedDay() throws Exception {
+        Date longAgo = DateUtil.addMonth(today, -5);
+        dispense(longAgo, 3);
+        outboxRepository.markSynced(outboxRepository.findUndelivered());
+        ArchivalReport report = archivalService.archive(today);
+        assertThat(report.getCommoditySnapshotsDeleted(), greaterThan(0));
+
+        dispense(longAgo, 2);
+
+        List<OutboundValue> undelivered = outboxRepository.findUndelivered();
+        assertThat(undelivered.isEmpty(), is(false));
+        for (OutboundValue outboundValue : undelivered) {
+            assertThat(outboundValue.getValue(), is("5"));
+        }
+    }
+
+    @Test
+    public void shouldAnswerStockQuestionsTheSameAfterRollingUpOldSnapshots() throws Exception {
+        Date monthStart = archivedMonthWithRepeatedSnapshots();
+        Date monthEnd = DateUtil.getMonthEndDate(monthStart);
+        Date nextMonthEnd = DateUtil.getMonthEndDate(DateUtil.addMonth(monthStart, 1));
+
+        int openingStock = stockItemSnapshotService.getLatestStock(commodity, monthStart, true);
+        int closingStock = stockItemSnapshotService.getLatestStock(commodity, monthEnd, false);
+        int stockOutDays = stockItemSnapshotService.getStockOutDays(commodity, monthStart, monthEnd);
+        int stockOutDaysOverTwoMonths = stockItemSnapshotService.getStockOutDays(commodity, monthStart, nextMonthEnd);
+
+        ArchivalReport report = archivalService.archive(today);
+
+        assertThat(report.getMonthSummariesCreated(), is(2));
+        assertThat(report.getStockItemSnapshotsRolledUp(), is(3));
+        assertThat(report.getRowsAfter(), lessThan(report.getRowsBefore()));
+        assertThat(stockItemSnapshotService.get(commodity, monthStart, monthEnd).size(), is(5));
+
+        assertThat(stockItemSnapshotService.getLatestStock(commodity, monthStart, true), is(openingStock));
+        assertThat(stockItemSnapshotService.getLatestStock(commodity, monthEnd, false), is(closingStock));
+        assertThat(stockItemSnapshotService.getStockOutDays(commodity, monthStart, monthEnd), is(stockOutDays));
+        assertThat(stockItemSnapshotService.getStockOutDays(commodity, monthStart, nextMonthEnd), is(stockOutDaysOverTwoMonths));
+    }
+
+    @Test
+    public void shouldAnswerTheLatestStockOnEveryDayOfAnArchivedMonth() throws Exception {
+        Date monthStart = archivedMonthWithRepeatedSnapshots();
+        List<Date> days = daysOf(monthStart);
+        List<Integer> closing = new ArrayList<>();
+        List<Integer> opening = new ArrayList<>();
+        for (Date day : days) {
+            closing.add(stockItemSnapshotService.getLatestStock(commodity, day, false));
+            opening.add(stockItemSnapshotService.getLatestStock(commodity, day, true));
+        }
+
+        archivalService.archive(today);
+
+        for (int i = 0; i < days.size(); i++) {
+            assertThat(stockItemSnapshotService.getLatestStock(commodity, days.get(i), false), is(closing.get(i)));
+            assertThat(stockItemSnapshotService.getLatestStock(commodity, days.get(i), true), is(opening.get(i)));
+        }
+    }
+
+    @Test
+    public void shouldCountStockOutDaysOverRangesThatStartOrEndInsideAnArchivedMonth() throws Exception {
+        Date monthStart = archivedMonthWithRepeatedSnapshots();
+        Date nextMonthMiddle = DateUtil.addDayOfMonth(DateUtil.addMonth(monthStart, 1), 14);
+        List<Date[]> ranges = new ArrayList<>();
+        ranges.add(new Date[]{DateUtil.addDayOfMonth(monthStart, 4), DateUtil.addDayOfMonth(monthStart, 12)});
+        ranges.add(new Date[]{DateUtil.addDayOfMonth(monthStart, 10), DateUtil.getMonthEndDate(monthStart)});
+        ranges.add(new Date[]{monthStart, DateUtil.addDayOfMonth(monthStart, 11)});
+        ranges.add(new Date[]{DateUtil.addDayOfMonth(monthStart, 20), nextMonthMiddle});
+        List<Integer> stockOutDays = new ArrayList<>();
+        for (Date[] range : ranges) {
+            stockOutDays.add(stockItemSnapshotService.getStockOutDays(commodity, range[0], range[1]));
+        }
+
+        archivalService.archive(today);
+
+        for (int i = 0; i < ranges.size(); i++) {
+            assertThat(stockItemSnapshotService.getStockOutDays(commodity, ranges.get(i)[0], ranges.get(i)[1]), is(stockOutDays.get(i)));
+        }
+    }
+
+    @Test
+    public void shouldNotRollUpTheSameMonthTwice() throws Exception {
+        Date monthStart = DateUtil.getMonthStartDate(DateUtil.addMonth(today, -8));
+        createStockItemSnapshotValue(commodity, DateUtil.addDayOfMonth(monthStart, 2), 10);
+        createStockItemSnapshotValue(commodity, DateUtil.addDayOfMonth(monthStart, 9), 0);
+
+        archivalService.archive(today);
+        ArchivalReport report = archivalService.archive(today);
+
+        assertThat(report.getMonthSummariesCreated(), is(0));
+        assertThat(report.getStockItemSnapshotsRolledUp(), is(0));
+    }
+
+    // three of the month's snapshots repeat the one before them, the restock on day 17 follows a stock out that same day
+    private Date archivedMonthWithRepeatedSnapshots() {
+        Date monthStart = DateUtil.getMonthStartDate(DateUtil.addMonth(today, -8));
+        createStockItemSnapshotValue(commodity, DateUtil.addDayOfMonth(monthStart, -3), 7);
+        createStockItemSnapshotValue(commodity, DateUtil.addDayOfMonth(monthStart, 2), 10);
+        createStockItemSnapshotValue(commodity, DateUtil.addDayOfMonth(monthStart, 5), 10);
+        createStockItemSnapshotValue(commodity, DateUtil.addDayOfMonth(monthStart, 9), 0);
+        createStockItemSnapshotValue(commodity, DateUtil.addDayOfMonth(monthStart, 11), 0);
+        createStockItemSnapshotValue(commodity, DateUtil.addDayOfMonth(monthStart, 14), 5);
+        StockItemSnapshot restocked = new StockItemSnapshot(commodity, DateUtil.addDayOfMonth(monthStart, 17), 5);
+        restocked.setQuantity(0);
+        restocked.setQuantity(5);
+        new GenericDao<>(StockItemSnapshot.class, application).create(restocked);
+        createStockItemSnapshotValue(commodity, DateUtil.addDayOfMonth(monthStart, 19), 4);
+        createStockItemSnapshotValue(commodity, DateUtil.addDayOfMonth(monthStart, 25), 4);
+        return monthStart;
+    }
+
+    private List<Date> daysOf(Date monthStart) {
+        List<Date> days = new ArrayList<>();
+        Date monthEnd = DateUtil.getMonthEndDate(monthStart);
+        for (Date day = monthStart; !day.after(monthEnd); day = DateUtil.addDayOfMonth(day, 1)) {
+            days.add(day);
+        }
+        return days;
+    }
+
+    private void dispense(Date date, int quantity) {
+        DispensingItem dispensingItem = new DispensingItem(commodity, quantity);
+        dispensingItem.setDispensing(new Dispensing(date));
+        commoditySnapshotService.add(dispensingItem);
+    }
+
+    private void createCommoditySnapshot(Date periodDate) {
+        DispensingItem dispensingItem = new DispensingItem(commodity, 1);
+        dispensingItem.setDispensing(new Dispensing());
+        CommodityAction commodityAction = dispensingItem.getActivitiesValues().get(0).getCommodityAction();
+        CommoditySnapshot snapshot = new CommoditySnapshot(commodity, commodityAction, "3", periodDate);
+        new GenericDao<>(CommoditySnapshot.class, application).create(snapshot);
+    }
+
+    private void createOutboundValue(String dataElement, OutboundValue.State state, Date updated) {
+        DataValue dataValue = DataValue.builder().dataSet("dataSet").dataElement(dataElement).period("201409").value("3").build();
+        new GenericDao<>(OutboundValue.class, application).create(new OutboundValue(dataValue, state, updated));
+    }
+}
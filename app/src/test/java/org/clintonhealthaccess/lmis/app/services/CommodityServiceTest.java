@@ -33,6 +33,8 @@ import android.content.SharedPreferences;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
+import com.thoughtworks.dhis.models.BootstrapBundle;
+import com.thoughtworks.dhis.models.Constant;
 
 import org.clintonhealthaccess.lmis.LmisTestClass;
 import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
@@ -46,6 +48,7 @@ import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.models.reports.UtilizationItem;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
+import org.clintonhealthaccess.lmis.app.remote.MetadataBundle;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
 import org.junit.Before;
@@ -63,9 +66,11 @@ import static org.clintonhealthaccess.lmis.utils.LMISTestCase.receive;
 import static org.clintonhealthaccess.lmis.utils.TestFixture.defaultCategories;
 import static org.clintonhealthaccess.lmis.utils.TestFixture.getDefaultCommodities;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.stubCommodityActionValues;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.testActionValues;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -74,7 +79,9 @@ import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -113,7 +120,7 @@ public class CommodityServiceTest extends LmisTestClass {
         commodityActionService = mock(CommodityActionService.class);
         mockStockLevels = testActionValues(application);
         when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(defaultCategories(application));
-        when(mockLmisServer.fetchCommodityActionValues((User) anyObject())).thenReturn(mockStockLevels);
+        stubCommodityActionValues(mockLmisServer, mockStockLevels);
         when(mockLmisServer.fetchIntegerConstant((User) anyObject(), anyString())).thenReturn(MOCK_DAY);
 
         setUpInjection(this, new AbstractModule() {
@@ -130,6 +137,31 @@ public class CommodityServiceTest extends LmisTestClass {
         verifyAllCommodityCategories();
     }
 
+    @Test
+    public void shouldImportTheCatalogAndConstantsFromABundleOnTheTablet() throws Exception {
+        final BootstrapService mockBootstrapService = mock(BootstrapService.class);
+        MetadataBundle bundle = new MetadataBundle(new BootstrapBundle("2014-10-01T08:00:00+0000", 0, 0, 0, 1));
+        bundle.getConstants().add(Constant.builder().name("Monthly Stock Count Day").value(24d).build());
+        when(mockBootstrapService.bundle()).thenReturn(bundle);
+        when(mockLmisServer.fetchCategories((User) anyObject(), eq(bundle))).thenReturn(defaultCategories(application));
+        setUpInjection(this, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(LmisServer.class).toInstance(mockLmisServer);
+                bind(BootstrapService.class).toInstance(mockBootstrapService);
+            }
+        });
+        User user = new User("test", "pass");
+
+        commodityService.importCatalog(user);
+        commodityService.syncConstants(user);
+
+        verify(mockLmisServer, never()).fetchCategories((User) anyObject());
+        assertThat(commodityService.all().size(), is(8));
+        assertThat(sharedPreferences.getInt(CommodityService.MONTHLY_STOCK_COUNT_DAY, 0), is(24));
+        assertThat(sharedPreferences.getInt(CommodityService.ROUTINE_ORDER_ALERT_DAY, 0), is(MOCK_DAY));
+    }
+
     @Test
     public void shouldLoadAllCommodities() throws IOException {
         commodityService.initialise(new User("test", "pass"));
@@ -166,6 +198,79 @@ public class CommodityServiceTest extends LmisTestClass {
         assertThat(actual.getCommodityActionDataSets(), is(notNullValue()));
     }
 
+    @Test
+    public void shouldSkipTheCatalogImportWhenNothingHasChanged() throws Exception {
+        commodityService.initialise(new User("test", "pass"));
+
+        int rows = commodityService.saveToDatabase(defaultCategories(application));
+
+        assertThat(rows, is(0));
+    }
+
+    @Test
+    public void shouldOnlyReimportChangedCommodities() throws Exception {
+        commodityService.initialise(new User("test", "pass"));
+        Commodity coartem = commodityService.all().get(0);
+        int savedDataSets = actionDataSetsOf(coartem);
+
+        List<Category> categories = defaultCategories(application);
+        categories.get(0).getTransientCommodities().get(0).setName("Coartem 20/120");
+        int rows = commodityService.saveToDatabase(categories);
+        categoryService.clearCache();
+
+        assertThat(rows, is(not(0)));
+        assertThat(categoryService.all().size(), is(7));
+        assertThat(commodityService.all().size(), is(8));
+        Commodity renamed = commodityById(coartem.getId());
+        assertThat(renamed.getName(), is("Coartem 20/120"));
+        assertThat(actionDataSetsOf(renamed), is(savedDataSets));
+    }
+
+    @Test
+    public void shouldHideCommoditiesTheServerNoLongerLists() throws Exception {
+        commodityService.initialise(new User("test", "pass"));
+
+        List<Category> categories = defaultCategories(application);
+        Commodity removed = categories.get(0).getTransientCommodities().remove(0);
+        int rows = commodityService.saveToDatabase(categories);
+        categoryService.clearCache();
+
+        assertThat(rows, is(not(0)));
+        assertThat(commodityService.all().size(), is(7));
+        assertThat(commodityById(removed.getId()), is(nullValue()));
+    }
+
+    @Test
+    public void shouldShowARetiredCommodityAgainOnceTheServerListsItAgain() throws Exception {
+        commodityService.initialise(new User("test", "pass"));
+        List<Category> categories = defaultCategories(application);
+        Commodity removed = categories.get(0).getTransientCommodities().remove(0);
+        commodityService.saveToDatabase(categories);
+
+        commodityService.saveToDatabase(defaultCategories(application));
+        categoryService.clearCache();
+
+        assertThat(commodityService.all().size(), is(8));
+        assertThat(commodityById(removed.getId()), is(notNullValue()));
+    }
+
+    private int actionDataSetsOf(Commodity commodity) {
+        int dataSets = 0;
+        for (CommodityAction action : commodity.getCommodityActionsSaved()) {
+            dataSets += action.getCommodityActionDataSets().size();
+        }
+        return dataSets;
+    }
+
+    private Commodity commodityById(String id) {
+        for (Commodity commodity : commodityService.all()) {
+            if (commodity.getId().equals(id)) {
+                return commodity;
+            }
+        }
+        return null;
+    }
+
     @Test
     public void shouldSaveStockLevelsOnInitialise() throws Exception {
         setUpInjection(this, new AbstractModule() {
@@ -37,6 +37,7 @@ import com.thoughtworks.dhis.models.DataElementType;
 import com.thoughtworks.dhis.models.DataValue;
 import com.thoughtworks.dhis.models.DataValueSet;
 
+import org.clintonhealthaccess.lmis.app.LmisException;
 import org.clintonhealthaccess.lmis.app.models.Allocation;
 import org.clintonhealthaccess.lmis.app.models.AllocationItem;
 import org.clintonhealthaccess.lmis.app.models.Category;
@@ -48,10 +49,12 @@ import org.clintonhealthaccess.lmis.app.models.CommoditySnapshotValue;
 import org.clintonhealthaccess.lmis.app.models.DataSet;
 import org.clintonhealthaccess.lmis.app.models.Dispensing;
 import org.clintonhealthaccess.lmis.app.models.DispensingItem;
+import org.clintonhealthaccess.lmis.app.models.OutboundValue;
 import org.clintonhealthaccess.lmis.app.models.Receive;
 import org.clintonhealthaccess.lmis.app.models.ReceiveItem;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.persistence.repositories.OutboxRepository;
 import org.clintonhealthaccess.lmis.app.sms.SmsSyncService;
 import org.clintonhealthaccess.lmis.app.utils.DateUtil;
 import org.clintonhealthaccess.lmis.utils.LMISTestCase;
@@ -71,13 +74,13 @@ import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static org.clintonhealthaccess.lmis.app.models.CommodityActionDataSet.generateCommodityActionDataSets;
-import static org.clintonhealthaccess.lmis.app.models.CommoditySnapshot.toDataValueSet;
 import static org.clintonhealthaccess.lmis.app.utils.ViewHelpers.getID;
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -98,6 +101,9 @@ public class CommoditySnapshotServiceTest extends LMISTestCase {
     @Inject
     DbUtil dbUtil;
 
+    @Inject
+    OutboxRepository outboxRepository;
+
     private GenericDao<Category> categoryDao;
     private GenericDao<Commodity> commodityDao;
     private GenericDao<CommodityAction> commodityActivityGenericDao;
@@ -214,43 +220,93 @@ public class CommoditySnapshotServiceTest extends LMISTestCase {
 
 
     @Test
-    public void shouldMarkSyncedItemAsUnSyncedWhenAnUpdateOccurs() throws Exception {
+    public void shouldQueueTheValueAgainWhenASyncedSnapshotIsUpdated() throws Exception {
+        DispensingItem dispensingItem = createDispensingItem(commodityDao.queryForAll().get(0), 3);
+        commoditySnapshotService.add(dispensingItem);
+        outboxRepository.markSynced(commoditySnapshotService.getUnSyncedValues());
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(0));
 
-        Commodity fetchedCommodity = commodityDao.queryForAll().get(0);
-        DispensingItem dispensingItem = new DispensingItem(fetchedCommodity, 3);
-        Dispensing dispensing = new Dispensing();
-        dispensingItem.setDispensing(dispensing);
+        commoditySnapshotService.add(dispensingItem);
+
+        List<OutboundValue> unSyncedValues = commoditySnapshotService.getUnSyncedValues();
+        assertThat(unSyncedValues.size(), is(1));
+        assertThat(unSyncedValues.get(0).getValue(), is("6"));
+    }
+
+
+    @Test
+    public void shouldCoalesceRepeatedEditsIntoOneOutboundValue() throws Exception {
+        DispensingItem dispensingItem = createDispensingItem(commodityDao.queryForAll().get(0), 3);
 
-        CommoditySnapshot commoditySnapshot = new CommoditySnapshot(fetchedCommodity, dispensingItem.getActivitiesValues().get(0).getCommodityAction(), "3", new Date());
-        commoditySnapshot.setSynced(true);
-        snapshotDao.create(commoditySnapshot);
+        commoditySnapshotService.add(dispensingItem);
+        commoditySnapshotService.add(dispensingItem);
         commoditySnapshotService.add(dispensingItem);
 
-        List<CommoditySnapshot> commoditySnapshots = snapshotDao.queryForAll();
-        assertThat(commoditySnapshots.size(), is(1));
-        assertThat(commoditySnapshots.get(0).isSynced(), is(false));
+        List<OutboundValue> unSyncedValues = commoditySnapshotService.getUnSyncedValues();
+        assertThat(unSyncedValues.size(), is(1));
+        assertThat(unSyncedValues.get(0).getValue(), is("9"));
+        assertThat(unSyncedValues.get(0).toDataValue("orgUnit").getPeriod(), is(PERIOD_DATE_FORMAT.format(new Date())));
     }
 
 
     @Test
-    public void shouldGetCommoditySnapshotsWithSyncedAsFalse() {
+    public void shouldKeepAValueEditedDuringAPushQueued() throws Exception {
+        DispensingItem dispensingItem = createDispensingItem(commodityDao.queryForAll().get(0), 3);
+        commoditySnapshotService.add(dispensingItem);
+        List<OutboundValue> pushed = commoditySnapshotService.getUnSyncedValues();
 
-        Commodity fetchedCommodity1 = commodityDao.queryForAll().get(0);
-        Commodity fetchedCommodity2 = commodityDao.queryForAll().get(1);
-        DispensingItem dispensingItem = new DispensingItem(fetchedCommodity1, 3);
-        Dispensing dispensing = new Dispensing();
-        dispensingItem.setDispensing(dispensing);
+        commoditySnapshotService.add(dispensingItem);
+        outboxRepository.markSynced(pushed);
 
-        CommoditySnapshot commoditySnapshot = new CommoditySnapshot(fetchedCommodity1, dispensingItem.getActivitiesValues().get(0).getCommodityAction(), "3", new Date());
-        commoditySnapshot.setSynced(true);
-        snapshotDao.create(commoditySnapshot);
+        List<OutboundValue> unSyncedValues = commoditySnapshotService.getUnSyncedValues();
+        assertThat(unSyncedValues.size(), is(1));
+        assertThat(unSyncedValues.get(0).getValue(), is("6"));
+    }
 
-        DispensingItem snapshotable = new DispensingItem(fetchedCommodity2, 4);
-        snapshotable.setDispensing(dispensing);
-        commoditySnapshotService.add(snapshotable);
 
-        List<CommoditySnapshot> unsynchedSnapshots = commoditySnapshotService.getUnSyncedSnapshots();
-        assertThat(unsynchedSnapshots.size(), is(1));
+    @Test
+    public void shouldWriteSnapshotsOnceWhenTheUnitOfWorkCommits() throws Exception {
+        final DispensingItem dispensingItem = createDispensingItem(commodityDao.queryForAll().get(0), 3);
+
+        dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+            @Override
+            public Void perform() throws SQLException {
+                commoditySnapshotService.add(dispensingItem);
+                commoditySnapshotService.add(dispensingItem);
+                commoditySnapshotService.add(dispensingItem);
+                assertThat(snapshotDao.countOf(), is(0L));
+                return null;
+            }
+        });
+
+        List<CommoditySnapshot> commoditySnapshots = snapshotDao.queryForAll();
+        assertThat(commoditySnapshots.size(), is(1));
+        assertThat(commoditySnapshots.get(0).getValue(), is("9"));
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(1));
+    }
+
+
+    @Test
+    public void shouldDropPendingSnapshotsWhenTheUnitOfWorkFails() throws Exception {
+        final DispensingItem dispensingItem = createDispensingItem(commodityDao.queryForAll().get(0), 3);
+
+        try {
+            dbUtil.inUnitOfWork(new DbUtil.UnitOfWork<Void>() {
+                @Override
+                public Void perform() throws SQLException {
+                    commoditySnapshotService.add(dispensingItem);
+                    throw new LmisException("dispensing failed");
+                }
+            });
+            fail("expected the unit of work to fail");
+        } catch (LmisException e) {
+            assertThat(e.getMessage(), is("dispensing failed"));
+        }
+        commoditySnapshotService.add(dispensingItem);
+
+        List<CommoditySnapshot> commoditySnapshots = snapshotDao.queryForAll();
+        assertThat(commoditySnapshots.size(), is(1));
+        assertThat(commoditySnapshots.get(0).getValue(), is("3"));
     }
 
 
@@ -267,9 +323,9 @@ public class CommoditySnapshotServiceTest extends LMISTestCase {
         CommodityAction commodityAction = commodityActivities.get(0);
         CommoditySnapshot snapshot1 = new CommoditySnapshot(fetchedCommodity1, commodityAction, "3", new Date());
         CommoditySnapshot snapshot2 = new CommoditySnapshot(fetchedCommodity2, commodityActivities1.get(0), "8", new Date());
-        List<CommoditySnapshot> snapshots = newArrayList(snapshot1, snapshot2);
-
-        DataValueSet valueSet = toDataValueSet(snapshots, "orgUnit");
+        DataValueSet valueSet = new DataValueSet();
+        valueSet.getDataValues().addAll(snapshot1.toDataValues("orgUnit"));
+        valueSet.getDataValues().addAll(snapshot2.toDataValues("orgUnit"));
 
         assertThat(valueSet, notNullValue());
         assertThat(valueSet.getDataValues().size(), is(2));
@@ -288,13 +344,11 @@ public class CommoditySnapshotServiceTest extends LMISTestCase {
         setUpSuccessHttpPostRequest(200, "successfulSnapshotPush.json");
         createTwoSnapshotsInSameDataSet();
 
-        List<CommoditySnapshot> unSyncedSnapshots = commoditySnapshotService.getUnSyncedSnapshots();
-        assertThat(unSyncedSnapshots.size(), is(2));
-        assertThat(unSyncedSnapshots.get(0).getCommodityAction().getCommodityActionDataSets(), notNullValue());
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(2));
 
         commoditySnapshotService.syncWithServer(new User("user", "user"));
 
-        assertThat(commoditySnapshotService.getUnSyncedSnapshots().size(), is(0));
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(0));
     }
 
 
@@ -304,25 +358,144 @@ public class CommoditySnapshotServiceTest extends LMISTestCase {
         setUpSuccessHttpPostRequest(200, "failureSnapshotPush.json");
         createTwoSnapshotsInSameDataSet();
 
-        assertThat(commoditySnapshotService.getUnSyncedSnapshots().size(), is(2));
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(2));
 
         commoditySnapshotService.syncWithServer(new User("user", "user"));
 
-        assertThat(commoditySnapshotService.getUnSyncedSnapshots().size(), is(2));
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(2));
     }
 
 
+    @Test
+    public void shouldMarkOnlyTheChunksTheServerAcknowledged() throws Exception {
+        commoditySnapshotService.snapshotPushChunkSize = 1;
+        Robolectric.addPendingHttpResponse(500, "");
+        setUpSuccessHttpPostRequest(200, "successfulSnapshotPush.json");
+        createTwoSnapshotsInSameDataSet();
+
+        try {
+            commoditySnapshotService.syncWithServer(new User("user", "user"));
+            fail("the failed chunk should fail the sync");
+        } catch (LmisException expected) {
+        }
+
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(1));
+    }
+
+    @Test
+    public void shouldPushRemainingChunksOnTheNextSync() throws Exception {
+        commoditySnapshotService.snapshotPushChunkSize = 1;
+        setUpSuccessHttpPostRequest(200, "successfulSnapshotPush.json");
+        Robolectric.addPendingHttpResponse(500, "");
+        setUpSuccessHttpPostRequest(200, "successfulSnapshotPush.json");
+        createTwoSnapshotsInSameDataSet();
+
+        try {
+            commoditySnapshotService.syncWithServer(new User("user", "user"));
+        } catch (LmisException expected) {
+        }
+        commoditySnapshotService.syncWithServer(new User("user", "user"));
+
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(0));
+    }
+
+    @Test
+    public void shouldMarkTheAcceptedValuesAndParkTheOnesNamedInTheImportConflicts() throws Exception {
+        createTwoSnapshotsInSameDataSet();
+        OutboundValue rejected = commoditySnapshotService.getUnSyncedValues().get(0);
+        Robolectric.addPendingHttpResponse(200, "{\"status\":\"SUCCESS\",\"dataValueCount\":{\"imported\":1,\"ignored\":1},"
+                + "\"conflicts\":[{\"object\":\"" + rejected.toDataValue(null).getDataElement() + "\",\"value\":\"Data element not found\"}]}");
+
+        int synced = commoditySnapshotService.syncWithServer(new User("user", "user"));
+
+        assertThat(synced, is(1));
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(0));
+        List<OutboundValue> failed = outboxRepository.findFailed();
+        assertThat(failed.size(), is(1));
+        assertThat(failed.get(0).getIdempotencyKey(), is(rejected.getIdempotencyKey()));
+    }
+
+    @Test
+    public void shouldSplitAPartialImportWhoseConflictNamesNoDataElementRatherThanGuess() throws Exception {
+        createTwoSnapshotsInSameDataSet();
+        List<OutboundValue> chunk = commoditySnapshotService.getUnSyncedValues();
+        // the conflict names the first value's period and quantity, but the server ignored the second value
+        DataValue first = chunk.get(0).toDataValue(null);
+        Robolectric.addPendingHttpResponse(200, "{\"status\":\"SUCCESS\",\"dataValueCount\":{\"imported\":1,\"ignored\":1},"
+                + "\"conflicts\":[{\"object\":\"" + first.getPeriod() + "\",\"value\":\"" + first.getValue() + "\"}]}");
+        setUpSuccessHttpPostRequest(200, "successfulSnapshotPush.json");
+        setUpSuccessHttpPostRequest(200, "partialSnapshotPush.json");
+
+        int synced = commoditySnapshotService.syncWithServer(new User("user", "user"));
+
+        assertThat(synced, is(1));
+        List<OutboundValue> failed = outboxRepository.findFailed();
+        assertThat(failed.size(), is(1));
+        assertThat(failed.get(0).getIdempotencyKey(), is(chunk.get(1).getIdempotencyKey()));
+    }
+
+    @Test
+    public void shouldPickTheValueOfAConflictByItsPeriodWhenTheDataElementIsInTheChunkTwice() throws Exception {
+        Commodity commodity = commodityDao.queryForAll().get(0);
+        commoditySnapshotService.add(createDispensingItem(commodity, 3));
+        DispensingItem backdated = new DispensingItem(commodity, 2);
+        backdated.setDispensing(new Dispensing(DateUtil.addDayOfMonth(new Date(), -40)));
+        commoditySnapshotService.add(backdated);
+        List<OutboundValue> chunk = commoditySnapshotService.getUnSyncedValues();
+        assertThat(chunk.size(), is(2));
+        OutboundValue older = chunk.get(0).toDataValue(null).getPeriod().compareTo(chunk.get(1).toDataValue(null).getPeriod()) < 0 ? chunk.get(0) : chunk.get(1);
+        DataValue rejected = older.toDataValue(null);
+        Robolectric.addPendingHttpResponse(200, "{\"status\":\"SUCCESS\",\"dataValueCount\":{\"imported\":1,\"ignored\":1},"
+                + "\"conflicts\":[{\"object\":\"" + rejected.getDataElement() + "\",\"value\":\"Period " + rejected.getPeriod() + " is locked\"}]}");
+
+        int synced = commoditySnapshotService.syncWithServer(new User("user", "user"));
+
+        assertThat(synced, is(1));
+        List<OutboundValue> failed = outboxRepository.findFailed();
+        assertThat(failed.size(), is(1));
+        assertThat(failed.get(0).getIdempotencyKey(), is(older.getIdempotencyKey()));
+    }
+
+    @Test
+    public void shouldSplitAPartialImportWithoutConflictsUntilTheRejectedValueIsFound() throws Exception {
+        setUpSuccessHttpPostRequest(200, "partialSnapshotPush.json");
+        setUpSuccessHttpPostRequest(200, "partialSnapshotPush.json");
+        setUpSuccessHttpPostRequest(200, "successfulSnapshotPush.json");
+        createTwoSnapshotsInSameDataSet();
+
+        int synced = commoditySnapshotService.syncWithServer(new User("user", "user"));
+
+        assertThat(synced, is(1));
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(0));
+        assertThat(outboxRepository.findFailed().size(), is(1));
+    }
+
+    @Test
+    public void shouldQueueAParkedValueAgainWhenItIsEdited() throws Exception {
+        setUpSuccessHttpPostRequest(200, "partialSnapshotPush.json");
+        setUpSuccessHttpPostRequest(200, "partialSnapshotPush.json");
+        setUpSuccessHttpPostRequest(200, "successfulSnapshotPush.json");
+        createTwoSnapshotsInSameDataSet();
+        commoditySnapshotService.syncWithServer(new User("user", "user"));
+
+        commoditySnapshotService.add(createDispensingItem(commodityDao.queryForAll().get(0), 1));
+        commoditySnapshotService.add(createDispensingItem(commodityDao.queryForAll().get(1), 1));
+
+        assertThat(outboxRepository.findFailed().size(), is(0));
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(2));
+    }
+
     @Test
     public void shouldSyncThroughSms() throws Exception {
         createTwoSnapshotsInSameDataSet();
 
-        assertThat(commoditySnapshotService.getSmsReadySnapshots().size(), is(2));
+        assertThat(commoditySnapshotService.getSmsReadyValues().size(), is(2));
 
         commoditySnapshotService.syncWithServerThroughSms(new User("user", "user"));
 
         verify(mockSmsSyncService, times(1)).send(any(DataValueSet.class));
-        assertThat(commoditySnapshotService.getSmsReadySnapshots().size(), is(0));
-        assertThat(commoditySnapshotService.getUnSyncedSnapshots().size(), is(2));
+        assertThat(commoditySnapshotService.getSmsReadyValues().size(), is(0));
+        assertThat(commoditySnapshotService.getUnSyncedValues().size(), is(2));
     }
 
 
@@ -330,7 +503,7 @@ public class CommoditySnapshotServiceTest extends LMISTestCase {
     public void shouldNotSendSmsIfSnapshotsAreAlreadySentBySms() throws Exception {
         createTwoSnapshotsInSameDataSet();
 
-        assertThat(commoditySnapshotService.getSmsReadySnapshots().size(), is(2));
+        assertThat(commoditySnapshotService.getSmsReadyValues().size(), is(2));
 
         commoditySnapshotService.syncWithServerThroughSms(new User("user", "user"));
         commoditySnapshotService.syncWithServerThroughSms(new User("user", "user"));
@@ -338,18 +511,15 @@ public class CommoditySnapshotServiceTest extends LMISTestCase {
         verify(mockSmsSyncService, times(1)).send(any(DataValueSet.class));
     }
 
-    private List<CommoditySnapshot> createTwoSnapshotsInSameDataSet() {
-        Commodity fetchedCommodity1 = commodityDao.queryForAll().get(0);
-        Commodity fetchedCommodity2 = commodityDao.queryForAll().get(1);
-
-        List<CommodityAction> commodityActivities = newArrayList(fetchedCommodity1.getCommodityActionsSaved());
-        List<CommodityAction> commodityActivities1 = newArrayList(fetchedCommodity2.getCommodityActionsSaved());
-        CommoditySnapshot snapshot1 = new CommoditySnapshot(fetchedCommodity1, commodityActivities.get(0), "3", new Date());
-        CommoditySnapshot snapshot2 = new CommoditySnapshot(fetchedCommodity2, commodityActivities1.get(0), "8", new Date());
-        snapshotDao.create(snapshot1);
-        snapshotDao.create(snapshot2);
+    private void createTwoSnapshotsInSameDataSet() {
+        commoditySnapshotService.add(createDispensingItem(commodityDao.queryForAll().get(0), 3));
+        commoditySnapshotService.add(createDispensingItem(commodityDao.queryForAll().get(1), 8));
+    }
 
-        return newArrayList(snapshot1, snapshot2);
+    private DispensingItem createDispensingItem(Commodity commodity, int quantity) {
+        DispensingItem dispensingItem = new DispensingItem(commodity, quantity);
+        dispensingItem.setDispensing(new Dispensing());
+        return dispensingItem;
     }
 
 
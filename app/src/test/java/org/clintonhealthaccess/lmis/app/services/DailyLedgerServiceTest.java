@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.AdjustmentReason;
+import org.clintonhealthaccess.lmis.app.models.Commodity;
+import org.clintonhealthaccess.lmis.app.models.DailyLedger;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.BackgroundMigrator;
+import org.clintonhealthaccess.lmis.app.utils.DateUtil;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.adjust;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.dispense;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.lose;
+import static org.clintonhealthaccess.lmis.utils.LMISTestCase.receive;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjectionWithMockLmisServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class DailyLedgerServiceTest extends LmisTestClass {
+
+    @Inject
+    DailyLedgerService dailyLedgerService;
+    @Inject
+    CommodityService commodityService;
+    @Inject
+    ReceiveService receiveService;
+    @Inject
+    DispensingService dispensingService;
+    @Inject
+    LossService lossService;
+    @Inject
+    AdjustmentService adjustmentService;
+    @Inject
+    BackgroundMigrator backgroundMigrator;
+
+    private Commodity commodity;
+    private Date today;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpInjectionWithMockLmisServer(application, this);
+        commodityService.initialise(new User("test", "pass"));
+        backgroundMigrator.runToCompletion(dailyLedgerService);
+        commodity = commodityService.all().get(0);
+        today = new Date();
+    }
+
+    @Test
+    public void shouldRecordMovementsOfTheDay() throws Exception {
+        int stockOnHand = commodity.getStockOnHand();
+
+        receive(commodity, 10, receiveService);
+        dispense(commodity, 3, dispensingService);
+        lose(commodity, 2, lossService);
+        adjust(commodity, 4, false, AdjustmentReason.RETURNED_TO_LGA, adjustmentService);
+
+        List<DailyLedger> ledgers = dailyLedgerService.getLedgers(commodity, today, today);
+
+        assertThat(ledgers.size(), is(1));
+        DailyLedger ledger = ledgers.get(0);
+        assertThat(ledger.getOpening(), is(stockOnHand));
+        assertThat(ledger.getReceived(), is(10));
+        assertThat(ledger.getReceivedFromLga(), is(10));
+        assertThat(ledger.getDispensed(), is(3));
+        assertThat(ledger.getLost(), is(2));
+        assertThat(ledger.getReturnedToLga(), is(4));
+        assertThat(ledger.getNetAdjustment(), is(-4));
+        assertThat(ledger.getClosing(), is(stockOnHand + 10 - 3 - 2 - 4));
+    }
+
+    @Test
+    public void shouldCarryBackdatedMovementsIntoLaterDays() throws Exception {
+        int stockOnHand = commodity.getStockOnHand();
+        Date twoDaysAgo = DateUtil.addDayOfMonth(today, -2);
+
+        dispense(commodity, 3, dispensingService);
+        dispense(commodity, 2, dispensingService, twoDaysAgo);
+
+        List<DailyLedger> ledgers = dailyLedgerService.getLedgers(commodity, twoDaysAgo, today);
+
+        assertThat(ledgers.size(), is(2));
+        assertThat(ledgers.get(0).getOpening(), is(stockOnHand));
+        assertThat(ledgers.get(0).getClosing(), is(stockOnHand - 2));
+        assertThat(ledgers.get(1).getOpening(), is(stockOnHand - 2));
+        assertThat(ledgers.get(1).getClosing(), is(stockOnHand - 5));
+    }
+
+    @Test
+    public void shouldReturnDailyTotalsForEachDayInRange() throws Exception {
+        Date twoDaysAgo = DateUtil.addDayOfMonth(today, -2);
+
+        dispense(commodity, 2, dispensingService, twoDaysAgo);
+        dispense(commodity, 3, dispensingService);
+        dispense(commodity, 4, dispensingService);
+
+        int[] totals = dailyLedgerService.getDailyTotals(commodity, twoDaysAgo, today, DailyLedger.DISPENSED);
+
+        assertThat(totals.length, is(3));
+        assertThat(totals[0], is(2));
+        assertThat(totals[1], is(0));
+        assertThat(totals[2], is(7));
+    }
+
+    @Test
+    public void shouldRebuildTheSameLedgerFromHistory() throws Exception {
+        Date twoDaysAgo = DateUtil.addDayOfMonth(today, -2);
+
+        receive(commodity, 20, receiveService, twoDaysAgo);
+        lose(commodity, 1, lossService, twoDaysAgo);
+        dispense(commodity, 5, dispensingService);
+        adjust(commodity, 6, true, AdjustmentReason.RECEIVED_FROM_ANOTHER_FACILITY, adjustmentService);
+
+        List<String> incremental = describe(dailyLedgerService.getLedgers(commodity, twoDaysAgo, today));
+        dailyLedgerService.rebuild();
+        List<String> rebuilt = describe(dailyLedgerService.getLedgers(commodity, twoDaysAgo, today));
+
+        assertThat(incremental.size(), is(2));
+        assertThat(rebuilt, is(incremental));
+    }
+
+    private List<String> describe(List<DailyLedger> ledgers) {
+        List<String> descriptions = new ArrayList<>();
+        for (DailyLedger ledger : ledgers) {
+            descriptions.add(ledger.getEpochDay() + ": " + ledger.getOpening() + " +" + ledger.getReceived()
+                    + " -" + ledger.getDispensed() + " -" + ledger.getLost() + " ~" + ledger.getNetAdjustment()
+                    + " (" + ledger.getReceivedFromFacility() + ") = " + ledger.getClosing());
+        }
+        return descriptions;
+    }
+}
@@ -49,6 +49,7 @@ import org.junit.runner.RunWith;
 
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Map;
 
 import static org.clintonhealthaccess.lmis.app.services.GenericService.getTotal;
 import static org.clintonhealthaccess.lmis.utils.LMISTestCase.dispense;
@@ -193,4 +194,44 @@ public class GenericServiceTest extends LmisTestClass {
                 Order.class, OrderItem.class, application);
         assertThat(totalOrdered, is(2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldReturnDailyTotalsDispensed() throws Exception {
+        Commodity commodity = commodityService.all().get(0);
+
+        dispense(commodity, 2, dispensingService);
+        dispense(commodity, 3, dispensingService);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_MONTH, -5);
+        Date startDate = calendar.getTime();
+        Date endDate = new Date();
+
+        int[] dailyTotals = GenericService.getDailyTotals(commodity, startDate, endDate,
+                Dispensing.class, DispensingItem.class, application);
+        assertThat(dailyTotals.length, is(6));
+        assertThat(dailyTotals[0], is(0));
+        assertThat(dailyTotals[5], is(5));
+    }
+
+    @Test
+    public void shouldReturnTotalsLostGroupedByCommodity() throws Exception {
+        Commodity commodity = commodityService.all().get(0);
+        Commodity otherCommodity = commodityService.all().get(1);
+
+        lose(commodity, 3, lossService);
+        lose(otherCommodity, 4, lossService);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_MONTH, -5);
+        Date startDate = calendar.getTime();
+        calendar.add(Calendar.DAY_OF_MONTH, 10);
+        Date endDate = calendar.getTime();
+
+        Map<String, Integer> totals = GenericService.getTotalsByCommodity(startDate, endDate,
+                Loss.class, LossItem.class, application);
+        assertThat(getTotal(totals, commodity), is(3));
+        assertThat(getTotal(totals, otherCommodity), is(4));
+        assertThat(getTotal(totals, commodityService.all().get(2)), is(0));
+    }
+}
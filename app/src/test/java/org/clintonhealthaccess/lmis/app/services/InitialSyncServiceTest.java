@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+import com.j256.ormlite.dao.Dao;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.models.Category;
+import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
+import org.clintonhealthaccess.lmis.app.models.InitialSyncCheckpoint;
+import org.clintonhealthaccess.lmis.app.models.OrderType;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.persistence.DbUtil;
+import org.clintonhealthaccess.lmis.app.sms.SmsSyncService;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.clintonhealthaccess.lmis.app.services.InitialSyncService.Phase;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class InitialSyncServiceTest extends LmisTestClass {
+
+    @Inject
+    private InitialSyncService initialSyncService;
+
+    @Inject
+    private DbUtil dbUtil;
+
+    private CommodityService mockCommodityService;
+    private OrderService mockOrderService;
+    private SmsSyncService mockSmsSyncService;
+    private AlertsService mockAlertsService;
+    private User user = new User("test", "pass");
+
+    @Before
+    public void setUp() throws Exception {
+        mockCommodityService = mock(CommodityService.class);
+        mockOrderService = mock(OrderService.class);
+        mockSmsSyncService = mock(SmsSyncService.class);
+        mockAlertsService = mock(AlertsService.class);
+
+        setUpInjection(this, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(CommodityService.class).toInstance(mockCommodityService);
+                bind(OrderService.class).toInstance(mockOrderService);
+                bind(SmsSyncService.class).toInstance(mockSmsSyncService);
+                bind(AlertsService.class).toInstance(mockAlertsService);
+            }
+        });
+    }
+
+    @Test
+    public void shouldNotBeInterruptedBeforeAnInitialSyncHasStarted() throws Exception {
+        assertThat(initialSyncService.isInterrupted(), is(false));
+    }
+
+    @Test
+    public void shouldRunEveryPhaseInOrderAndReportProgress() throws Exception {
+        RecordingListener listener = new RecordingListener();
+
+        initialSyncService.run(user, listener);
+
+        assertThat(listener.phases, is(Arrays.asList(Phase.values())));
+        assertThat(listener.completedPhases.get(0), is(0));
+        assertThat(listener.completedPhases.get(Phase.values().length - 1), is(Phase.values().length - 1));
+        assertThat(initialSyncService.isInterrupted(), is(false));
+        verify(mockCommodityService).fetchCatalog(user);
+        verify(mockCommodityService).saveCatalog((List<Category>) anyObject());
+        verify(mockOrderService).fetchOrderTypes();
+        verify(mockOrderService).saveOrderTypes((List<OrderType>) anyObject());
+        verify(mockSmsSyncService).syncGatewayNumber();
+        verify(mockAlertsService).updateLowStockAlerts();
+    }
+
+    @Test
+    public void shouldResumeAtThePhaseThatFailed() throws Exception {
+        when(mockCommodityService.fetchActionValues((User) anyObject()))
+                .thenThrow(new LmisException("connection dropped"))
+                .thenReturn(null);
+        when(mockCommodityService.saveActionValues((CommodityActionService.BatchedUpsert) anyObject())).thenReturn(10);
+
+        try {
+            initialSyncService.run(user, new RecordingListener());
+            fail("expected the dropped connection to surface");
+        } catch (LmisException expected) {
+        }
+
+        assertThat(initialSyncService.isInterrupted(), is(true));
+        InitialSyncCheckpoint failed = checkpointFor(Phase.ACTION_VALUES);
+        assertThat(failed.isCompleted(), is(false));
+        assertThat(failed.getAttempts(), is(1));
+
+        RecordingListener listener = new RecordingListener();
+        initialSyncService.run(user, listener);
+
+        assertThat(listener.phases.get(0), is(Phase.ACTION_VALUES));
+        assertThat(listener.completedPhases.get(0), is(2));
+        verify(mockCommodityService, times(1)).fetchCatalog(user);
+        verify(mockCommodityService, times(1)).syncConstants(user);
+        verify(mockCommodityService, times(2)).fetchActionValues(user);
+        verify(mockCommodityService, times(1)).saveActionValues((CommodityActionService.BatchedUpsert) anyObject());
+        verify(mockCommodityService, times(1)).initialiseStock();
+        assertThat(checkpointFor(Phase.ACTION_VALUES).getRows(), is(10));
+        assertThat(checkpointFor(Phase.ACTION_VALUES).getAttempts(), is(2));
+        assertThat(initialSyncService.isInterrupted(), is(false));
+    }
+
+    @Test
+    public void shouldSkipEveryPhaseOnceTheSyncHasFinished() throws Exception {
+        initialSyncService.run(user, new RecordingListener());
+
+        RecordingListener listener = new RecordingListener();
+        initialSyncService.run(user, listener);
+
+        assertThat(listener.phases.isEmpty(), is(true));
+        verify(mockCommodityService, times(1)).fetchCatalog(user);
+        verify(mockAlertsService, times(1)).updateLowStockAlerts();
+    }
+
+    @Test
+    public void shouldMarkEveryPhasePendingWhenTheSyncStarts() throws Exception {
+        when(mockCommodityService.fetchCatalog((User) anyObject())).thenThrow(new LmisException("no network"));
+
+        try {
+            initialSyncService.run(user, new RecordingListener());
+        } catch (LmisException expected) {
+        }
+
+        List<String> pending = new ArrayList<>();
+        for (Phase phase : Phase.values()) {
+            if (!checkpointFor(phase).isCompleted()) {
+                pending.add(phase.name());
+            }
+        }
+        assertThat(pending.size(), is(Phase.values().length));
+        assertThat(pending.get(0), is("CATALOG"));
+        assertThat(initialSyncService.isInterrupted(), is(true));
+    }
+
+    @Test
+    public void shouldWriteNothingFromAPhaseWhoseDownloadFailed() throws Exception {
+        when(mockCommodityService.fetchAllocations((User) anyObject())).thenThrow(new LmisException("connection dropped"));
+
+        try {
+            initialSyncService.run(user, new RecordingListener());
+            fail("expected the dropped connection to surface");
+        } catch (LmisException expected) {
+        }
+
+        verify(mockCommodityService, never()).saveAllocations((User) anyObject(), (List<CommodityActionValue>) anyObject());
+        verify(mockCommodityService, never()).fetchIndicatorValues((User) anyObject());
+        assertThat(checkpointFor(Phase.ALLOCATIONS).isCompleted(), is(false));
+        assertThat(checkpointFor(Phase.STOCK).isCompleted(), is(true));
+    }
+
+    @Test
+    public void shouldDownloadEachPhaseBeforeItsTransactionOpens() throws Exception {
+        final List<Boolean> fetchedInsideTransaction = new ArrayList<>();
+        final List<Boolean> savedInsideTransaction = new ArrayList<>();
+        when(mockCommodityService.fetchCatalog((User) anyObject())).thenAnswer(new Answer<List<Category>>() {
+            @Override
+            public List<Category> answer(InvocationOnMock invocation) throws Throwable {
+                fetchedInsideTransaction.add(insideTransaction());
+                return new ArrayList<>();
+            }
+        });
+        when(mockCommodityService.saveCatalog((List<Category>) anyObject())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                savedInsideTransaction.add(insideTransaction());
+                return 0;
+            }
+        });
+
+        initialSyncService.run(user, new RecordingListener());
+
+        assertThat(fetchedInsideTransaction, is(Arrays.asList(false)));
+        assertThat(savedInsideTransaction, is(Arrays.asList(true)));
+    }
+
+    // afterCommit runs its action straight away unless a unit of work is open to defer it to
+    private boolean insideTransaction() {
+        final boolean[] ranAtOnce = {false};
+        dbUtil.afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                ranAtOnce[0] = true;
+            }
+        });
+        return !ranAtOnce[0];
+    }
+
+    private InitialSyncCheckpoint checkpointFor(final Phase phase) {
+        return dbUtil.withDao(InitialSyncCheckpoint.class, new DbUtil.Operation<InitialSyncCheckpoint, InitialSyncCheckpoint>() {
+            @Override
+            public InitialSyncCheckpoint operate(Dao<InitialSyncCheckpoint, String> dao) throws SQLException {
+                return dao.queryForId(phase.name());
+            }
+        });
+    }
+
+    private static class RecordingListener implements InitialSyncService.ProgressListener {
+        private final List<Phase> phases = new ArrayList<>();
+        private final List<Integer> completedPhases = new ArrayList<>();
+
+        @Override
+        public void phaseStarted(Phase phase, int completed, int total) {
+            phases.add(phase);
+            completedPhases.add(completed);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.services;
+
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.models.SyncRun;
+import org.clintonhealthaccess.lmis.app.remote.transport.TrafficMeter;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjectionWithMockLmisServer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.robolectric.Robolectric.application;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class SyncRunServiceTest extends LmisTestClass {
+
+    @Inject
+    SyncRunService syncRunService;
+
+    @Inject
+    TrafficMeter trafficMeter;
+
+    @Before
+    public void setUp() throws Exception {
+        setUpInjectionWithMockLmisServer(application, this);
+    }
+
+    @Test
+    public void shouldRecordTrafficRecordsAndStageDurationsOfARun() throws Exception {
+        trafficMeter.received(100);
+        SyncRun run = syncRunService.start();
+        trafficMeter.received(2048);
+        trafficMeter.sent(512);
+        run.stageTook("SNAPSHOTS", 120);
+        run.stageTook("ALLOCATIONS", 80);
+        run.pushed(3);
+        run.pulled(10);
+        run.pulled(5);
+
+        syncRunService.finish(run, noFailures());
+
+        SyncRun saved = syncRunService.latest(1).get(0);
+        assertThat(saved.getBytesIn(), is(2048L));
+        assertThat(saved.getBytesOut(), is(512L));
+        assertThat(saved.getPushed(), is(3));
+        assertThat(saved.getPulled(), is(15));
+        assertThat(saved.getStageDurations().keySet(), contains("SNAPSHOTS", "ALLOCATIONS"));
+        assertThat(saved.getStageDurations().get("SNAPSHOTS"), is(120L));
+        assertThat(saved.isFailed(), is(false));
+        assertThat(saved.getFailureCause(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldCountRetriesUntilARunSucceeds() throws Exception {
+        syncRunService.finish(syncRunService.start(), failure("SNAPSHOTS", "server unavailable"));
+        Thread.sleep(5);
+        syncRunService.finish(syncRunService.start(), failure("SNAPSHOTS", "server unavailable"));
+        Thread.sleep(5);
+
+        SyncRun retry = syncRunService.start();
+        assertThat(retry.getRetries(), is(2));
+        syncRunService.finish(retry, noFailures());
+        Thread.sleep(5);
+
+        assertThat(syncRunService.start().getRetries(), is(0));
+    }
+
+    @Test
+    public void shouldRecordWhichStageFailedAndWhy() throws Exception {
+        syncRunService.finish(syncRunService.start(), failure("ALLOCATIONS", "timed out"));
+
+        SyncRun saved = syncRunService.latest(1).get(0);
+        assertThat(saved.isFailed(), is(true));
+        assertThat(saved.getFailureCause(), is("ALLOCATIONS: timed out"));
+    }
+
+    @Test
+    public void shouldKeepOnlyTheConfiguredNumberOfRuns() throws Exception {
+        syncRunService.syncRunsKept = 3;
+        for (int i = 0; i < 5; i++) {
+            SyncRun run = syncRunService.start();
+            run.pushed(i);
+            syncRunService.finish(run, noFailures());
+            Thread.sleep(5);
+        }
+
+        List<SyncRun> runs = syncRunService.latest(10);
+        assertThat(runs.size(), is(3));
+        assertThat(runs.get(0).getPushed(), is(4));
+        assertThat(runs.get(2).getPushed(), is(2));
+    }
+
+    private Map<String, Exception> noFailures() {
+        return Collections.emptyMap();
+    }
+
+    private Map<String, Exception> failure(String stage, String message) {
+        return Collections.<String, Exception>singletonMap(stage, new RuntimeException(message));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.sync;
+
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class StagedSyncTest {
+    // stands in for one round trip to the server
+    private static final long LATENCY = 300;
+
+    private ExecutorService executor;
+    private List<String> finished;
+    private StagedSync stagedSync;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(4);
+        finished = Collections.synchronizedList(new ArrayList<String>());
+        stagedSync = new StagedSync(executor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldRunIndependentStagesConcurrently() throws Exception {
+        List<SyncStage> stages = Arrays.asList(stage("SNAPSHOTS", false), stage("ALLOCATIONS", true),
+                stage("ACTIONVALUES", true), stage("INDICATORVALUES", true));
+
+        long start = System.currentTimeMillis();
+        Map<String, Exception> failures = stagedSync.run(stages, new User(), doNothing());
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertThat(failures.isEmpty(), is(true));
+        assertThat(finished.size(), is(4));
+        // one after another these would take 4 * LATENCY
+        assertThat(elapsed, is(lessThan(2 * LATENCY)));
+    }
+
+    @Test
+    public void shouldStartAStageOnlyAfterItsDependencies() throws Exception {
+        List<SyncStage> stages = Arrays.asList(stage("INDICATORVALUES", true, "SNAPSHOTS"), stage("SNAPSHOTS", false));
+
+        stagedSync.run(stages, new User(), doNothing());
+
+        assertThat(finished, contains("SNAPSHOTS", "INDICATORVALUES"));
+    }
+
+    @Test
+    public void shouldReportFailuresAndSkipDependentStages() throws Exception {
+        List<SyncStage> stages = Arrays.asList(failing("SNAPSHOTS"), stage("INDICATORVALUES", true, "SNAPSHOTS"),
+                stage("ALLOCATIONS", true));
+
+        Map<String, Exception> failures = stagedSync.run(stages, new User(), doNothing());
+
+        assertThat(failures.keySet(), containsInAnyOrder("SNAPSHOTS", "INDICATORVALUES"));
+        assertThat(finished, contains("ALLOCATIONS"));
+    }
+
+    @Test
+    public void shouldNotifyOnceTheUiStagesHaveFinished() throws Exception {
+        List<SyncStage> stages = Arrays.asList(slow("SNAPSHOTS"), stage("ALLOCATIONS", true), stage("ACTIONVALUES", true));
+        final List<String> finishedWhenNotified = new ArrayList<>();
+
+        stagedSync.run(stages, new User(), new Runnable() {
+            @Override
+            public void run() {
+                finishedWhenNotified.addAll(finished);
+            }
+        });
+
+        assertThat(finishedWhenNotified, containsInAnyOrder("ALLOCATIONS", "ACTIONVALUES"));
+        assertThat(finished.size(), is(3));
+    }
+
+    @Test
+    public void shouldReportHowLongEachStageTook() throws Exception {
+        List<SyncStage> stages = Arrays.asList(stage("SNAPSHOTS", false), failing("ALLOCATIONS"));
+        final Map<String, Long> durations = new ConcurrentHashMap<>();
+
+        new StagedSync(executor, new StagedSync.StageListener() {
+            @Override
+            public void stageFinished(SyncStage stage, long millis) {
+                durations.put(stage.getName(), millis);
+            }
+        }).run(stages, new User(), doNothing());
+
+        assertThat(durations.keySet(), containsInAnyOrder("SNAPSHOTS", "ALLOCATIONS"));
+        assertThat(durations.get("SNAPSHOTS"), is(greaterThanOrEqualTo(LATENCY)));
+        assertThat(durations.get("ALLOCATIONS"), is(greaterThanOrEqualTo(LATENCY)));
+    }
+
+    private SyncStage stage(final String name, boolean affectsUi, String... dependencies) {
+        return new SyncStage(name, affectsUi, new SyncStage.Work() {
+            @Override
+            public void perform(User user) throws Exception {
+                Thread.sleep(LATENCY);
+                finished.add(name);
+            }
+        }, dependencies);
+    }
+
+    private SyncStage slow(final String name) {
+        return new SyncStage(name, false, new SyncStage.Work() {
+            @Override
+            public void perform(User user) throws Exception {
+                Thread.sleep(3 * LATENCY);
+                finished.add(name);
+            }
+        });
+    }
+
+    private SyncStage failing(String name) {
+        return new SyncStage(name, false, new SyncStage.Work() {
+            @Override
+            public void perform(User user) throws Exception {
+                Thread.sleep(LATENCY);
+                throw new RuntimeException("server unavailable");
+            }
+        });
+    }
+
+    private Runnable doNothing() {
+        return new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+    }
+}
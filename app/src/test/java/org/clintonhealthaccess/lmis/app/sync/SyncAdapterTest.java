@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.sync;
+
+import android.accounts.Account;
+import android.content.SyncResult;
+import android.os.Bundle;
+
+import com.github.dreamhead.moco.HttpServer;
+import com.github.dreamhead.moco.Runnable;
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.LmisTestClass;
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.models.DataSet;
+import org.clintonhealthaccess.lmis.app.models.SyncRun;
+import org.clintonhealthaccess.lmis.app.models.User;
+import org.clintonhealthaccess.lmis.app.remote.endpoints.Dhis2EndPointFactory;
+import org.clintonhealthaccess.lmis.app.remote.endpoints.Dhis2Endpoint;
+import org.clintonhealthaccess.lmis.app.remote.transport.PooledHttpClient;
+import org.clintonhealthaccess.lmis.app.remote.transport.StreamingApacheClient;
+import org.clintonhealthaccess.lmis.app.remote.transport.TrafficMeter;
+import org.clintonhealthaccess.lmis.app.services.DataSetService;
+import org.clintonhealthaccess.lmis.app.services.SyncRunService;
+import org.clintonhealthaccess.lmis.app.services.UserService;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.util.Arrays;
+
+import retrofit.ErrorHandler;
+import retrofit.RestAdapter;
+import retrofit.RetrofitError;
+
+import static com.github.dreamhead.moco.Moco.by;
+import static com.github.dreamhead.moco.Moco.httpserver;
+import static com.github.dreamhead.moco.Moco.latency;
+import static com.github.dreamhead.moco.Moco.status;
+import static com.github.dreamhead.moco.Moco.text;
+import static com.github.dreamhead.moco.Moco.uri;
+import static com.github.dreamhead.moco.Runner.running;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class SyncAdapterTest extends LmisTestClass {
+    private static final int PORT = 12307;
+    // added to every response, standing in for one round trip to the server
+    private static final long LATENCY = 300;
+
+    @Inject
+    private SyncRunService syncRunService;
+
+    @Inject
+    private SyncScheduler syncScheduler;
+
+    private HttpServer server;
+    private SyncAdapter syncAdapter;
+    private SyncResult syncResult;
+
+    @Before
+    public void setUp() throws Exception {
+        // every stage goes through this one pooled client, the way they share it on the device
+        final Dhis2EndPointFactory endPointFactory = mock(Dhis2EndPointFactory.class);
+        Dhis2Endpoint endpoint = new RestAdapter.Builder()
+                .setEndpoint("http://localhost:" + PORT)
+                .setClient(new StreamingApacheClient(PooledHttpClient.create(new TrafficMeter())))
+                .setErrorHandler(new ErrorHandler() {
+                    @Override
+                    public Throwable handleError(RetrofitError cause) {
+                        return new LmisException(cause);
+                    }
+                })
+                .build().create(Dhis2Endpoint.class);
+        when(endPointFactory.getEndPoint(any(User.class))).thenReturn(endpoint);
+
+        final DataSetService dataSetService = mock(DataSetService.class);
+        when(dataSetService.all()).thenReturn(Arrays.asList(
+                new DataSet("default", DataSet.DEFAULT, "Daily"),
+                new DataSet("calculated", DataSet.CALCULATED, "Daily")));
+
+        User user = new User("test", "pass");
+        user.setFacilityCode("tVmtcBn5bnz");
+        final UserService userService = mock(UserService.class);
+        when(userService.getRegisteredUser()).thenReturn(user);
+
+        setUpInjection(this, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(Dhis2EndPointFactory.class).toInstance(endPointFactory);
+                bind(DataSetService.class).toInstance(dataSetService);
+                bind(UserService.class).toInstance(userService);
+            }
+        });
+        Robolectric.getFakeHttpLayer().interceptHttpRequests(false);
+
+        server = httpserver(PORT);
+        syncAdapter = new SyncAdapter(Robolectric.application, false);
+        syncResult = new SyncResult();
+    }
+
+    @After
+    public void interceptHttpRequestsAgain() throws Exception {
+        Robolectric.getFakeHttpLayer().interceptHttpRequests(true);
+    }
+
+    @Test
+    public void shouldRunTheStagesSideBySideOverTheSharedClient() throws Exception {
+        server.get(by(uri("/api/dataValueSets"))).response(latency(LATENCY), text("{\"dataValues\":[]}"));
+        server.get(by(uri("/api/analytics.json"))).response(latency(LATENCY), text("{\"rows\":[]}"));
+
+        running(server, new Runnable() {
+            @Override
+            public void run() throws Exception {
+                long start = System.currentTimeMillis();
+                performSync();
+                long elapsed = System.currentTimeMillis() - start;
+
+                assertThat(syncResult.stats.numIoExceptions, is(0L));
+                // allocations and action values take one round trip each and indicator values two, 4 * LATENCY in a row
+                assertThat(elapsed, is(lessThan(3 * LATENCY)));
+            }
+        });
+    }
+
+    @Test
+    public void shouldCountAStageTheServerFailedAsAnIoError() throws Exception {
+        server.get(by(uri("/api/dataValueSets"))).response(latency(LATENCY), text("{\"dataValues\":[]}"));
+        server.get(by(uri("/api/analytics.json"))).response(latency(LATENCY), status(500));
+
+        running(server, new Runnable() {
+            @Override
+            public void run() throws Exception {
+                performSync();
+
+                assertThat(syncResult.stats.numIoExceptions, is(1L));
+                SyncRun run = syncRunService.latest(1).get(0);
+                assertThat(run.getFailureCause(), containsString("INDICATORVALUES"));
+            }
+        });
+    }
+
+    @Test
+    public void shouldWaitTwiceAsLongAfterEachSyncTheServerFailed() throws Exception {
+        server.response(status(503));
+        final long interval = syncScheduler.nextHttpSyncAt();
+
+        running(server, new Runnable() {
+            @Override
+            public void run() throws Exception {
+                performSync();
+                assertThat(syncScheduler.nextHttpSyncAt(), is(2 * interval));
+
+                performSync();
+                assertThat(syncScheduler.nextHttpSyncAt(), is(4 * interval));
+            }
+        });
+    }
+
+    private void performSync() {
+        syncAdapter.onPerformSync(new Account("test", "lmis"), new Bundle(), "authority", null, syncResult);
+    }
+}
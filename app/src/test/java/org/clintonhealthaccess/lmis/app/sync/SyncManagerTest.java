@@ -31,8 +31,10 @@ package org.clintonhealthaccess.lmis.app.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.PeriodicSync;
+import android.os.Bundle;
 
 import com.google.inject.Inject;
 
@@ -49,8 +51,10 @@ import java.util.List;
 import roboguice.inject.InjectResource;
 
 import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static android.content.ContentResolver.SYNC_EXTRAS_DO_NOT_RETRY;
+import static android.content.ContentResolver.SYNC_EXTRAS_EXPEDITED;
+import static android.content.ContentResolver.SYNC_EXTRAS_MANUAL;
 import static org.hamcrest.core.Is.is;
-import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 @RunWith(RobolectricGradleTestRunner.class)
@@ -89,15 +93,20 @@ public class SyncManagerTest {
     }
 
     @Test
-    public void testKickOffPeriodicalSync() throws Exception {
+    public void testKickOffReplacesThePeriodicalSyncOfOlderVersions() throws Exception {
         User user = new User("test_user", "password");
-        assertThat(getPeriodicSyncs(user).size(), is(0));
-
         syncManager.createSyncAccount(user);
+        Bundle extras = new Bundle();
+        extras.putBoolean(SYNC_EXTRAS_DO_NOT_RETRY, false);
+        extras.putBoolean(SYNC_EXTRAS_EXPEDITED, false);
+        extras.putBoolean(SYNC_EXTRAS_MANUAL, false);
+        ContentResolver.addPeriodicSync(new Account(user.getUsername(), syncAccountType), syncContentAuthority, extras, 3600);
+        assertThat(getPeriodicSyncs(user).size(), is(1));
+
         syncManager.kickOff();
 
-        assertThat(getPeriodicSyncs(user).size(), is(1));
-        assertEquals(context.getResources().getInteger(R.integer.sync_interval), getPeriodicSyncs(user).get(0).period);
+        assertThat(getPeriodicSyncs(user).size(), is(0));
+        assertThat(ContentResolver.getSyncAutomatically(new Account(user.getUsername(), syncAccountType), syncContentAuthority), is(true));
     }
 
     private List<PeriodicSync> getPeriodicSyncs(User user) {
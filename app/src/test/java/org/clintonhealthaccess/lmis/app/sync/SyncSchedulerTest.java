@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.sync;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Inject;
+
+import org.clintonhealthaccess.lmis.app.LmisException;
+import org.clintonhealthaccess.lmis.app.persistence.repositories.OutboxRepository;
+import org.clintonhealthaccess.lmis.app.utils.Clock;
+import org.clintonhealthaccess.lmis.utils.RobolectricGradleTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.clintonhealthaccess.lmis.app.sync.SyncScheduler.Job.ALERTS;
+import static org.clintonhealthaccess.lmis.app.sync.SyncScheduler.Job.ARCHIVAL;
+import static org.clintonhealthaccess.lmis.app.sync.SyncScheduler.Job.HTTP_SYNC;
+import static org.clintonhealthaccess.lmis.app.sync.SyncScheduler.Job.SMS_SYNC;
+import static org.clintonhealthaccess.lmis.utils.TestInjectionUtil.setUpInjection;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricGradleTestRunner.class)
+public class SyncSchedulerTest {
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+
+    @Inject
+    SyncScheduler scheduler;
+
+    private FakeClock clock;
+    private DeviceConditions deviceConditions;
+    private OutboxRepository outboxRepository;
+
+    @Before
+    public void setUp() throws Exception {
+        clock = new FakeClock(at(10, 0));
+        deviceConditions = mock(DeviceConditions.class);
+        outboxRepository = mock(OutboxRepository.class);
+        when(deviceConditions.isOnline()).thenReturn(true);
+        setUpInjection(this, new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(Clock.class).toInstance(clock);
+                bind(DeviceConditions.class).toInstance(deviceConditions);
+                bind(OutboxRepository.class).toInstance(outboxRepository);
+            }
+        });
+        scheduler.syncInterval = 3600;
+        scheduler.syncBackoffMax = 86400;
+        scheduler.outboxSyncThreshold = 200;
+        scheduler.outboxSyncMinInterval = 300;
+        scheduler.alertsInterval = 120;
+    }
+
+    @Test
+    public void shouldSyncAndCheckAlertsButWaitForTheirSlotsOnTheFirstTick() throws Exception {
+        assertThat(scheduler.dueJobs(), containsInAnyOrder(HTTP_SYNC, ALERTS));
+    }
+
+    @Test
+    public void shouldRunTheDailyJobsAtTheirNextSlotsAfterAFirstTickWithNoHistory() throws Exception {
+        clock.set(at(3, 30));
+        runAll();
+
+        clock.set(at(12, 59));
+        assertThat(scheduler.dueJobs(), not(hasItem(SMS_SYNC)));
+        assertThat(scheduler.dueJobs(), not(hasItem(ARCHIVAL)));
+        clock.set(at(13, 0));
+        assertThat(scheduler.dueJobs(), hasItem(SMS_SYNC));
+
+        clock.set(at(26, 59));
+        assertThat(scheduler.dueJobs(), not(hasItem(ARCHIVAL)));
+        clock.set(at(27, 0));
+        assertThat(scheduler.dueJobs(), hasItem(ARCHIVAL));
+    }
+
+    @Test
+    public void shouldCoalesceJobsUntilTheyAreDueAgain() throws Exception {
+        runAll();
+
+        clock.advance(2 * MINUTE);
+        assertThat(scheduler.dueJobs(), contains(ALERTS));
+
+        clock.advance(HOUR);
+        assertThat(scheduler.dueJobs(), contains(HTTP_SYNC, ALERTS));
+    }
+
+    @Test
+    public void shouldSendSmsAtOneAndThirteenHoursAndArchiveAtThree() throws Exception {
+        runAll();
+
+        clock.set(at(12, 59));
+        assertThat(scheduler.dueJobs(), not(hasItem(SMS_SYNC)));
+        clock.set(at(13, 0));
+        assertThat(scheduler.dueJobs(), hasItem(SMS_SYNC));
+        assertThat(scheduler.dueJobs(), not(hasItem(ARCHIVAL)));
+
+        clock.set(at(27, 0));
+        assertThat(scheduler.dueJobs(), hasItem(ARCHIVAL));
+    }
+
+    @Test
+    public void shouldSkipHttpSyncWhileOffline() throws Exception {
+        when(deviceConditions.isOnline()).thenReturn(false);
+
+        assertThat(scheduler.dueJobs(), not(hasItem(HTTP_SYNC)));
+
+        when(deviceConditions.isOnline()).thenReturn(true);
+        assertThat(scheduler.dueJobs(), hasItem(HTTP_SYNC));
+    }
+
+    @Test
+    public void shouldBackOffExponentiallyAfterNetworkErrors() throws Exception {
+        long start = clock.now();
+        syncFailing(new LmisException("Could not connect to the server"));
+        assertThat(scheduler.nextHttpSyncAt(), is(start + 2 * HOUR));
+
+        syncFailing(new LmisException("Could not connect to the server"));
+        assertThat(scheduler.nextHttpSyncAt(), is(start + 4 * HOUR));
+
+        clock.advance(3 * HOUR);
+        assertThat(scheduler.dueJobs(), not(hasItem(HTTP_SYNC)));
+        clock.advance(HOUR);
+        assertThat(scheduler.dueJobs(), hasItem(HTTP_SYNC));
+    }
+
+    @Test
+    public void shouldCapTheBackoffAndResetItAfterASuccessfulSync() throws Exception {
+        long start = clock.now();
+        for (int i = 0; i < 10; i++) {
+            syncFailing(new LmisException("Could not connect to the server"));
+        }
+        assertThat(scheduler.nextHttpSyncAt(), is(start + 24 * HOUR));
+
+        scheduler.httpSyncFinished(noFailures());
+        assertThat(scheduler.nextHttpSyncAt(), is(start + HOUR));
+    }
+
+    @Test
+    public void shouldNotBackOffForFailuresOtherThanNetworkErrors() throws Exception {
+        long start = clock.now();
+        syncFailing(new IllegalStateException("bad data"));
+
+        assertThat(scheduler.nextHttpSyncAt(), is(start + HOUR));
+    }
+
+    @Test
+    public void shouldSyncEarlyWhenTheOutboxGrowsPastTheThreshold() throws Exception {
+        runAll();
+        when(outboxRepository.countUndelivered()).thenReturn(250L);
+
+        clock.advance(4 * MINUTE);
+        assertThat(scheduler.dueJobs(), not(hasItem(HTTP_SYNC)));
+
+        clock.advance(MINUTE);
+        assertThat(scheduler.dueJobs(), hasItem(HTTP_SYNC));
+    }
+
+    @Test
+    public void shouldNotSyncEarlyOnALowBatteryOrWhileBackingOff() throws Exception {
+        runAll();
+        when(outboxRepository.countUndelivered()).thenReturn(250L);
+        clock.advance(10 * MINUTE);
+
+        when(deviceConditions.isBatteryLow()).thenReturn(true);
+        assertThat(scheduler.dueJobs(), not(hasItem(HTTP_SYNC)));
+
+        when(deviceConditions.isBatteryLow()).thenReturn(false);
+        scheduler.httpSyncFinished(Collections.<String, Exception>singletonMap("SNAPSHOTS", new LmisException("timed out")));
+        assertThat(scheduler.dueJobs(), not(hasItem(HTTP_SYNC)));
+    }
+
+    @Test
+    public void shouldHaveNothingDueRightAfterRunningEverything() throws Exception {
+        runAll();
+
+        assertThat(scheduler.dueJobs(), is(empty()));
+    }
+
+    private void runAll() {
+        for (SyncScheduler.Job job : scheduler.dueJobs()) {
+            scheduler.ran(job);
+        }
+        scheduler.httpSyncFinished(noFailures());
+    }
+
+    private void syncFailing(Exception failure) {
+        scheduler.ran(HTTP_SYNC);
+        scheduler.httpSyncFinished(Collections.singletonMap("SNAPSHOTS", failure));
+    }
+
+    private Map<String, Exception> noFailures() {
+        return Collections.emptyMap();
+    }
+
+    private long at(int hourOfDay, int minute) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2014, Calendar.SEPTEMBER, 1, 0, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.HOUR_OF_DAY, hourOfDay);
+        calendar.add(Calendar.MINUTE, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    private static class FakeClock extends Clock {
+        private long now;
+
+        FakeClock(long now) {
+            this.now = now;
+        }
+
+        void advance(long millis) {
+            now += millis;
+        }
+
+        void set(long now) {
+            this.now = now;
+        }
+
+        @Override
+        public long now() {
+            return now;
+        }
+    }
+}
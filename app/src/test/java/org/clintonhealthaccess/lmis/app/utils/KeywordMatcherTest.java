@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package org.clintonhealthaccess.lmis.app.utils;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+
+public class KeywordMatcherTest {
+
+    @Test
+    public void shouldFindEveryKeywordInTheTextIncludingOverlappingOnes() throws Exception {
+        KeywordMatcher<String> matcher = new KeywordMatcher<String>()
+                .add("he", "he").add("she", "she").add("his", "his").add("hers", "hers");
+
+        assertThat(matcher.find("ushers"), containsInAnyOrder("he", "she", "hers"));
+        assertThat(matcher.find("this"), containsInAnyOrder("his"));
+        assertThat(matcher.find("nothing here"), containsInAnyOrder("he"));
+        assertThat(matcher.find("xyz"), is(empty()));
+    }
+
+    @Test
+    public void shouldReportAKeywordOnceHoweverOftenItOccurs() throws Exception {
+        KeywordMatcher<Integer> matcher = new KeywordMatcher<Integer>().add("x 1", 1).add("x 10", 10);
+
+        assertThat(matcher.find("Zinc Tablets x 10 and x 1"), containsInAnyOrder(1, 10));
+    }
+
+    @Test
+    public void shouldGiveEveryValueRegisteredForTheSameKeyword() throws Exception {
+        KeywordMatcher<String> matcher = new KeywordMatcher<String>().add("ORS", "first").add("ORS", "second");
+
+        assertThat(matcher.find("Zinc+ORS Copack"), containsInAnyOrder("first", "second"));
+    }
+
+    @Test
+    public void shouldTellWhetherAnyKeywordOccurs() throws Exception {
+        KeywordMatcher<String> matcher = new KeywordMatcher<String>().add("BUFFER_STOCK", "").add("MIN_STOCK_QUANTITY", "");
+
+        assertThat(matcher.matchesAny("Cotrimoxazole_suspension  MIN_STOCK_QUANTITY"), is(true));
+        assertThat(matcher.matchesAny("Cotrimoxazole_suspension  BUFFER STOCK"), is(false));
+    }
+
+    @Test
+    public void shouldMatchLikeStringContains() throws Exception {
+        String[] keywords = {"a", "ab", "bab", "bc", "bca", "c", "caa", "aab", ""};
+        String[] texts = {"abccab", "aabcaab", "bbbb", "cacbab", ""};
+        KeywordMatcher<String> matcher = new KeywordMatcher<>();
+        for (String keyword : keywords) {
+            matcher.add(keyword, keyword);
+        }
+
+        for (String text : texts) {
+            for (String keyword : keywords) {
+                assertThat(text + " contains " + keyword, matcher.find(text).contains(keyword), is(text.contains(keyword)));
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldNotTakeNewKeywordsOnceUsed() throws Exception {
+        KeywordMatcher<String> matcher = new KeywordMatcher<String>().add("a", "a");
+        matcher.find("a");
+
+        matcher.add("b", "b");
+    }
+}
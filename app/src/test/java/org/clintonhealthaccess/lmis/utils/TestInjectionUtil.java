@@ -44,6 +44,9 @@ import org.clintonhealthaccess.lmis.app.models.CommodityActionValue;
 import org.clintonhealthaccess.lmis.app.models.User;
 import org.clintonhealthaccess.lmis.app.models.api.DataValueSetPushResponse;
 import org.clintonhealthaccess.lmis.app.remote.LmisServer;
+import org.clintonhealthaccess.lmis.app.remote.RequestPool;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -56,6 +59,7 @@ import roboguice.inject.RoboInjector;
 
 import static com.google.inject.util.Modules.override;
 import static java.util.Arrays.asList;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -67,7 +71,12 @@ import static roboguice.RoboGuice.setBaseApplicationInjector;
 
 public class TestInjectionUtil {
     public static void setUpInjection(Object testCase, Module mockedModule) {
-        Module customisedModule = override(newDefaultRoboModule(application)).with(new GuiceConfigurationModule());
+        Module customisedModule = override(newDefaultRoboModule(application)).with(new GuiceConfigurationModule(), new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(RequestPool.class).to(SameThreadRequestPool.class);
+            }
+        });
         if (mockedModule != null) {
             customisedModule = override(customisedModule).with(mockedModule);
         }
@@ -85,7 +94,7 @@ public class TestInjectionUtil {
         final LmisServer mockLmisServer = mock(LmisServer.class);
         List<Category> categories = defaultCategories(context);
         when(mockLmisServer.fetchCategories((User) anyObject())).thenReturn(categories);
-        when(mockLmisServer.fetchCommodityActionValues((User) anyObject())).thenReturn(testActionValues(context));
+        stubCommodityActionValues(mockLmisServer, testActionValues(context));
         when(mockLmisServer.pushDataValueSet((DataValueSet) anyObject(), (User) anyObject())).thenReturn(fakePushDataValuesResponse());
         Module mockedModule = new AbstractModule() {
             @Override
@@ -99,6 +108,19 @@ public class TestInjectionUtil {
         setUpInjection(testCase, mockedModule);
     }
 
+    public static void stubCommodityActionValues(LmisServer mockLmisServer, final List<CommodityActionValue> values) {
+        when(mockLmisServer.fetchCommodityActionValues(any(User.class), any(LmisServer.ValueSink.class))).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                LmisServer.ValueSink sink = (LmisServer.ValueSink) invocation.getArguments()[1];
+                for (CommodityActionValue value : values) {
+                    sink.accept(value);
+                }
+                return values.size();
+            }
+        });
+    }
+
     private static DataValueSetPushResponse fakePushDataValuesResponse() {
         try {
             String json = readFixtureFile("successfulSnapshotPush.json");
@@ -31,10 +31,12 @@ package com.thoughtworks.dhis;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.FluentIterable;
+import com.thoughtworks.dhis.bundle.BootstrapBundleWriter;
 import com.thoughtworks.dhis.configurations.IConfiguration;
 import com.thoughtworks.dhis.configurations.LMISConfiguration;
 import com.thoughtworks.dhis.endpoints.ApiService;
 import com.thoughtworks.dhis.models.AttributeValue;
+import com.thoughtworks.dhis.models.BootstrapBundle;
 import com.thoughtworks.dhis.models.CategoryCombo;
 import com.thoughtworks.dhis.models.DataElement;
 import com.thoughtworks.dhis.models.DataElementType;
@@ -45,7 +47,9 @@ import com.thoughtworks.dhis.models.User;
 import com.thoughtworks.dhis.models.UserProfile;
 import com.thoughtworks.dhis.tasks.Task;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -80,6 +84,7 @@ public class App {
     private static Map<String, Task> setUpTasks() {
         Map<String, Task> commands = new HashMap<>();
         commands.put("config", configTask);
+        commands.put("bundle", bundleTask);
         commands.put("maxMin", submitMaxAndMinThreshold);
         commands.put("monthSOH", submitMonthsStockOnHand);
         commands.put("calculatedData", submitCalculatedData);
@@ -183,22 +188,33 @@ public class App {
     private static Task configTask = new Task() {
         @Override
         public void operateOnService(ApiService service) throws IOException {
-            CategoryCombo categoryCombo = service.searchCategoryCombos("default").getCategoryCombos().get(0);
-            categoryCombo = service.getCombo(categoryCombo.getId());
-            categoryCombo.setHref(null);
-            categoryCombo.setCreated(null);
-            categoryCombo.setLastUpdated(null);
-            categoryCombo.setCategories(null);
-            categoryCombo.setDimensionType(null);
-            categoryCombo.setCategoryOptionCombos(null);
-
-            IConfiguration lmisConfig = new LMISConfiguration(categoryCombo);
-            Map<String, Object> data = lmisConfig.generateMetaData();
-
-            service.updateMetaData(data);
+            service.updateMetaData(generateMetaData(service));
         }
     };
 
+    private static Task bundleTask = new Task() {
+        @Override
+        public void operateOnService(ApiService service) throws IOException {
+            OutputStream out = new FileOutputStream(BootstrapBundle.FILE_NAME);
+            BootstrapBundle bundle = new BootstrapBundleWriter().write(generateMetaData(service), out);
+            System.out.println(format("Wrote %s: %d records, version %d", BootstrapBundle.FILE_NAME, bundle.records(), bundle.getVersion()));
+        }
+    };
+
+    private static Map<String, Object> generateMetaData(ApiService service) throws IOException {
+        CategoryCombo categoryCombo = service.searchCategoryCombos("default").getCategoryCombos().get(0);
+        categoryCombo = service.getCombo(categoryCombo.getId());
+        categoryCombo.setHref(null);
+        categoryCombo.setCreated(null);
+        categoryCombo.setLastUpdated(null);
+        categoryCombo.setCategories(null);
+        categoryCombo.setDimensionType(null);
+        categoryCombo.setCategoryOptionCombos(null);
+
+        IConfiguration lmisConfig = new LMISConfiguration(categoryCombo);
+        return lmisConfig.generateMetaData();
+    }
+
     private static Task submitMaxAndMinThreshold = new Task() {
         @Override
         public void operateOnService(ApiService service) throws IOException {
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package com.thoughtworks.dhis.bundle;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.thoughtworks.dhis.configurations.LMISConfiguration;
+import com.thoughtworks.dhis.models.Attribute;
+import com.thoughtworks.dhis.models.AttributeValue;
+import com.thoughtworks.dhis.models.BootstrapBundle;
+import com.thoughtworks.dhis.models.Constant;
+import com.thoughtworks.dhis.models.DataElement;
+import com.thoughtworks.dhis.models.DataElementGroup;
+import com.thoughtworks.dhis.models.DataElementGroupSet;
+import com.thoughtworks.dhis.models.DataSet;
+import com.thoughtworks.dhis.models.Indicator;
+import com.thoughtworks.dhis.models.IndicatorGroup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static com.thoughtworks.dhis.models.BootstrapBundle.CONSTANT;
+import static com.thoughtworks.dhis.models.BootstrapBundle.DATA_ELEMENT_GROUP_SET;
+import static com.thoughtworks.dhis.models.BootstrapBundle.DATA_SET;
+import static com.thoughtworks.dhis.models.BootstrapBundle.HEADER;
+import static com.thoughtworks.dhis.models.BootstrapBundle.INDICATOR_GROUP;
+
+// writes only the fields the app asks the server for, so the bundle imports exactly as a live first sync would
+public class BootstrapBundleWriter {
+    private final Gson gson = new Gson();
+
+    @SuppressWarnings("unchecked")
+    public BootstrapBundle write(Map<String, Object> metaData, OutputStream out) throws IOException {
+        List<DataSet> dataSets = dataSetsOf((List<DataSet>) metaData.get(LMISConfiguration.DATA_SETS));
+        List<DataElementGroupSet> groupSets = groupSetsOf((List<DataElementGroupSet>) metaData.get(LMISConfiguration.DATA_ELEMENT_GROUP_SETS));
+        List<IndicatorGroup> indicatorGroups = indicatorGroupsOf((List<Indicator>) metaData.get(LMISConfiguration.INDICATORS));
+        List<Constant> constants = constantsOf((List<Constant>) metaData.get(LMISConfiguration.CONSTANTS));
+
+        BootstrapBundle header = new BootstrapBundle(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()),
+                dataSets.size(), groupSets.size(), indicatorGroups.size(), constants.size());
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(out), "UTF-8"));
+        try {
+            writeLine(writer, HEADER, header);
+            writeAll(writer, DATA_SET, dataSets);
+            writeAll(writer, DATA_ELEMENT_GROUP_SET, groupSets);
+            writeAll(writer, INDICATOR_GROUP, indicatorGroups);
+            writeAll(writer, CONSTANT, constants);
+        } finally {
+            writer.close();
+        }
+        return header;
+    }
+
+    private void writeAll(Writer writer, String type, List<?> values) throws IOException {
+        for (Object value : values) {
+            writeLine(writer, type, value);
+        }
+    }
+
+    private void writeLine(Writer writer, String type, Object value) throws IOException {
+        JsonObject line = new JsonObject();
+        line.addProperty(BootstrapBundle.TYPE, type);
+        line.add(BootstrapBundle.VALUE, gson.toJsonTree(value));
+        writer.write(gson.toJson(line));
+        writer.write('\n');
+    }
+
+    private List<DataSet> dataSetsOf(List<DataSet> dataSets) {
+        List<DataSet> slim = new ArrayList<>();
+        if (dataSets == null) {
+            return slim;
+        }
+        for (DataSet dataSet : dataSets) {
+            // elements are spelt out once under their group set, a data set only needs to name them
+            List<DataElement> elementIds = new ArrayList<>();
+            for (DataElement element : dataSet.getDataElements()) {
+                elementIds.add(DataElement.builder().id(element.getId()).build());
+            }
+            slim.add(DataSet.builder().id(dataSet.getId()).name(dataSet.getName())
+                    .periodType(dataSet.getPeriodType()).dataElements(elementIds).build());
+        }
+        return slim;
+    }
+
+    private List<DataElementGroupSet> groupSetsOf(List<DataElementGroupSet> groupSets) {
+        List<DataElementGroupSet> slim = new ArrayList<>();
+        if (groupSets == null) {
+            return slim;
+        }
+        for (DataElementGroupSet groupSet : groupSets) {
+            List<DataElementGroup> groups = new ArrayList<>();
+            for (DataElementGroup group : groupSet.getDataElementGroups()) {
+                List<DataElement> elements = new ArrayList<>();
+                for (DataElement element : group.getDataElements()) {
+                    elements.add(DataElement.builder().id(element.getId()).name(element.getName())
+                            .attributeValues(attributeValuesOf(element.getAttributeValues())).build());
+                }
+                groups.add(DataElementGroup.builder().id(group.getId()).name(group.getName())
+                        .attributeValues(attributeValuesOf(group.getAttributeValues())).dataElements(elements).build());
+            }
+            slim.add(DataElementGroupSet.builder().id(groupSet.getId()).name(groupSet.getName())
+                    .dataElementGroups(groups).build());
+        }
+        return slim;
+    }
+
+    private List<AttributeValue> attributeValuesOf(List<AttributeValue> values) {
+        List<AttributeValue> slim = new ArrayList<>();
+        if (values == null) {
+            return slim;
+        }
+        for (AttributeValue value : values) {
+            Attribute attribute = value.getAttribute();
+            slim.add(AttributeValue.builder().value(value.getValue())
+                    .attribute(Attribute.builder().id(attribute.getId()).name(attribute.getName()).build()).build());
+        }
+        return slim;
+    }
+
+    private List<IndicatorGroup> indicatorGroupsOf(List<Indicator> indicators) {
+        // the app binds indicators through their group's name, so indicators outside a group are left to the live sync
+        Map<String, IndicatorGroup> groups = new LinkedHashMap<>();
+        if (indicators == null) {
+            return new ArrayList<>(groups.values());
+        }
+        for (Indicator indicator : indicators) {
+            IndicatorGroup group = indicator.getIndicatorGroup();
+            if (group == null) {
+                continue;
+            }
+            IndicatorGroup slimGroup = groups.get(group.getId());
+            if (slimGroup == null) {
+                slimGroup = IndicatorGroup.builder().id(group.getId()).name(group.getName())
+                        .indicators(new ArrayList<Indicator>()).build();
+                groups.put(group.getId(), slimGroup);
+            }
+            slimGroup.getIndicators().add(Indicator.builder().id(indicator.getId()).name(indicator.getName()).build());
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private List<Constant> constantsOf(List<Constant> constants) {
+        List<Constant> slim = new ArrayList<>();
+        if (constants == null) {
+            return slim;
+        }
+        for (Constant constant : constants) {
+            slim.add(Constant.builder().id(constant.getId()).name(constant.getName()).value(constant.getValue()).build());
+        }
+        return slim;
+    }
+}
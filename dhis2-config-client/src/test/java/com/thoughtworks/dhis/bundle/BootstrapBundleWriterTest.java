@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package com.thoughtworks.dhis.bundle;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.thoughtworks.dhis.configurations.LMISConfiguration;
+import com.thoughtworks.dhis.models.BootstrapBundle;
+import com.thoughtworks.dhis.models.CategoryCombo;
+import com.thoughtworks.dhis.models.DataElementGroupSet;
+import com.thoughtworks.dhis.models.DataSet;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+
+public class BootstrapBundleWriterTest {
+    private final JsonParser parser = new JsonParser();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldWriteAHeaderFollowedByOneLinePerRecord() throws Exception {
+        Map<String, Object> metaData = new LMISConfiguration(CategoryCombo.builder().id("12").build()).generateMetaData();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        BootstrapBundle header = new BootstrapBundleWriter().write(metaData, out);
+
+        List<JsonObject> lines = readLines(out.toByteArray());
+        assertThat(lines.get(0).get(BootstrapBundle.TYPE).getAsString(), is(BootstrapBundle.HEADER));
+        assertThat(lines.get(0).getAsJsonObject(BootstrapBundle.VALUE).get("version").getAsInt(), is(BootstrapBundle.VERSION));
+        assertThat(lines.size(), is(header.records() + 1));
+        assertThat(header.getDataSets(), is(((List<DataSet>) metaData.get(LMISConfiguration.DATA_SETS)).size()));
+        assertThat(header.getDataElementGroupSets(), is(((List<DataElementGroupSet>) metaData.get(LMISConfiguration.DATA_ELEMENT_GROUP_SETS)).size()));
+        assertThat(header.getConstants(), is(3));
+    }
+
+    @Test
+    public void shouldNameDataSetElementsByIdOnly() throws Exception {
+        Map<String, Object> metaData = new LMISConfiguration(CategoryCombo.builder().id("12").build()).generateMetaData();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new BootstrapBundleWriter().write(metaData, out);
+
+        for (JsonObject line : readLines(out.toByteArray())) {
+            if (BootstrapBundle.DATA_SET.equals(line.get(BootstrapBundle.TYPE).getAsString())) {
+                JsonObject element = line.getAsJsonObject(BootstrapBundle.VALUE).getAsJsonArray("dataElements").get(0).getAsJsonObject();
+                assertThat(element.entrySet().size(), is(1));
+                assertThat(element.has("id"), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void shouldBeMuchSmallerThanTheMetadataPushedToTheServer() throws Exception {
+        Map<String, Object> metaData = new LMISConfiguration(CategoryCombo.builder().id("12").build()).generateMetaData();
+        int pushed = new Gson().toJson(metaData).getBytes("UTF-8").length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new BootstrapBundleWriter().write(metaData, out);
+
+        assertThat(out.size(), greaterThan(0));
+        assertThat(out.size(), lessThan(pushed / 4));
+    }
+
+    private List<JsonObject> readLines(byte[] bundle) throws Exception {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(bundle)), "UTF-8"));
+        List<JsonObject> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(parser.parse(line).getAsJsonObject());
+        }
+        reader.close();
+        return lines;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2014, Thoughtworks Inc
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ * The views and conclusions contained in the software and documentation are those
+ * of the authors and should not be interpreted as representing official policies,
+ * either expressed or implied, of the FreeBSD Project.
+ */
+
+package com.thoughtworks.dhis.models;
+
+// layout of the metadata bundle the config client writes and the app imports on first login
+public class BootstrapBundle {
+    public static final String FILE_NAME = "lmis-bootstrap.jsonl.gz";
+    public static final String FORMAT = "lmis-bootstrap";
+    public static final int VERSION = 1;
+
+    // gzipped json lines, each one {"type": ..., "value": ...}, with the header first
+    public static final String TYPE = "type";
+    public static final String VALUE = "value";
+
+    public static final String HEADER = "header";
+    public static final String DATA_SET = "dataSet";
+    public static final String DATA_ELEMENT_GROUP_SET = "dataElementGroupSet";
+    public static final String INDICATOR_GROUP = "indicatorGroup";
+    public static final String CONSTANT = "constant";
+
+    private String format;
+    private int version;
+    private String generated;
+    private int dataSets;
+    private int dataElementGroupSets;
+    private int indicatorGroups;
+    private int constants;
+
+    public BootstrapBundle(String generated, int dataSets, int dataElementGroupSets, int indicatorGroups, int constants) {
+        this.format = FORMAT;
+        this.version = VERSION;
+        this.generated = generated;
+        this.dataSets = dataSets;
+        this.dataElementGroupSets = dataElementGroupSets;
+        this.indicatorGroups = indicatorGroups;
+        this.constants = constants;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getGenerated() {
+        return generated;
+    }
+
+    public int getDataSets() {
+        return dataSets;
+    }
+
+    public int getDataElementGroupSets() {
+        return dataElementGroupSets;
+    }
+
+    public int getIndicatorGroups() {
+        return indicatorGroups;
+    }
+
+    public int getConstants() {
+        return constants;
+    }
+
+    public int records() {
+        return dataSets + dataElementGroupSets + indicatorGroups + constants;
+    }
+}
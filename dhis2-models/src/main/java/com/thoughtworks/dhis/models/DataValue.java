@@ -48,7 +48,7 @@ public class DataValue {
     private static final SimpleDateFormat MONTHLY_PERIOD_DATE_FORMAT = new SimpleDateFormat("yyyyMM");
     private static final SimpleDateFormat DAILY_PERIOD_DATE_FORMAT = new SimpleDateFormat("yyyyMMdd");
 
-    private String dataSet, dataElement, value, period, orgUnit, attributeOptionCombo;
+    private String dataSet, dataElement, value, period, orgUnit, attributeOptionCombo, lastUpdated;
 
     public Date periodAsDate() {
         try {